@@ -0,0 +1,79 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.util.Random;
+
+import at.mukprojects.mukcast.message.ImageMessage;
+
+/**
+ * BenchmarkImages creates the images used by the benchmarks. The images are
+ * generated without a Processing window and contain a gradient with some
+ * noise, so compressing image codecs are neither measured with random nor
+ * with uniform pixels.
+ * 
+ * @author Mathias Markl
+ */
+final class BenchmarkImages {
+
+    private static final long SEED = 42;
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Creates an image message of the given size.
+     * 
+     * @param size
+     *            The image size in the format {@code WIDTHxHEIGHT}.
+     * @return The image message.
+     */
+    static ImageMessage createImage(String size) {
+	int separator = size.indexOf('x');
+	if (separator < 0) {
+	    throw new IllegalArgumentException("The image size has to be in the format WIDTHxHEIGHT: " + size);
+	}
+
+	return createImage(Integer.parseInt(size.substring(0, separator)), Integer.parseInt(size.substring(separator + 1)));
+    }
+
+    /**
+     * Creates an image message of the given size.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @return The image message.
+     */
+    static ImageMessage createImage(int width, int height) {
+	Random random = new Random(SEED);
+	int[] pixels = new int[width * height];
+
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int red = x * 255 / width;
+		int green = y * 255 / height;
+		int blue = (red + green) / 2 + random.nextInt(16) & 0xFF;
+		pixels[y * width + x] = 0xFF000000 | red << 16 | green << 8 | blue;
+	    }
+	}
+
+	return new ImageMessage(width, height, pixels);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.mukprojects.mukcast.client.MuKCastClient;
+import at.mukprojects.mukcast.client.MuKCastMessageListener;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.server.MuKCastServer;
+
+/**
+ * BroadcastBenchmark measures the fan-out of
+ * {@link MuKCastServer#broadcastMessage(Message)} to clients connected over
+ * the loopback interface. An operation is complete when the message has been
+ * received by every client.
+ * 
+ * @author Mathias Markl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Threads(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+
+    /**
+     * The number of connected clients.
+     */
+    @Param({ "1", "10", "100" })
+    public int clientCount;
+
+    /**
+     * The image size in the format {@code WIDTHxHEIGHT}.
+     */
+    @Param({ "320x240" })
+    public String imageSize;
+
+    private LoopbackCluster cluster;
+    private NumberMessage numberMessage;
+    private ImageMessage imageMessage;
+
+    private volatile CountDownLatch pending;
+
+    /**
+     * Starts the server and connects the clients.
+     * 
+     * @throws IOException
+     *             If the cluster couldn't be started an {@code IOException} is
+     *             thrown.
+     */
+    @Setup
+    public void setup() throws IOException {
+	numberMessage = new NumberMessage(42);
+	imageMessage = BenchmarkImages.createImage(imageSize);
+
+	cluster = new LoopbackCluster(clientCount);
+
+	MuKCastMessageListener listener = new MuKCastMessageListener() {
+	    @Override
+	    public void onNumber(MuKCastClient client, NumberMessage message) {
+		received();
+	    }
+
+	    @Override
+	    public void onImage(MuKCastClient client, ImageMessage message) {
+		received();
+	    }
+	};
+
+	for (int i = 0; i < clientCount; i++) {
+	    cluster.getClient(i).addListener(listener);
+	}
+    }
+
+    /**
+     * Disconnects the clients and stops the server.
+     * 
+     * @throws IOException
+     *             If the cluster couldn't be stopped an {@code IOException} is
+     *             thrown.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+	cluster.close();
+    }
+
+    /**
+     * Broadcasts a number message and waits until it was received by every
+     * client.
+     * 
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOException} is
+     *             thrown.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    @Benchmark
+    public void broadcastNumber() throws IOException, InterruptedException {
+	broadcast(numberMessage);
+    }
+
+    /**
+     * Broadcasts an image message and waits until it was received by every
+     * client.
+     * 
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOException} is
+     *             thrown.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    @Benchmark
+    public void broadcastImage() throws IOException, InterruptedException {
+	broadcast(imageMessage);
+    }
+
+    private void broadcast(Message message) throws IOException, InterruptedException {
+	CountDownLatch latch = new CountDownLatch(clientCount);
+	pending = latch;
+
+	cluster.getServer().broadcastMessage(message);
+	LoopbackCluster.await(latch);
+    }
+
+    private void received() {
+	CountDownLatch latch = pending;
+	if (latch != null) {
+	    latch.countDown();
+	}
+    }
+}
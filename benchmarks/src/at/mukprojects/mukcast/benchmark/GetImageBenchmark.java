@@ -0,0 +1,97 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.mukprojects.mukcast.message.ImageMessage;
+import processing.core.PImage;
+
+/**
+ * GetImageBenchmark measures {@link ImageMessage#getImage(PImage)}, which
+ * copies the received pixels into the image of the sketch.
+ * 
+ * @author Mathias Markl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class GetImageBenchmark {
+
+    /**
+     * The image size in the format {@code WIDTHxHEIGHT}.
+     */
+    @Param({ "320x240", "1280x720", "1920x1080" })
+    public String imageSize;
+
+    private ImageMessage message;
+    private ImageMessage targetMessage;
+
+    private PImage image;
+    private PImage target;
+
+    /**
+     * Creates the messages and the images.
+     */
+    @Setup
+    public void setup() {
+	message = BenchmarkImages.createImage(imageSize);
+
+	image = new PImage(message.getWidth(), message.getHeight());
+	target = new PImage(message.getWidth(), message.getHeight());
+
+	System.arraycopy(message.getPixels(), 0, target.pixels, 0, target.pixels.length);
+	targetMessage = new ImageMessage(target.width, target.height, target.pixels);
+    }
+
+    /**
+     * Copies the pixels of the message into an image of the same size.
+     * 
+     * @return The image.
+     */
+    @Benchmark
+    public PImage copy() {
+	return message.getImage(image);
+    }
+
+    /**
+     * Passes an image, which pixels have been decoded directly into the
+     * image, so no pixels are copied.
+     * 
+     * @return The image.
+     */
+    @Benchmark
+    public PImage target() {
+	return targetMessage.getImage(target);
+    }
+}
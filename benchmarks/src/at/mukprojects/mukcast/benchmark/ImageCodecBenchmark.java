@@ -0,0 +1,150 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.mukprojects.mukcast.codec.ImageCodec;
+import at.mukprojects.mukcast.codec.ImageCodecs;
+import at.mukprojects.mukcast.codec.MessageCodec;
+import at.mukprojects.mukcast.codec.PixelBufferPool;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * ImageCodecBenchmark measures the encode and decode throughput of the
+ * {@link ImageMessage} for every image codec of the library.
+ * 
+ * @see MessageCodecBenchmark
+ * 
+ * @author Mathias Markl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ImageCodecBenchmark {
+
+    /**
+     * The image size in the format {@code WIDTHxHEIGHT}.
+     */
+    @Param({ "320x240", "1280x720" })
+    public String imageSize;
+
+    /**
+     * The name of the image codec.
+     */
+    @Param({ "RAW", "DEFLATE", "LZ", "PNG", "JPEG", "QUANTIZED" })
+    public String imageCodec;
+
+    private ImageMessage message;
+    private ImageCodec codec;
+    private byte[] frame;
+    private PixelBufferPool pixelBufferPool;
+
+    /**
+     * Creates the image and its frame.
+     * 
+     * @throws IOException
+     *             If the image couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    @Setup
+    public void setup() throws IOException {
+	message = BenchmarkImages.createImage(imageSize);
+	codec = getCodec(imageCodec);
+	frame = MessageCodec.encode(message, codec);
+	pixelBufferPool = new PixelBufferPool();
+    }
+
+    /**
+     * Encodes the image.
+     * 
+     * @return The frame.
+     * @throws IOException
+     *             If the image couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public byte[] encode() throws IOException {
+	return MessageCodec.encode(message, codec);
+    }
+
+    /**
+     * Decodes the image into a new pixel array.
+     * 
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public Message decode() throws IOException {
+	return MessageCodec.decode(MessageCodecBenchmark.wrap(frame));
+    }
+
+    /**
+     * Decodes the image into a pooled pixel array, which is released
+     * afterwards as it is done by the client after the delivery.
+     * 
+     * @return The pixel array.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public int[] decodePooled() throws IOException {
+	int[] pixels = ((ImageMessage) MessageCodec.decode(MessageCodecBenchmark.wrap(frame), pixelBufferPool)).getPixels();
+	pixelBufferPool.release(pixels);
+	return pixels;
+    }
+
+    private static ImageCodec getCodec(String name) {
+	switch (name) {
+	case "RAW":
+	    return ImageCodecs.RAW;
+	case "DEFLATE":
+	    return ImageCodecs.DEFLATE;
+	case "LZ":
+	    return ImageCodecs.LZ;
+	case "PNG":
+	    return ImageCodecs.PNG;
+	case "JPEG":
+	    return ImageCodecs.JPEG;
+	case "QUANTIZED":
+	    return ImageCodecs.QUANTIZED;
+	default:
+	    throw new IllegalArgumentException("Unknown image codec: " + name);
+	}
+    }
+}
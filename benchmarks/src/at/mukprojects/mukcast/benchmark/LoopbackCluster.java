@@ -0,0 +1,174 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import at.mukprojects.mukcast.client.MuKCastClient;
+import at.mukprojects.mukcast.message.TextMessage;
+import at.mukprojects.mukcast.server.MuKCastServer;
+
+/**
+ * LoopbackCluster starts a headless server and a number of headless clients,
+ * which are connected over the loopback interface. No Processing window is
+ * needed, because the server and the clients are created without a parent
+ * sketch.
+ * 
+ * @author Mathias Markl
+ */
+class LoopbackCluster {
+
+    /**
+     * The time in milliseconds the cluster waits for the clients to connect
+     * and for a message to be delivered.
+     */
+    static final long TIMEOUT = 10000;
+
+    private static final String HOST = "localhost";
+
+    private final MuKCastServer server;
+    private final MuKCastClient[] clients;
+
+    /**
+     * Constructs and starts a new LoopbackCluster. The constructor returns as
+     * soon as all clients are able to send messages.
+     * 
+     * @param clientCount
+     *            The number of clients.
+     * @throws IOException
+     *             If the cluster couldn't be started an {@code IOException} is
+     *             thrown.
+     */
+    LoopbackCluster(int clientCount) throws IOException {
+	int port = findFreePort();
+
+	server = new MuKCastServer(null, port);
+	server.startServer();
+
+	clients = new MuKCastClient[clientCount];
+	for (int i = 0; i < clientCount; i++) {
+	    clients[i] = new MuKCastClient(null, HOST, port);
+	    clients[i].connect();
+	}
+
+	awaitClients();
+    }
+
+    /**
+     * Returns the server.
+     * 
+     * @return The server.
+     */
+    MuKCastServer getServer() {
+	return server;
+    }
+
+    /**
+     * Returns the client with the given index.
+     * 
+     * @param index
+     *            The client index.
+     * @return The client.
+     */
+    MuKCastClient getClient(int index) {
+	return clients[index];
+    }
+
+    /**
+     * Returns the number of clients.
+     * 
+     * @return The number of clients.
+     */
+    int getClientCount() {
+	return clients.length;
+    }
+
+    /**
+     * Disconnects all clients and stops the server.
+     * 
+     * @throws IOException
+     *             If the cluster couldn't be stopped an {@code IOException} is
+     *             thrown.
+     */
+    void close() throws IOException {
+	for (MuKCastClient client : clients) {
+	    client.disconnect();
+	}
+	server.stopServer();
+    }
+
+    /**
+     * Waits for the latch to be counted down.
+     * 
+     * @param latch
+     *            The latch.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    static void await(CountDownLatch latch) throws InterruptedException {
+	if (!latch.await(TIMEOUT, TimeUnit.MILLISECONDS)) {
+	    throw new IllegalStateException("The message wasn't delivered within " + TIMEOUT + " ms.");
+	}
+    }
+
+    private void awaitClients() throws IOException {
+	long deadline = System.currentTimeMillis() + TIMEOUT;
+
+	while (server.getClientCount() < clients.length) {
+	    sleep(deadline);
+	}
+
+	/*
+	 * The client is connected as soon as the server has accepted the socket,
+	 * but it is able to send messages only after its handler has been
+	 * started. The text message is ignored by the benchmark listeners.
+	 */
+	for (MuKCastClient client : clients) {
+	    while (true) {
+		try {
+		    client.sendMessage(new TextMessage("ready"));
+		    break;
+		} catch (IOException e) {
+		    sleep(deadline);
+		}
+	    }
+	}
+    }
+
+    private static void sleep(long deadline) throws IOException {
+	if (System.currentTimeMillis() > deadline) {
+	    throw new IOException("The clients couldn't be connected within " + TIMEOUT + " ms.");
+	}
+
+	try {
+	    Thread.sleep(10);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while waiting for the clients.", e);
+	}
+    }
+
+    private static int findFreePort() throws IOException {
+	try (ServerSocket socket = new ServerSocket(0)) {
+	    return socket.getLocalPort();
+	}
+    }
+}
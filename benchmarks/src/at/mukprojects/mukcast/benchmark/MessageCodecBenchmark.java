@@ -0,0 +1,258 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.mukprojects.mukcast.codec.ArrayTarget;
+import at.mukprojects.mukcast.codec.MessageCodec;
+import at.mukprojects.mukcast.message.FloatArrayMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.message.TextMessage;
+
+/**
+ * MessageCodecBenchmark measures the encode and decode throughput of the
+ * {@link TextMessage}, the {@link NumberMessage} and the
+ * {@link FloatArrayMessage}.
+ * 
+ * @see ImageCodecBenchmark
+ * 
+ * @author Mathias Markl
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class MessageCodecBenchmark {
+
+    private NumberMessage numberMessage;
+    private byte[] numberFrame;
+
+    /**
+     * Creates the number message and its frame.
+     * 
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    @Setup
+    public void setup() throws IOException {
+	numberMessage = new NumberMessage(42.5f);
+	numberFrame = MessageCodec.encode(numberMessage);
+    }
+
+    /**
+     * Encodes a text message.
+     * 
+     * @param state
+     *            The text message.
+     * @return The frame.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public byte[] encodeText(TextState state) throws IOException {
+	return MessageCodec.encode(state.textMessage);
+    }
+
+    /**
+     * Decodes a text message.
+     * 
+     * @param state
+     *            The frame of the text message.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public Message decodeText(TextState state) throws IOException {
+	return MessageCodec.decode(wrap(state.textFrame));
+    }
+
+    /**
+     * Encodes a number message.
+     * 
+     * @return The frame.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public byte[] encodeNumber() throws IOException {
+	return MessageCodec.encode(numberMessage);
+    }
+
+    /**
+     * Decodes a number message.
+     * 
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public Message decodeNumber() throws IOException {
+	return MessageCodec.decode(wrap(numberFrame));
+    }
+
+    /**
+     * Encodes a float array message.
+     * 
+     * @param state
+     *            The float array message.
+     * @return The frame.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public byte[] encodeFloatArray(FloatArrayState state) throws IOException {
+	return MessageCodec.encode(state.arrayMessage);
+    }
+
+    /**
+     * Decodes a float array message into a new array.
+     * 
+     * @param state
+     *            The frame of the float array message.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public Message decodeFloatArray(FloatArrayState state) throws IOException {
+	return MessageCodec.decode(wrap(state.arrayFrame));
+    }
+
+    /**
+     * Decodes a float array message into the array of an {@link ArrayTarget}.
+     * 
+     * @param state
+     *            The frame of the float array message.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    @Benchmark
+    public Message decodeFloatArrayTarget(FloatArrayState state) throws IOException {
+	return MessageCodec.decode(wrap(state.arrayFrame), null, state.arrayTarget);
+    }
+
+    /**
+     * Wraps the frame without its length field, as it is passed to the decoder
+     * by the frame reader.
+     * 
+     * @param frame
+     *            The encoded frame.
+     * @return The buffer positioned at the type tag.
+     */
+    static ByteBuffer wrap(byte[] frame) {
+	return ByteBuffer.wrap(frame, 4, frame.length - 4);
+    }
+
+    /**
+     * The text message, which is parameterized by its length.
+     */
+    @State(Scope.Thread)
+    public static class TextState {
+
+	/**
+	 * The number of characters of the text message.
+	 */
+	@Param({ "16", "1024" })
+	public int textLength;
+
+	private TextMessage textMessage;
+	private byte[] textFrame;
+
+	/**
+	 * Creates the text message and its frame.
+	 * 
+	 * @throws IOException
+	 *             If the message couldn't be encoded an {@code IOException}
+	 *             is thrown.
+	 */
+	@Setup
+	public void setup() throws IOException {
+	    char[] text = new char[textLength];
+	    Arrays.fill(text, 'm');
+
+	    textMessage = new TextMessage(new String(text));
+	    textFrame = MessageCodec.encode(textMessage);
+	}
+    }
+
+    /**
+     * The float array message, which is parameterized by its length.
+     */
+    @State(Scope.Thread)
+    public static class FloatArrayState {
+
+	/**
+	 * The number of values of the float array message, e.g. the bands of a
+	 * spectrum.
+	 */
+	@Param({ "512" })
+	public int arrayLength;
+
+	private FloatArrayMessage arrayMessage;
+	private byte[] arrayFrame;
+	private ArrayTarget arrayTarget;
+
+	/**
+	 * Creates the float array message and its frame.
+	 * 
+	 * @throws IOException
+	 *             If the message couldn't be encoded an {@code IOException}
+	 *             is thrown.
+	 */
+	@Setup
+	public void setup() throws IOException {
+	    float[] values = new float[arrayLength];
+	    for (int i = 0; i < values.length; i++) {
+		values[i] = (float) Math.sin(i * 0.1);
+	    }
+
+	    arrayMessage = new FloatArrayMessage(values);
+	    arrayFrame = MessageCodec.encode(arrayMessage);
+	    arrayTarget = new ArrayTarget();
+	}
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.mukprojects.mukcast.client.MuKCastClient;
+import at.mukprojects.mukcast.client.MuKCastMessageListener;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.server.MuKCastServer;
+import at.mukprojects.mukcast.server.MuKCastServerListener;
+
+/**
+ * RoundTripBenchmark measures the latency of a message, which is sent by a
+ * client and echoed back by the server. The benchmark runs in the sample time
+ * mode, so JMH reports the latency percentiles.
+ * 
+ * @author Mathias Markl
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Threads(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+
+    /**
+     * The image size in the format {@code WIDTHxHEIGHT}.
+     */
+    @Param({ "320x240" })
+    public String imageSize;
+
+    private LoopbackCluster cluster;
+    private MuKCastClient client;
+
+    private NumberMessage numberMessage;
+    private ImageMessage imageMessage;
+
+    private volatile CountDownLatch pending;
+
+    /**
+     * Starts the server, which echoes every number and image message, and
+     * connects the client.
+     * 
+     * @throws IOException
+     *             If the cluster couldn't be started an {@code IOException} is
+     *             thrown.
+     */
+    @Setup
+    public void setup() throws IOException {
+	numberMessage = new NumberMessage(42);
+	imageMessage = BenchmarkImages.createImage(imageSize);
+
+	cluster = new LoopbackCluster(1);
+	client = cluster.getClient(0);
+
+	final MuKCastServer server = cluster.getServer();
+	server.addListener(new MuKCastServerListener() {
+	    @Override
+	    public void onNumber(String clientKey, NumberMessage message) {
+		echo(server, clientKey, message);
+	    }
+
+	    @Override
+	    public void onImage(String clientKey, ImageMessage message) {
+		echo(server, clientKey, message);
+	    }
+	});
+
+	client.addListener(new MuKCastMessageListener() {
+	    @Override
+	    public void onNumber(MuKCastClient client, NumberMessage message) {
+		received();
+	    }
+
+	    @Override
+	    public void onImage(MuKCastClient client, ImageMessage message) {
+		received();
+	    }
+	});
+    }
+
+    /**
+     * Disconnects the client and stops the server.
+     * 
+     * @throws IOException
+     *             If the cluster couldn't be stopped an {@code IOException} is
+     *             thrown.
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+	cluster.close();
+    }
+
+    /**
+     * Sends a number message and waits for the echo.
+     * 
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOException} is
+     *             thrown.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    @Benchmark
+    public void roundTripNumber() throws IOException, InterruptedException {
+	roundTrip(numberMessage);
+    }
+
+    /**
+     * Sends an image message and waits for the echo.
+     * 
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOException} is
+     *             thrown.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    @Benchmark
+    public void roundTripImage() throws IOException, InterruptedException {
+	roundTrip(imageMessage);
+    }
+
+    private void roundTrip(Message message) throws IOException, InterruptedException {
+	CountDownLatch latch = new CountDownLatch(1);
+	pending = latch;
+
+	client.sendMessage(message);
+	LoopbackCluster.await(latch);
+    }
+
+    private void received() {
+	CountDownLatch latch = pending;
+	if (latch != null) {
+	    latch.countDown();
+	}
+    }
+
+    private static void echo(MuKCastServer server, String clientKey, Message message) {
+	try {
+	    server.sendMessage(clientKey, message);
+	} catch (IOException e) {
+	    throw new IllegalStateException("The message couldn't be echoed.", e);
+	}
+    }
+}
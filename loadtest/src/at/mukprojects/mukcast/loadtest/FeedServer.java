@@ -0,0 +1,230 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.IntArrayMessage;
+import at.mukprojects.mukcast.server.MuKCastServer;
+import at.mukprojects.mukcast.server.MuKCastServerListener;
+
+/**
+ * FeedServer is the server of the load test.
+ * <p>
+ * It streams frames with the given rate to all clients or to the subscribers
+ * of the channel. A frame consists of the payload and a stamp, which lets the
+ * clients measure the latency and the losses of the stream. The number
+ * messages sent by the clients are counted and their latency is measured.
+ * </p>
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread, which sends the frames.
+ * </p>
+ * 
+ * @see LoadStamps
+ * 
+ * @author Mathias Markl
+ */
+class FeedServer implements MuKCastServerListener, Runnable, Stoppable {
+
+    private static final org.slf4j.Logger logger = LoggerFactory.getLogger(FeedServer.class);
+
+    private static final long HEARTBEAT_INTERVAL = 1;
+    private static final long HEARTBEAT_TIMEOUT = 10;
+
+    private MuKCastServer server;
+    private LoadReport report;
+    private Message payload;
+    private String channel;
+    private int rate;
+    private boolean streaming;
+    private boolean remote;
+
+    private Thread thread;
+    private LoadPacer pacer;
+    private volatile boolean running;
+    private volatile int sequence;
+    private LongAdder received;
+
+    /**
+     * Constructs a new FeedServer.
+     * 
+     * @param options
+     *            The options of the load test.
+     * @param report
+     *            The report, which collects the latencies.
+     */
+    FeedServer(LoadOptions options, LoadReport report) {
+	this.report = report;
+	this.payload = options.createPayload();
+	this.channel = options.getChannel();
+	this.rate = options.getRate();
+	this.streaming = options.getMode() != LoadOptions.Mode.SEND;
+	this.remote = !options.isInProcessServer();
+	this.sequence = -1;
+	this.received = new LongAdder();
+
+	this.server = new MuKCastServer(null, options.getPort());
+	this.server.setTransport(options.createTransport());
+	this.server.setExecutionMode(options.getExecutionMode());
+	if (remote) {
+	    /*
+	     * The heartbeat estimates the clock offsets of the clients and
+	     * evicts the clients of displays, which have been switched off.
+	     */
+	    this.server.setHeartbeat(HEARTBEAT_INTERVAL, HEARTBEAT_TIMEOUT, TimeUnit.SECONDS);
+	}
+	this.server.addListener(this);
+    }
+
+    /**
+     * Starts the server and the stream.
+     * 
+     * @throws IOException
+     *             If the server couldn't be started an {@code IOException} is
+     *             thrown.
+     */
+    void start() throws IOException {
+	server.startServer();
+
+	if (streaming) {
+	    running = true;
+	    pacer = new LoadPacer(rate);
+	    thread = new Thread(this, "MuKCast feed");
+	    thread.setDaemon(true);
+	    thread.start();
+	}
+    }
+
+    @Override
+    public void run() {
+	try {
+	    while (running) {
+		pacer.await();
+		sendFrame();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    private void sendFrame() {
+	int next = sequence + 1;
+	try {
+	    if (payload != null) {
+		send(payload);
+	    }
+	    send(LoadStamps.createStamp(next));
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	}
+	sequence = next;
+    }
+
+    private void send(Message message) throws IOException {
+	if (channel == null) {
+	    server.broadcastMessage(message);
+	} else {
+	    server.publishMessage(channel, message);
+	}
+    }
+
+    @Override
+    public void onMessage(String clientKey, Message message) {
+	if (!LoadStamps.isStamp(message)) {
+	    return;
+	}
+
+	long clockOffset = remote ? server.getClockOffset(clientKey) : 0;
+	long micros = LoadStamps.getLatency(LoadStamps.getTime((IntArrayMessage) message), clockOffset);
+	received.increment();
+	report.recordLatency(micros);
+    }
+
+    /**
+     * Returns the server.
+     * 
+     * @return The server.
+     */
+    MuKCastServer getServer() {
+	return server;
+    }
+
+    /**
+     * Returns true if the server streams frames to the clients.
+     * 
+     * @return True if the server streams frames.
+     */
+    boolean isStreaming() {
+	return streaming;
+    }
+
+    /**
+     * Returns the sequence number of the last frame.
+     * 
+     * @return The sequence number or -1 if no frame has been sent.
+     */
+    int getSequence() {
+	return sequence;
+    }
+
+    /**
+     * Returns the number of frames, which have been skipped because the
+     * server couldn't keep up with the rate.
+     * 
+     * @return The number of skipped frames.
+     */
+    long getSkippedFrames() {
+	return pacer != null ? pacer.getSkippedTicks() : 0;
+    }
+
+    /**
+     * Returns the number of stamps, which have been received from
+     * the clients.
+     * 
+     * @return The number of received messages.
+     */
+    long getReceived() {
+	return received.sum();
+    }
+
+    @Override
+    public void stop() {
+	running = false;
+	if (thread != null) {
+	    thread.interrupt();
+	    try {
+		thread.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+
+	try {
+	    server.stopServer();
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	}
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import java.util.Random;
+
+import at.mukprojects.mukcast.concurrent.ExecutionMode;
+import at.mukprojects.mukcast.concurrent.ThreadExecutors;
+import at.mukprojects.mukcast.message.ByteArrayMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.server.MuKCastServer;
+import at.mukprojects.mukcast.transport.LoopbackTransport;
+import at.mukprojects.mukcast.transport.SocketTransport;
+import at.mukprojects.mukcast.transport.Transport;
+
+/**
+ * LoadOptions holds the command line options of the {@link LoadTest}.
+ * 
+ * @author Mathias Markl
+ */
+final class LoadOptions {
+
+    /**
+     * The usage of the load test.
+     */
+    static final String USAGE = "Usage: LoadTest <feed|receive|send> [options]\n"
+	    + "\n"
+	    + "  feed      starts a server, which streams the payload to all clients\n"
+	    + "  receive   connects clients, which receive the stream of a feed server\n"
+	    + "  send      connects clients, which send stamps to the server\n"
+	    + "\n"
+	    + "  --host <host>          the server to connect to, without a host a feed\n"
+	    + "                         server is started in the same process\n"
+	    + "  --port <port>          the port of the server (default " + MuKCastServer.DEFAULT_PORT + ")\n"
+	    + "  --transport <tcp|loopback>\n"
+	    + "                         the transport, loopback needs an in-process server\n"
+	    + "  --clients <n>          the number of simulated clients (default 100)\n"
+	    + "  --channel <name>       publish to and subscribe the channel instead of\n"
+	    + "                         broadcasting\n"
+	    + "  --rate <n>             messages per second of the feed server or of every\n"
+	    + "                         sending client (default 30)\n"
+	    + "  --payload <none|number|bytes:<n>|image:<w>x<h>>\n"
+	    + "                         the payload of the feed server (default image:320x240)\n"
+	    + "  --duration <s>         the duration of the test, 0 runs until the process\n"
+	    + "                         is stopped (default 30)\n"
+	    + "  --interval <s>         the interval of the progress reports (default 5)\n"
+	    + "  --threads <platform|virtual>\n"
+	    + "                         the threads of the connections (default virtual\n"
+	    + "                         if supported)\n";
+
+    /**
+     * The mode of the load test.
+     */
+    enum Mode {
+	FEED, RECEIVE, SEND
+    }
+
+    private static final long SEED = 42;
+
+    private Mode mode;
+    private String host;
+    private int port = MuKCastServer.DEFAULT_PORT;
+    private String transport = "tcp";
+    private int clients = 100;
+    private String channel;
+    private int rate = 30;
+    private String payload = "image:320x240";
+    private int duration = 30;
+    private int interval = 5;
+    private ExecutionMode executionMode = ThreadExecutors.isVirtualThreadSupported() ? ExecutionMode.VIRTUAL_THREADS
+	    : ExecutionMode.PLATFORM_THREADS;
+
+    private LoadOptions() {
+    }
+
+    /**
+     * Parses the command line options.
+     * 
+     * @param args
+     *            The command line arguments.
+     * @return The options.
+     * @throws IllegalArgumentException
+     *             If an option is missing or invalid.
+     */
+    static LoadOptions parse(String[] args) {
+	if (args.length == 0) {
+	    throw new IllegalArgumentException("The mode is missing.");
+	}
+
+	LoadOptions options = new LoadOptions();
+	try {
+	    options.mode = Mode.valueOf(args[0].toUpperCase());
+	} catch (IllegalArgumentException e) {
+	    throw new IllegalArgumentException("Unknown mode: " + args[0]);
+	}
+
+	for (int i = 1; i < args.length; i += 2) {
+	    String option = args[i];
+	    if (i + 1 >= args.length) {
+		throw new IllegalArgumentException("The value of " + option + " is missing.");
+	    }
+	    String value = args[i + 1];
+
+	    switch (option) {
+	    case "--host":
+		options.host = value;
+		break;
+	    case "--port":
+		options.port = parseInt(option, value, 0);
+		break;
+	    case "--transport":
+		if (!value.equals("tcp") && !value.equals("loopback")) {
+		    throw new IllegalArgumentException("Unknown transport: " + value);
+		}
+		options.transport = value;
+		break;
+	    case "--clients":
+		options.clients = parseInt(option, value, 0);
+		break;
+	    case "--channel":
+		options.channel = value;
+		break;
+	    case "--rate":
+		options.rate = parseInt(option, value, 1);
+		break;
+	    case "--payload":
+		options.payload = value;
+		options.createPayload();
+		break;
+	    case "--duration":
+		options.duration = parseInt(option, value, 0);
+		break;
+	    case "--interval":
+		options.interval = parseInt(option, value, 1);
+		break;
+	    case "--threads":
+		if (value.equals("platform")) {
+		    options.executionMode = ExecutionMode.PLATFORM_THREADS;
+		} else if (value.equals("virtual")) {
+		    options.executionMode = ExecutionMode.VIRTUAL_THREADS;
+		} else {
+		    throw new IllegalArgumentException("Unknown threads: " + value);
+		}
+		break;
+	    default:
+		throw new IllegalArgumentException("Unknown option: " + option);
+	    }
+	}
+
+	if (options.mode == Mode.FEED && options.host != null) {
+	    throw new IllegalArgumentException("The feed server can't be started with a host.");
+	}
+	if (options.transport.equals("loopback") && !options.isInProcessServer()) {
+	    throw new IllegalArgumentException("The loopback transport needs an in-process server.");
+	}
+	return options;
+    }
+
+    private static int parseInt(String option, String value, int min) {
+	int number;
+	try {
+	    number = Integer.parseInt(value);
+	} catch (NumberFormatException e) {
+	    throw new IllegalArgumentException("The value of " + option + " isn't a number: " + value);
+	}
+	if (number < min) {
+	    throw new IllegalArgumentException("The value of " + option + " has to be at least " + min + ".");
+	}
+	return number;
+    }
+
+    /**
+     * Returns the mode.
+     * 
+     * @return The mode.
+     */
+    Mode getMode() {
+	return mode;
+    }
+
+    /**
+     * Returns the host of the server.
+     * 
+     * @return The host or null if the server runs in the same process.
+     */
+    String getHost() {
+	return host;
+    }
+
+    /**
+     * Returns true if the server runs in the same process as the clients.
+     * 
+     * @return True if the server runs in the same process.
+     */
+    boolean isInProcessServer() {
+	return mode != Mode.FEED && host == null;
+    }
+
+    /**
+     * Returns the port of the server.
+     * 
+     * @return The port.
+     */
+    int getPort() {
+	return port;
+    }
+
+    /**
+     * Creates a new instance of the transport.
+     * 
+     * @return The transport.
+     */
+    Transport createTransport() {
+	return transport.equals("loopback") ? new LoopbackTransport() : new SocketTransport();
+    }
+
+    /**
+     * Returns the number of simulated clients.
+     * 
+     * @return The number of clients.
+     */
+    int getClients() {
+	return clients;
+    }
+
+    /**
+     * Returns the channel.
+     * 
+     * @return The channel or null if the messages are broadcasted.
+     */
+    String getChannel() {
+	return channel;
+    }
+
+    /**
+     * Returns the message rate.
+     * 
+     * @return The messages per second.
+     */
+    int getRate() {
+	return rate;
+    }
+
+    /**
+     * Returns the duration of the test.
+     * 
+     * @return The duration in seconds or 0 if the test runs until the process
+     *         is stopped.
+     */
+    int getDuration() {
+	return duration;
+    }
+
+    /**
+     * Returns the interval of the progress reports.
+     * 
+     * @return The interval in seconds.
+     */
+    int getInterval() {
+	return interval;
+    }
+
+    /**
+     * Returns the execution mode of the connections.
+     * 
+     * @return The execution mode.
+     */
+    ExecutionMode getExecutionMode() {
+	return executionMode;
+    }
+
+    /**
+     * Creates the payload of the feed server. The image contains a gradient
+     * with some noise, so compressing image codecs are neither measured with
+     * random nor with uniform pixels.
+     * 
+     * @return The payload or null if only the stamps are sent.
+     */
+    Message createPayload() {
+	try {
+	    if (payload.equals("none")) {
+		return null;
+	    } else if (payload.equals("number")) {
+		return new NumberMessage(42);
+	    } else if (payload.startsWith("bytes:")) {
+		byte[] values = new byte[Integer.parseInt(payload.substring(6))];
+		new Random(SEED).nextBytes(values);
+		return new ByteArrayMessage(values);
+	    } else if (payload.startsWith("image:")) {
+		int separator = payload.indexOf('x');
+		return createImage(Integer.parseInt(payload.substring(6, separator)),
+			Integer.parseInt(payload.substring(separator + 1)));
+	    }
+	} catch (RuntimeException e) {
+	    throw new IllegalArgumentException("Invalid payload: " + payload);
+	}
+	throw new IllegalArgumentException("Unknown payload: " + payload);
+    }
+
+    private static ImageMessage createImage(int width, int height) {
+	Random random = new Random(SEED);
+	int[] pixels = new int[width * height];
+
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int red = x * 255 / width;
+		int green = y * 255 / height;
+		int blue = (red + green) / 2 + random.nextInt(16) & 0xFF;
+		pixels[y * width + x] = 0xFF000000 | red << 16 | green << 8 | blue;
+	    }
+	}
+
+	return new ImageMessage(width, height, pixels);
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder builder = new StringBuilder(mode.name().toLowerCase());
+	builder.append(" ").append(host != null ? host : mode == Mode.FEED ? "server" : "in-process").append(":")
+		.append(port).append(" (").append(transport).append(")");
+	if (mode != Mode.FEED) {
+	    builder.append(", clients=").append(clients);
+	}
+	builder.append(", channel=").append(channel != null ? channel : "broadcast");
+	if (mode == Mode.SEND || host == null) {
+	    builder.append(", rate=").append(rate).append("/s");
+	}
+	if (mode != Mode.SEND && host == null) {
+	    builder.append(", payload=").append(payload);
+	}
+	return builder.append(", duration=").append(duration).append("s, threads=").append(executionMode).toString();
+    }
+}
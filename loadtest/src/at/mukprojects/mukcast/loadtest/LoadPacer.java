@@ -0,0 +1,81 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadPacer paces a loop to a number of ticks per second. A loop, which has
+ * fallen behind, catches up with the missed ticks, but never with more than a
+ * second of them, so a stalled server isn't flooded afterwards.
+ * 
+ * @author Mathias Markl
+ */
+final class LoadPacer {
+
+    private static final long MAX_BACKLOG = TimeUnit.SECONDS.toNanos(1);
+
+    private long periodNanos;
+    private long next;
+    private volatile long skippedTicks;
+
+    /**
+     * Constructs a new LoadPacer. The first tick is due at once.
+     * 
+     * @param rate
+     *            The ticks per second.
+     */
+    LoadPacer(int rate) {
+	this.periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+	this.next = System.nanoTime();
+    }
+
+    /**
+     * Waits for the next tick.
+     * 
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    void await() throws InterruptedException {
+	long remaining = next - System.nanoTime();
+	while (remaining > 0) {
+	    LockSupport.parkNanos(remaining);
+	    if (Thread.interrupted()) {
+		throw new InterruptedException();
+	    }
+	    remaining = next - System.nanoTime();
+	}
+
+	next += periodNanos;
+	if (-remaining > MAX_BACKLOG) {
+	    skippedTicks += -remaining / periodNanos;
+	    next = System.nanoTime() + periodNanos;
+	}
+    }
+
+    /**
+     * Returns the number of ticks, which have been skipped because the loop
+     * has fallen behind by more than a second.
+     * 
+     * @return The number of skipped ticks.
+     */
+    long getSkippedTicks() {
+	return skippedTicks;
+    }
+}
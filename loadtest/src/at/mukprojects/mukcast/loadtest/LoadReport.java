@@ -0,0 +1,396 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import at.mukprojects.mukcast.metrics.ConnectionMetricsSnapshot;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+import at.mukprojects.mukcast.metrics.Histogram;
+import at.mukprojects.mukcast.metrics.HistogramSnapshot;
+import at.mukprojects.mukcast.metrics.ServerMetricsSnapshot;
+
+/**
+ * LoadReport collects the results of the load test and prints the progress
+ * and the summary.
+ * <p>
+ * The latencies are recorded by the clients, respectively by the server, into
+ * a histogram of the whole test and a histogram of the current interval. All
+ * other values are read from the clients, the server and their connection
+ * metrics, when a report is printed.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+class LoadReport {
+
+    private static final int SLOWEST_CLIENTS = 10;
+    private static final double MEGABYTE = 1024 * 1024;
+    private static final String LINE = "----------------------------------------------------------------------------";
+
+    private LoadOptions options;
+    private PrintStream out;
+    private FeedServer feed;
+    private List<SimulatedClient> clients;
+
+    private Histogram latency;
+    private volatile Histogram intervalLatency;
+
+    private long startedAt;
+    private long reportedAt;
+    private Totals reported;
+
+    /**
+     * Constructs a new LoadReport.
+     * 
+     * @param options
+     *            The options of the load test.
+     * @param out
+     *            The stream the reports are printed to.
+     */
+    LoadReport(LoadOptions options, PrintStream out) {
+	this.options = options;
+	this.out = out;
+	this.clients = new ArrayList<SimulatedClient>();
+	this.latency = new Histogram();
+	this.intervalLatency = new Histogram();
+	this.reported = new Totals();
+    }
+
+    /**
+     * Sets the server of the load test, if it runs in this process.
+     * 
+     * @param feed
+     *            The server.
+     */
+    void setFeed(FeedServer feed) {
+	this.feed = feed;
+    }
+
+    /**
+     * Adds a client. The clients have to be added before the report is
+     * started.
+     * 
+     * @param client
+     *            The client.
+     */
+    void addClient(SimulatedClient client) {
+	clients.add(client);
+    }
+
+    /**
+     * Records the latency of a message.
+     * 
+     * @param micros
+     *            The latency in microseconds.
+     */
+    void recordLatency(long micros) {
+	latency.record(micros);
+	intervalLatency.record(micros);
+    }
+
+    /**
+     * Starts the measurement. The latencies recorded so far, e.g. while the
+     * clients were connecting, are discarded.
+     */
+    void start() {
+	latency = new Histogram();
+	intervalLatency = new Histogram();
+	startedAt = System.nanoTime();
+	reportedAt = startedAt;
+	reported = collect();
+    }
+
+    /**
+     * Prints the progress since the last report.
+     */
+    void printProgress() {
+	long now = System.nanoTime();
+	double seconds = Math.max(now - reportedAt, 1) / 1e9;
+	Totals totals = collect();
+	HistogramSnapshot interval = intervalLatency.snapshot();
+	intervalLatency = new Histogram();
+
+	StringBuilder line = new StringBuilder();
+	line.append(format("%6.0fs", (now - startedAt) / 1e9));
+
+	switch (options.getMode()) {
+	case FEED:
+	    line.append(format("  clients %d", totals.serverClients));
+	    line.append(format("  out %.0f msg/s %.1f MB/s", (totals.serverMessagesOut - reported.serverMessagesOut)
+		    / seconds, (totals.serverBytesOut - reported.serverBytesOut) / MEGABYTE / seconds));
+	    line.append(format("  queued %d  dropped %d", totals.serverQueued, totals.serverDropped
+		    - reported.serverDropped));
+	    line.append(format("  in %.0f msg/s", (totals.serverReceived - reported.serverReceived) / seconds));
+	    break;
+	case RECEIVE:
+	    line.append(format("  clients %d/%d", totals.connected, clients.size()));
+	    line.append(format("  in %.0f msg/s %.1f MB/s", (totals.messagesIn - reported.messagesIn) / seconds,
+		    (totals.bytesIn - reported.bytesIn) / MEGABYTE / seconds));
+	    line.append(format("  frames %.1f/s per client", (totals.stamps - reported.stamps) / seconds
+		    / Math.max(totals.connected, 1)));
+	    line.append(format("  lost %d  lag %d", totals.lostFrames - reported.lostFrames, totals.maxLag));
+	    if (feed != null) {
+		line.append(format("  dropped %d", totals.serverDropped - reported.serverDropped));
+	    }
+	    break;
+	case SEND:
+	    line.append(format("  clients %d/%d", totals.connected, clients.size()));
+	    line.append(format("  out %.0f msg/s", (totals.sent - reported.sent) / seconds));
+	    line.append(format("  queued %d", totals.queued));
+	    if (feed != null) {
+		line.append(format("  server in %.0f msg/s", (totals.serverReceived - reported.serverReceived)
+			/ seconds));
+	    }
+	    break;
+	}
+	line.append("  latency ").append(formatLatency(interval));
+
+	out.println(line);
+	reportedAt = now;
+	reported = totals;
+    }
+
+    /**
+     * Prints the summary of the whole test.
+     */
+    void printSummary() {
+	double seconds = Math.max(System.nanoTime() - startedAt, 1) / 1e9;
+	Totals totals = collect();
+	HistogramSnapshot total = latency.snapshot();
+
+	out.println(LINE);
+	out.println(format("Summary after %.1fs: %s", seconds, options));
+
+	if (options.getMode() != LoadOptions.Mode.FEED) {
+	    out.println(format("  clients       %d/%d connected, disconnects %s", totals.connected, clients.size(),
+		    getDisconnectReasons()));
+	}
+
+	if (options.getMode() == LoadOptions.Mode.RECEIVE) {
+	    out.println(format("  received      %d messages, %.1f MB, %.0f msg/s", totals.messagesIn,
+		    totals.bytesIn / MEGABYTE, totals.messagesIn / seconds));
+	    long expected = totals.stamps + totals.lostFrames;
+	    out.println(format("  frames        %d received, %d lost (%.3f%%), max lag %d", totals.stamps,
+		    totals.lostFrames, expected > 0 ? totals.lostFrames * 100.0 / expected : 0.0, totals.maxLag));
+	} else if (options.getMode() == LoadOptions.Mode.SEND) {
+	    out.println(format("  sent          %d messages, %.0f msg/s", totals.sent, totals.sent / seconds));
+	}
+
+	if (feed != null) {
+	    out.println(format("  server        %d messages out, %.1f MB, %d dropped, %d received, %d frames skipped",
+		    totals.serverMessagesOut, totals.serverBytesOut / MEGABYTE, totals.serverDropped,
+		    totals.serverReceived, feed.getSkippedFrames()));
+	}
+
+	if (total.getCount() > 0) {
+	    out.println(format("  latency ms    p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f  (%d samples)",
+		    total.getP50() / 1000.0, total.getP90() / 1000.0, total.getP99() / 1000.0,
+		    total.getP999() / 1000.0, total.getMax() / 1000.0, total.getCount()));
+	} else if (feed == null && options.getMode() == LoadOptions.Mode.SEND) {
+	    out.println("  latency ms    measured by the feed server");
+	}
+
+	if (options.getMode() == LoadOptions.Mode.RECEIVE) {
+	    printSlowestClients();
+	} else if (options.getMode() == LoadOptions.Mode.FEED) {
+	    printSlowestConnections();
+	}
+	out.println(LINE);
+    }
+
+    /**
+     * Prints the clients with the largest lag and latency.
+     */
+    private void printSlowestClients() {
+	final Map<SimulatedClient, Integer> sequences = new HashMap<SimulatedClient, Integer>();
+	final Map<SimulatedClient, HistogramSnapshot> latencies = new HashMap<SimulatedClient, HistogramSnapshot>();
+	int maxSequence = -1;
+	for (SimulatedClient client : clients) {
+	    int sequence = client.getLastSequence();
+	    sequences.put(client, sequence);
+	    latencies.put(client, client.getLatency().snapshot());
+	    maxSequence = Math.max(maxSequence, sequence);
+	}
+	final int reference = getReference(maxSequence);
+
+	List<SimulatedClient> sorted = new ArrayList<SimulatedClient>(clients);
+	Collections.sort(sorted, new Comparator<SimulatedClient>() {
+	    @Override
+	    public int compare(SimulatedClient a, SimulatedClient b) {
+		int result = Long.compare(getLag(sequences.get(b), reference), getLag(sequences.get(a), reference));
+		if (result == 0) {
+		    result = Long.compare(latencies.get(b).getP99(), latencies.get(a).getP99());
+		}
+		return result;
+	    }
+	});
+
+	out.println("  slowest clients");
+	out.println("       client    frames      lost       lag    p99 ms    max ms  state");
+	for (SimulatedClient client : sorted.subList(0, Math.min(SLOWEST_CLIENTS, sorted.size()))) {
+	    HistogramSnapshot snapshot = latencies.get(client);
+	    out.println(format("    %9s %9d %9d %9d %9.2f %9.2f  %s", "#" + client.getIndex(), client.getStamps(),
+		    client.getLostFrames(), getLag(sequences.get(client), reference), snapshot.getP99() / 1000.0,
+		    snapshot.getMax() / 1000.0, getState(client)));
+	}
+    }
+
+    /**
+     * Prints the connections of the server with the most queued messages.
+     */
+    private void printSlowestConnections() {
+	List<ConnectionMetricsSnapshot> sorted = feed.getServer().getMetrics().getClientsByQueuedMessages();
+	if (sorted.isEmpty()) {
+	    return;
+	}
+
+	out.println("  slowest clients");
+	out.println("                  client    queued   dropped       out    rtt ms");
+	for (ConnectionMetricsSnapshot connection : sorted.subList(0, Math.min(SLOWEST_CLIENTS, sorted.size()))) {
+	    out.println(format("    %20s %9d %9d %9d %9.2f", connection.getClientKey(), connection.getQueuedMessages(),
+		    connection.getDroppedMessages(), connection.getMessagesOut(),
+		    connection.getRoundTripTime().getP99() / 1e6));
+	}
+    }
+
+    private Map<DisconnectReason, Integer> getDisconnectReasons() {
+	Map<DisconnectReason, Integer> reasons = new EnumMap<DisconnectReason, Integer>(DisconnectReason.class);
+	for (SimulatedClient client : clients) {
+	    ConnectionMetricsSnapshot metrics = client.getMetrics();
+	    if (metrics != null && metrics.getDisconnectReason() != null) {
+		Integer count = reasons.get(metrics.getDisconnectReason());
+		reasons.put(metrics.getDisconnectReason(), count != null ? count + 1 : 1);
+	    }
+	}
+	return reasons;
+    }
+
+    private static String getState(SimulatedClient client) {
+	ConnectionMetricsSnapshot metrics = client.getMetrics();
+	if (metrics == null) {
+	    return "never connected";
+	}
+	return metrics.isConnected() ? "connected" : metrics.getDisconnectReason().name().toLowerCase();
+    }
+
+    /**
+     * Returns the sequence number of the last frame of the stream. The
+     * sequence numbers of the clients have to be read before, so a client
+     * never seems to be ahead of the stream.
+     */
+    private int getReference(int maxSequence) {
+	if (feed != null && feed.isStreaming()) {
+	    return Math.max(feed.getSequence(), maxSequence);
+	}
+	return maxSequence;
+    }
+
+    /**
+     * Returns the number of frames a client is behind the stream.
+     */
+    private static long getLag(int sequence, int reference) {
+	return sequence >= 0 ? Math.max(reference - sequence, 0) : reference + 1;
+    }
+
+    private static String formatLatency(HistogramSnapshot snapshot) {
+	if (snapshot.getCount() == 0) {
+	    return "-";
+	}
+	return format("p50 %.2f p99 %.2f max %.2f ms", snapshot.getP50() / 1000.0, snapshot.getP99() / 1000.0,
+		snapshot.getMax() / 1000.0);
+    }
+
+    private static String format(String format, Object... args) {
+	return String.format(Locale.ROOT, format, args);
+    }
+
+    /**
+     * Collects the current totals of the clients and the server.
+     */
+    private Totals collect() {
+	Totals totals = new Totals();
+
+	int[] sequences = new int[clients.size()];
+	int maxSequence = -1;
+	for (int i = 0; i < sequences.length; i++) {
+	    sequences[i] = clients.get(i).getLastSequence();
+	    maxSequence = Math.max(maxSequence, sequences[i]);
+	}
+	int reference = getReference(maxSequence);
+	for (int sequence : sequences) {
+	    if (sequence >= 0) {
+		totals.maxLag = Math.max(totals.maxLag, getLag(sequence, reference));
+	    }
+	}
+
+	for (SimulatedClient client : clients) {
+	    ConnectionMetricsSnapshot metrics = client.getMetrics();
+	    if (metrics != null) {
+		totals.messagesIn += metrics.getMessagesIn();
+		totals.bytesIn += metrics.getBytesIn();
+		totals.queued += metrics.getQueuedMessages();
+		if (metrics.isConnected()) {
+		    totals.connected++;
+		}
+	    }
+	    totals.stamps += client.getStamps();
+	    totals.lostFrames += client.getLostFrames();
+	    totals.sent += client.getSent();
+	}
+
+	if (feed != null) {
+	    ServerMetricsSnapshot metrics = feed.getServer().getMetrics();
+	    totals.serverClients = metrics.getClients().size();
+	    totals.serverMessagesOut = metrics.getMessagesOut();
+	    totals.serverBytesOut = metrics.getBytesOut();
+	    totals.serverQueued = metrics.getQueuedMessages();
+	    totals.serverDropped = metrics.getDroppedMessages();
+	    totals.serverReceived = feed.getReceived();
+	}
+	return totals;
+    }
+
+    /**
+     * The totals of the clients and the server at a point in time.
+     */
+    private static class Totals {
+	int connected;
+	long messagesIn;
+	long bytesIn;
+	long queued;
+	long stamps;
+	long lostFrames;
+	long sent;
+	long maxLag;
+	int serverClients;
+	long serverMessagesOut;
+	long serverBytesOut;
+	int serverQueued;
+	long serverDropped;
+	long serverReceived;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import at.mukprojects.mukcast.message.IntArrayMessage;
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * LoadStamps creates and reads the stamps, which measure the latency and the
+ * losses of a stream.
+ * <p>
+ * A stamp is an {@link IntArrayMessage} with two values: the sequence number
+ * of the frame and the time it has been sent. The time is read from the wall
+ * clock with the precision of {@code System.nanoTime} in microseconds. Only
+ * the lower 32 bits are sent, so a latency is measured correctly up to about
+ * 35 minutes. Stamps of another process are converted with the clock offset,
+ * which is estimated by the heartbeat.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+final class LoadStamps {
+
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private LoadStamps() {
+    }
+
+    /**
+     * Returns the current time as a stamp.
+     * 
+     * @return The lower 32 bits of the time in microseconds.
+     */
+    static int now() {
+	return (int) (BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000);
+    }
+
+    /**
+     * Creates the stamp of a frame.
+     * 
+     * @param sequence
+     *            The sequence number of the frame.
+     * @return The stamp.
+     */
+    static IntArrayMessage createStamp(int sequence) {
+	return new IntArrayMessage(new int[] { sequence, now() });
+    }
+
+    /**
+     * Returns the time of a stamp.
+     * 
+     * @param stamp
+     *            The stamp.
+     * @return The lower 32 bits of the time in microseconds.
+     */
+    static int getTime(IntArrayMessage stamp) {
+	return stamp.getValues()[1];
+    }
+
+    /**
+     * Returns true if the message is a stamp.
+     * 
+     * @param message
+     *            The message.
+     * @return True if the message is a stamp.
+     */
+    static boolean isStamp(Message message) {
+	return message instanceof IntArrayMessage && ((IntArrayMessage) message).getLength() == 2;
+    }
+
+    /**
+     * Returns the time, which has passed since the stamp has been taken.
+     * 
+     * @param stamp
+     *            The stamp.
+     * @param clockOffset
+     *            The offset of the clock of the sender to the local clock in
+     *            milliseconds.
+     * @return The latency in microseconds, which is negative if the clock
+     *         offset is overestimated.
+     */
+    static long getLatency(int stamp, long clockOffset) {
+	return (int) (now() + clockOffset * 1000) - stamp;
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadTest is a command line tool, which proves that a server can feed the
+ * planned number of displays. It runs headless, no Processing window is
+ * opened.
+ * <p>
+ * The clients are simulated by headless {@code MuKCastClient}s, thousands of
+ * them fit into one process with virtual threads. In the receive mode they
+ * receive the stream of a feed server and report the throughput, the lag and
+ * the lost frames of every client and the latency percentiles. In the send
+ * mode all clients send stamps to a single server. The feed server
+ * either runs in the same process or in its own process on the server
+ * machine, started in the feed mode, while the clients run on other machines.
+ * </p>
+ * <p>
+ * The process exits with 0 if all clients have been connected until the end
+ * of the test and with 1 otherwise, so the test can be scripted.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public final class LoadTest {
+
+    private LoadOptions options;
+    private PrintStream out;
+    private LoadReport report;
+    private FeedServer feed;
+    private List<SimulatedClient> clients;
+    private CountDownLatch stopped;
+    private CountDownLatch finished;
+
+    private LoadTest(LoadOptions options, PrintStream out) {
+	this.options = options;
+	this.out = out;
+	this.report = new LoadReport(options, out);
+	this.clients = new ArrayList<SimulatedClient>();
+	this.stopped = new CountDownLatch(1);
+	this.finished = new CountDownLatch(1);
+    }
+
+    /**
+     * Runs the load test.
+     * 
+     * @param args
+     *            The command line arguments, see {@link LoadOptions#USAGE}.
+     */
+    public static void main(String[] args) {
+	LoadOptions options;
+	try {
+	    options = LoadOptions.parse(args);
+	} catch (IllegalArgumentException e) {
+	    System.err.println(e.getMessage());
+	    System.err.println();
+	    System.err.print(LoadOptions.USAGE);
+	    System.exit(2);
+	    return;
+	}
+
+	boolean passed;
+	try {
+	    passed = new LoadTest(options, System.out).run();
+	} catch (IOException e) {
+	    System.err.println("The load test couldn't be started: " + e.getMessage());
+	    passed = false;
+	} catch (InterruptedException e) {
+	    passed = false;
+	}
+	System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs the load test until the duration has passed or the process is
+     * stopped.
+     * 
+     * @return True if all clients have been connected until the end.
+     * @throws IOException
+     *             If the server couldn't be started an {@code IOException} is
+     *             thrown.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    private boolean run() throws IOException, InterruptedException {
+	out.println("MuKCast load test: " + options);
+
+	if (options.getMode() == LoadOptions.Mode.FEED || options.isInProcessServer()) {
+	    feed = new FeedServer(options, report);
+	    feed.start();
+	    report.setFeed(feed);
+	}
+
+	if (options.getMode() != LoadOptions.Mode.FEED) {
+	    connectClients();
+	}
+
+	/*
+	 * A stopped process, e.g. by Ctrl+C, prints the summary before it
+	 * exits.
+	 */
+	Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		stopped.countDown();
+		try {
+		    finished.await();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}));
+
+	try {
+	    return measure();
+	} finally {
+	    finished.countDown();
+	}
+    }
+
+    /**
+     * Measures the load until the duration has passed or the process is
+     * stopped and prints the summary.
+     * 
+     * @return True if all clients have been connected until the end.
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting.
+     */
+    private boolean measure() throws InterruptedException {
+	Thread sender = null;
+	if (options.getMode() == LoadOptions.Mode.SEND) {
+	    sender = new Thread(new Runnable() {
+		@Override
+		public void run() {
+		    sendMessages();
+		}
+	    }, "MuKCast load sender");
+	    sender.setDaemon(true);
+	}
+
+	report.start();
+	if (sender != null) {
+	    sender.start();
+	}
+	awaitEnd();
+
+	if (sender != null) {
+	    sender.interrupt();
+	    sender.join();
+	}
+	report.printSummary();
+
+	boolean passed = true;
+	for (SimulatedClient client : clients) {
+	    passed &= client.isConnected();
+	}
+	if (feed != null) {
+	    feed.stop();
+	}
+	disconnectClients();
+	return passed;
+    }
+
+    /**
+     * Connects the clients one after another, so the server isn't flooded
+     * with connects.
+     */
+    private void connectClients() {
+	long start = System.nanoTime();
+	int failed = 0;
+
+	for (int i = 0; i < options.getClients(); i++) {
+	    SimulatedClient client = new SimulatedClient(i, options, report);
+	    try {
+		client.connect();
+	    } catch (IOException e) {
+		if (failed++ == 0) {
+		    out.println("Client #" + i + " couldn't be connected: " + e.getMessage());
+		}
+	    }
+	    clients.add(client);
+	    report.addClient(client);
+	}
+
+	out.println(String.format("Connected %d/%d clients in %d ms", clients.size() - failed, clients.size(),
+		TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * Sends a stamp from every connected client with the rate of
+     * the load test. A client, which blocks because its send queue is full,
+     * slows down all clients, which shows up as a lower send rate.
+     */
+    private void sendMessages() {
+	LoadPacer pacer = new LoadPacer(options.getRate());
+	try {
+	    while (!Thread.currentThread().isInterrupted()) {
+		pacer.await();
+		for (SimulatedClient client : clients) {
+		    if (client.isConnected()) {
+			try {
+			    client.send();
+			} catch (IOException e) {
+			    // the client has been disconnected in the meantime
+			}
+		    }
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Prints the progress until the duration has passed or the process is
+     * stopped.
+     */
+    private void awaitEnd() throws InterruptedException {
+	long intervalNanos = TimeUnit.SECONDS.toNanos(options.getInterval());
+	long end = options.getDuration() > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getDuration())
+		: Long.MAX_VALUE;
+
+	while (true) {
+	    long remaining = end - System.nanoTime();
+	    if (remaining <= 0 || stopped.await(Math.min(remaining, intervalNanos), TimeUnit.NANOSECONDS)) {
+		break;
+	    }
+	    report.printProgress();
+	}
+    }
+
+    private void disconnectClients() {
+	for (SimulatedClient client : clients) {
+	    try {
+		client.disconnect();
+	    } catch (IOException e) {
+		// the connection has been lost already
+	    }
+	}
+    }
+}
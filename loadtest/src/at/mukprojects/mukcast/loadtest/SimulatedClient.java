@@ -0,0 +1,232 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.loadtest;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import at.mukprojects.mukcast.client.MuKCastClient;
+import at.mukprojects.mukcast.client.MuKCastMessageListener;
+import at.mukprojects.mukcast.message.IntArrayMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetricsSnapshot;
+import at.mukprojects.mukcast.metrics.Histogram;
+
+/**
+ * SimulatedClient is a headless client of the load test, which stands in for
+ * a display of a show.
+ * <p>
+ * A receiving client counts the stamps of the feed server, measures their
+ * latency and counts the frames, which haven't reached it. A sending client
+ * sends stamps, which carry the time they have been sent, so the server can
+ * measure their latency, and ignores the stream of the server. The counters
+ * are only written by the thread of the connection, respectively by the
+ * thread sending the messages.
+ * </p>
+ * 
+ * @see LoadStamps
+ * 
+ * @author Mathias Markl
+ */
+class SimulatedClient implements MuKCastMessageListener {
+
+    private static final long HEARTBEAT_INTERVAL = 1;
+    private static final long HEARTBEAT_TIMEOUT = 10;
+
+    private int index;
+    private MuKCastClient client;
+    private LoadReport report;
+    private boolean remote;
+    private boolean receiving;
+    private String channel;
+
+    private Histogram latency;
+    private int[] stamp;
+
+    private volatile long stamps;
+    private volatile long lostFrames;
+    private volatile int lastSequence;
+    private volatile boolean sequenced;
+    private volatile long sent;
+
+    /**
+     * Constructs a new SimulatedClient.
+     * 
+     * @param index
+     *            The index of the client.
+     * @param options
+     *            The options of the load test.
+     * @param report
+     *            The report, which collects the latencies of all clients.
+     */
+    SimulatedClient(int index, LoadOptions options, LoadReport report) {
+	this.index = index;
+	this.report = report;
+	this.remote = !options.isInProcessServer();
+	this.receiving = options.getMode() == LoadOptions.Mode.RECEIVE;
+	this.channel = options.getChannel();
+	this.latency = new Histogram();
+
+	String host = options.getHost() != null ? options.getHost() : "localhost";
+	this.client = new MuKCastClient(null, host, options.getPort());
+	this.client.setTransport(options.createTransport());
+	this.client.setExecutionMode(options.getExecutionMode());
+	if (remote) {
+	    /*
+	     * The heartbeat estimates the clock offset, which converts the
+	     * stamps of the server to the clock of this process.
+	     */
+	    this.client.setHeartbeat(HEARTBEAT_INTERVAL, HEARTBEAT_TIMEOUT, TimeUnit.SECONDS);
+	}
+	this.client.addListener(this);
+    }
+
+    /**
+     * Connects the client and subscribes the channel of the load test.
+     * 
+     * @throws IOException
+     *             If the client can't be connected an {@code IOException} is
+     *             thrown.
+     */
+    void connect() throws IOException {
+	if (channel != null) {
+	    client.subscribe(channel);
+	}
+	client.connect();
+    }
+
+    /**
+     * Sends a stamp to the server. The time isn't sent as a number message,
+     * because a float would round it.
+     * 
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOException} is
+     *             thrown.
+     */
+    void send() throws IOException {
+	client.sendMessage(LoadStamps.createStamp((int) sent + 1));
+	sent++;
+    }
+
+    @Override
+    public void onMessage(MuKCastClient client, Message message) {
+	if (!receiving || !LoadStamps.isStamp(message)) {
+	    return;
+	}
+
+	stamp = ((IntArrayMessage) message).getValues(stamp);
+	int sequence = stamp[0];
+	if (sequenced && sequence - lastSequence > 1) {
+	    lostFrames += sequence - lastSequence - 1;
+	}
+	lastSequence = sequence;
+	sequenced = true;
+	stamps++;
+
+	long micros = LoadStamps.getLatency(stamp[1], remote ? client.getClockOffset() : 0);
+	latency.record(micros);
+	report.recordLatency(micros);
+    }
+
+    /**
+     * Returns the index of the client.
+     * 
+     * @return The index.
+     */
+    int getIndex() {
+	return index;
+    }
+
+    /**
+     * Returns the number of received stamps.
+     * 
+     * @return The number of stamps.
+     */
+    long getStamps() {
+	return stamps;
+    }
+
+    /**
+     * Returns the number of frames, which have been sent by the feed server
+     * since the first received stamp, but haven't reached the client.
+     * 
+     * @return The number of lost frames.
+     */
+    long getLostFrames() {
+	return lostFrames;
+    }
+
+    /**
+     * Returns the sequence number of the last received stamp.
+     * 
+     * @return The sequence number or -1 if no stamp has been received.
+     */
+    int getLastSequence() {
+	return sequenced ? lastSequence : -1;
+    }
+
+    /**
+     * Returns the number of messages the client has sent.
+     * 
+     * @return The number of sent messages.
+     */
+    long getSent() {
+	return sent;
+    }
+
+    /**
+     * Returns the latency of the received stamps.
+     * 
+     * @return The latency in microseconds.
+     */
+    Histogram getLatency() {
+	return latency;
+    }
+
+    /**
+     * Returns a snapshot of the metrics of the connection.
+     * 
+     * @return The snapshot or null if the client has never been connected.
+     */
+    ConnectionMetricsSnapshot getMetrics() {
+	return client.getMetrics();
+    }
+
+    /**
+     * Returns true if the client is connected.
+     * 
+     * @return True if the client is connected.
+     */
+    boolean isConnected() {
+	ConnectionMetricsSnapshot metrics = client.getMetrics();
+	return metrics != null && metrics.isConnected();
+    }
+
+    /**
+     * Disconnects the client, if it is connected.
+     * 
+     * @throws IOException
+     *             If the client couldn't be disconnected an
+     *             {@code IOException} is thrown.
+     */
+    void disconnect() throws IOException {
+	if (isConnected()) {
+	    client.disconnect();
+	}
+    }
+}
@@ -18,9 +18,19 @@
 package at.mukprojects.mukcast.client;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.management.ObjectName;
 
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
@@ -28,10 +38,40 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
 import org.slf4j.LoggerFactory;
 
+import at.mukprojects.mukcast.codec.ArrayAllocator;
+import at.mukprojects.mukcast.codec.ArrayTarget;
+import at.mukprojects.mukcast.codec.FrameWriter;
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.codec.PixelBufferPool;
+import at.mukprojects.mukcast.concurrent.ExecutionMode;
+import at.mukprojects.mukcast.concurrent.Inbox;
+import at.mukprojects.mukcast.concurrent.ThreadExecutors;
 import at.mukprojects.mukcast.message.DisconnectMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+import at.mukprojects.mukcast.message.KeyframeRequestMessage;
+import at.mukprojects.mukcast.message.MaxResolutionMessage;
 import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.MulticastJoinMessage;
+import at.mukprojects.mukcast.message.MulticastLeaveMessage;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.message.ResumeSessionMessage;
+import at.mukprojects.mukcast.message.SessionMessage;
+import at.mukprojects.mukcast.message.SubscribeMessage;
+import at.mukprojects.mukcast.message.TextMessage;
+import at.mukprojects.mukcast.message.UnsubscribeMessage;
+import at.mukprojects.mukcast.metrics.ConnectionMetricsSnapshot;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+import at.mukprojects.mukcast.metrics.HistogramSnapshot;
+import at.mukprojects.mukcast.metrics.MuKCastClientMXBean;
+import at.mukprojects.mukcast.metrics.MuKCastMBeans;
 import at.mukprojects.mukcast.server.MuKCastServer;
+import at.mukprojects.mukcast.transport.Link;
+import at.mukprojects.mukcast.transport.LoopbackTransport;
+import at.mukprojects.mukcast.transport.SocketTransport;
+import at.mukprojects.mukcast.transport.Transport;
 import processing.core.PApplet;
+import processing.core.PImage;
 
 /**
  * This class represents the {@code MuKCastClient}. The client manages the server
@@ -51,23 +91,65 @@ public class MuKCastClient {
 
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger(MuKCastClient.class);
 
+    /**
+     * The default delay before the first reconnect attempt in milliseconds.
+     */
+    public static final long DEFAULT_RECONNECT_DELAY = 250;
+
+    /**
+     * The default maximum delay between two reconnect attempts in
+     * milliseconds.
+     */
+    public static final long DEFAULT_MAX_RECONNECT_DELAY = 10000;
+
     private PApplet parent;
-    private Method handleMessage;
+    private List<MuKCastMessageListener> listeners;
 
-    private Socket clientSocket;
+    private volatile Transport transport;
     private String clientInfo;
 
-    private Thread clientThread;
-    private MuKCastServerHandler serverHandler;
+    private volatile ExecutionMode executionMode;
+    private volatile Executor executor;
+    private volatile MuKCastServerHandler serverHandler;
+    private MuKCastMulticastReceiver multicastReceiver;
+    private String multicastGroup;
+    private int multicastPort;
+    private String multicastInterface;
+    private Set<String> subscriptions;
+    private volatile MaxResolutionMessage maxResolution;
 
     private String host;
     private int port;
 
+    private volatile PixelAllocator pixelAllocator;
+    private volatile ArrayAllocator arrayAllocator;
+
+    private int flushThreshold;
+    private long flushDelay;
+    private boolean tcpNoDelay;
+
+    private long heartbeatInterval;
+    private long heartbeatTimeout;
+
+    private volatile boolean autoReconnect;
+    private long reconnectDelay;
+    private long maxReconnectDelay;
+    private volatile boolean reconnecting;
+    private Object reconnectLock;
+    private volatile String sessionToken;
+    private volatile String clientKey;
+
+    private Inbox<ReceivedMessage> inbox;
+    private volatile boolean sketchDelivery;
+    private boolean preRegistered;
+
+    private ObjectName mbeanName;
+
     /**
      * Constructs a new MuKCastClient.
      * 
      * @param parent
-     *            The PApplet.
+     *            The PApplet or null if the client isn't used by a sketch.
      * @param host
      *            The host can be an IP address or a server name.
      * @param port
@@ -80,6 +162,13 @@ public class MuKCastClient {
 	this.parent = parent;
 	this.host = host;
 	this.port = port;
+	this.transport = new SocketTransport();
+	this.flushThreshold = FrameWriter.DEFAULT_FLUSH_THRESHOLD;
+	this.tcpNoDelay = true;
+	this.executionMode = ExecutionMode.PLATFORM_THREADS;
+	this.reconnectDelay = DEFAULT_RECONNECT_DELAY;
+	this.maxReconnectDelay = DEFAULT_MAX_RECONNECT_DELAY;
+	this.reconnectLock = new Object();
 
 	/*
 	 * Logger configuration
@@ -92,20 +181,24 @@ public class MuKCastClient {
 	    Logger.getRootLogger().addAppender(appender);
 	}
 
-	/*
-	 * Register dispose method
-	 */
-	parent.registerMethod("dispose", this);
+	listeners = new CopyOnWriteArrayList<MuKCastMessageListener>();
+	inbox = new Inbox<ReceivedMessage>();
+	subscriptions = ConcurrentHashMap.newKeySet();
 
-	/*
-	 * PApplet method
-	 */
-	try {
-	    handleMessage = parent.getClass().getMethod("handleMessage",
-		    new Class[] { MuKCastClient.class, Message.class });
-	} catch (Exception e) {
-	    logger.warn("No method called \"handleMessage(MuKCastClient client, Message message)\" could"
-		    + " be found in the PApplet class.");
+	if (parent != null) {
+	    /*
+	     * Register dispose method
+	     */
+	    parent.registerMethod("dispose", this);
+
+	    /*
+	     * PApplet method
+	     */
+	    if (parent instanceof MuKCastMessageListener) {
+		listeners.add((MuKCastMessageListener) parent);
+	    } else {
+		listeners.add(new MuKCastSketchListener(parent));
+	    }
 	}
     }
 
@@ -117,12 +210,39 @@ public class MuKCastClient {
      *             thrown.
      */
     public void connect() throws IOException {
-	clientSocket = new Socket(host, port);
-	clientInfo = clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getLocalPort();
+	synchronized (reconnectLock) {
+	    reconnecting = false;
+	}
+	open();
+    }
 
-	serverHandler = new MuKCastServerHandler(this, clientSocket);
-	clientThread = new Thread(serverHandler);
-	clientThread.start();
+    /**
+     * Opens a new connection. If the previous connection has been lost, the
+     * session of the previous connection is resumed.
+     * 
+     * @throws IOException
+     *             If the client can't be connected an {@code IOException} is
+     *             thrown.
+     */
+    private void open() throws IOException {
+	Link link = transport.connect(host, port);
+	link.setNoDelay(tcpNoDelay);
+	clientInfo = link.getRemoteHost() + ":" + link.getLocalPort();
+
+	serverHandler = new MuKCastServerHandler(this, link);
+	String token = sessionToken;
+	if (token != null) {
+	    serverHandler.sendMessage(new ResumeSessionMessage(token));
+	}
+	execute(serverHandler);
+
+	MaxResolutionMessage resolution = maxResolution;
+	if (resolution != null) {
+	    serverHandler.sendMessage(resolution);
+	}
+	for (String channel : subscriptions) {
+	    serverHandler.sendMessage(new SubscribeMessage(channel));
+	}
     }
 
     /**
@@ -134,6 +254,555 @@ public class MuKCastClient {
 	return clientInfo;
     }
 
+    /**
+     * Returns the key the server knows the client by. The key is only known,
+     * if the server has enabled sessions.
+     * 
+     * @see MuKCastServer#setSessionTimeout(long, TimeUnit)
+     * 
+     * @return The client key or null.
+     */
+    public String getClientKey() {
+	return clientKey;
+    }
+
+    /**
+     * Enables the heartbeat for the next connection. The client pings the
+     * server in the given interval, which measures the round trip time and the
+     * offset between the clocks of the client and the server. If the server
+     * hasn't sent anything within the timeout, the connection is closed, even
+     * if the network failure hasn't closed it, and the client reconnects, if
+     * the automatic reconnect is enabled. The client always answers the pings
+     * of the server. The heartbeat is disabled by default.
+     * 
+     * @param interval
+     *            The interval between two pings or 0 to disable the heartbeat.
+     * @param timeout
+     *            The time after which a silent connection is closed.
+     * @param unit
+     *            The unit of the interval and the timeout.
+     */
+    public void setHeartbeat(long interval, long timeout, TimeUnit unit) {
+	if (interval < 0 || (interval > 0 && timeout <= interval)) {
+	    throw new IllegalArgumentException("The timeout has to be greater than the interval.");
+	}
+	this.heartbeatInterval = unit.toNanos(interval);
+	this.heartbeatTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Returns the heartbeat interval: internal use only.
+     * 
+     * @return The interval in nanoseconds or 0 if the heartbeat is disabled.
+     */
+    long getHeartbeatInterval() {
+	return heartbeatInterval;
+    }
+
+    /**
+     * Returns the heartbeat timeout: internal use only.
+     * 
+     * @return The timeout in nanoseconds.
+     */
+    long getHeartbeatTimeout() {
+	return heartbeatTimeout;
+    }
+
+    /**
+     * Returns the smoothed round trip time to the server, which is measured by
+     * the heartbeat.
+     * 
+     * @return The round trip time in nanoseconds or 0 if no round trip has
+     *         been measured.
+     */
+    public long getRoundTripTime() {
+	MuKCastServerHandler handler = serverHandler;
+	return handler != null ? handler.getMetrics().getRoundTripTime() : 0;
+    }
+
+    /**
+     * Returns the offset of the clock of the server to the clock of the
+     * client, which is estimated by the heartbeat. A time of the server is
+     * converted to the clock of the client by subtracting the offset, e.g. to
+     * show a frame at the same time on all displays.
+     * 
+     * @return The clock offset in milliseconds or 0 if no round trip has been
+     *         measured.
+     */
+    public long getClockOffset() {
+	MuKCastServerHandler handler = serverHandler;
+	return handler != null ? handler.getMetrics().getClockOffset() : 0;
+    }
+
+    /**
+     * Enables or disables the automatic reconnect. If the connection is lost,
+     * the client reconnects with an exponential backoff, starting with
+     * {@value #DEFAULT_RECONNECT_DELAY}ms up to
+     * {@value #DEFAULT_MAX_RECONNECT_DELAY}ms between two attempts. The
+     * subscriptions, the maximum resolution and the multicast group are
+     * restored, and if the server has enabled sessions, the client gets its
+     * previous client key back and continues with a keyframe.
+     * 
+     * @param autoReconnect
+     *            True to reconnect automatically.
+     */
+    public void setAutoReconnect(boolean autoReconnect) {
+	this.autoReconnect = autoReconnect;
+    }
+
+    /**
+     * Enables the automatic reconnect with the given backoff. The delay is
+     * doubled after every failed attempt up to the maximum delay.
+     * 
+     * @param initialDelay
+     *            The delay before the first attempt.
+     * @param maxDelay
+     *            The maximum delay between two attempts.
+     * @param unit
+     *            The unit of the delays.
+     */
+    public void setAutoReconnect(long initialDelay, long maxDelay, TimeUnit unit) {
+	if (initialDelay < 1 || maxDelay < initialDelay) {
+	    throw new IllegalArgumentException("The delays have to be positive and ordered.");
+	}
+	this.reconnectDelay = unit.toMillis(initialDelay);
+	this.maxReconnectDelay = Math.max(reconnectDelay, unit.toMillis(maxDelay));
+	this.autoReconnect = true;
+    }
+
+    /**
+     * Checks if the automatic reconnect is enabled.
+     * 
+     * @return Returns true or false depending on whether the automatic
+     *         reconnect is enabled or not.
+     */
+    public boolean isAutoReconnect() {
+	return autoReconnect;
+    }
+
+    /**
+     * Checks if the client is trying to reconnect to the server.
+     * 
+     * @return Returns true or false depending on whether the client is
+     *         reconnecting or not.
+     */
+    public boolean isReconnecting() {
+	return reconnecting;
+    }
+
+    /**
+     * Stores the session of the connection: internal use only.
+     * 
+     * @param message
+     *            The session message of the server.
+     */
+    void sessionStarted(SessionMessage message) {
+	sessionToken = message.getToken();
+	clientKey = message.getClientKey();
+    }
+
+    /**
+     * Starts the automatic reconnect, if the connection has been lost:
+     * internal use only.
+     * 
+     * @param handler
+     *            The closed connection.
+     */
+    void connectionClosed(MuKCastServerHandler handler) {
+	DisconnectReason reason = handler.getMetrics().getDisconnectReason();
+	if (!autoReconnect || handler != serverHandler || (reason != DisconnectReason.CONNECTION_LOST
+		&& reason != DisconnectReason.CONNECTION_ERROR && reason != DisconnectReason.TIMEOUT)) {
+	    return;
+	}
+
+	synchronized (reconnectLock) {
+	    if (reconnecting) {
+		return;
+	    }
+	    reconnecting = true;
+	}
+
+	logger.info("Connection has been lost, client reconnects...");
+	execute(new Runnable() {
+	    @Override
+	    public void run() {
+		reconnect();
+	    }
+	});
+    }
+
+    /**
+     * Reconnects until a connection has been opened or the reconnect is
+     * cancelled. The delay is doubled after every failed attempt and a random
+     * jitter of up to half the delay is added, so many clients don't reconnect
+     * at the same time after a network failure.
+     */
+    private void reconnect() {
+	long delay = reconnectDelay;
+	while (reconnecting) {
+	    try {
+		Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		reconnecting = false;
+		return;
+	    }
+
+	    synchronized (reconnectLock) {
+		if (!reconnecting) {
+		    return;
+		}
+
+		try {
+		    open();
+		    reconnecting = false;
+		    logger.info("Client has reconnected to the server.");
+		} catch (IOException e) {
+		    logger.warn("Client couldn't reconnect: " + e.getMessage());
+		}
+	    }
+
+	    if (!reconnecting) {
+		rejoinMulticast();
+		return;
+	    }
+	    delay = Math.min(delay * 2, maxReconnectDelay);
+	}
+    }
+
+    /**
+     * Joins the multicast group again after a reconnect.
+     */
+    private synchronized void rejoinMulticast() {
+	if (multicastGroup != null) {
+	    try {
+		joinMulticast(multicastGroup, multicastPort, multicastInterface);
+	    } catch (IOException e) {
+		logger.error("Multicast group couldn't be joined: " + e.getMessage(), e);
+	    }
+	}
+    }
+
+    /**
+     * Sets how the messages of the client are coalesced into writes. The sent
+     * messages are buffered and written together, if the buffer reaches the
+     * flush threshold, if no more messages are sent within the flush delay or
+     * if {@link #flush()} is called. With a flush delay of zero the messages
+     * are written as soon as no more messages are queued, so messages are only
+     * coalesced if they are sent faster than the network takes them. A flush
+     * threshold of zero writes every message on its own. The default is a
+     * threshold of {@value FrameWriter#DEFAULT_FLUSH_THRESHOLD} bytes without a
+     * delay. The settings are used by the next connection.
+     * 
+     * @param flushThreshold
+     *            The number of bytes, which are buffered before they are
+     *            written.
+     * @param flushDelay
+     *            The maximum time a message is buffered.
+     * @param unit
+     *            The time unit of the flush delay.
+     */
+    public void setWriteCoalescing(int flushThreshold, long flushDelay, TimeUnit unit) {
+	if (flushThreshold < 0 || flushDelay < 0) {
+	    throw new IllegalArgumentException("The flush threshold and the flush delay can't be negative.");
+	}
+
+	this.flushThreshold = flushThreshold;
+	this.flushDelay = unit.toNanos(flushDelay);
+    }
+
+    /**
+     * Returns the number of bytes, which are buffered before they are written.
+     * 
+     * @return The flush threshold.
+     */
+    public int getFlushThreshold() {
+	return flushThreshold;
+    }
+
+    /**
+     * Returns the maximum time a message is buffered.
+     * 
+     * @return The flush delay in nanoseconds.
+     */
+    public long getFlushDelay() {
+	return flushDelay;
+    }
+
+    /**
+     * Sets the transport the next connection is established with, e.g. a
+     * {@link LoopbackTransport} to connect to a server within the same JVM
+     * without going through the kernel. TCP sockets are the default.
+     * 
+     * @param transport
+     *            The transport.
+     */
+    public void setTransport(Transport transport) {
+	if (transport == null) {
+	    throw new IllegalArgumentException("The transport must not be null.");
+	}
+	this.transport = transport;
+    }
+
+    /**
+     * Returns the transport of the client.
+     * 
+     * @return The transport.
+     */
+    public Transport getTransport() {
+	return transport;
+    }
+
+    /**
+     * Enables or disables {@code TCP_NODELAY} for the next connection. It is
+     * enabled by default, because the messages are already coalesced by the
+     * client and Nagle's algorithm only delays them.
+     * 
+     * @param tcpNoDelay
+     *            True to disable Nagle's algorithm.
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+	this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Checks if {@code TCP_NODELAY} is enabled.
+     * 
+     * @return Returns true or false depending on whether
+     *         {@code TCP_NODELAY} is enabled or not.
+     */
+    public boolean isTcpNoDelay() {
+	return tcpNoDelay;
+    }
+
+    /**
+     * Sets the threads the next connection runs on. With
+     * {@link ExecutionMode#VIRTUAL_THREADS} the connection is served by virtual
+     * threads, e.g. to run thousands of clients in one process. Platform
+     * threads are the default.
+     * 
+     * @see ThreadExecutors#isVirtualThreadSupported()
+     * 
+     * @param executionMode
+     *            The execution mode.
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+	if (executionMode == null) {
+	    throw new IllegalArgumentException("The execution mode must not be null.");
+	}
+
+	this.executionMode = executionMode;
+	this.executor = null;
+    }
+
+    /**
+     * Returns the execution mode of the client.
+     * 
+     * @return The execution mode.
+     */
+    public ExecutionMode getExecutionMode() {
+	return executionMode;
+    }
+
+    /**
+     * Sets an executor the next connection runs on. The executor has to run
+     * every task at once, because the tasks block until the client is
+     * disconnected.
+     * 
+     * @param executor
+     *            The executor or null to use the executor of the execution
+     *            mode.
+     */
+    public void setExecutor(Executor executor) {
+	this.executor = executor;
+    }
+
+    /**
+     * Executes a task with the executor of the client: internal use only.
+     * 
+     * @param task
+     *            The task.
+     */
+    void execute(Runnable task) {
+	Executor taskExecutor = executor;
+	if (taskExecutor == null) {
+	    taskExecutor = ThreadExecutors.newThreadPerTaskExecutor(executionMode);
+	    executor = taskExecutor;
+	}
+	taskExecutor.execute(task);
+    }
+
+    /**
+     * Writes the buffered messages without waiting for the flush threshold or
+     * the flush delay.
+     */
+    public void flush() {
+	MuKCastServerHandler handler = serverHandler;
+	if (handler != null) {
+	    handler.flush();
+	}
+    }
+
+    /**
+     * Sets the allocator for the pixel arrays of received images. The pixel
+     * array of an image is handed back to the allocator as soon as the
+     * message has been delivered.
+     * 
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array for every
+     *            image.
+     */
+    public void setPixelAllocator(PixelAllocator pixelAllocator) {
+	this.pixelAllocator = pixelAllocator;
+    }
+
+    /**
+     * Returns the allocator for the pixel arrays of received images.
+     * 
+     * @return The pixel allocator or null.
+     */
+    public PixelAllocator getPixelAllocator() {
+	return pixelAllocator;
+    }
+
+    /**
+     * Sets the allocator for the arrays of received array messages, e.g. an
+     * {@link ArrayTarget} to decode the values directly into the arrays of the
+     * sketch.
+     * 
+     * @param arrayAllocator
+     *            The array allocator or null to allocate a new array for every
+     *            array message.
+     */
+    public void setArrayAllocator(ArrayAllocator arrayAllocator) {
+	this.arrayAllocator = arrayAllocator;
+    }
+
+    /**
+     * Returns the allocator for the arrays of received array messages.
+     * 
+     * @return The array allocator or null.
+     */
+    public ArrayAllocator getArrayAllocator() {
+	return arrayAllocator;
+    }
+
+    /**
+     * Enables or disables pooled pixel arrays for received images. If enabled,
+     * a received {@code ImageMessage} is only valid inside of the
+     * {@code handleMessage} method, afterwards its pixel array is reused.
+     * 
+     * @param pooling
+     *            True to reuse the pixel arrays.
+     */
+    public void setImageBufferPooling(boolean pooling) {
+	setPixelAllocator(pooling ? new PixelBufferPool() : null);
+    }
+
+    /**
+     * Sets an image the received images are decoded into. The pixel array of
+     * the image is swapped right before a received image is delivered.
+     * 
+     * @see MuKCastImageTarget
+     * 
+     * @param target
+     *            The target image or null to disable the target.
+     */
+    public void setImageTarget(PImage target) {
+	setPixelAllocator(target != null ? new MuKCastImageTarget(target) : null);
+    }
+
+    /**
+     * Adds a listener for the received messages.
+     * 
+     * @param listener
+     *            The listener.
+     */
+    public void addListener(MuKCastMessageListener listener) {
+	listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * 
+     * @param listener
+     *            The listener.
+     */
+    public void removeListener(MuKCastMessageListener listener) {
+	listeners.remove(listener);
+    }
+
+    /**
+     * Enables or disables the delivery on the sketch thread. If enabled, the
+     * network threads only add the messages to an inbox and the listeners are
+     * called in one batch before the sketch draws the next frame. Without a
+     * sketch the messages are delivered by calling {@link #deliverMessages()}.
+     * 
+     * @param sketchDelivery
+     *            True to deliver the messages on the sketch thread.
+     */
+    public synchronized void setSketchDelivery(boolean sketchDelivery) {
+	if (sketchDelivery && parent != null && !preRegistered) {
+	    parent.registerMethod("pre", this);
+	    preRegistered = true;
+	}
+	this.sketchDelivery = sketchDelivery;
+    }
+
+    /**
+     * Sets the maximum number of messages delivered per frame, if the delivery
+     * on the sketch thread is enabled. The remaining messages are delivered
+     * with the next frames.
+     * 
+     * @param maxMessagesPerFrame
+     *            The maximum number of messages or 0 for no limit.
+     */
+    public void setMaxMessagesPerFrame(int maxMessagesPerFrame) {
+	inbox.setMaxPerDrain(maxMessagesPerFrame);
+    }
+
+    /**
+     * Enables or disables coalescing, if the delivery on the sketch thread is
+     * enabled. If enabled, only the latest undelivered message of each type is
+     * delivered, e.g. the latest image of the stream.
+     * 
+     * @param coalescing
+     *            True to enable coalescing.
+     */
+    public void setCoalescing(boolean coalescing) {
+	inbox.setCoalescing(coalescing);
+    }
+
+    /**
+     * Delivers the queued messages to the listeners. The method is called
+     * automatically before each frame if the delivery on the sketch thread is
+     * enabled.
+     * 
+     * @return The number of delivered messages.
+     */
+    public int deliverMessages() {
+	return inbox.drain(new Consumer<ReceivedMessage>() {
+	    @Override
+	    public void accept(ReceivedMessage received) {
+		received.swap();
+		fireMessage(received.message);
+		received.release();
+	    }
+	}, new Consumer<ReceivedMessage>() {
+	    @Override
+	    public void accept(ReceivedMessage received) {
+		received.release();
+	    }
+	});
+    }
+
+    /**
+     * Delivers the queued messages: internal use only.
+     */
+    public void pre() {
+	deliverMessages();
+    }
+
     /**
      * Handles an incoming message.
      * 
@@ -141,10 +810,50 @@ public class MuKCastClient {
      *            The incoming message.
      */
     public void handleMessage(Message message) {
-	if (handleMessage != null) {
+	handleMessage(message, null);
+    }
+
+    /**
+     * Handles an incoming message. The pixel array of an image is handed back
+     * to the allocator as soon as the message has been delivered.
+     * 
+     * @param message
+     *            The incoming message.
+     * @param pixelAllocator
+     *            The pixel allocator the message was decoded with or null.
+     */
+    void handleMessage(Message message, PixelAllocator pixelAllocator) {
+	ReceivedMessage received = new ReceivedMessage(message, pixelAllocator);
+	if (sketchDelivery) {
+	    inbox.offer(message instanceof ImageTileMessage ? null : message.getClass(), received);
+	} else {
+	    received.swap();
+	    fireMessage(message);
+	    received.release();
+	}
+    }
+
+    /**
+     * Calls the listeners for a message.
+     * 
+     * @param message
+     *            The message.
+     */
+    private void fireMessage(Message message) {
+	for (MuKCastMessageListener listener : listeners) {
 	    try {
-		handleMessage.invoke(parent, this, message);
-	    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+		if (message instanceof TextMessage) {
+		    listener.onText(this, (TextMessage) message);
+		} else if (message instanceof NumberMessage) {
+		    listener.onNumber(this, (NumberMessage) message);
+		} else if (message instanceof ImageMessage) {
+		    listener.onImage(this, (ImageMessage) message);
+		} else if (message instanceof ImageTileMessage) {
+		    listener.onImageTile(this, (ImageTileMessage) message);
+		} else {
+		    listener.onMessage(this, message);
+		}
+	    } catch (RuntimeException e) {
 		logger.error(e.getMessage(), e);
 	    }
 	}
@@ -163,11 +872,241 @@ public class MuKCastClient {
 	serverHandler.sendMessage(message);
     }
 
+    /**
+     * Sends the latest value of a state to the server, e.g. the position of a
+     * slider. If a message with the same key hasn't been written yet, it is
+     * replaced by the message instead of queuing both, so only the latest
+     * value is sent if the connection can't keep up. The key is compared by
+     * {@code equals}.
+     * 
+     * @param key
+     *            The key of the state.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendConflated(Object key, Message message) throws IOException {
+	if (key == null) {
+	    throw new IllegalArgumentException("The key must not be null.");
+	}
+	serverHandler.sendConflated(key, message);
+    }
+
+    /**
+     * Requests a keyframe of the delta encoded image stream of the server.
+     * 
+     * @throws IOException
+     *             If the request couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void requestKeyframe() throws IOException {
+	serverHandler.sendMessage(new KeyframeRequestMessage());
+    }
+
+    /**
+     * Sets the maximum resolution of the images the client wants to receive,
+     * e.g. the size of its display. The server downscales larger images by the
+     * smallest power of two, which fits them into the resolution, so the client
+     * doesn't download and decode pixels it can't show. The resolution is
+     * sent to the server immediately, if the client is connected, and again
+     * when the client connects.
+     * 
+     * @see MuKCastServer#setMaxResolution(String, int, int)
+     * 
+     * @param maxWidth
+     *            The maximum width or 0 for no limit.
+     * @param maxHeight
+     *            The maximum height or 0 for no limit.
+     * @throws IOException
+     *             If the resolution couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public synchronized void setMaxResolution(int maxWidth, int maxHeight) throws IOException {
+	MaxResolutionMessage resolution = new MaxResolutionMessage(maxWidth, maxHeight);
+	maxResolution = maxWidth > 0 || maxHeight > 0 ? resolution : null;
+
+	if (serverHandler != null && serverHandler.isConnected()) {
+	    serverHandler.sendMessage(resolution);
+	}
+    }
+
+    /**
+     * Subscribes the client to a channel of the server. The client receives
+     * the messages published to the channel afterwards. The subscriptions are
+     * kept by the client and sent again, when the client connects.
+     * 
+     * @see MuKCastServer#publishMessage(String, Message)
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @throws IOException
+     *             If the subscription couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public synchronized void subscribe(String channel) throws IOException {
+	if (channel == null) {
+	    throw new IllegalArgumentException("The channel must not be null.");
+	}
+
+	if (subscriptions.add(channel) && serverHandler != null && serverHandler.isConnected()) {
+	    serverHandler.sendMessage(new SubscribeMessage(channel));
+	}
+    }
+
+    /**
+     * Unsubscribes the client from a channel of the server.
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @throws IOException
+     *             If the server couldn't be notified an {@code IOExction} is
+     *             thrown.
+     */
+    public synchronized void unsubscribe(String channel) throws IOException {
+	if (subscriptions.remove(channel) && serverHandler != null && serverHandler.isConnected()) {
+	    serverHandler.sendMessage(new UnsubscribeMessage(channel));
+	}
+    }
+
+    /**
+     * Returns the channels the client has subscribed to.
+     * 
+     * @return The names of the channels.
+     */
+    public Set<String> getSubscriptions() {
+	return Collections.unmodifiableSet(subscriptions);
+    }
+
+    /**
+     * Joins the multicast group of the server. The server sends the broadcasted
+     * images to the multicast group instead of the connection afterwards.
+     * 
+     * @see MuKCastServer#enableMulticast(String, int)
+     * 
+     * @param group
+     *            The multicast group address.
+     * @param port
+     *            The multicast port.
+     * @throws IOException
+     *             If the group couldn't be joined an {@code IOExction} is
+     *             thrown.
+     */
+    public void joinMulticast(String group, int port) throws IOException {
+	joinMulticast(group, port, null);
+    }
+
+    /**
+     * Joins the multicast group of the server on the given network interface.
+     * On machines with more than one network the default interface of the
+     * system is often not the one the server sends to.
+     * 
+     * @see MuKCastServer#enableMulticast(String, int)
+     * 
+     * @param group
+     *            The multicast group address.
+     * @param port
+     *            The multicast port.
+     * @param networkInterface
+     *            The name of the network interface, e.g. {@code "eth0"}, or
+     *            {@code null} for the default interface of the system.
+     * @throws IOException
+     *             If the group couldn't be joined or the network interface
+     *             doesn't exist an {@code IOExction} is thrown.
+     */
+    public synchronized void joinMulticast(String group, int port, String networkInterface) throws IOException {
+	if (serverHandler == null || !serverHandler.isConnected()) {
+	    throw new IOException("Client is not connected!");
+	}
+
+	NetworkInterface netIf = null;
+	if (networkInterface != null) {
+	    netIf = NetworkInterface.getByName(networkInterface);
+	    if (netIf == null) {
+		throw new IOException("Network interface doesn't exist: " + networkInterface);
+	    }
+	}
+
+	leaveMulticast();
+
+	multicastReceiver = new MuKCastMulticastReceiver(this, serverHandler, InetAddress.getByName(group), port,
+		netIf);
+	multicastGroup = group;
+	multicastPort = port;
+	multicastInterface = networkInterface;
+	execute(multicastReceiver);
+	serverHandler.sendMessage(new MulticastJoinMessage());
+    }
+
+    /**
+     * Leaves the multicast group of the server.
+     * 
+     * @throws IOException
+     *             If the server couldn't be notified an {@code IOExction} is
+     *             thrown.
+     */
+    public synchronized void leaveMulticast() throws IOException {
+	multicastGroup = null;
+	if (multicastReceiver != null) {
+	    multicastReceiver.stop();
+	    multicastReceiver = null;
+
+	    if (serverHandler.isConnected()) {
+		serverHandler.sendMessage(new MulticastLeaveMessage());
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of frames lost by the multicast transport.
+     * 
+     * @return The number of lost frames.
+     */
+    public long getMulticastLostCount() {
+	MuKCastMulticastReceiver receiver = multicastReceiver;
+	return receiver != null ? receiver.getLostCount() : 0;
+    }
+
+    /**
+     * Returns a snapshot of the metrics of the connection to the server. The
+     * messages received by the multicast transport are included.
+     * 
+     * @return The snapshot or null if the client has never been connected.
+     */
+    public ConnectionMetricsSnapshot getMetrics() {
+	MuKCastServerHandler handler = serverHandler;
+	return handler != null ? handler.getMetrics().snapshot() : null;
+    }
+
+    /**
+     * Enables or disables the JMX MBean of the client. The MBean is registered
+     * with the platform MBean server as
+     * {@code at.mukprojects.mukcast:type=Client,name="<host>:<port>"}, where
+     * the port is the local port of the connection if the client is
+     * connected. The MBean is unregistered when the client is disposed.
+     * 
+     * @see MuKCastClientMXBean
+     * 
+     * @param jmxEnabled
+     *            True to register the MBean.
+     */
+    public synchronized void setJmxEnabled(boolean jmxEnabled) {
+	if (jmxEnabled && mbeanName == null) {
+	    String name = clientInfo != null ? clientInfo : host + ":" + port;
+	    mbeanName = MuKCastMBeans.register("Client", name, new ClientBean());
+	} else if (!jmxEnabled && mbeanName != null) {
+	    MuKCastMBeans.unregister(mbeanName);
+	    mbeanName = null;
+	}
+    }
+
     /**
      * Disconnects the client: internal use only.
      */
     public void dispose() {
 	logger.info("Client is disposed.");
+	setJmxEnabled(false);
 	
 	try {
 	    disconnect();
@@ -184,12 +1123,134 @@ public class MuKCastClient {
      *             {@code IOExction} is thrown.
      */
     public void disconnect() throws IOException {
+	synchronized (reconnectLock) {
+	    reconnecting = false;
+	}
+	sessionToken = null;
+	clientKey = null;
+
+	if (multicastReceiver != null) {
+	    multicastReceiver.stop();
+	    multicastReceiver = null;
+	}
+
 	if (serverHandler.isConnected()) {
 	    logger.info("Disconnect client: " + clientInfo);
+	    serverHandler.getMetrics().disconnected(DisconnectReason.CLIENT_REQUEST);
 	    serverHandler.sendMessage(new DisconnectMessage());
 	    serverHandler.stop();
 	} else {
 	    logger.info("Client isn't connected to a server.");
 	}
     }
+
+    /**
+     * The MBean of the client, which takes a new snapshot for every attribute.
+     */
+    private class ClientBean implements MuKCastClientMXBean {
+
+	@Override
+	public boolean isConnected() {
+	    MuKCastServerHandler handler = serverHandler;
+	    return handler != null && handler.isConnected();
+	}
+
+	@Override
+	public long getUptime() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getUptime() : 0;
+	}
+
+	@Override
+	public String getDisconnectReason() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null && snapshot.getDisconnectReason() != null ? snapshot.getDisconnectReason().name()
+		    : null;
+	}
+
+	@Override
+	public long getMessagesIn() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getMessagesIn() : 0;
+	}
+
+	@Override
+	public long getBytesIn() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getBytesIn() : 0;
+	}
+
+	@Override
+	public long getMessagesOut() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getMessagesOut() : 0;
+	}
+
+	@Override
+	public long getBytesOut() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getBytesOut() : 0;
+	}
+
+	@Override
+	public HistogramSnapshot getDecodeTime() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getDecodeTime() : null;
+	}
+
+	@Override
+	public HistogramSnapshot getEncodeTime() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getEncodeTime() : null;
+	}
+
+	@Override
+	public HistogramSnapshot getWriteStallTime() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getWriteStallTime() : null;
+	}
+
+	@Override
+	public HistogramSnapshot getRoundTripTime() {
+	    ConnectionMetricsSnapshot snapshot = getMetrics();
+	    return snapshot != null ? snapshot.getRoundTripTime() : null;
+	}
+
+	@Override
+	public long getClockOffset() {
+	    return MuKCastClient.this.getClockOffset();
+	}
+
+	@Override
+	public long getMulticastLostCount() {
+	    return MuKCastClient.this.getMulticastLostCount();
+	}
+    }
+
+    /**
+     * A received message and the allocator of its pixel array.
+     */
+    private static class ReceivedMessage {
+	private final Message message;
+	private final PixelAllocator pixelAllocator;
+
+	private ReceivedMessage(Message message, PixelAllocator pixelAllocator) {
+	    this.message = message;
+	    this.pixelAllocator = pixelAllocator;
+	}
+
+	private void swap() {
+	    if (pixelAllocator instanceof MuKCastImageTarget && message instanceof ImageMessage) {
+		((MuKCastImageTarget) pixelAllocator).swap((ImageMessage) message);
+	    } else if (pixelAllocator instanceof MuKCastImageTarget && message instanceof ImageTileMessage) {
+		((MuKCastImageTarget) pixelAllocator).apply((ImageTileMessage) message);
+	    }
+	}
+
+	private void release() {
+	    if (pixelAllocator != null && message instanceof ImageMessage) {
+		pixelAllocator.release(((ImageMessage) message).getPixels());
+	    }
+	}
+    }
 }
@@ -0,0 +1,110 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.client;
+
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.message.ImageDeltaMessage;
+import at.mukprojects.mukcast.message.ImageKeyframeMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+
+/**
+ * This class reconstructs the images of a delta encoded image stream.
+ * <p>
+ * The decoder keeps the last frame of the stream. A keyframe replaces the
+ * frame and a delta is applied to it, if it is based on the frame.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastImageStreamDecoder {
+
+    private int width;
+    private int height;
+    private int[] reference;
+    private int sequence;
+
+    /**
+     * Constructs a new MuKCastImageStreamDecoder.
+     */
+    public MuKCastImageStreamDecoder() {
+	this.sequence = -1;
+    }
+
+    /**
+     * Decodes a keyframe.
+     * 
+     * @param message
+     *            The keyframe.
+     * @return The image.
+     */
+    public ImageMessage decode(ImageKeyframeMessage message) {
+	int[] pixels = message.getPixels();
+
+	if (reference == null || reference.length != pixels.length) {
+	    reference = pixels.clone();
+	} else {
+	    System.arraycopy(pixels, 0, reference, 0, pixels.length);
+	}
+	width = message.getWidth();
+	height = message.getHeight();
+	sequence = message.getSequence();
+
+	return message;
+    }
+
+    /**
+     * Decodes a delta.
+     * 
+     * @param message
+     *            The delta.
+     * @return The image or null if the delta isn't based on the last frame and
+     *         a keyframe is needed.
+     */
+    public ImageMessage decode(ImageDeltaMessage message) {
+	return decode(message, null);
+    }
+
+    /**
+     * Decodes a delta. The image is copied into an array of the given
+     * allocator.
+     * 
+     * @param message
+     *            The delta.
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array.
+     * @return The image or null if the delta isn't based on the last frame and
+     *         a keyframe is needed.
+     */
+    public ImageMessage decode(ImageDeltaMessage message, PixelAllocator pixelAllocator) {
+	if (reference == null || message.getBaseSequence() != sequence || message.getWidth() != width
+		|| message.getHeight() != height || reference.length != width * height) {
+	    return null;
+	}
+
+	message.applyTo(reference);
+	sequence = message.getSequence();
+
+	if (pixelAllocator == null) {
+	    return new ImageMessage(width, height, reference.clone());
+	}
+
+	int[] pixels = pixelAllocator.allocate(width, height, reference.length);
+	System.arraycopy(reference, 0, pixels, 0, reference.length);
+	return new ImageMessage(width, height, pixels);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.client;
+
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+import processing.core.PImage;
+
+/**
+ * This class decodes received images into a {@link PImage} without copying
+ * the pixels.
+ * <p>
+ * The images are double buffered. The handler thread decodes a received image
+ * into a back buffer and the buffer is swapped with the pixel array of the
+ * image right before the message is delivered, so the image is never written
+ * while the sketch draws it. With the delivery on the sketch thread, see
+ * {@link MuKCastClient#setSketchDelivery(boolean)}, the swap happens on the
+ * sketch thread, otherwise on the handler thread. The image is reinitialized
+ * if a received image has a different size. The tiles of a tiled image are
+ * copied into the image as they arrive, so the image is shown progressively.
+ * Calling
+ * {@code getImage(target)} of the received {@code ImageMessage} doesn't copy
+ * the pixels and only marks the image as updated.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastImageTarget implements PixelAllocator {
+
+    private PImage image;
+    private int[] backBuffer;
+
+    /**
+     * Constructs a new MuKCastImageTarget.
+     * 
+     * @param image
+     *            The target image.
+     */
+    public MuKCastImageTarget(PImage image) {
+	this.image = image;
+    }
+
+    /**
+     * Returns the target image.
+     * 
+     * @return The target image.
+     */
+    public PImage getImage() {
+	return image;
+    }
+
+    @Override
+    public synchronized int[] allocate(int width, int height, int length) {
+	int[] pixels = backBuffer;
+	backBuffer = null;
+
+	if (pixels == null || pixels.length != length) {
+	    return new int[length];
+	}
+	return pixels;
+    }
+
+    @Override
+    public synchronized void release(int[] pixels) {
+	if (pixels != image.pixels) {
+	    backBuffer = pixels;
+	}
+    }
+
+    /**
+     * Copies a received tile into the image, so a tiled image is shown
+     * progressively: internal use only.
+     * 
+     * @param tile
+     *            The received tile.
+     */
+    synchronized void apply(ImageTileMessage tile) {
+	if (tile.getFrameWidth() != image.width || tile.getFrameHeight() != image.height) {
+	    image.init(tile.getFrameWidth(), tile.getFrameHeight(), image.format);
+	}
+
+	tile.applyTo(image.pixels);
+	image.updatePixels();
+    }
+
+    /**
+     * Swaps the pixel array of the image with the pixels of a received image,
+     * which has been decoded with this target: internal use only.
+     * 
+     * @param message
+     *            The received image.
+     */
+    synchronized void swap(ImageMessage message) {
+	int[] pixels = image.pixels;
+	if (message.getWidth() != image.width || message.getHeight() != image.height) {
+	    image.init(message.getWidth(), message.getHeight(), image.format);
+	    pixels = null;
+	}
+
+	image.pixels = message.getPixels();
+	image.updatePixels();
+	if (pixels != null && pixels.length == image.pixels.length) {
+	    backBuffer = pixels;
+	}
+    }
+}
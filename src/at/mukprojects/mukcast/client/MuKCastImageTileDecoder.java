@@ -0,0 +1,137 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+
+/**
+ * This class reassembles the images of a tiled image transmission.
+ * <p>
+ * The pixels of a frame are allocated with the first tile and every tile is
+ * copied into them as soon as it arrives. The image is returned after the
+ * last tile of the frame. The tiles themselves are delivered to the listeners
+ * and to an image target as they arrive, see
+ * {@link MuKCastMessageListener#onImageTile(MuKCastClient, ImageTileMessage)},
+ * so the image can be shown progressively. Only
+ * a few incomplete frames are kept, the oldest one is discarded as soon as the
+ * tiles of a newer frame arrive.
+ * </p>
+ * 
+ * @see ImageTileMessage
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastImageTileDecoder {
+
+    private static final int MAX_FRAMES = 4;
+
+    private LinkedHashMap<Integer, Frame> frames;
+
+    /**
+     * Constructs a new MuKCastImageTileDecoder.
+     */
+    public MuKCastImageTileDecoder() {
+	this.frames = new LinkedHashMap<Integer, Frame>();
+    }
+
+    /**
+     * Decodes a tile.
+     * 
+     * @param message
+     *            The tile.
+     * @return The image or null if the frame isn't complete yet.
+     */
+    public ImageMessage decode(ImageTileMessage message) {
+	return decode(message, null);
+    }
+
+    /**
+     * Decodes a tile. The frame is assembled in an array of the given
+     * allocator.
+     * 
+     * @param message
+     *            The tile.
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array.
+     * @return The image or null if the frame isn't complete yet.
+     */
+    public ImageMessage decode(ImageTileMessage message, PixelAllocator pixelAllocator) {
+	Integer frameId = message.getFrameId();
+	Frame frame = frames.get(frameId);
+	if (frame == null) {
+	    frame = new Frame(message, pixelAllocator);
+	    frames.put(frameId, frame);
+	    while (frames.size() > MAX_FRAMES) {
+		Iterator<Frame> iterator = frames.values().iterator();
+		iterator.next().release();
+		iterator.remove();
+	    }
+	} else if (frame.width != message.getFrameWidth() || frame.height != message.getFrameHeight()) {
+	    return null;
+	}
+
+	message.applyTo(frame.pixels);
+	frame.received++;
+	if (frame.received < message.getTileCount()) {
+	    return null;
+	}
+
+	frames.remove(frameId);
+	return new ImageMessage(frame.width, frame.height, frame.pixels);
+    }
+
+    /**
+     * Discards the incomplete frames.
+     */
+    public void clear() {
+	for (Frame frame : frames.values()) {
+	    frame.release();
+	}
+	frames.clear();
+    }
+
+    /**
+     * An incomplete frame.
+     */
+    private static class Frame {
+	private final int width;
+	private final int height;
+	private final int[] pixels;
+	private final PixelAllocator pixelAllocator;
+	private int received;
+
+	private Frame(ImageTileMessage message, PixelAllocator pixelAllocator) {
+	    this.width = message.getFrameWidth();
+	    this.height = message.getFrameHeight();
+	    this.pixelAllocator = pixelAllocator;
+	    int length = width * height;
+	    this.pixels = pixelAllocator != null ? pixelAllocator.allocate(width, height, length) : new int[length];
+	}
+
+	private void release() {
+	    if (pixelAllocator != null) {
+		pixelAllocator.release(pixels);
+	    }
+	}
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.client;
+
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.message.TextMessage;
+
+/**
+ * Classes implementing {@code MuKCastMessageListener} interface receive the
+ * messages of a {@link MuKCastClient}.
+ * <p>
+ * Every received message is passed to the method matching its type. The typed
+ * methods pass the message to {@link #onMessage(MuKCastClient, Message)} by
+ * default, so a listener can either handle all messages in one method or
+ * override only the types it is interested in. The methods are called by the
+ * threads of the client.
+ * </p>
+ * 
+ * @see MuKCastClient#addListener(MuKCastMessageListener)
+ * 
+ * @author Mathias Markl
+ */
+public interface MuKCastMessageListener {
+
+    /**
+     * Called for every received message, which isn't handled by a typed
+     * method.
+     * 
+     * @param client
+     *            The client.
+     * @param message
+     *            The message.
+     */
+    public default void onMessage(MuKCastClient client, Message message) {
+    }
+
+    /**
+     * Called for a received {@link TextMessage}.
+     * 
+     * @param client
+     *            The client.
+     * @param message
+     *            The message.
+     */
+    public default void onText(MuKCastClient client, TextMessage message) {
+	onMessage(client, message);
+    }
+
+    /**
+     * Called for a received {@link NumberMessage}.
+     * 
+     * @param client
+     *            The client.
+     * @param message
+     *            The message.
+     */
+    public default void onNumber(MuKCastClient client, NumberMessage message) {
+	onMessage(client, message);
+    }
+
+    /**
+     * Called for a received {@link ImageMessage}.
+     * 
+     * @param client
+     *            The client.
+     * @param message
+     *            The message.
+     */
+    public default void onImage(MuKCastClient client, ImageMessage message) {
+	onMessage(client, message);
+    }
+
+    /**
+     * Called for every tile of a tiled image as soon as it arrives, so the
+     * tile can be drawn at its position before the complete image is
+     * delivered with {@link #onImage(MuKCastClient, ImageMessage)}. Tiles
+     * aren't passed to {@link #onMessage(MuKCastClient, Message)}.
+     * 
+     * @see at.mukprojects.mukcast.server.MuKCastServer#setImageTiling(int, int)
+     * 
+     * @param client
+     *            The client.
+     * @param message
+     *            The tile.
+     */
+    public default void onImageTile(MuKCastClient client, ImageTileMessage message) {
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.client;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.codec.DatagramAssembler;
+import at.mukprojects.mukcast.codec.MessageCodec;
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * This class receives the messages the server sends to a multicast group.
+ * <p>
+ * The datagrams are reassembled into frames and handled like the messages of
+ * the server connection. Lost frames break the delta encoded image stream, so
+ * the next delta can't be applied and a keyframe is requested over the server
+ * connection.
+ * </p>
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastMulticastReceiver implements Runnable, Stoppable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastMulticastReceiver.class);
+
+    /**
+     * Requested size of the socket receive buffer
+     */
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Timeout to check if the receiver is still running
+     */
+    private static final int SO_TIMEOUT = 1000;
+
+    private MuKCastClient client;
+    private MuKCastServerHandler serverHandler;
+
+    private MulticastSocket socket;
+    private InetAddress group;
+    private InetSocketAddress groupAddress;
+    private NetworkInterface networkInterface;
+    private DatagramAssembler assembler;
+
+    private AtomicBoolean running;
+
+    /**
+     * Constructs a new MuKCastMulticastReceiver and joins the multicast group.
+     * 
+     * @param client
+     *            The MuKCastClient.
+     * @param serverHandler
+     *            The handler of the server connection.
+     * @param group
+     *            The multicast group address.
+     * @param port
+     *            The multicast port.
+     * @param networkInterface
+     *            The network interface the group is joined on or {@code null}
+     *            for the default interface of the system.
+     * @throws IOException
+     *             If the group couldn't be joined an {@code IOException} is
+     *             thrown.
+     */
+    public MuKCastMulticastReceiver(MuKCastClient client, MuKCastServerHandler serverHandler, InetAddress group,
+	    int port, NetworkInterface networkInterface) throws IOException {
+	this.client = client;
+	this.serverHandler = serverHandler;
+	this.group = group;
+	this.groupAddress = new InetSocketAddress(group, port);
+	this.networkInterface = networkInterface;
+	this.assembler = new DatagramAssembler();
+	this.running = new AtomicBoolean(true);
+
+	this.socket = new MulticastSocket(port);
+	this.socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+	this.socket.setSoTimeout(SO_TIMEOUT);
+	this.socket.joinGroup(groupAddress, networkInterface);
+    }
+
+    @Override
+    public void run() {
+	logger.info("Multicast receiver has joined the group: " + group.getHostAddress()
+		+ (networkInterface != null ? " on " + networkInterface.getName() : ""));
+
+	byte[] buffer = new byte[64 * 1024];
+	DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+	try {
+	    while (running.get() && serverHandler.isConnected()) {
+		try {
+		    packet.setLength(buffer.length);
+		    socket.receive(packet);
+		} catch (SocketTimeoutException e) {
+		    continue;
+		}
+
+		try {
+		    ByteBuffer frame = assembler.add(packet.getData(), packet.getOffset(), packet.getLength());
+		    if (frame != null) {
+			PixelAllocator pixelAllocator = client.getPixelAllocator();
+			int size = frame.remaining();
+			long start = System.nanoTime();
+			Message message = MessageCodec.decode(frame, pixelAllocator, client.getArrayAllocator());
+			serverHandler.getMetrics().messageReceived(size, System.nanoTime() - start);
+			serverHandler.receiveMessage(message, pixelAllocator);
+		    }
+		} catch (IOException e) {
+		    logger.warn("Multicast frame couldn't be handled: " + e.getMessage());
+		}
+	    }
+	} catch (IOException e) {
+	    if (running.get()) {
+		logger.error(e.getMessage(), e);
+	    }
+	} finally {
+	    running.set(false);
+	    try {
+		socket.leaveGroup(groupAddress, networkInterface);
+	    } catch (IOException e) {
+		logger.debug(e.getMessage(), e);
+	    }
+	    socket.close();
+	}
+
+	logger.info("Multicast receiver has left the group.");
+    }
+
+    /**
+     * Returns the number of frames which were lost.
+     * 
+     * @return The number of lost frames.
+     */
+    public long getLostCount() {
+	return assembler.getLostCount();
+    }
+
+    @Override
+    public void stop() {
+	running.set(false);
+    }
+}
@@ -18,24 +18,44 @@
 package at.mukprojects.mukcast.client;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.MessageReader;
+import at.mukprojects.mukcast.codec.MessageWriter;
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.concurrent.Heartbeat;
+import at.mukprojects.mukcast.concurrent.OverflowPolicy;
+import at.mukprojects.mukcast.concurrent.SendQueue;
 import at.mukprojects.mukcast.concurrent.Stoppable;
 import at.mukprojects.mukcast.message.DisconnectMessage;
+import at.mukprojects.mukcast.message.ImageDeltaMessage;
+import at.mukprojects.mukcast.message.ImageKeyframeMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+import at.mukprojects.mukcast.message.KeyframeRequestMessage;
 import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.PingMessage;
+import at.mukprojects.mukcast.message.PongMessage;
+import at.mukprojects.mukcast.message.SessionMessage;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+import at.mukprojects.mukcast.server.MuKCastServer;
+import at.mukprojects.mukcast.transport.Link;
 
 /**
  * This class handles the incoming and outgoing messages of the client server
  * connection.
  * <p>
+ * Outgoing messages are added to a {@link SendQueue}, which blocks the sender
+ * if it is full, and delivered by the {@link MessageWriter} of the link, which
+ * coalesces small messages over TCP.
+ * </p>
+ * <p>
  * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
  * is designed as a thread.
  * </p>
@@ -47,26 +67,37 @@ public class MuKCastServerHandler implements Runnable, Stoppable {
     private static final Logger logger = LoggerFactory.getLogger(MuKCastServerHandler.class);
 
     private MuKCastClient client;
-    private Socket socket;
+    private Link link;
+
+    private MessageReader frameReader;
+
+    private SendQueue<EncodedMessage> sendQueue;
+    private volatile MessageWriter frameWriter;
+
+    private MuKCastImageStreamDecoder imageDecoder;
+    private MuKCastImageTileDecoder tileDecoder;
+    private boolean keyframeRequested;
 
-    private InputStream inputStream;
-    private OutputStream outputStream;
-    private ObjectInputStream objectInputStream;
-    private ObjectOutputStream objectOutputStream;
+    private ConnectionMetrics metrics;
 
     private AtomicBoolean running;
+    private Heartbeat heartbeat;
 
     /**
      * Constructs a new MuKCastServerHandler
      * 
      * @param client
      *            The MuKCastClient.
-     * @param socket
-     *            The socket.
+     * @param link
+     *            The link to the server.
      */
-    public MuKCastServerHandler(MuKCastClient client, Socket socket) {
+    public MuKCastServerHandler(MuKCastClient client, Link link) {
 	this.client = client;
-	this.socket = socket;
+	this.link = link;
+	this.imageDecoder = new MuKCastImageStreamDecoder();
+	this.tileDecoder = new MuKCastImageTileDecoder();
+	this.sendQueue = new SendQueue<EncodedMessage>(MuKCastServer.DEFAULT_SEND_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+	this.metrics = new ConnectionMetrics(client.getClientInfo(), -1, null, null);
 	this.running = new AtomicBoolean(true);
     }
 
@@ -75,50 +106,97 @@ public class MuKCastServerHandler implements Runnable, Stoppable {
 	logger.info("Handler has started to listen for messages.");
 
 	try {
-	    outputStream = socket.getOutputStream();
-	    inputStream = socket.getInputStream();
-	    objectOutputStream = new ObjectOutputStream(outputStream);
-	    objectInputStream = new ObjectInputStream(inputStream);
+	    frameReader = link.createReader();
+	    frameReader.setMetrics(metrics);
 
-	    while (running.get()) {
-		Object message = objectInputStream.readUnshared();
-
-		if (message instanceof Message) {
-		    if (message instanceof DisconnectMessage) {
-			logger.info("Client got disconnected by the server.");
-			stop();
-		    } else {
-			client.handleMessage((Message) message);
+	    frameWriter = link.createWriter(sendQueue, metrics, client.getFlushThreshold(), client.getFlushDelay(),
+		    TimeUnit.NANOSECONDS);
+	    client.execute(frameWriter);
+
+	    long heartbeatInterval = client.getHeartbeatInterval();
+	    if (heartbeatInterval > 0) {
+		final long heartbeatTimeout = client.getHeartbeatTimeout();
+		heartbeat = new Heartbeat(new Runnable() {
+		    @Override
+		    public void run() {
+			checkHeartbeat(heartbeatTimeout);
 		    }
+		}, heartbeatInterval, TimeUnit.NANOSECONDS);
+		client.execute(heartbeat);
+	    }
+
+	    while (running.get()) {
+		PixelAllocator pixelAllocator = client.getPixelAllocator();
+		frameReader.setPixelAllocator(pixelAllocator);
+		frameReader.setArrayAllocator(client.getArrayAllocator());
+		Message message = frameReader.readMessage();
+
+		if (message instanceof DisconnectMessage) {
+		    logger.info("Client got disconnected by the server.");
+		    metrics.disconnected(DisconnectReason.SERVER_REQUEST);
+		    stop();
+		} else {
+		    receiveMessage(message, pixelAllocator);
 		}
 	    }
 
-	} catch (IOException | ClassNotFoundException e) {
-	    logger.error(e.getMessage(), e);
+	} catch (IOException e) {
+	    if (metrics.disconnected(DisconnectReason.valueOf(e)) && running.get()) {
+		logger.error(e.getMessage(), e);
+	    } else {
+		/*
+		 * The connection has been closed on purpose, e.g. the server has
+		 * closed it after the client has requested the disconnect.
+		 */
+		logger.debug("Connection closed after the disconnect: " + e);
+	    }
 	} finally {
 	    try {
 		running.set(false);
-		if (objectInputStream != null) {
-		    objectInputStream.close();
+		sendQueue.close();
+		if (heartbeat != null) {
+		    heartbeat.stop();
 		}
-		if (objectOutputStream != null) {
-		    objectOutputStream.close();
-		}
-		if (inputStream != null) {
-		    inputStream.close();
-		}
-		if (outputStream != null) {
-		    outputStream.close();
-		}
-		if (socket != null) {
-		    socket.close();
+		if (frameReader != null) {
+		    frameReader.close();
 		}
+		link.close();
 	    } catch (IOException e) {
 		logger.error(e.getMessage(), e);
 	    }
 	}
 
 	logger.info("Handler has stopped to listen.");
+	client.connectionClosed(this);
+    }
+
+    /**
+     * Closes the connection, if the server hasn't sent anything within the
+     * timeout, or pings the server.
+     * 
+     * @param timeout
+     *            The heartbeat timeout in nanoseconds.
+     */
+    private void checkHeartbeat(long timeout) {
+	long now = System.nanoTime();
+	long silence = now - metrics.getLastReceivedAt();
+	if (silence > timeout) {
+	    logger.warn("Server hasn't answered for " + TimeUnit.NANOSECONDS.toMillis(silence)
+		    + "ms, the connection gets closed.");
+	    metrics.disconnected(DisconnectReason.TIMEOUT);
+	    stop();
+	    try {
+		link.close();
+	    } catch (IOException e) {
+		logger.error(e.getMessage(), e);
+	    }
+	} else {
+	    try {
+		sendMessage(new PingMessage(now));
+	    } catch (IOException e) {
+		logger.debug("Server couldn't be pinged: " + e.getMessage());
+	    }
+	}
     }
 
     /**
@@ -132,7 +210,17 @@ public class MuKCastServerHandler implements Runnable, Stoppable {
     }
 
     /**
-     * Sends a message to the server.
+     * Returns the metrics of the connection.
+     * 
+     * @return The connection metrics.
+     */
+    public ConnectionMetrics getMetrics() {
+	return metrics;
+    }
+
+    /**
+     * Sends a message to the server. The message is queued and the method
+     * returns immediately, unless the queue is full.
      * 
      * @param message
      *            The message.
@@ -141,17 +229,100 @@ public class MuKCastServerHandler implements Runnable, Stoppable {
      *             thrown.
      */
     public void sendMessage(Message message) throws IOException {
-	if (isConnected() && objectOutputStream != null) {
-	    objectOutputStream.writeUnshared(message);
-	    objectOutputStream.reset();
+	sendConflated(null, message);
+    }
+
+    /**
+     * Sends a message to the server. If a message with the same conflation key
+     * is still queued, it is replaced by the message.
+     * 
+     * @param key
+     *            The conflation key or null if the message must not be
+     *            replaced.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendConflated(Object key, Message message) throws IOException {
+	if (isConnected()) {
+	    long start = System.nanoTime();
+	    EncodedMessage encodedMessage = new EncodedMessage(message);
+	    metrics.messageEncoded(System.nanoTime() - start);
+
+	    boolean queued = key == null && encodedMessage.isControl() ? sendQueue.offerPriority(encodedMessage)
+		    : sendQueue.offer(key, encodedMessage);
+	    if (queued) {
+		return;
+	    }
+	}
+	throw new IOException("Client is not connected!");
+    }
+
+    /**
+     * Writes the buffered messages without waiting for the flush threshold or
+     * the flush delay.
+     */
+    public void flush() {
+	MessageWriter writer = frameWriter;
+	if (writer != null) {
+	    writer.flush();
+	}
+    }
+
+    /**
+     * Handles a received message. Images of the delta encoded image stream are
+     * reconstructed and a keyframe is requested if a delta can't be applied.
+     * The method is used by the connection and the multicast receiver.
+     * 
+     * @param message
+     *            The message.
+     * @param pixelAllocator
+     *            The pixel allocator the message was decoded with.
+     * @throws IOException
+     *             If the keyframe couldn't be requested an {@code IOException}
+     *             is thrown.
+     */
+    synchronized void receiveMessage(Message message, PixelAllocator pixelAllocator) throws IOException {
+	if (message instanceof ImageKeyframeMessage) {
+	    keyframeRequested = false;
+	    client.handleMessage(imageDecoder.decode((ImageKeyframeMessage) message), pixelAllocator);
+	} else if (message instanceof ImageDeltaMessage) {
+	    ImageMessage image = imageDecoder.decode((ImageDeltaMessage) message, pixelAllocator);
+	    if (image != null) {
+		client.handleMessage(image, pixelAllocator);
+	    } else if (!keyframeRequested) {
+		keyframeRequested = true;
+		sendMessage(new KeyframeRequestMessage());
+	    }
+	} else if (message instanceof PingMessage) {
+	    if (running.get()) {
+		sendMessage(new PongMessage(((PingMessage) message).getTimestamp(), System.currentTimeMillis()));
+	    }
+	} else if (message instanceof PongMessage) {
+	    PongMessage pong = (PongMessage) message;
+	    metrics.pongReceived(pong.getTimestamp(), pong.getTime());
+	} else if (message instanceof SessionMessage) {
+	    client.sessionStarted((SessionMessage) message);
+	} else if (message instanceof ImageTileMessage) {
+	    client.handleMessage(message, pixelAllocator);
+	    ImageMessage image = tileDecoder.decode((ImageTileMessage) message, pixelAllocator);
+	    if (image != null) {
+		client.handleMessage(image, pixelAllocator);
+	    }
 	} else {
-	    throw new IOException("Client is not connected!");
+	    client.handleMessage(message, pixelAllocator);
 	}
     }
 
+    /**
+     * Stops the handler. The queued messages are still written.
+     */
     @Override
     public void stop() {
 	running.set(false);
+	sendQueue.close();
     }
 
 }
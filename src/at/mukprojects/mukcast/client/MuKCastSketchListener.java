@@ -0,0 +1,73 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.client;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * This class passes the received messages to the
+ * {@code handleMessage(MuKCastClient client, Message message)} method of a
+ * sketch. The method is looked up once and bound to the sketch as a
+ * {@link MethodHandle}.
+ * 
+ * @author Mathias Markl
+ */
+class MuKCastSketchListener implements MuKCastMessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastSketchListener.class);
+
+    private final MethodHandle handleMessage;
+
+    /**
+     * Constructs a new MuKCastSketchListener.
+     * 
+     * @param sketch
+     *            The sketch.
+     */
+    MuKCastSketchListener(Object sketch) {
+	MethodHandle handle = null;
+	try {
+	    Method method = sketch.getClass().getMethod("handleMessage", MuKCastClient.class, Message.class);
+	    handle = MethodHandles.lookup().unreflect(method).bindTo(sketch)
+		    .asType(MethodType.methodType(void.class, MuKCastClient.class, Message.class));
+	} catch (NoSuchMethodException | IllegalAccessException e) {
+	    logger.warn("No method called \"handleMessage(MuKCastClient client, Message message)\" could"
+		    + " be found in the PApplet class.");
+	}
+	handleMessage = handle;
+    }
+
+    @Override
+    public void onMessage(MuKCastClient client, Message message) {
+	if (handleMessage != null) {
+	    try {
+		handleMessage.invokeExact(client, message);
+	    } catch (Throwable e) {
+		logger.error(e.getMessage(), e);
+	    }
+	}
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class provides the conversions, which are shared by the image codecs
+ * of the library.
+ * 
+ * @see ImageCodec
+ * 
+ * @author Mathias Markl
+ */
+public abstract class AbstractImageCodec implements ImageCodec {
+
+    private byte id;
+
+    /**
+     * Constructs a new AbstractImageCodec.
+     * 
+     * @param id
+     *            The codec id.
+     */
+    protected AbstractImageCodec(byte id) {
+	this.id = id;
+    }
+
+    @Override
+    public byte getId() {
+	return id;
+    }
+
+    /**
+     * Returns the number of pixels per row. The number is derived from the
+     * array length, because the pixel array can be larger than the image, e.g.
+     * because of the pixel density. If the array can't be divided into rows,
+     * the whole array is treated as a single row.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param pixels
+     *            The image pixel array.
+     * @return The number of pixels per row.
+     */
+    protected static int getRowLength(int width, int height, int[] pixels) {
+	if (height > 0 && pixels.length % height == 0) {
+	    return pixels.length / height;
+	}
+	return pixels.length;
+    }
+
+    /**
+     * Converts the pixels into bytes in ARGB order.
+     * 
+     * @param pixels
+     *            The pixels.
+     * @return The bytes.
+     */
+    protected static byte[] toBytes(int[] pixels) {
+	ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4);
+	buffer.asIntBuffer().put(pixels);
+	return buffer.array();
+    }
+
+    /**
+     * Converts bytes in ARGB order into pixels.
+     * 
+     * @param bytes
+     *            The bytes.
+     * @param pixels
+     *            The pixel array.
+     */
+    protected static void toPixels(byte[] bytes, int[] pixels) {
+	ByteBuffer.wrap(bytes, 0, pixels.length * 4).asIntBuffer().get(pixels);
+    }
+
+    /**
+     * Returns the remaining bytes of the buffer as an array.
+     * 
+     * @param data
+     *            The buffer.
+     * @return The bytes.
+     */
+    protected static byte[] toArray(ByteBuffer data) {
+	byte[] bytes = new byte[data.remaining()];
+	data.get(bytes);
+	return bytes;
+    }
+
+    /**
+     * Compresses bytes with the deflate algorithm.
+     * 
+     * @param bytes
+     *            The bytes.
+     * @param level
+     *            The compression level.
+     * @return The compressed bytes.
+     */
+    protected static byte[] deflate(byte[] bytes, int level) {
+	Deflater deflater = new Deflater(level);
+	try {
+	    deflater.setInput(bytes);
+	    deflater.finish();
+
+	    byte[] buffer = new byte[Math.max(64, bytes.length / 4)];
+	    int length = 0;
+	    while (!deflater.finished()) {
+		if (length == buffer.length) {
+		    byte[] grown = new byte[buffer.length * 2];
+		    System.arraycopy(buffer, 0, grown, 0, length);
+		    buffer = grown;
+		}
+		length += deflater.deflate(buffer, length, buffer.length - length);
+	    }
+
+	    byte[] compressed = new byte[length];
+	    System.arraycopy(buffer, 0, compressed, 0, length);
+	    return compressed;
+	} finally {
+	    deflater.end();
+	}
+    }
+
+    /**
+     * Decompresses bytes, which have been compressed with the deflate
+     * algorithm.
+     * 
+     * @param data
+     *            The compressed bytes.
+     * @param length
+     *            The length of the decompressed bytes.
+     * @return The decompressed bytes.
+     * @throws IOException
+     *             If the bytes couldn't be decompressed an {@code IOException}
+     *             is thrown.
+     */
+    protected static byte[] inflate(ByteBuffer data, int length) throws IOException {
+	Inflater inflater = new Inflater();
+	try {
+	    if (data.hasArray()) {
+		inflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining());
+	    } else {
+		inflater.setInput(toArray(data));
+	    }
+
+	    byte[] bytes = new byte[length];
+	    int offset = 0;
+	    while (offset < length && !inflater.finished()) {
+		int inflated = inflater.inflate(bytes, offset, length - offset);
+		if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+		    break;
+		}
+		offset += inflated;
+	    }
+
+	    if (offset != length) {
+		throw new IOException("Compressed image data is truncated.");
+	    }
+	    return bytes;
+	} catch (DataFormatException e) {
+	    throw new IOException(e.getMessage(), e);
+	} finally {
+	    inflater.end();
+	}
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.mukprojects.mukcast.codec;
+
+/**
+ * Classes implementing {@code ArrayAllocator} interface provide the arrays the
+ * values of received array messages are decoded into.
+ * <p>
+ * An allocator allows the receiver to decode the values directly into its own
+ * arrays instead of allocating a new array for every received message. The
+ * returned array must have exactly the requested length.
+ * </p>
+ * 
+ * @see ArrayTarget
+ * 
+ * @author Mathias Markl
+ */
+public interface ArrayAllocator {
+
+    /**
+     * Returns an array for a received {@code FloatArrayMessage}.
+     * 
+     * @param length
+     *            The number of values.
+     * @return The array with exactly the given length.
+     */
+    public float[] allocateFloats(int length);
+
+    /**
+     * Returns an array for a received {@code IntArrayMessage}.
+     * 
+     * @param length
+     *            The number of values.
+     * @return The array with exactly the given length.
+     */
+    public int[] allocateInts(int length);
+
+    /**
+     * Returns an array for a received {@code DoubleArrayMessage}.
+     * 
+     * @param length
+     *            The number of values.
+     * @return The array with exactly the given length.
+     */
+    public double[] allocateDoubles(int length);
+
+    /**
+     * Returns an array for a received {@code ByteArrayMessage}.
+     * 
+     * @param length
+     *            The number of values.
+     * @return The array with exactly the given length.
+     */
+    public byte[] allocateBytes(int length);
+}
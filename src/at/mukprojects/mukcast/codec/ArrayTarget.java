@@ -0,0 +1,165 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.mukprojects.mukcast.codec;
+
+/**
+ * This class decodes received array messages directly into target arrays, one
+ * per value type.
+ * <p>
+ * If a received array has a different length than the target array, a new
+ * target array is allocated and reused for the following messages. The values
+ * are written by the network threads, so the arrays should only be used inside
+ * of the message callback. Calling {@code getValues(target)} of the received
+ * message with the target array doesn't copy the values.
+ * </p>
+ * 
+ * @see ArrayAllocator
+ * 
+ * @author Mathias Markl
+ */
+public class ArrayTarget implements ArrayAllocator {
+
+    private volatile float[] floats;
+    private volatile int[] ints;
+    private volatile double[] doubles;
+    private volatile byte[] bytes;
+
+    /**
+     * Constructs a new ArrayTarget without target arrays. The arrays are
+     * allocated with the first received message of each type.
+     */
+    public ArrayTarget() {
+    }
+
+    /**
+     * Sets the target array for received {@code FloatArrayMessage}s.
+     * 
+     * @param floats
+     *            The target array or null.
+     */
+    public void setFloats(float[] floats) {
+	this.floats = floats;
+    }
+
+    /**
+     * Returns the target array for received {@code FloatArrayMessage}s.
+     * 
+     * @return The target array or null.
+     */
+    public float[] getFloats() {
+	return floats;
+    }
+
+    /**
+     * Sets the target array for received {@code IntArrayMessage}s.
+     * 
+     * @param ints
+     *            The target array or null.
+     */
+    public void setInts(int[] ints) {
+	this.ints = ints;
+    }
+
+    /**
+     * Returns the target array for received {@code IntArrayMessage}s.
+     * 
+     * @return The target array or null.
+     */
+    public int[] getInts() {
+	return ints;
+    }
+
+    /**
+     * Sets the target array for received {@code DoubleArrayMessage}s.
+     * 
+     * @param doubles
+     *            The target array or null.
+     */
+    public void setDoubles(double[] doubles) {
+	this.doubles = doubles;
+    }
+
+    /**
+     * Returns the target array for received {@code DoubleArrayMessage}s.
+     * 
+     * @return The target array or null.
+     */
+    public double[] getDoubles() {
+	return doubles;
+    }
+
+    /**
+     * Sets the target array for received {@code ByteArrayMessage}s.
+     * 
+     * @param bytes
+     *            The target array or null.
+     */
+    public void setBytes(byte[] bytes) {
+	this.bytes = bytes;
+    }
+
+    /**
+     * Returns the target array for received {@code ByteArrayMessage}s.
+     * 
+     * @return The target array or null.
+     */
+    public byte[] getBytes() {
+	return bytes;
+    }
+
+    @Override
+    public float[] allocateFloats(int length) {
+	float[] target = floats;
+	if (target == null || target.length != length) {
+	    target = new float[length];
+	    floats = target;
+	}
+	return target;
+    }
+
+    @Override
+    public int[] allocateInts(int length) {
+	int[] target = ints;
+	if (target == null || target.length != length) {
+	    target = new int[length];
+	    ints = target;
+	}
+	return target;
+    }
+
+    @Override
+    public double[] allocateDoubles(int length) {
+	double[] target = doubles;
+	if (target == null || target.length != length) {
+	    target = new double[length];
+	    doubles = target;
+	}
+	return target;
+    }
+
+    @Override
+    public byte[] allocateBytes(int length) {
+	byte[] target = bytes;
+	if (target == null || target.length != length) {
+	    target = new byte[length];
+	    bytes = target;
+	}
+	return target;
+    }
+}
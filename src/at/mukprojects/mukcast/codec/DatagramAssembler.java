@@ -0,0 +1,197 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class reassembles the frames of the multicast transport from their
+ * datagrams.
+ * <p>
+ * Frames are delivered in the order of their sequence numbers. A frame which
+ * is completed after a newer frame is dropped and every skipped sequence
+ * number is counted as a lost frame. If the sender starts a new session the
+ * assembler starts over.
+ * </p>
+ * 
+ * @see DatagramCodec
+ * 
+ * @author Mathias Markl
+ */
+public class DatagramAssembler {
+
+    /**
+     * The maximum number of incomplete frames
+     */
+    private static final int MAX_PENDING_FRAMES = 4;
+
+    private boolean started;
+    private int session;
+    private int sequence;
+    private long lostCount;
+
+    private Map<Integer, Assembly> pending;
+    private byte[] spareBuffer;
+    private byte[] completedBuffer;
+
+    /**
+     * Constructs a new DatagramAssembler.
+     */
+    public DatagramAssembler() {
+	this.pending = new LinkedHashMap<Integer, Assembly>();
+    }
+
+    /**
+     * Adds a datagram.
+     * 
+     * @param datagram
+     *            The datagram data.
+     * @param offset
+     *            The offset of the datagram.
+     * @param length
+     *            The length of the datagram.
+     * @return The completed frame without the length field, positioned at the
+     *         type tag, or null if no frame was completed. The buffer is only
+     *         valid until the next datagram is added.
+     * @throws IOException
+     *             If the datagram is malformed an {@code IOException} is
+     *             thrown.
+     */
+    public ByteBuffer add(byte[] datagram, int offset, int length) throws IOException {
+	if (completedBuffer != null) {
+	    spareBuffer = completedBuffer;
+	    completedBuffer = null;
+	}
+
+	if (length < DatagramCodec.HEADER_SIZE) {
+	    throw new IOException("Malformed datagram: " + length + " bytes");
+	}
+
+	ByteBuffer buffer = ByteBuffer.wrap(datagram, offset, length);
+	int datagramSession = buffer.getInt();
+	int datagramSequence = buffer.getInt();
+	int frameLength = buffer.getInt();
+	int index = buffer.getShort() & 0xFFFF;
+	int fragmentCount = buffer.getShort() & 0xFFFF;
+
+	if (frameLength < MessageCodec.HEADER_SIZE || frameLength - 4 > MessageCodec.MAX_FRAME_LENGTH
+		|| fragmentCount == 0 || index >= fragmentCount) {
+	    throw new IOException("Malformed datagram header.");
+	}
+
+	if (!started || datagramSession != session) {
+	    started = true;
+	    session = datagramSession;
+	    sequence = datagramSequence - 1;
+	    pending.clear();
+	}
+
+	if (datagramSequence - sequence <= 0) {
+	    return null;
+	}
+
+	Assembly assembly = pending.get(datagramSequence);
+	if (assembly == null) {
+	    if (pending.size() >= MAX_PENDING_FRAMES) {
+		Iterator<Integer> iterator = pending.keySet().iterator();
+		iterator.next();
+		iterator.remove();
+	    }
+
+	    assembly = new Assembly(frameLength, fragmentCount, allocate(frameLength));
+	    pending.put(datagramSequence, assembly);
+	} else if (assembly.frameLength != frameLength || assembly.received.length != fragmentCount) {
+	    throw new IOException("Malformed datagram: fragment doesn't match its frame.");
+	}
+
+	if (!assembly.add(index, buffer)) {
+	    return null;
+	}
+
+	pending.remove(datagramSequence);
+	Iterator<Integer> iterator = pending.keySet().iterator();
+	while (iterator.hasNext()) {
+	    if (iterator.next() - datagramSequence < 0) {
+		iterator.remove();
+	    }
+	}
+
+	lostCount += datagramSequence - sequence - 1;
+	sequence = datagramSequence;
+
+	completedBuffer = assembly.data;
+	ByteBuffer frame = ByteBuffer.wrap(assembly.data, 4, frameLength - 4);
+	int frameSize = frame.getInt(0);
+	if (frameSize != frameLength - 4) {
+	    throw new IOException("Malformed frame: invalid length " + frameSize);
+	}
+	return frame;
+    }
+
+    /**
+     * Returns the number of frames which were lost.
+     * 
+     * @return The number of lost frames.
+     */
+    public long getLostCount() {
+	return lostCount;
+    }
+
+    private byte[] allocate(int length) {
+	byte[] data = spareBuffer;
+	if (data != null && data.length >= length) {
+	    spareBuffer = null;
+	    return data;
+	}
+	return new byte[length];
+    }
+
+    private static class Assembly {
+	private int frameLength;
+	private int fragmentSize;
+	private boolean[] received;
+	private int receivedCount;
+	private byte[] data;
+
+	private Assembly(int frameLength, int fragmentCount, byte[] data) {
+	    this.frameLength = frameLength;
+	    this.fragmentSize = DatagramCodec.getFragmentSize(frameLength, fragmentCount);
+	    this.received = new boolean[fragmentCount];
+	    this.data = data;
+	}
+
+	private boolean add(int index, ByteBuffer fragment) throws IOException {
+	    int offset = index * fragmentSize;
+	    int length = Math.min(fragmentSize, frameLength - offset);
+	    if (length <= 0 || fragment.remaining() != length) {
+		throw new IOException("Malformed datagram: invalid fragment length " + fragment.remaining());
+	    }
+
+	    if (!received[index]) {
+		fragment.get(data, offset, length);
+		received[index] = true;
+		receivedCount++;
+	    }
+	    return receivedCount == received.length;
+	}
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class splits frames into datagrams for the multicast transport.
+ * <p>
+ * Every datagram starts with a header (16 bytes) containing the session id of
+ * the sender, the sequence number of the frame, the frame length, the fragment
+ * index and the fragment count followed by a part of the frame. All fragments
+ * except the last one have the same size, so the receiver can place every
+ * fragment directly at its offset.
+ * </p>
+ * 
+ * @see DatagramAssembler
+ * 
+ * @author Mathias Markl
+ */
+public final class DatagramCodec {
+
+    /**
+     * The size of the datagram header.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Default datagram size, which fits into the MTU of an ethernet network
+     */
+    public static final int DEFAULT_DATAGRAM_SIZE = 1400;
+
+    /**
+     * The maximum number of fragments of a frame.
+     */
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    private DatagramCodec() {
+    }
+
+    /**
+     * Returns the number of fragments of a frame.
+     * 
+     * @param frameLength
+     *            The frame length.
+     * @param datagramSize
+     *            The maximum datagram size.
+     * @return The number of fragments.
+     */
+    public static int getFragmentCount(int frameLength, int datagramSize) {
+	int payloadSize = datagramSize - HEADER_SIZE;
+	return Math.max(1, (frameLength + payloadSize - 1) / payloadSize);
+    }
+
+    /**
+     * Returns the size of all fragments except the last one.
+     * 
+     * @param frameLength
+     *            The frame length.
+     * @param fragmentCount
+     *            The number of fragments.
+     * @return The fragment size.
+     */
+    public static int getFragmentSize(int frameLength, int fragmentCount) {
+	return (frameLength + fragmentCount - 1) / fragmentCount;
+    }
+
+    /**
+     * Writes a fragment of the frame into the datagram buffer.
+     * 
+     * @param datagram
+     *            The datagram buffer. It has to be large enough for the header
+     *            and the fragment.
+     * @param frame
+     *            The frame.
+     * @param session
+     *            The session id of the sender.
+     * @param sequence
+     *            The sequence number of the frame.
+     * @param index
+     *            The fragment index.
+     * @param fragmentCount
+     *            The number of fragments.
+     * @return The datagram length.
+     */
+    public static int putFragment(byte[] datagram, ByteBuffer frame, int session, int sequence, int index,
+	    int fragmentCount) {
+	int frameLength = frame.remaining();
+	int fragmentSize = getFragmentSize(frameLength, fragmentCount);
+	int offset = index * fragmentSize;
+	int length = Math.min(fragmentSize, frameLength - offset);
+
+	ByteBuffer buffer = ByteBuffer.wrap(datagram);
+	buffer.putInt(session).putInt(sequence).putInt(frameLength).putShort((short) index)
+		.putShort((short) fragmentCount);
+
+	ByteBuffer fragment = frame.duplicate();
+	fragment.position(frame.position() + offset);
+	fragment.limit(frame.position() + offset + length);
+	buffer.put(fragment);
+
+	return HEADER_SIZE + length;
+    }
+}
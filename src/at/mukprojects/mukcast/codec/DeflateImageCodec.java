@@ -0,0 +1,63 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * DeflateImageCodec is a lossless codec, which compresses the pixels with the
+ * deflate algorithm.
+ * 
+ * @see ImageCodecs#DEFLATE
+ * 
+ * @author Mathias Markl
+ */
+public class DeflateImageCodec extends AbstractImageCodec {
+
+    private int level;
+
+    /**
+     * Constructs a new DeflateImageCodec with the fastest compression level.
+     */
+    public DeflateImageCodec() {
+	this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Constructs a new DeflateImageCodec.
+     * 
+     * @param level
+     *            The compression level (0-9).
+     */
+    public DeflateImageCodec(int level) {
+	super(ImageCodecs.DEFLATE_ID);
+	this.level = level;
+    }
+
+    @Override
+    public byte[] encode(int width, int height, int[] pixels) throws IOException {
+	return deflate(toBytes(pixels), level);
+    }
+
+    @Override
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException {
+	toPixels(inflate(data, pixels.length * 4), pixels);
+    }
+}
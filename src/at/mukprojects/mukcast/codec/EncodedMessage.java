@@ -0,0 +1,165 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * EncodedMessage represents a message, which has already been encoded into a
+ * frame of the MuKCast wire format.
+ * <p>
+ * An EncodedMessage is immutable. The same instance can be written to any
+ * number of connections without encoding the message again.
+ * </p>
+ * 
+ * @see MessageCodec
+ * 
+ * @author Mathias Markl
+ */
+public final class EncodedMessage {
+
+    private final byte[] frame;
+
+    /**
+     * Constructs a new EncodedMessage.
+     * 
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public EncodedMessage(Message message) throws IOException {
+	this.frame = MessageCodec.encode(message);
+    }
+
+    /**
+     * Constructs a new EncodedMessage. The pixels of an image message are
+     * compressed with the image codec.
+     * 
+     * @param message
+     *            The message.
+     * @param imageCodec
+     *            The image codec or null to send the pixels uncompressed.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public EncodedMessage(Message message, ImageCodec imageCodec) throws IOException {
+	this.frame = MessageCodec.encode(message, imageCodec);
+    }
+
+    /**
+     * Constructs a new EncodedMessage from a frame, which has already been
+     * encoded, e.g. a recorded frame. The array isn't copied, so it must not
+     * be modified afterwards.
+     * 
+     * @param frame
+     *            The frame including the frame header.
+     * @throws IOException
+     *             If the frame is malformed an {@code IOException} is thrown.
+     */
+    public EncodedMessage(byte[] frame) throws IOException {
+	if (frame == null || frame.length < MessageCodec.HEADER_SIZE) {
+	    throw new IOException("The frame is incomplete.");
+	}
+	int length = ByteBuffer.wrap(frame).getInt();
+	MessageCodec.checkFrameLength(length);
+	if (length != frame.length - 4) {
+	    throw new IOException("Invalid frame length: " + length);
+	}
+	this.frame = frame;
+    }
+
+    /**
+     * Returns the type tag of the frame.
+     * 
+     * @return The type tag.
+     */
+    public byte getType() {
+	return frame[4];
+    }
+
+    /**
+     * Checks if the frame is a control message, which may overtake queued
+     * frames.
+     * 
+     * @see MessageCodec#isControl(byte)
+     * 
+     * @return True if the frame is a control message.
+     */
+    public boolean isControl() {
+	return MessageCodec.isControl(frame[4]);
+    }
+
+    /**
+     * Returns the size of the frame including the frame header.
+     * 
+     * @return The frame size.
+     */
+    public int size() {
+	return frame.length;
+    }
+
+    /**
+     * Returns a read-only buffer of the frame. Every call returns a new buffer
+     * with its own position, which starts at the beginning of the frame.
+     * 
+     * @return The frame buffer.
+     */
+    public ByteBuffer asByteBuffer() {
+	return ByteBuffer.wrap(frame).asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes the frame into a message. The frame is read in place, it isn't
+     * copied, so a frame handed over within the JVM is decoded without
+     * another copy of its bytes.
+     * 
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array for every
+     *            image.
+     * @param arrayAllocator
+     *            The array allocator or null to allocate a new array for every
+     *            array message.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    public Message decode(PixelAllocator pixelAllocator, ArrayAllocator arrayAllocator) throws IOException {
+	return MessageCodec.decode(ByteBuffer.wrap(frame, 4, frame.length - 4), pixelAllocator, arrayAllocator);
+    }
+
+    /**
+     * Writes the frame to the output stream.
+     * 
+     * @param outputStream
+     *            The output stream.
+     * @throws IOException
+     *             If the frame couldn't be written an {@code IOException} is
+     *             thrown.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+	outputStream.write(frame);
+    }
+}
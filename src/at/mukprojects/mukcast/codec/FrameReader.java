@@ -0,0 +1,136 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * This class reads frames from an input stream and decodes them into messages.
+ * <p>
+ * The reader reuses its frame buffer for all frames and decodes the pixels of
+ * received images and the values of array messages into the arrays of its
+ * {@link PixelAllocator} and {@link ArrayAllocator}, so reading a message
+ * doesn't allocate more than the decoded message itself.
+ * </p>
+ * 
+ * @see MessageCodec
+ * 
+ * @author Mathias Markl
+ */
+public class FrameReader implements MessageReader {
+
+    /**
+     * Initial size of the frame buffer
+     */
+    private static final int FRAME_BUFFER_SIZE = 8 * 1024;
+
+    private DataInputStream inputStream;
+    private byte[] frameBuffer;
+
+    private volatile PixelAllocator pixelAllocator;
+    private volatile ArrayAllocator arrayAllocator;
+    private ConnectionMetrics metrics;
+
+    /**
+     * Constructs a new FrameReader.
+     * 
+     * @param inputStream
+     *            The input stream.
+     */
+    public FrameReader(InputStream inputStream) {
+	this.inputStream = new DataInputStream(new BufferedInputStream(inputStream));
+	this.frameBuffer = new byte[FRAME_BUFFER_SIZE];
+    }
+
+    /**
+     * Sets the metrics, which record the size and the decode time of every
+     * frame.
+     * 
+     * @param metrics
+     *            The connection metrics or null.
+     */
+    public void setMetrics(ConnectionMetrics metrics) {
+	this.metrics = metrics;
+    }
+
+    /**
+     * Sets the allocator for the pixel arrays of received images.
+     * 
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array for every
+     *            image.
+     */
+    public void setPixelAllocator(PixelAllocator pixelAllocator) {
+	this.pixelAllocator = pixelAllocator;
+    }
+
+    /**
+     * Sets the allocator for the arrays of received array messages.
+     * 
+     * @param arrayAllocator
+     *            The array allocator or null to allocate a new array for every
+     *            array message.
+     */
+    public void setArrayAllocator(ArrayAllocator arrayAllocator) {
+	this.arrayAllocator = arrayAllocator;
+    }
+
+    /**
+     * Reads the next frame and decodes it.
+     * 
+     * @return The message.
+     * @throws IOException
+     *             If the message couldn't be read an {@code IOException} is
+     *             thrown.
+     */
+    public Message readMessage() throws IOException {
+	int length = inputStream.readInt();
+	MessageCodec.checkFrameLength(length);
+
+	if (frameBuffer.length < length) {
+	    frameBuffer = new byte[length];
+	}
+	inputStream.readFully(frameBuffer, 0, length);
+
+	long start = System.nanoTime();
+	Message message = MessageCodec.decode(ByteBuffer.wrap(frameBuffer, 0, length), pixelAllocator,
+		arrayAllocator);
+	if (metrics != null) {
+	    metrics.messageReceived(4 + length, System.nanoTime() - start);
+	}
+	return message;
+    }
+
+    /**
+     * Closes the input stream.
+     * 
+     * @throws IOException
+     *             If the stream couldn't be closed an {@code IOException} is
+     *             thrown.
+     */
+    public void close() throws IOException {
+	inputStream.close();
+    }
+}
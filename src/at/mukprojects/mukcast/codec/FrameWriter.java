@@ -0,0 +1,224 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * This class drains a {@link SendQueue} and writes the queued frames to an
+ * output stream, so the senders never wait for the network.
+ * <p>
+ * Small frames are coalesced into one write: the frames are collected in a
+ * buffer, which is flushed if it reaches the flush threshold, if the queue is
+ * empty and no more frames arrive within the flush delay, if the oldest
+ * buffered frame has waited for the flush delay or if {@link #flush()} is
+ * called. With a flush delay of zero the buffer is flushed as soon as the
+ * queue is empty, so frames are only coalesced if they are queued faster than
+ * the network takes them.
+ * </p>
+ * <p>
+ * If a frame can't be written the output stream is closed, which also
+ * terminates the reading side of the connection.
+ * </p>
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class FrameWriter implements MessageWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FrameWriter.class);
+
+    /**
+     * Default number of bytes, which are buffered before they are written
+     */
+    public static final int DEFAULT_FLUSH_THRESHOLD = 8 * 1024;
+
+    private OutputStream outputStream;
+    private SendQueue<EncodedMessage> sendQueue;
+    private ConnectionMetrics metrics;
+
+    private int flushThreshold;
+    private long flushDelay;
+    private volatile boolean flushRequested;
+
+    private AtomicBoolean running;
+
+    /**
+     * Constructs a new FrameWriter.
+     * 
+     * @param outputStream
+     *            The output stream.
+     * @param sendQueue
+     *            The queue of outgoing frames.
+     */
+    public FrameWriter(OutputStream outputStream, SendQueue<EncodedMessage> sendQueue) {
+	this(outputStream, sendQueue, null);
+    }
+
+    /**
+     * Constructs a new FrameWriter, which writes every frame on its own.
+     * 
+     * @param outputStream
+     *            The output stream.
+     * @param sendQueue
+     *            The queue of outgoing frames.
+     * @param metrics
+     *            The metrics, which record the size and the write time of
+     *            every frame, or null.
+     */
+    public FrameWriter(OutputStream outputStream, SendQueue<EncodedMessage> sendQueue, ConnectionMetrics metrics) {
+	this(outputStream, sendQueue, metrics, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Constructs a new FrameWriter, which coalesces small frames.
+     * 
+     * @param outputStream
+     *            The output stream.
+     * @param sendQueue
+     *            The queue of outgoing frames.
+     * @param metrics
+     *            The metrics, which record the size and the write time of
+     *            every frame, or null.
+     * @param flushThreshold
+     *            The number of bytes, which are buffered before they are
+     *            written, or zero to write every frame on its own.
+     * @param flushDelay
+     *            The maximum time a frame is buffered.
+     * @param unit
+     *            The time unit of the flush delay.
+     */
+    public FrameWriter(OutputStream outputStream, SendQueue<EncodedMessage> sendQueue, ConnectionMetrics metrics,
+	    int flushThreshold, long flushDelay, TimeUnit unit) {
+	if (flushThreshold < 0 || flushDelay < 0) {
+	    throw new IllegalArgumentException("The flush threshold and the flush delay can't be negative.");
+	}
+
+	this.outputStream = outputStream;
+	this.sendQueue = sendQueue;
+	this.metrics = metrics;
+	this.flushThreshold = flushThreshold;
+	this.flushDelay = flushThreshold > 0 ? unit.toNanos(flushDelay) : 0;
+	this.running = new AtomicBoolean(true);
+    }
+
+    @Override
+    public void run() {
+	try {
+	    OutputStream output = outputStream;
+	    if (flushThreshold > 0) {
+		output = new BufferedOutputStream(outputStream, flushThreshold);
+	    }
+
+	    boolean buffered = false;
+	    long bufferedSince = 0;
+
+	    EncodedMessage message = sendQueue.take();
+	    while (message != null) {
+		long start = System.nanoTime();
+		if (!buffered) {
+		    buffered = true;
+		    bufferedSince = start;
+		}
+		message.writeTo(output);
+		int size = message.size();
+		long writeTime = System.nanoTime() - start;
+
+		/*
+		 * The write time of a frame includes the flush, which has written it
+		 * to the network, but not the time waited for more frames.
+		 */
+		message = sendQueue.poll();
+		if (message == null && flushDelay > 0 && !flushRequested) {
+		    message = sendQueue.poll(flushDelay - (System.nanoTime() - bufferedSince), TimeUnit.NANOSECONDS);
+		}
+
+		if (message == null || flushRequested
+			|| (flushDelay > 0 && System.nanoTime() - bufferedSince >= flushDelay)) {
+		    flushRequested = false;
+		    long flushStart = System.nanoTime();
+		    output.flush();
+		    buffered = false;
+		    writeTime += System.nanoTime() - flushStart;
+		}
+
+		if (metrics != null) {
+		    metrics.messageSent(size, writeTime);
+		}
+
+		if (message == null) {
+		    message = sendQueue.take();
+		}
+	    }
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+
+	    try {
+		outputStream.close();
+	    } catch (IOException ex) {
+		logger.error(ex.getMessage(), ex);
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    running.set(false);
+	    sendQueue.close();
+	}
+    }
+
+    /**
+     * Checks if the writer is running.
+     * 
+     * @return Returns true or false depending on whether the writer is running
+     *         or not.
+     */
+    public boolean isRunning() {
+	return running.get();
+    }
+
+    /**
+     * Writes the buffered frames without waiting for the flush threshold or
+     * the flush delay.
+     */
+    public void flush() {
+	flushRequested = true;
+	sendQueue.wakeUp();
+    }
+
+    /**
+     * Stops the writer after all queued frames have been written.
+     */
+    @Override
+    public void stop() {
+	sendQueue.close();
+    }
+}
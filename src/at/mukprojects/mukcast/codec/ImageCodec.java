@@ -0,0 +1,79 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Classes implementing {@code ImageCodec} interface compress the pixels of
+ * image messages before they are sent.
+ * 
+ * Every codec has an id, which is sent with the compressed pixels. The
+ * receiver looks up the codec for decoding by its id in the
+ * {@link ImageCodecs} registry. Thus a custom codec has to be registered on
+ * both sides of the connection.
+ * 
+ * @see ImageCodecs
+ * 
+ * @author Mathias Markl
+ */
+public interface ImageCodec {
+
+    /**
+     * Returns the id of the codec. The ids 0 to 63 are reserved for the codecs
+     * of the library.
+     * 
+     * @return The codec id.
+     */
+    public byte getId();
+
+    /**
+     * Compresses the pixels of an image.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param pixels
+     *            The image pixel array.
+     * @return The compressed pixels.
+     * @throws IOException
+     *             If the pixels couldn't be compressed an {@code IOException}
+     *             is thrown.
+     */
+    public byte[] encode(int width, int height, int[] pixels) throws IOException;
+
+    /**
+     * Decompresses the pixels of an image.
+     * 
+     * @param data
+     *            The compressed pixels from the position to the limit of the
+     *            buffer.
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param pixels
+     *            The pixel array the image is decoded into.
+     * @throws IOException
+     *             If the pixels couldn't be decompressed an
+     *             {@code IOException} is thrown.
+     */
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException;
+}
@@ -0,0 +1,114 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is the registry of the {@link ImageCodec}s, which can be used to
+ * decode received images, and provides the codecs of the library.
+ * <p>
+ * Uncompressed: {@link #RAW}<br/>
+ * Lossless codecs: {@link #DEFLATE}, {@link #LZ} and {@link #PNG}.<br/>
+ * Lossy codecs: {@link #JPEG} and {@link #QUANTIZED}.
+ * </p>
+ * 
+ * @see ImageCodec
+ * 
+ * @author Mathias Markl
+ */
+public final class ImageCodecs {
+
+    /**
+     * Codec ids
+     */
+    public static final byte RAW_ID = 0;
+    public static final byte DEFLATE_ID = 1;
+    public static final byte LZ_ID = 2;
+    public static final byte PNG_ID = 3;
+    public static final byte JPEG_ID = 4;
+    public static final byte QUANTIZED_ID = 5;
+
+    /**
+     * No compression
+     */
+    public static final ImageCodec RAW = new RawImageCodec();
+
+    /**
+     * Deflate compression
+     */
+    public static final ImageCodec DEFLATE = new DeflateImageCodec();
+
+    /**
+     * Fast LZ77 compression
+     */
+    public static final ImageCodec LZ = new LzImageCodec();
+
+    /**
+     * PNG row filters and deflate compression
+     */
+    public static final ImageCodec PNG = new PngImageCodec();
+
+    /**
+     * JPEG compression with a quality of 0.8
+     */
+    public static final ImageCodec JPEG = new JpegImageCodec();
+
+    /**
+     * Quantization to 5 bits per channel with PNG compression
+     */
+    public static final ImageCodec QUANTIZED = new QuantizedImageCodec();
+
+    private static final ConcurrentHashMap<Byte, ImageCodec> codecs = new ConcurrentHashMap<Byte, ImageCodec>();
+
+    static {
+	register(DEFLATE);
+	register(LZ);
+	register(PNG);
+	register(JPEG);
+	register(QUANTIZED);
+    }
+
+    private ImageCodecs() {
+    }
+
+    /**
+     * Registers a codec for decoding. A registered codec with the same id is
+     * replaced.
+     * 
+     * @param codec
+     *            The codec.
+     */
+    public static void register(ImageCodec codec) {
+	if (codec.getId() == RAW_ID) {
+	    throw new IllegalArgumentException("The id " + RAW_ID + " is reserved for uncompressed images.");
+	}
+	codecs.put(codec.getId(), codec);
+    }
+
+    /**
+     * Returns the codec with the id.
+     * 
+     * @param id
+     *            The codec id.
+     * @return The codec or null if no codec is registered with the id.
+     */
+    public static ImageCodec get(byte id) {
+	return codecs.get(id);
+    }
+}
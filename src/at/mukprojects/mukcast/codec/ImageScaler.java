@@ -0,0 +1,202 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import at.mukprojects.mukcast.message.ImageMessage;
+
+/**
+ * This class downscales images by power of two factors.
+ * <p>
+ * Every pixel of the scaled image is the average of a square block of the
+ * source image, computed for each ARGB channel. The rows of the scaled image
+ * are split into bands, which are scaled in parallel by a
+ * {@link ForkJoinPool}, so a large image is scaled by all cores.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public final class ImageScaler {
+
+    /**
+     * The number of scaled pixels below which a band isn't split any further.
+     */
+    private static final int THRESHOLD = 16 * 1024;
+
+    /**
+     * The maximum scale. The channel sums of a block fit into an int up to
+     * this scale.
+     */
+    public static final int MAX_SCALE = 1024;
+
+    private ImageScaler() {
+    }
+
+    /**
+     * Returns the smallest power of two scale, which fits the image into the
+     * maximum resolution. The image is never scaled below one pixel and never
+     * by more than {@value #MAX_SCALE}.
+     * 
+     * @param width
+     *            The width of the image.
+     * @param height
+     *            The height of the image.
+     * @param maxWidth
+     *            The maximum width or 0 for no limit.
+     * @param maxHeight
+     *            The maximum height or 0 for no limit.
+     * @return The scale, 1 if the image already fits.
+     */
+    public static int getScale(int width, int height, int maxWidth, int maxHeight) {
+	int scale = 1;
+	while (scale < MAX_SCALE && (width / scale > 1 || height / scale > 1)
+		&& ((maxWidth > 0 && width / scale > maxWidth) || (maxHeight > 0 && height / scale > maxHeight))) {
+	    scale *= 2;
+	}
+	return scale;
+    }
+
+    /**
+     * Downscales the image with the common fork-join pool.
+     * 
+     * @see #downscale(ImageMessage, int, ForkJoinPool)
+     * 
+     * @param image
+     *            The image.
+     * @param scale
+     *            The scale.
+     * @return The scaled image.
+     */
+    public static ImageMessage downscale(ImageMessage image, int scale) {
+	return downscale(image, scale, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Downscales the image. The width and the height of the scaled image are
+     * the size of the image divided by the scale, but at least one pixel.
+     * 
+     * @param image
+     *            The image.
+     * @param scale
+     *            The scale from 1 to {@value #MAX_SCALE}.
+     * @param pool
+     *            The pool, which scales the bands of the image.
+     * @return The scaled image or the image itself if the scale is 1.
+     */
+    public static ImageMessage downscale(ImageMessage image, int scale, ForkJoinPool pool) {
+	if (scale < 1 || scale > MAX_SCALE) {
+	    throw new IllegalArgumentException("Invalid scale: " + scale);
+	}
+	if (scale == 1) {
+	    return image;
+	}
+
+	int width = Math.max(1, image.getWidth() / scale);
+	int height = Math.max(1, image.getHeight() / scale);
+	int[] pixels = new int[width * height];
+
+	ScaleTask task = new ScaleTask(image.getPixels(), image.getWidth(), image.getHeight(), pixels, width, scale,
+		0, height);
+	if (width * height <= THRESHOLD) {
+	    task.compute();
+	} else {
+	    pool.invoke(task);
+	}
+	return new ImageMessage(width, height, pixels);
+    }
+
+    /**
+     * Scales the rows from {@code startRow} to {@code endRow} of the scaled
+     * image.
+     */
+    private static class ScaleTask extends RecursiveAction {
+	private static final long serialVersionUID = 5024387156094728235L;
+
+	private final int[] source;
+	private final int sourceWidth;
+	private final int sourceHeight;
+	private final int[] target;
+	private final int targetWidth;
+	private final int scale;
+	private final int startRow;
+	private final int endRow;
+
+	private ScaleTask(int[] source, int sourceWidth, int sourceHeight, int[] target, int targetWidth, int scale,
+		int startRow, int endRow) {
+	    this.source = source;
+	    this.sourceWidth = sourceWidth;
+	    this.sourceHeight = sourceHeight;
+	    this.target = target;
+	    this.targetWidth = targetWidth;
+	    this.scale = scale;
+	    this.startRow = startRow;
+	    this.endRow = endRow;
+	}
+
+	@Override
+	protected void compute() {
+	    int rows = endRow - startRow;
+	    if (rows > 1 && rows * targetWidth > THRESHOLD) {
+		int middle = startRow + rows / 2;
+		invokeAll(new ScaleTask(source, sourceWidth, sourceHeight, target, targetWidth, scale, startRow, middle),
+			new ScaleTask(source, sourceWidth, sourceHeight, target, targetWidth, scale, middle, endRow));
+		return;
+	    }
+
+	    int shift = 2 * Integer.numberOfTrailingZeros(scale);
+	    for (int y = startRow; y < endRow; y++) {
+		int y0 = y * scale;
+		int y1 = Math.min(y0 + scale, sourceHeight);
+		for (int x = 0; x < targetWidth; x++) {
+		    int x0 = x * scale;
+		    int x1 = Math.min(x0 + scale, sourceWidth);
+
+		    int a = 0;
+		    int r = 0;
+		    int g = 0;
+		    int b = 0;
+		    for (int sy = y0; sy < y1; sy++) {
+			int offset = sy * sourceWidth;
+			for (int sx = x0; sx < x1; sx++) {
+			    int pixel = source[offset + sx];
+			    a += pixel >>> 24;
+			    r += (pixel >> 16) & 0xFF;
+			    g += (pixel >> 8) & 0xFF;
+			    b += pixel & 0xFF;
+			}
+		    }
+
+		    /*
+		     * A complete block has scale * scale pixels, which is a power
+		     * of two, only the blocks at the border are divided.
+		     */
+		    int count = (y1 - y0) * (x1 - x0);
+		    if (count == 1 << shift) {
+			target[y * targetWidth + x] = (a >>> shift) << 24 | (r >>> shift) << 16 | (g >>> shift) << 8
+				| (b >>> shift);
+		    } else {
+			target[y * targetWidth + x] = (a / count) << 24 | (r / count) << 16 | (g / count) << 8
+				| (b / count);
+		    }
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+
+/**
+ * This class splits images into tiles and encodes the tiles in parallel.
+ * <p>
+ * Every tile is an {@link ImageTileMessage} of its own, which is compressed
+ * independently by the image codec. The tiles are ordered row by row, the
+ * tiles at the right and the bottom border may be smaller than the tile size.
+ * </p>
+ * 
+ * @see ImageTileMessage
+ * 
+ * @author Mathias Markl
+ */
+public final class ImageTiler {
+
+    private ImageTiler() {
+    }
+
+    /**
+     * Returns the number of tiles of an image.
+     * 
+     * @param width
+     *            The width of the image.
+     * @param height
+     *            The height of the image.
+     * @param tileWidth
+     *            The width of a tile.
+     * @param tileHeight
+     *            The height of a tile.
+     * @return The number of tiles.
+     */
+    public static int getTileCount(int width, int height, int tileWidth, int tileHeight) {
+	return ((width + tileWidth - 1) / tileWidth) * ((height + tileHeight - 1) / tileHeight);
+    }
+
+    /**
+     * Returns a tile of an image.
+     * 
+     * @param image
+     *            The image.
+     * @param frameId
+     *            The id of the image.
+     * @param tileWidth
+     *            The width of a tile.
+     * @param tileHeight
+     *            The height of a tile.
+     * @param index
+     *            The index of the tile.
+     * @return The tile.
+     */
+    public static ImageTileMessage getTile(ImageMessage image, int frameId, int tileWidth, int tileHeight,
+	    int index) {
+	int width = image.getWidth();
+	int height = image.getHeight();
+	int columns = (width + tileWidth - 1) / tileWidth;
+
+	int x = (index % columns) * tileWidth;
+	int y = (index / columns) * tileHeight;
+	int w = Math.min(tileWidth, width - x);
+	int h = Math.min(tileHeight, height - y);
+
+	int[] source = image.getPixels();
+	int[] pixels = new int[w * h];
+	for (int row = 0; row < h; row++) {
+	    System.arraycopy(source, (y + row) * width + x, pixels, row * w, w);
+	}
+	return new ImageTileMessage(frameId, width, height, getTileCount(width, height, tileWidth, tileHeight), x, y,
+		w, h, pixels);
+    }
+
+    /**
+     * Splits an image into tiles and encodes them with the common fork-join
+     * pool.
+     * 
+     * @see #encode(ImageMessage, int, int, int, ImageCodec, ForkJoinPool)
+     * 
+     * @param image
+     *            The image.
+     * @param frameId
+     *            The id of the image.
+     * @param tileWidth
+     *            The width of a tile.
+     * @param tileHeight
+     *            The height of a tile.
+     * @param imageCodec
+     *            The image codec or null to send the pixels uncompressed.
+     * @return The encoded tiles.
+     * @throws IOException
+     *             If a tile couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public static EncodedMessage[] encode(ImageMessage image, int frameId, int tileWidth, int tileHeight,
+	    ImageCodec imageCodec) throws IOException {
+	return encode(image, frameId, tileWidth, tileHeight, imageCodec, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Splits an image into tiles and encodes them. The tiles are extracted and
+     * compressed in parallel by the pool.
+     * 
+     * @param image
+     *            The image.
+     * @param frameId
+     *            The id of the image.
+     * @param tileWidth
+     *            The width of a tile.
+     * @param tileHeight
+     *            The height of a tile.
+     * @param imageCodec
+     *            The image codec or null to send the pixels uncompressed.
+     * @param pool
+     *            The pool, which encodes the tiles.
+     * @return The encoded tiles.
+     * @throws IOException
+     *             If a tile couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public static EncodedMessage[] encode(ImageMessage image, int frameId, int tileWidth, int tileHeight,
+	    ImageCodec imageCodec, ForkJoinPool pool) throws IOException {
+	if (tileWidth < 1 || tileHeight < 1) {
+	    throw new IllegalArgumentException("The tile size has to be greater than zero.");
+	}
+
+	EncodedMessage[] tiles = new EncodedMessage[getTileCount(image.getWidth(), image.getHeight(), tileWidth,
+		tileHeight)];
+	if (tiles.length == 0) {
+	    return tiles;
+	}
+
+	TileTask task = new TileTask(image, frameId, tileWidth, tileHeight, imageCodec, tiles, 0, tiles.length);
+	if (tiles.length == 1) {
+	    task.compute();
+	} else {
+	    pool.invoke(task);
+	}
+
+	if (task.error != null) {
+	    throw task.error;
+	}
+	return tiles;
+    }
+
+    /**
+     * Encodes the tiles from {@code start} to {@code end}. The first error of
+     * the task and its subtasks is kept by the task.
+     */
+    private static class TileTask extends RecursiveAction {
+	private static final long serialVersionUID = -7385562403412855180L;
+
+	private final ImageMessage image;
+	private final int frameId;
+	private final int tileWidth;
+	private final int tileHeight;
+	private final ImageCodec imageCodec;
+	private final EncodedMessage[] tiles;
+	private final int start;
+	private final int end;
+
+	private IOException error;
+
+	private TileTask(ImageMessage image, int frameId, int tileWidth, int tileHeight, ImageCodec imageCodec,
+		EncodedMessage[] tiles, int start, int end) {
+	    this.image = image;
+	    this.frameId = frameId;
+	    this.tileWidth = tileWidth;
+	    this.tileHeight = tileHeight;
+	    this.imageCodec = imageCodec;
+	    this.tiles = tiles;
+	    this.start = start;
+	    this.end = end;
+	}
+
+	@Override
+	protected void compute() {
+	    if (end - start > 1) {
+		int middle = start + (end - start) / 2;
+		TileTask left = new TileTask(image, frameId, tileWidth, tileHeight, imageCodec, tiles, start, middle);
+		TileTask right = new TileTask(image, frameId, tileWidth, tileHeight, imageCodec, tiles, middle, end);
+		invokeAll(left, right);
+		error = left.error != null ? left.error : right.error;
+		return;
+	    }
+
+	    try {
+		tiles[start] = new EncodedMessage(getTile(image, frameId, tileWidth, tileHeight, start), imageCodec);
+	    } catch (IOException e) {
+		error = e;
+	    }
+	}
+    }
+}
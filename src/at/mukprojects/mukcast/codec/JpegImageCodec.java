@@ -0,0 +1,115 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * JpegImageCodec is a lossy codec, which compresses the pixels as JPEG image
+ * with the {@link ImageIO} API. The alpha channel isn't sent and all decoded
+ * pixels are opaque.
+ * 
+ * @see ImageCodecs#JPEG
+ * 
+ * @author Mathias Markl
+ */
+public class JpegImageCodec extends AbstractImageCodec {
+
+    private float quality;
+
+    /**
+     * Constructs a new JpegImageCodec with a quality of 0.8.
+     */
+    public JpegImageCodec() {
+	this(0.8f);
+    }
+
+    /**
+     * Constructs a new JpegImageCodec.
+     * 
+     * @param quality
+     *            The compression quality (0.0-1.0).
+     */
+    public JpegImageCodec(float quality) {
+	super(ImageCodecs.JPEG_ID);
+	this.quality = quality;
+    }
+
+    @Override
+    public byte[] encode(int width, int height, int[] pixels) throws IOException {
+	int rowLength = getRowLength(width, height, pixels);
+	int rows = rowLength == 0 ? 0 : pixels.length / rowLength;
+
+	BufferedImage image = new BufferedImage(rowLength, rows, BufferedImage.TYPE_INT_RGB);
+	int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	System.arraycopy(pixels, 0, data, 0, pixels.length);
+
+	Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+	if (!writers.hasNext()) {
+	    throw new IOException("No JPEG writer is available.");
+	}
+
+	ImageWriter writer = writers.next();
+	ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+	ImageOutputStream imageStream = ImageIO.createImageOutputStream(outputStream);
+	try {
+	    ImageWriteParam param = writer.getDefaultWriteParam();
+	    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+	    param.setCompressionQuality(quality);
+
+	    writer.setOutput(imageStream);
+	    writer.write(null, new IIOImage(image, null, null), param);
+	} finally {
+	    imageStream.close();
+	    writer.dispose();
+	}
+
+	return outputStream.toByteArray();
+    }
+
+    @Override
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException {
+	int rowLength = getRowLength(width, height, pixels);
+	int rows = rowLength == 0 ? 0 : pixels.length / rowLength;
+
+	BufferedImage image;
+	if (data.hasArray()) {
+	    image = ImageIO.read(
+		    new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+	} else {
+	    image = ImageIO.read(new ByteArrayInputStream(toArray(data)));
+	}
+
+	if (image == null || image.getWidth() != rowLength || image.getHeight() != rows) {
+	    throw new IOException("JPEG image doesn't match the image size.");
+	}
+	image.getRGB(0, 0, rowLength, rows, pixels, 0, rowLength);
+    }
+}
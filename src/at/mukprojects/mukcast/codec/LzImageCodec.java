@@ -0,0 +1,213 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * LzImageCodec is a lossless codec, which compresses the pixels with a fast
+ * LZ77 byte compressor in the style of LZ4.
+ * <p>
+ * The compressed data is a sequence of tokens. Every token consists of a run
+ * of literal bytes followed by a match, which copies bytes from an offset
+ * within the last 64 KiB of the output. The last token only contains
+ * literals. The compression is considerably faster than deflate, but the
+ * compression ratio is lower.
+ * </p>
+ * 
+ * @see ImageCodecs#LZ
+ * 
+ * @author Mathias Markl
+ */
+public class LzImageCodec extends AbstractImageCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 14;
+
+    /**
+     * Constructs a new LzImageCodec.
+     */
+    public LzImageCodec() {
+	super(ImageCodecs.LZ_ID);
+    }
+
+    @Override
+    public byte[] encode(int width, int height, int[] pixels) throws IOException {
+	return compress(toBytes(pixels));
+    }
+
+    @Override
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException {
+	toPixels(decompress(data.hasArray() ? data : ByteBuffer.wrap(toArray(data)), pixels.length * 4), pixels);
+    }
+
+    /**
+     * Compresses the bytes.
+     * 
+     * @param source
+     *            The bytes.
+     * @return The compressed bytes.
+     */
+    public static byte[] compress(byte[] source) {
+	int length = source.length;
+	byte[] target = new byte[length + length / 255 + 16];
+	int[] table = new int[1 << HASH_BITS];
+
+	int anchor = 0;
+	int sourceIndex = 0;
+	int targetIndex = 0;
+
+	while (sourceIndex + MIN_MATCH <= length) {
+	    int sequence = readInt(source, sourceIndex);
+	    int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+	    int reference = table[hash] - 1;
+	    table[hash] = sourceIndex + 1;
+
+	    if (reference >= 0 && sourceIndex - reference <= MAX_OFFSET && readInt(source, reference) == sequence) {
+		int matchLength = MIN_MATCH;
+		while (sourceIndex + matchLength < length
+			&& source[reference + matchLength] == source[sourceIndex + matchLength]) {
+		    matchLength++;
+		}
+
+		targetIndex = writeToken(target, targetIndex, source, anchor, sourceIndex - anchor,
+			matchLength - MIN_MATCH);
+		target[targetIndex++] = (byte) (sourceIndex - reference);
+		target[targetIndex++] = (byte) ((sourceIndex - reference) >>> 8);
+		targetIndex = writeLength(target, targetIndex, matchLength - MIN_MATCH);
+
+		sourceIndex += matchLength;
+		anchor = sourceIndex;
+	    } else {
+		sourceIndex += 1 + ((sourceIndex - anchor) >>> 6);
+	    }
+	}
+
+	targetIndex = writeToken(target, targetIndex, source, anchor, length - anchor, 0);
+
+	byte[] compressed = new byte[targetIndex];
+	System.arraycopy(target, 0, compressed, 0, targetIndex);
+	return compressed;
+    }
+
+    /**
+     * Decompresses the bytes.
+     * 
+     * @param data
+     *            The compressed bytes from the position to the limit of the
+     *            buffer. The buffer has to be backed by an array.
+     * @param length
+     *            The length of the decompressed bytes.
+     * @return The decompressed bytes.
+     * @throws IOException
+     *             If the bytes couldn't be decompressed an {@code IOException}
+     *             is thrown.
+     */
+    public static byte[] decompress(ByteBuffer data, int length) throws IOException {
+	byte[] source = data.array();
+	int sourceIndex = data.arrayOffset() + data.position();
+	int sourceEnd = data.arrayOffset() + data.limit();
+
+	byte[] target = new byte[length];
+	int targetIndex = 0;
+
+	try {
+	    while (true) {
+		int token = source[sourceIndex++] & 0xFF;
+
+		int literalLength = token >>> 4;
+		if (literalLength == 15) {
+		    int value;
+		    do {
+			value = source[sourceIndex++] & 0xFF;
+			literalLength += value;
+		    } while (value == 255);
+		}
+		if (sourceIndex + literalLength > sourceEnd) {
+		    throw new IOException("Compressed image data is truncated.");
+		}
+		System.arraycopy(source, sourceIndex, target, targetIndex, literalLength);
+		sourceIndex += literalLength;
+		targetIndex += literalLength;
+
+		if (targetIndex == length) {
+		    break;
+		}
+
+		int offset = (source[sourceIndex] & 0xFF) | ((source[sourceIndex + 1] & 0xFF) << 8);
+		sourceIndex += 2;
+
+		int matchLength = token & 0x0F;
+		if (matchLength == 15) {
+		    int value;
+		    do {
+			value = source[sourceIndex++] & 0xFF;
+			matchLength += value;
+		    } while (value == 255);
+		}
+		matchLength += MIN_MATCH;
+
+		int reference = targetIndex - offset;
+		if (offset == 0 || reference < 0) {
+		    throw new IOException("Compressed image data is corrupt.");
+		}
+		if (offset >= matchLength) {
+		    System.arraycopy(target, reference, target, targetIndex, matchLength);
+		    targetIndex += matchLength;
+		} else {
+		    for (int i = 0; i < matchLength; i++) {
+			target[targetIndex++] = target[reference + i];
+		    }
+		}
+	    }
+	} catch (IndexOutOfBoundsException e) {
+	    throw new IOException("Compressed image data is corrupt.", e);
+	}
+
+	return target;
+    }
+
+    private static int writeToken(byte[] target, int targetIndex, byte[] source, int literalStart,
+	    int literalLength, int matchLength) {
+	int tokenIndex = targetIndex++;
+	target[tokenIndex] = (byte) ((Math.min(literalLength, 15) << 4) | Math.min(matchLength, 15));
+
+	targetIndex = writeLength(target, targetIndex, literalLength);
+	System.arraycopy(source, literalStart, target, targetIndex, literalLength);
+	return targetIndex + literalLength;
+    }
+
+    private static int writeLength(byte[] target, int targetIndex, int length) {
+	if (length >= 15) {
+	    length -= 15;
+	    while (length >= 255) {
+		target[targetIndex++] = (byte) 255;
+		length -= 255;
+	    }
+	    target[targetIndex++] = (byte) length;
+	}
+	return targetIndex;
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+	return (bytes[index] & 0xFF) | ((bytes[index + 1] & 0xFF) << 8) | ((bytes[index + 2] & 0xFF) << 16)
+		| ((bytes[index + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,658 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ * 
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import at.mukprojects.mukcast.message.ByteArrayMessage;
+import at.mukprojects.mukcast.message.DisconnectMessage;
+import at.mukprojects.mukcast.message.DoubleArrayMessage;
+import at.mukprojects.mukcast.message.FloatArrayMessage;
+import at.mukprojects.mukcast.message.ImageDeltaMessage;
+import at.mukprojects.mukcast.message.ImageKeyframeMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.ImageTileMessage;
+import at.mukprojects.mukcast.message.IntArrayMessage;
+import at.mukprojects.mukcast.message.KeyframeRequestMessage;
+import at.mukprojects.mukcast.message.MaxResolutionMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.MulticastJoinMessage;
+import at.mukprojects.mukcast.message.MulticastLeaveMessage;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.message.PingMessage;
+import at.mukprojects.mukcast.message.PongMessage;
+import at.mukprojects.mukcast.message.ResumeSessionMessage;
+import at.mukprojects.mukcast.message.SessionMessage;
+import at.mukprojects.mukcast.message.SubscribeMessage;
+import at.mukprojects.mukcast.message.TextMessage;
+import at.mukprojects.mukcast.message.UnsubscribeMessage;
+
+/**
+ * This class encodes and decodes {@link Message}s into the MuKCast wire format.
+ * <p>
+ * Every message is sent as a frame. A frame starts with the frame length (4
+ * bytes), which counts all bytes following the length field, and a type tag (1
+ * byte) followed by the payload of the message. The predefined messages are
+ * encoded by hand with bulk primitive operations. Any other {@link Message}
+ * implementation, including subclasses of the predefined messages, falls back
+ * to the Java serialization.
+ * </p>
+ * 
+ * @see Message
+ * 
+ * @author Mathias Markl
+ */
+public final class MessageCodec {
+
+    /**
+     * The size of the frame header (length and type tag).
+     */
+    public static final int HEADER_SIZE = 5;
+
+    /**
+     * The maximum accepted frame length.
+     */
+    public static final int MAX_FRAME_LENGTH = 256 * 1024 * 1024;
+
+    /**
+     * The maximum accepted number of pixels of a received image, e.g. 8192 x
+     * 8192. Compressed pixels can be much smaller than the decoded image, so
+     * their number can't be checked against the frame length.
+     */
+    public static final int MAX_IMAGE_PIXELS = 8192 * 8192;
+
+    /**
+     * Type tags
+     */
+    public static final byte TYPE_SERIALIZED = 0;
+    public static final byte TYPE_TEXT = 1;
+    public static final byte TYPE_NUMBER = 2;
+    public static final byte TYPE_IMAGE = 3;
+    public static final byte TYPE_DISCONNECT = 4;
+    public static final byte TYPE_IMAGE_KEYFRAME = 5;
+    public static final byte TYPE_IMAGE_DELTA = 6;
+    public static final byte TYPE_KEYFRAME_REQUEST = 7;
+    public static final byte TYPE_MULTICAST_JOIN = 8;
+    public static final byte TYPE_MULTICAST_LEAVE = 9;
+    public static final byte TYPE_FLOAT_ARRAY = 10;
+    public static final byte TYPE_INT_ARRAY = 11;
+    public static final byte TYPE_DOUBLE_ARRAY = 12;
+    public static final byte TYPE_BYTE_ARRAY = 13;
+    public static final byte TYPE_SUBSCRIBE = 14;
+    public static final byte TYPE_UNSUBSCRIBE = 15;
+    public static final byte TYPE_MAX_RESOLUTION = 16;
+    public static final byte TYPE_IMAGE_TILE = 17;
+    public static final byte TYPE_SESSION = 18;
+    public static final byte TYPE_RESUME_SESSION = 19;
+    public static final byte TYPE_PING = 20;
+    public static final byte TYPE_PONG = 21;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encodes the message into a frame.
+     * 
+     * @param message
+     *            The message.
+     * @return The frame including the frame header.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public static byte[] encode(Message message) throws IOException {
+	return encode(message, null);
+    }
+
+    /**
+     * Encodes the message into a frame. The pixels of an {@link ImageMessage}
+     * are compressed with the image codec.
+     * 
+     * @param message
+     *            The message.
+     * @param imageCodec
+     *            The image codec or null to send the pixels uncompressed.
+     * @return The frame including the frame header.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public static byte[] encode(Message message, ImageCodec imageCodec) throws IOException {
+	Class<?> type = message.getClass();
+
+	if (type == TextMessage.class) {
+	    String text = ((TextMessage) message).getText();
+	    if (text == null) {
+		return allocateFrame(TYPE_TEXT, 4).putInt(-1).array();
+	    }
+
+	    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+	    return allocateFrame(TYPE_TEXT, 4 + bytes.length).putInt(bytes.length).put(bytes).array();
+	} else if (type == NumberMessage.class) {
+	    return allocateFrame(TYPE_NUMBER, 4).putFloat(((NumberMessage) message).getNumberAsFloat()).array();
+	} else if (type == ImageMessage.class) {
+	    ImageMessage imageMessage = (ImageMessage) message;
+	    byte[] data = compressImage(imageMessage, imageCodec);
+
+	    ByteBuffer buffer = allocateFrame(TYPE_IMAGE, getImageSize(imageMessage, data));
+	    putImage(buffer, imageMessage, imageCodec, data);
+	    return buffer.array();
+	} else if (type == DisconnectMessage.class) {
+	    return allocateFrame(TYPE_DISCONNECT, 0).array();
+	} else if (type == ImageKeyframeMessage.class) {
+	    ImageKeyframeMessage keyframeMessage = (ImageKeyframeMessage) message;
+	    byte[] data = compressImage(keyframeMessage, imageCodec);
+
+	    ByteBuffer buffer = allocateFrame(TYPE_IMAGE_KEYFRAME, 4 + getImageSize(keyframeMessage, data));
+	    buffer.putInt(keyframeMessage.getSequence());
+	    putImage(buffer, keyframeMessage, imageCodec, data);
+	    return buffer.array();
+	} else if (type == ImageDeltaMessage.class) {
+	    ImageDeltaMessage deltaMessage = (ImageDeltaMessage) message;
+	    int[] blocks = deltaMessage.getBlocks();
+	    int[] pixels = deltaMessage.getPixels();
+
+	    ByteBuffer buffer = allocateFrame(TYPE_IMAGE_DELTA, 28 + (blocks.length + pixels.length) * 4);
+	    buffer.putInt(deltaMessage.getSequence()).putInt(deltaMessage.getBaseSequence())
+		    .putInt(deltaMessage.getWidth()).putInt(deltaMessage.getHeight())
+		    .putInt(deltaMessage.getBlockSize()).putInt(blocks.length).putInt(pixels.length);
+	    buffer.asIntBuffer().put(blocks).put(pixels);
+	    return buffer.array();
+	} else if (type == KeyframeRequestMessage.class) {
+	    return allocateFrame(TYPE_KEYFRAME_REQUEST, 0).array();
+	} else if (type == MulticastJoinMessage.class) {
+	    return allocateFrame(TYPE_MULTICAST_JOIN, 0).array();
+	} else if (type == MulticastLeaveMessage.class) {
+	    return allocateFrame(TYPE_MULTICAST_LEAVE, 0).array();
+	} else if (type == FloatArrayMessage.class) {
+	    float[] values = ((FloatArrayMessage) message).getValues();
+	    ByteBuffer buffer = allocateFrame(TYPE_FLOAT_ARRAY, 4 + values.length * 4).putInt(values.length);
+	    buffer.asFloatBuffer().put(values);
+	    return buffer.array();
+	} else if (type == IntArrayMessage.class) {
+	    int[] values = ((IntArrayMessage) message).getValues();
+	    ByteBuffer buffer = allocateFrame(TYPE_INT_ARRAY, 4 + values.length * 4).putInt(values.length);
+	    buffer.asIntBuffer().put(values);
+	    return buffer.array();
+	} else if (type == DoubleArrayMessage.class) {
+	    double[] values = ((DoubleArrayMessage) message).getValues();
+	    ByteBuffer buffer = allocateFrame(TYPE_DOUBLE_ARRAY, 4 + values.length * 8).putInt(values.length);
+	    buffer.asDoubleBuffer().put(values);
+	    return buffer.array();
+	} else if (type == ByteArrayMessage.class) {
+	    byte[] values = ((ByteArrayMessage) message).getValues();
+	    return allocateFrame(TYPE_BYTE_ARRAY, 4 + values.length).putInt(values.length).put(values).array();
+	} else if (type == SubscribeMessage.class) {
+	    byte[] bytes = ((SubscribeMessage) message).getChannel().getBytes(StandardCharsets.UTF_8);
+	    return allocateFrame(TYPE_SUBSCRIBE, 4 + bytes.length).putInt(bytes.length).put(bytes).array();
+	} else if (type == UnsubscribeMessage.class) {
+	    byte[] bytes = ((UnsubscribeMessage) message).getChannel().getBytes(StandardCharsets.UTF_8);
+	    return allocateFrame(TYPE_UNSUBSCRIBE, 4 + bytes.length).putInt(bytes.length).put(bytes).array();
+	} else if (type == ImageTileMessage.class) {
+	    ImageTileMessage tileMessage = (ImageTileMessage) message;
+	    ImageMessage tile = new ImageMessage(tileMessage.getWidth(), tileMessage.getHeight(),
+		    tileMessage.getPixels());
+	    byte[] data = compressImage(tile, imageCodec);
+
+	    ByteBuffer buffer = allocateFrame(TYPE_IMAGE_TILE, 24 + getImageSize(tile, data));
+	    buffer.putInt(tileMessage.getFrameId()).putInt(tileMessage.getFrameWidth())
+		    .putInt(tileMessage.getFrameHeight()).putInt(tileMessage.getTileCount()).putInt(tileMessage.getX())
+		    .putInt(tileMessage.getY());
+	    putImage(buffer, tile, imageCodec, data);
+	    return buffer.array();
+	} else if (type == MaxResolutionMessage.class) {
+	    MaxResolutionMessage resolutionMessage = (MaxResolutionMessage) message;
+	    return allocateFrame(TYPE_MAX_RESOLUTION, 8).putInt(resolutionMessage.getMaxWidth())
+		    .putInt(resolutionMessage.getMaxHeight()).array();
+	} else if (type == SessionMessage.class) {
+	    SessionMessage sessionMessage = (SessionMessage) message;
+	    byte[] token = sessionMessage.getToken().getBytes(StandardCharsets.UTF_8);
+	    byte[] clientKey = sessionMessage.getClientKey().getBytes(StandardCharsets.UTF_8);
+	    return allocateFrame(TYPE_SESSION, 8 + token.length + clientKey.length).putInt(token.length).put(token)
+		    .putInt(clientKey.length).put(clientKey).array();
+	} else if (type == PingMessage.class) {
+	    return allocateFrame(TYPE_PING, 8).putLong(((PingMessage) message).getTimestamp()).array();
+	} else if (type == PongMessage.class) {
+	    PongMessage pongMessage = (PongMessage) message;
+	    return allocateFrame(TYPE_PONG, 16).putLong(pongMessage.getTimestamp()).putLong(pongMessage.getTime())
+		    .array();
+	} else if (type == ResumeSessionMessage.class) {
+	    byte[] bytes = ((ResumeSessionMessage) message).getToken().getBytes(StandardCharsets.UTF_8);
+	    return allocateFrame(TYPE_RESUME_SESSION, 4 + bytes.length).putInt(bytes.length).put(bytes).array();
+	} else {
+	    return encodeSerialized(message);
+	}
+    }
+
+    /**
+     * Decodes a frame into a message.
+     * 
+     * @param frame
+     *            The frame without the length field. The buffer has to be
+     *            positioned at the type tag and its limit has to be the end of
+     *            the frame.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    public static Message decode(ByteBuffer frame) throws IOException {
+	return decode(frame, null);
+    }
+
+    /**
+     * Decodes a frame into a message. The pixels of received images are
+     * decoded into the arrays of the given allocator.
+     * 
+     * @param frame
+     *            The frame without the length field. The buffer has to be
+     *            positioned at the type tag and its limit has to be the end of
+     *            the frame.
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array for every
+     *            image.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    public static Message decode(ByteBuffer frame, PixelAllocator pixelAllocator) throws IOException {
+	return decode(frame, pixelAllocator, null);
+    }
+
+    /**
+     * Decodes a frame into a message. The pixels of received images and the
+     * values of received array messages are decoded into the arrays of the
+     * given allocators.
+     * 
+     * @param frame
+     *            The frame without the length field. The buffer has to be
+     *            positioned at the type tag and its limit has to be the end of
+     *            the frame.
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array for every
+     *            image.
+     * @param arrayAllocator
+     *            The array allocator or null to allocate a new array for every
+     *            array message.
+     * @return The message.
+     * @throws IOException
+     *             If the frame couldn't be decoded an {@code IOException} is
+     *             thrown.
+     */
+    public static Message decode(ByteBuffer frame, PixelAllocator pixelAllocator, ArrayAllocator arrayAllocator)
+	    throws IOException {
+	try {
+	    byte type = frame.get();
+	    switch (type) {
+	    case TYPE_TEXT:
+		if (frame.getInt(frame.position()) < 0) {
+		    frame.getInt();
+		    return new TextMessage(null);
+		}
+		return new TextMessage(readString(frame));
+	    case TYPE_NUMBER:
+		return new NumberMessage(frame.getFloat());
+	    case TYPE_IMAGE:
+		int width = frame.getInt();
+		int height = frame.getInt();
+		int[] pixels = getImagePixels(frame, width, height, pixelAllocator);
+		return new ImageMessage(width, height, pixels);
+	    case TYPE_DISCONNECT:
+		return new DisconnectMessage();
+	    case TYPE_IMAGE_KEYFRAME:
+		int sequence = frame.getInt();
+		width = frame.getInt();
+		height = frame.getInt();
+		pixels = getImagePixels(frame, width, height, pixelAllocator);
+		return new ImageKeyframeMessage(width, height, pixels, sequence);
+	    case TYPE_IMAGE_DELTA:
+		sequence = frame.getInt();
+		int baseSequence = frame.getInt();
+		width = frame.getInt();
+		height = frame.getInt();
+		int blockSize = frame.getInt();
+		int blockCount = getArrayLength(frame, 4);
+		int pixelCount = getArrayLength(frame, 4);
+		int[] blocks = readInts(frame, blockCount);
+		pixels = readInts(frame, pixelCount);
+		checkDelta(width, height, blockSize, blocks, pixelCount);
+		return new ImageDeltaMessage(width, height, sequence, baseSequence, blockSize, blocks, pixels);
+	    case TYPE_KEYFRAME_REQUEST:
+		return new KeyframeRequestMessage();
+	    case TYPE_MULTICAST_JOIN:
+		return new MulticastJoinMessage();
+	    case TYPE_MULTICAST_LEAVE:
+		return new MulticastLeaveMessage();
+	    case TYPE_FLOAT_ARRAY:
+		int length = getArrayLength(frame, 4);
+		float[] floats = arrayAllocator != null ? arrayAllocator.allocateFloats(length) : new float[length];
+		frame.asFloatBuffer().get(floats);
+		frame.position(frame.position() + length * 4);
+		return new FloatArrayMessage(floats);
+	    case TYPE_INT_ARRAY:
+		length = getArrayLength(frame, 4);
+		int[] ints = arrayAllocator != null ? arrayAllocator.allocateInts(length) : new int[length];
+		frame.asIntBuffer().get(ints);
+		frame.position(frame.position() + length * 4);
+		return new IntArrayMessage(ints);
+	    case TYPE_DOUBLE_ARRAY:
+		length = getArrayLength(frame, 8);
+		double[] doubles = arrayAllocator != null ? arrayAllocator.allocateDoubles(length) : new double[length];
+		frame.asDoubleBuffer().get(doubles);
+		frame.position(frame.position() + length * 8);
+		return new DoubleArrayMessage(doubles);
+	    case TYPE_BYTE_ARRAY:
+		length = getArrayLength(frame, 1);
+		byte[] bytes = arrayAllocator != null ? arrayAllocator.allocateBytes(length) : new byte[length];
+		frame.get(bytes);
+		return new ByteArrayMessage(bytes);
+	    case TYPE_SUBSCRIBE:
+		return new SubscribeMessage(readString(frame));
+	    case TYPE_UNSUBSCRIBE:
+		return new UnsubscribeMessage(readString(frame));
+	    case TYPE_MAX_RESOLUTION:
+		return new MaxResolutionMessage(frame.getInt(), frame.getInt());
+	    case TYPE_SESSION:
+		String token = readString(frame);
+		return new SessionMessage(token, readString(frame));
+	    case TYPE_RESUME_SESSION:
+		return new ResumeSessionMessage(readString(frame));
+	    case TYPE_PING:
+		return new PingMessage(frame.getLong());
+	    case TYPE_PONG:
+		return new PongMessage(frame.getLong(), frame.getLong());
+	    case TYPE_IMAGE_TILE:
+		int frameId = frame.getInt();
+		int frameWidth = frame.getInt();
+		int frameHeight = frame.getInt();
+		int tileCount = frame.getInt();
+		int x = frame.getInt();
+		int y = frame.getInt();
+		width = frame.getInt();
+		height = frame.getInt();
+		checkImageSize(frameWidth, frameHeight);
+		if (tileCount < 1 || x < 0 || y < 0 || width > frameWidth - x || height > frameHeight - y) {
+		    throw new IOException("Invalid tile: " + width + "x" + height + " at " + x + "," + y + " of "
+			    + frameWidth + "x" + frameHeight);
+		}
+		pixels = getImagePixels(frame, width, height, null);
+		return new ImageTileMessage(frameId, frameWidth, frameHeight, tileCount, x, y, width, height, pixels);
+	    case TYPE_SERIALIZED:
+		return decodeSerialized(frame);
+	    default:
+		throw new IOException("Unknown message type: " + type);
+	    }
+	} catch (RuntimeException e) {
+	    throw new IOException("Malformed frame: " + e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Writes the message as a frame to the output stream.
+     * 
+     * @param outputStream
+     *            The output stream.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be written an {@code IOException} is
+     *             thrown.
+     */
+    public static void writeMessage(OutputStream outputStream, Message message) throws IOException {
+	outputStream.write(encode(message));
+    }
+
+    /**
+     * Reads the next frame from the input stream and decodes it.
+     * 
+     * @param inputStream
+     *            The input stream.
+     * @return The message.
+     * @throws IOException
+     *             If the message couldn't be read an {@code IOException} is
+     *             thrown.
+     */
+    public static Message readMessage(DataInputStream inputStream) throws IOException {
+	int length = inputStream.readInt();
+	checkFrameLength(length);
+
+	byte[] frame = new byte[length];
+	inputStream.readFully(frame);
+	return decode(ByteBuffer.wrap(frame));
+    }
+
+    /**
+     * Checks if the frame length is valid.
+     * 
+     * @param length
+     *            The frame length.
+     * @throws IOException
+     *             If the length is invalid an {@code IOException} is thrown.
+     */
+    public static void checkFrameLength(int length) throws IOException {
+	if (length < 1 || length > MAX_FRAME_LENGTH) {
+	    throw new IOException("Invalid frame length: " + length);
+	}
+    }
+
+    private static ByteBuffer allocateFrame(byte type, int payloadSize) {
+	ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+	buffer.putInt(1 + payloadSize).put(type);
+	return buffer;
+    }
+
+    /**
+     * Compresses the pixels of an image. An image, which pixel array doesn't
+     * match its size, is rejected, because every receiver would reject it.
+     */
+    private static byte[] compressImage(ImageMessage message, ImageCodec imageCodec) throws IOException {
+	if (message.getPixels().length != message.getWidth() * message.getHeight()) {
+	    throw new IOException("The pixel array doesn't match the image size: " + message.getPixels().length
+		    + " for " + message.getWidth() + "x" + message.getHeight());
+	}
+
+	if (imageCodec == null || imageCodec.getId() == ImageCodecs.RAW_ID) {
+	    return null;
+	}
+	return imageCodec.encode(message.getWidth(), message.getHeight(), message.getPixels());
+    }
+
+    private static int getImageSize(ImageMessage message, byte[] data) {
+	return 13 + (data == null ? message.getPixels().length * 4 : 4 + data.length);
+    }
+
+    private static void putImage(ByteBuffer buffer, ImageMessage message, ImageCodec imageCodec, byte[] data) {
+	int[] pixels = message.getPixels();
+	buffer.putInt(message.getWidth()).putInt(message.getHeight()).putInt(pixels.length);
+
+	if (data == null) {
+	    buffer.put(ImageCodecs.RAW_ID);
+	    buffer.asIntBuffer().put(pixels);
+	} else {
+	    buffer.put(imageCodec.getId()).putInt(data.length).put(data);
+	}
+    }
+
+    /**
+     * Reads the pixels of an image. The pixel count has to match the size of
+     * the image, so a malformed frame can't allocate more memory than its own
+     * size or {@link #MAX_IMAGE_PIXELS} for compressed pixels.
+     */
+    private static int[] getImagePixels(ByteBuffer frame, int width, int height, PixelAllocator pixelAllocator)
+	    throws IOException {
+	checkImageSize(width, height);
+	int pixelCount = frame.getInt();
+	if (pixelCount != width * height) {
+	    throw new IOException("Invalid pixel count: " + pixelCount + " for " + width + "x" + height);
+	}
+
+	byte codecId = frame.get();
+	if (codecId == ImageCodecs.RAW_ID) {
+	    if ((long) pixelCount * 4 > frame.remaining()) {
+		throw new IOException("Invalid pixel count: " + pixelCount);
+	    }
+	    int[] pixels = allocatePixels(pixelAllocator, width, height, pixelCount);
+	    frame.asIntBuffer().get(pixels);
+	    frame.position(frame.position() + pixelCount * 4);
+	    return pixels;
+	}
+
+	ImageCodec imageCodec = ImageCodecs.get(codecId);
+	if (imageCodec == null) {
+	    throw new IOException("Unknown image codec: " + codecId);
+	}
+
+	int length = getArrayLength(frame, 1);
+	ByteBuffer data = frame.slice();
+	data.limit(length);
+	frame.position(frame.position() + length);
+
+	int[] pixels = allocatePixels(pixelAllocator, width, height, pixelCount);
+	imageCodec.decode(data, width, height, pixels);
+	return pixels;
+    }
+
+    private static int[] allocatePixels(PixelAllocator pixelAllocator, int width, int height, int pixelCount) {
+	return pixelAllocator != null ? pixelAllocator.allocate(width, height, pixelCount) : new int[pixelCount];
+    }
+
+    /**
+     * Checks if the type tag belongs to a control message of the protocol.
+     * Control messages are small and may overtake queued frames, e.g. the
+     * tiles of a large image. The {@link DisconnectMessage} isn't a control
+     * message in this sense, it's always the last frame of a connection.
+     * 
+     * @param type
+     *            The type tag.
+     * @return True if the type is a control message.
+     */
+    public static boolean isControl(byte type) {
+	switch (type) {
+	case TYPE_KEYFRAME_REQUEST:
+	case TYPE_MULTICAST_JOIN:
+	case TYPE_MULTICAST_LEAVE:
+	case TYPE_SUBSCRIBE:
+	case TYPE_UNSUBSCRIBE:
+	case TYPE_MAX_RESOLUTION:
+	case TYPE_SESSION:
+	case TYPE_RESUME_SESSION:
+	case TYPE_PING:
+	case TYPE_PONG:
+	    return true;
+	default:
+	    return false;
+	}
+    }
+
+    private static void checkImageSize(int width, int height) throws IOException {
+	if (width < 0 || height < 0 || (long) width * height > MAX_IMAGE_PIXELS) {
+	    throw new IOException("Invalid image size: " + width + "x" + height);
+	}
+    }
+
+    /**
+     * Checks that the changed blocks of a delta lie within the image and that
+     * the number of pixels matches the blocks, so the delta can be applied to
+     * the base frame.
+     */
+    private static void checkDelta(int width, int height, int blockSize, int[] blocks, int pixelCount)
+	    throws IOException {
+	checkImageSize(width, height);
+	if (blockSize < 1) {
+	    throw new IOException("Invalid block size: " + blockSize);
+	}
+
+	int length = width * height;
+	long offset = 0;
+	for (int block : blocks) {
+	    if (block < 0 || (long) block * blockSize >= length) {
+		throw new IOException("Invalid block: " + block);
+	    }
+	    offset += Math.min(blockSize, length - block * blockSize);
+	}
+	if (offset != pixelCount) {
+	    throw new IOException("Invalid pixel count: " + pixelCount);
+	}
+    }
+
+    /**
+     * Reads the length of an array and checks it against the remaining frame,
+     * so a malformed frame can't allocate more memory than its own size.
+     */
+    private static int getArrayLength(ByteBuffer frame, int elementSize) throws IOException {
+	int length = frame.getInt();
+	if (length < 0 || (long) length * elementSize > frame.remaining()) {
+	    throw new IOException("Invalid array length: " + length);
+	}
+	return length;
+    }
+
+    private static String readString(ByteBuffer frame) throws IOException {
+	byte[] bytes = new byte[getArrayLength(frame, 1)];
+	frame.get(bytes);
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int[] readInts(ByteBuffer frame, int count) {
+	int[] values = new int[count];
+	frame.asIntBuffer().get(values);
+	frame.position(frame.position() + count * 4);
+	return values;
+    }
+
+    private static byte[] encodeSerialized(Message message) throws IOException {
+	ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+	byteStream.write(new byte[HEADER_SIZE]);
+
+	ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
+	objectStream.writeObject(message);
+	objectStream.close();
+
+	byte[] frame = byteStream.toByteArray();
+	ByteBuffer.wrap(frame).putInt(frame.length - 4).put(TYPE_SERIALIZED);
+	return frame;
+    }
+
+    private static Message decodeSerialized(ByteBuffer frame) throws IOException {
+	byte[] bytes = new byte[frame.remaining()];
+	frame.get(bytes);
+
+	ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(bytes));
+	try {
+	    Object message = objectStream.readObject();
+	    if (message instanceof Message) {
+		return (Message) message;
+	    } else {
+		throw new IOException("Object is not a message: " + message);
+	    }
+	} catch (ClassNotFoundException e) {
+	    throw new IOException("Unknown message class: " + e.getMessage(), e);
+	} finally {
+	    objectStream.close();
+	}
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * Classes implementing {@code MessageReader} interface read the incoming
+ * messages of a connection.
+ * 
+ * The handlers of the client and the server use this interface to receive
+ * messages, independent of the transport of the connection.
+ * 
+ * @see FrameReader
+ * 
+ * @author Mathias Markl
+ */
+public interface MessageReader {
+
+    /**
+     * Sets the metrics, which record the size and the decode time of every
+     * message.
+     * 
+     * @param metrics
+     *            The connection metrics or null.
+     */
+    public void setMetrics(ConnectionMetrics metrics);
+
+    /**
+     * Sets the allocator for the pixel arrays of received images.
+     * 
+     * @param pixelAllocator
+     *            The pixel allocator or null to allocate a new array for every
+     *            image.
+     */
+    public void setPixelAllocator(PixelAllocator pixelAllocator);
+
+    /**
+     * Sets the allocator for the arrays of received array messages.
+     * 
+     * @param arrayAllocator
+     *            The array allocator or null to allocate a new array for every
+     *            array message.
+     */
+    public void setArrayAllocator(ArrayAllocator arrayAllocator);
+
+    /**
+     * Reads the next message. The method waits until a message is available.
+     * 
+     * @return The message.
+     * @throws IOException
+     *             If the message couldn't be read an {@code IOException} is
+     *             thrown, an {@code EOFException} if the other side has
+     *             closed the connection.
+     */
+    public Message readMessage() throws IOException;
+
+    /**
+     * Closes the reader.
+     * 
+     * @throws IOException
+     *             If the reader couldn't be closed an {@code IOException} is
+     *             thrown.
+     */
+    public void close() throws IOException;
+}
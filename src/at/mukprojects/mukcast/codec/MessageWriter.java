@@ -0,0 +1,51 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.concurrent.Stoppable;
+
+/**
+ * Classes implementing {@code MessageWriter} interface deliver the frames of
+ * a {@link SendQueue} to the other side of a connection.
+ * 
+ * The handlers of the client and the server use this interface to send
+ * messages, independent of the transport of the connection. The writer is
+ * run by a thread of its own and stops after the send queue has been closed
+ * and drained.
+ * 
+ * @see FrameWriter
+ * 
+ * @author Mathias Markl
+ */
+public interface MessageWriter extends Runnable, Stoppable {
+
+    /**
+     * Checks if the writer is running.
+     * 
+     * @return Returns true or false depending on whether the writer is running
+     *         or not.
+     */
+    public boolean isRunning();
+
+    /**
+     * Delivers the buffered frames without waiting for the flush threshold or
+     * the flush delay.
+     */
+    public void flush();
+}
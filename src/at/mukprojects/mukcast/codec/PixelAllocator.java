@@ -0,0 +1,54 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+/**
+ * Classes implementing {@code PixelAllocator} interface provide the pixel
+ * arrays received images are decoded into.
+ * 
+ * An allocator allows the receiver to reuse pixel arrays instead of allocating
+ * a new array for every received image. The array is handed back with
+ * {@link #release(int[])} as soon as the message has been handled.
+ * 
+ * @see PixelBufferPool
+ * 
+ * @author Mathias Markl
+ */
+public interface PixelAllocator {
+
+    /**
+     * Returns a pixel array for a received image.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param length
+     *            The length of the pixel array.
+     * @return The pixel array with exactly the given length.
+     */
+    public int[] allocate(int width, int height, int length);
+
+    /**
+     * Hands a pixel array back after the message has been handled.
+     * 
+     * @param pixels
+     *            The pixel array.
+     */
+    public void release(int[] pixels);
+}
@@ -0,0 +1,79 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class is a pool of pixel arrays. Released arrays are kept per length
+ * and handed out again for images with the same size.
+ * 
+ * @see PixelAllocator
+ * 
+ * @author Mathias Markl
+ */
+public class PixelBufferPool implements PixelAllocator {
+
+    /**
+     * Default number of pooled arrays per length
+     */
+    public static final int DEFAULT_MAX_BUFFERS = 4;
+
+    private int maxBuffers;
+    private ConcurrentHashMap<Integer, Queue<int[]>> buffers;
+
+    /**
+     * Constructs a new PixelBufferPool.
+     */
+    public PixelBufferPool() {
+	this(DEFAULT_MAX_BUFFERS);
+    }
+
+    /**
+     * Constructs a new PixelBufferPool.
+     * 
+     * @param maxBuffers
+     *            The maximum number of pooled arrays per length.
+     */
+    public PixelBufferPool(int maxBuffers) {
+	this.maxBuffers = maxBuffers;
+	this.buffers = new ConcurrentHashMap<Integer, Queue<int[]>>();
+    }
+
+    @Override
+    public int[] allocate(int width, int height, int length) {
+	Queue<int[]> queue = buffers.get(length);
+	int[] pixels = queue != null ? queue.poll() : null;
+	return pixels != null ? pixels : new int[length];
+    }
+
+    @Override
+    public void release(int[] pixels) {
+	Queue<int[]> queue = buffers.get(pixels.length);
+	if (queue == null) {
+	    buffers.putIfAbsent(pixels.length, new ConcurrentLinkedQueue<int[]>());
+	    queue = buffers.get(pixels.length);
+	}
+
+	if (queue.size() < maxBuffers) {
+	    queue.offer(pixels);
+	}
+    }
+}
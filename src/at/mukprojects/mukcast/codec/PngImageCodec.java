@@ -0,0 +1,168 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * PngImageCodec is a lossless codec, which applies the row filters of the PNG
+ * format to the pixels before they are compressed with the deflate algorithm.
+ * <p>
+ * Every row is filtered with the filter (none, sub, up, average or paeth),
+ * which produces the smallest sum of absolute differences. Thus smooth images
+ * like gradients and photographs compress considerably better than with
+ * {@link DeflateImageCodec}.
+ * </p>
+ * 
+ * @see ImageCodecs#PNG
+ * 
+ * @author Mathias Markl
+ */
+public class PngImageCodec extends AbstractImageCodec {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private int level;
+
+    /**
+     * Constructs a new PngImageCodec with the fastest compression level.
+     */
+    public PngImageCodec() {
+	this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Constructs a new PngImageCodec.
+     * 
+     * @param level
+     *            The compression level (0-9).
+     */
+    public PngImageCodec(int level) {
+	this(ImageCodecs.PNG_ID, level);
+    }
+
+    /**
+     * Constructs a new PngImageCodec.
+     * 
+     * @param id
+     *            The codec id.
+     * @param level
+     *            The compression level (0-9).
+     */
+    protected PngImageCodec(byte id, int level) {
+	super(id);
+	this.level = level;
+    }
+
+    @Override
+    public byte[] encode(int width, int height, int[] pixels) throws IOException {
+	int rowLength = getRowLength(width, height, pixels) * BYTES_PER_PIXEL;
+	int rows = rowLength == 0 ? 0 : pixels.length * BYTES_PER_PIXEL / rowLength;
+
+	byte[] bytes = toBytes(pixels);
+	byte[] filtered = new byte[rows * (rowLength + 1)];
+	byte[] candidate = new byte[rowLength];
+
+	for (int row = 0; row < rows; row++) {
+	    int offset = row * rowLength;
+	    int target = row * (rowLength + 1);
+
+	    long bestSum = Long.MAX_VALUE;
+	    for (int filter = FILTER_NONE; filter <= FILTER_PAETH; filter++) {
+		long sum = filter(filter, bytes, offset, rowLength, row > 0, candidate);
+		if (sum < bestSum) {
+		    bestSum = sum;
+		    filtered[target] = (byte) filter;
+		    System.arraycopy(candidate, 0, filtered, target + 1, rowLength);
+		}
+	    }
+	}
+
+	return deflate(filtered, level);
+    }
+
+    @Override
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException {
+	int rowLength = getRowLength(width, height, pixels) * BYTES_PER_PIXEL;
+	int rows = rowLength == 0 ? 0 : pixels.length * BYTES_PER_PIXEL / rowLength;
+
+	byte[] filtered = inflate(data, rows * (rowLength + 1));
+	byte[] bytes = new byte[pixels.length * BYTES_PER_PIXEL];
+
+	for (int row = 0; row < rows; row++) {
+	    int offset = row * rowLength;
+	    int source = row * (rowLength + 1);
+	    int filter = filtered[source++];
+
+	    for (int i = 0; i < rowLength; i++) {
+		int left = i >= BYTES_PER_PIXEL ? bytes[offset + i - BYTES_PER_PIXEL] & 0xFF : 0;
+		int up = row > 0 ? bytes[offset + i - rowLength] & 0xFF : 0;
+		int upLeft = row > 0 && i >= BYTES_PER_PIXEL ? bytes[offset + i - rowLength - BYTES_PER_PIXEL] & 0xFF
+			: 0;
+		bytes[offset + i] = (byte) (filtered[source + i] + predict(filter, left, up, upLeft));
+	    }
+	}
+
+	toPixels(bytes, pixels);
+    }
+
+    private static long filter(int filter, byte[] bytes, int offset, int rowLength, boolean hasUp,
+	    byte[] target) {
+	long sum = 0;
+	for (int i = 0; i < rowLength; i++) {
+	    int left = i >= BYTES_PER_PIXEL ? bytes[offset + i - BYTES_PER_PIXEL] & 0xFF : 0;
+	    int up = hasUp ? bytes[offset + i - rowLength] & 0xFF : 0;
+	    int upLeft = hasUp && i >= BYTES_PER_PIXEL ? bytes[offset + i - rowLength - BYTES_PER_PIXEL] & 0xFF : 0;
+
+	    byte value = (byte) (bytes[offset + i] - predict(filter, left, up, upLeft));
+	    target[i] = value;
+	    sum += Math.abs(value);
+	}
+	return sum;
+    }
+
+    private static int predict(int filter, int left, int up, int upLeft) {
+	switch (filter) {
+	case FILTER_SUB:
+	    return left;
+	case FILTER_UP:
+	    return up;
+	case FILTER_AVERAGE:
+	    return (left + up) >>> 1;
+	case FILTER_PAETH:
+	    int estimate = left + up - upLeft;
+	    int distanceLeft = Math.abs(estimate - left);
+	    int distanceUp = Math.abs(estimate - up);
+	    int distanceUpLeft = Math.abs(estimate - upLeft);
+	    if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+		return left;
+	    }
+	    return distanceUp <= distanceUpLeft ? up : upLeft;
+	default:
+	    return 0;
+	}
+    }
+}
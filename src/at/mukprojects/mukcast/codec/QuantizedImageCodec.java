@@ -0,0 +1,102 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * QuantizedImageCodec is a lossy codec, which reduces the number of bits of
+ * the red, green and blue channel before the pixels are compressed like with
+ * the {@link PngImageCodec}. The alpha channel is kept.
+ * <p>
+ * Fewer bits produce longer runs of equal values and thus a better
+ * compression. With 5 bits per channel the color banding is hardly visible in
+ * photographs.
+ * </p>
+ * 
+ * @see ImageCodecs#QUANTIZED
+ * 
+ * @author Mathias Markl
+ */
+public class QuantizedImageCodec extends PngImageCodec {
+
+    private int bits;
+
+    /**
+     * Constructs a new QuantizedImageCodec with 5 bits per channel.
+     */
+    public QuantizedImageCodec() {
+	this(5);
+    }
+
+    /**
+     * Constructs a new QuantizedImageCodec.
+     * 
+     * @param bits
+     *            The number of bits per channel (1-8).
+     */
+    public QuantizedImageCodec(int bits) {
+	super(ImageCodecs.QUANTIZED_ID, Deflater.BEST_SPEED);
+
+	if (bits < 1 || bits > 8) {
+	    throw new IllegalArgumentException("The number of bits has to be between 1 and 8.");
+	}
+	this.bits = bits;
+    }
+
+    @Override
+    public byte[] encode(int width, int height, int[] pixels) throws IOException {
+	int shift = 8 - bits;
+	int mask = (0xFF >>> shift) * 0x010101;
+
+	int[] quantized = new int[pixels.length];
+	for (int i = 0; i < pixels.length; i++) {
+	    int pixel = pixels[i];
+	    quantized[i] = (pixel & 0xFF000000) | ((pixel >>> shift) & mask);
+	}
+
+	byte[] compressed = super.encode(width, height, quantized);
+	byte[] data = new byte[compressed.length + 1];
+	data[0] = (byte) bits;
+	System.arraycopy(compressed, 0, data, 1, compressed.length);
+	return data;
+    }
+
+    @Override
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException {
+	int dataBits = data.get();
+	if (dataBits < 1 || dataBits > 8) {
+	    throw new IOException("Invalid number of bits: " + dataBits);
+	}
+	super.decode(data, width, height, pixels);
+
+	int maxValue = (1 << dataBits) - 1;
+	int[] expand = new int[maxValue + 1];
+	for (int value = 0; value <= maxValue; value++) {
+	    expand[value] = (value * 255 + maxValue / 2) / maxValue;
+	}
+
+	for (int i = 0; i < pixels.length; i++) {
+	    int pixel = pixels[i];
+	    pixels[i] = (pixel & 0xFF000000) | (expand[(pixel >>> 16) & maxValue] << 16)
+		    | (expand[(pixel >>> 8) & maxValue] << 8) | expand[pixel & maxValue];
+	}
+    }
+}
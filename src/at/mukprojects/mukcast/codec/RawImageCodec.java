@@ -0,0 +1,49 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * RawImageCodec sends the pixels uncompressed. Messages, which are encoded
+ * with this codec, are written in the same way as without a codec.
+ * 
+ * @see ImageCodecs#RAW
+ * 
+ * @author Mathias Markl
+ */
+public class RawImageCodec extends AbstractImageCodec {
+
+    /**
+     * Constructs a new RawImageCodec.
+     */
+    public RawImageCodec() {
+	super(ImageCodecs.RAW_ID);
+    }
+
+    @Override
+    public byte[] encode(int width, int height, int[] pixels) throws IOException {
+	return toBytes(pixels);
+    }
+
+    @Override
+    public void decode(ByteBuffer data, int width, int height, int[] pixels) throws IOException {
+	data.asIntBuffer().get(pixels);
+    }
+}
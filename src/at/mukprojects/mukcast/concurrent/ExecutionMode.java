@@ -0,0 +1,41 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.concurrent;
+
+/**
+ * The ExecutionMode defines on which threads the connections of a server or
+ * a client are served.
+ * 
+ * @see ThreadExecutors
+ * 
+ * @author Mathias Markl
+ */
+public enum ExecutionMode {
+
+    /**
+     * Every task runs on a platform thread.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * Every task runs on its own virtual thread, so a blocking connection only
+     * costs a few kilobytes instead of a platform thread. Virtual threads need
+     * Java 21 or newer, on older runtimes platform threads are used.
+     */
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,89 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.concurrent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs a task periodically, e.g. the heartbeat of a connection.
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread. A stopped heartbeat returns at once, even if it is
+ * waiting for the next beat.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class Heartbeat implements Runnable, Stoppable {
+
+    private Runnable task;
+    private long intervalNanos;
+    private boolean running;
+
+    /**
+     * Constructs a new Heartbeat.
+     * 
+     * @param task
+     *            The task, which is run on every beat.
+     * @param interval
+     *            The interval between two beats.
+     * @param unit
+     *            The unit of the interval.
+     */
+    public Heartbeat(Runnable task, long interval, TimeUnit unit) {
+	if (interval < 1) {
+	    throw new IllegalArgumentException("The interval has to be greater than zero.");
+	}
+	this.task = task;
+	this.intervalNanos = unit.toNanos(interval);
+	this.running = true;
+    }
+
+    @Override
+    public void run() {
+	while (await()) {
+	    task.run();
+	}
+    }
+
+    /**
+     * Waits for the next beat.
+     * 
+     * @return False if the heartbeat has been stopped.
+     */
+    private synchronized boolean await() {
+	long deadline = System.nanoTime() + intervalNanos;
+	long remaining = intervalNanos;
+	while (running && remaining > 0) {
+	    try {
+		TimeUnit.NANOSECONDS.timedWait(this, remaining);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		running = false;
+	    }
+	    remaining = deadline - System.nanoTime();
+	}
+	return running;
+    }
+
+    @Override
+    public synchronized void stop() {
+	running = false;
+	notifyAll();
+    }
+}
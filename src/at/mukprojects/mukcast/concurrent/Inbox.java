@@ -0,0 +1,157 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * This class is an unbounded, lock-free queue for incoming messages.
+ * <p>
+ * The inbox is filled by any number of network threads and drained in batches
+ * by a single consumer, e.g. once per frame by the animation thread of a
+ * sketch. If coalescing is enabled only the latest message of every key is
+ * delivered, older messages with the same key are discarded.
+ * </p>
+ * 
+ * @author Mathias Markl
+ * 
+ * @param <E>
+ *            The type of the queued messages.
+ */
+public class Inbox<E> {
+
+    private ConcurrentLinkedQueue<Entry<E>> queue;
+    private ConcurrentHashMap<Object, Entry<E>> latest;
+
+    private volatile int maxPerDrain;
+    private volatile boolean coalescing;
+
+    /**
+     * Constructs a new Inbox.
+     */
+    public Inbox() {
+	this.queue = new ConcurrentLinkedQueue<Entry<E>>();
+	this.latest = new ConcurrentHashMap<Object, Entry<E>>();
+    }
+
+    /**
+     * Sets the maximum number of messages delivered by one drain. The
+     * remaining messages stay in the inbox for the next drain.
+     * 
+     * @param maxPerDrain
+     *            The maximum number of messages or 0 for no limit.
+     */
+    public void setMaxPerDrain(int maxPerDrain) {
+	this.maxPerDrain = maxPerDrain;
+    }
+
+    /**
+     * Enables or disables coalescing. If enabled, a message replaces an
+     * undelivered message with the same key.
+     * 
+     * @param coalescing
+     *            True to enable coalescing.
+     */
+    public void setCoalescing(boolean coalescing) {
+	this.coalescing = coalescing;
+    }
+
+    /**
+     * Adds a message to the inbox.
+     * 
+     * @param key
+     *            The coalescing key or null if the message must not be
+     *            replaced.
+     * @param element
+     *            The message.
+     */
+    public void offer(Object key, E element) {
+	Entry<E> entry = new Entry<E>(key, element);
+	if (coalescing && key != null) {
+	    Entry<E> previous = latest.put(key, entry);
+	    if (previous != null) {
+		previous.superseded = true;
+	    }
+	}
+	queue.offer(entry);
+    }
+
+    /**
+     * Delivers the queued messages in the order they were added.
+     * 
+     * @param consumer
+     *            The consumer of the delivered messages.
+     * @param discarded
+     *            The consumer of the messages which were replaced by a newer
+     *            message or null.
+     * @return The number of delivered messages.
+     */
+    public int drain(Consumer<? super E> consumer, Consumer<? super E> discarded) {
+	int limit = maxPerDrain;
+	int delivered = 0;
+
+	Entry<E> entry;
+	while ((limit <= 0 || delivered < limit) && (entry = queue.poll()) != null) {
+	    if (entry.key != null) {
+		latest.remove(entry.key, entry);
+	    }
+
+	    if (entry.superseded) {
+		if (discarded != null) {
+		    discarded.accept(entry.element);
+		}
+	    } else {
+		consumer.accept(entry.element);
+		delivered++;
+	    }
+	}
+	return delivered;
+    }
+
+    /**
+     * Returns the number of queued messages. The size includes replaced
+     * messages, which haven't been discarded yet.
+     * 
+     * @return The number of queued messages.
+     */
+    public int size() {
+	return queue.size();
+    }
+
+    /**
+     * Checks if the inbox is empty.
+     * 
+     * @return True if there are no queued messages.
+     */
+    public boolean isEmpty() {
+	return queue.isEmpty();
+    }
+
+    private static class Entry<E> {
+	private final Object key;
+	private final E element;
+	private volatile boolean superseded;
+
+	private Entry(Object key, E element) {
+	    this.key = key;
+	    this.element = element;
+	}
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.concurrent;
+
+/**
+ * The OverflowPolicy defines how a {@link SendQueue} behaves if a message is
+ * added while the queue is full.
+ * 
+ * @see SendQueue
+ * 
+ * @author Mathias Markl
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The sender waits until there is space in the queue. A thread, which
+     * isn't allowed to wait, e.g. a selector loop of the server, which also
+     * writes the queued messages, disconnects the client instead, because
+     * waiting would block the loop forever.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued message or group of messages is dropped.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new message is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Only the latest message or group of messages is kept. Every new message
+     * replaces all queued messages, independent of the capacity of the queue,
+     * except a group, which is already being written.
+     */
+    KEEP_LATEST,
+
+    /**
+     * The client gets disconnected.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,576 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is a bounded queue for outgoing messages of a connection.
+ * <p>
+ * The queue is filled by any number of senders and drained by a single writer.
+ * If a sender adds a message while the queue is full, the
+ * {@link OverflowPolicy} of the queue decides what happens.
+ * </p>
+ * <p>
+ * A message can be added with a conflation key. If a message with the same key
+ * is still queued, it is replaced in place by the new message, so only the
+ * latest value of a key is written and the message keeps the position of the
+ * replaced message.
+ * </p>
+ * <p>
+ * Messages, which belong together, e.g. the tiles of an image, can be added as
+ * a group. A group counts as one message against the capacity and is dropped
+ * as a whole by the overflow policy, so a message of a group is never lost
+ * while the others are written. A group, which is already being written, is
+ * never dropped.
+ * </p>
+ * <p>
+ * Small control messages can be added to a priority lane. They are retrieved
+ * before all other messages, e.g. between the tiles of a large image, and
+ * neither count against the capacity nor are dropped by the overflow policy.
+ * </p>
+ * 
+ * @see OverflowPolicy
+ * 
+ * @author Mathias Markl
+ * 
+ * @param <E>
+ *            The type of the queued messages.
+ */
+public class SendQueue<E> {
+
+    private ArrayDeque<Entry<E>> queue;
+    private ArrayDeque<E> priorityQueue;
+    private HashMap<Object, Entry<E>> latest;
+    private int capacity;
+    private OverflowPolicy policy;
+
+    private ReentrantLock lock;
+    private Condition notEmpty;
+    private Condition notFull;
+
+    private long droppedCount;
+    private long replacedCount;
+    private int elementCount;
+    private int maxSize;
+    private boolean closed;
+    private boolean wakeUp;
+
+    /**
+     * Constructs a new SendQueue.
+     * 
+     * @param capacity
+     *            The capacity of the queue.
+     * @param policy
+     *            The overflow policy.
+     */
+    public SendQueue(int capacity, OverflowPolicy policy) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("The capacity has to be greater than zero.");
+	}
+
+	this.queue = new ArrayDeque<Entry<E>>();
+	this.priorityQueue = new ArrayDeque<E>();
+	this.latest = new HashMap<Object, Entry<E>>();
+	this.capacity = capacity;
+	this.policy = policy;
+	this.lock = new ReentrantLock();
+	this.notEmpty = lock.newCondition();
+	this.notFull = lock.newCondition();
+    }
+
+    /**
+     * Adds a message to the queue. Depending on the overflow policy the method
+     * waits until there is space in the queue or drops a message if the queue
+     * is full.
+     * 
+     * @param element
+     *            The message.
+     * @return Returns false if the queue is closed or if the queue is full and
+     *         the policy is {@link OverflowPolicy#DISCONNECT}. Otherwise true
+     *         is returned.
+     */
+    public boolean offer(E element) {
+	return offer(null, element);
+    }
+
+    /**
+     * Adds a message with a conflation key to the queue. If a message with the
+     * same key is still queued, it is replaced by the new message and the
+     * overflow policy isn't applied. Otherwise the message is added like
+     * {@link #offer(Object)} does.
+     * 
+     * @param key
+     *            The conflation key or null if the message must not be
+     *            replaced.
+     * @param element
+     *            The message.
+     * @return Returns false if the queue is closed or if the queue is full and
+     *         the policy is {@link OverflowPolicy#DISCONNECT}. Otherwise true
+     *         is returned.
+     */
+    public boolean offer(Object key, E element) {
+	return offer(key, element, true);
+    }
+
+    /**
+     * Adds a message with a conflation key to the queue like
+     * {@link #offer(Object, Object)} does. If waiting isn't allowed, e.g.
+     * because the calling thread is the one which takes the messages, the
+     * policy {@link OverflowPolicy#BLOCK} behaves like
+     * {@link OverflowPolicy#DISCONNECT}.
+     * 
+     * @param key
+     *            The conflation key or null if the message must not be
+     *            replaced.
+     * @param element
+     *            The message.
+     * @param wait
+     *            True if the method may wait until there is space in the
+     *            queue.
+     * @return Returns false if the queue is closed or if the queue is full and
+     *         the policy is {@link OverflowPolicy#DISCONNECT} or
+     *         {@link OverflowPolicy#BLOCK} without waiting. Otherwise true is
+     *         returned.
+     */
+    public boolean offer(Object key, E element, boolean wait) {
+	lock.lock();
+	try {
+	    if (closed) {
+		return false;
+	    }
+
+	    if (key != null) {
+		Entry<E> queued = latest.get(key);
+		if (queued != null) {
+		    queued.element = element;
+		    replacedCount++;
+		    return true;
+		}
+	    }
+
+	    return enqueue(new Entry<E>(key, element, null), wait);
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Adds a group of messages to the queue, which are retrieved one after
+     * another. The group counts as one message against the capacity and the
+     * overflow policy is applied to the whole group, e.g.
+     * {@link OverflowPolicy#DROP_OLDEST} drops the oldest message or group and
+     * {@link OverflowPolicy#KEEP_LATEST} keeps the complete group.
+     * 
+     * @param elements
+     *            The messages.
+     * @return Returns false if the queue is closed or if the queue is full and
+     *         the policy is {@link OverflowPolicy#DISCONNECT}. Otherwise true
+     *         is returned.
+     */
+    public boolean offerAll(List<? extends E> elements) {
+	return offerAll(elements, true);
+    }
+
+    /**
+     * Adds a group of messages to the queue like {@link #offerAll(List)} does.
+     * If waiting isn't allowed, the policy {@link OverflowPolicy#BLOCK}
+     * behaves like {@link OverflowPolicy#DISCONNECT}.
+     * 
+     * @see #offer(Object, Object, boolean)
+     * 
+     * @param elements
+     *            The messages.
+     * @param wait
+     *            True if the method may wait until there is space in the
+     *            queue.
+     * @return Returns false if the queue is closed or if the queue is full and
+     *         the policy is {@link OverflowPolicy#DISCONNECT} or
+     *         {@link OverflowPolicy#BLOCK} without waiting. Otherwise true is
+     *         returned.
+     */
+    public boolean offerAll(List<? extends E> elements, boolean wait) {
+	if (elements.isEmpty()) {
+	    return true;
+	}
+
+	lock.lock();
+	try {
+	    if (closed) {
+		return false;
+	    }
+	    return enqueue(new Entry<E>(null, null, elements), wait);
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Adds an entry to the queue and applies the overflow policy. The lock has
+     * to be held.
+     */
+    private boolean enqueue(Entry<E> entry, boolean wait) {
+	if (policy == OverflowPolicy.KEEP_LATEST) {
+	    while (dropOldest()) {
+	    }
+	} else if (queue.size() >= capacity) {
+	    switch (policy) {
+	    case BLOCK:
+		if (!wait) {
+		    droppedCount += entry.remaining();
+		    return false;
+		}
+		try {
+		    while (queue.size() >= capacity && !closed) {
+			notFull.await();
+		    }
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    droppedCount += entry.remaining();
+		    return true;
+		}
+		if (closed) {
+		    return false;
+		}
+		break;
+	    case DROP_OLDEST:
+		/*
+		 * If only a group, which is being written, is queued, nothing is
+		 * dropped and the queue exceeds the capacity by one entry.
+		 */
+		dropOldest();
+		break;
+	    case DROP_NEWEST:
+		droppedCount += entry.remaining();
+		return true;
+	    default:
+		droppedCount += entry.remaining();
+		return false;
+	    }
+	}
+
+	if (entry.key != null) {
+	    latest.put(entry.key, entry);
+	}
+	queue.add(entry);
+	elementCount += entry.remaining();
+	updateMaxSize();
+	notEmpty.signal();
+	return true;
+    }
+
+    /**
+     * Drops the oldest entry, which isn't being written. The lock has to be
+     * held.
+     * 
+     * @return False if there is no entry, which can be dropped.
+     */
+    private boolean dropOldest() {
+	Entry<E> head = queue.peekFirst();
+	if (head == null) {
+	    return false;
+	}
+
+	Entry<E> dropped;
+	if (head.next > 0) {
+	    queue.pollFirst();
+	    dropped = queue.pollFirst();
+	    queue.addFirst(head);
+	} else {
+	    dropped = queue.pollFirst();
+	}
+	if (dropped == null) {
+	    return false;
+	}
+
+	if (dropped.key != null) {
+	    latest.remove(dropped.key);
+	}
+	droppedCount += dropped.remaining();
+	elementCount -= dropped.remaining();
+	return true;
+    }
+
+    /**
+     * Adds a message to the priority lane of the queue. The message is
+     * retrieved before the messages, which have been added with
+     * {@link #offer(Object)}. The priority lane isn't bounded, so it should
+     * only be used for small and rare messages.
+     * 
+     * @param element
+     *            The message.
+     * @return Returns false if the queue is closed, otherwise true.
+     */
+    public boolean offerPriority(E element) {
+	lock.lock();
+	try {
+	    if (closed) {
+		return false;
+	    }
+
+	    priorityQueue.add(element);
+	    updateMaxSize();
+	    notEmpty.signal();
+	    return true;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Retrieves and removes the oldest message of the queue. The method waits
+     * until a message is available.
+     * 
+     * @return The message or null if the queue is closed and empty.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting an
+     *             {@code InterruptedException} is thrown.
+     */
+    public E take() throws InterruptedException {
+	lock.lock();
+	try {
+	    while (queue.isEmpty() && priorityQueue.isEmpty() && !closed) {
+		notEmpty.await();
+	    }
+	    return removeFirst();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Retrieves and removes the oldest message of the queue. The method waits
+     * until a message is available or the timeout has elapsed.
+     * 
+     * @param timeout
+     *            The maximum time to wait.
+     * @param unit
+     *            The time unit of the timeout.
+     * @return The message or null if no message is available.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting an
+     *             {@code InterruptedException} is thrown.
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+	long nanos = unit.toNanos(timeout);
+
+	lock.lock();
+	try {
+	    while (queue.isEmpty() && priorityQueue.isEmpty() && !closed && !wakeUp && nanos > 0) {
+		nanos = notEmpty.awaitNanos(nanos);
+	    }
+	    wakeUp = false;
+	    return removeFirst();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Wakes up the writer, if it is waiting in {@link #poll(long, TimeUnit)}.
+     * The waiting call returns immediately, even if the queue is empty.
+     */
+    public void wakeUp() {
+	lock.lock();
+	try {
+	    wakeUp = true;
+	    notEmpty.signalAll();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Retrieves and removes the oldest message of the queue without waiting.
+     * 
+     * @return The message or null if the queue is empty.
+     */
+    public E poll() {
+	lock.lock();
+	try {
+	    return removeFirst();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Returns the number of queued messages.
+     * 
+     * @return The number of queued messages.
+     */
+    public int size() {
+	lock.lock();
+	try {
+	    return elementCount + priorityQueue.size();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Returns the maximum number of messages, which have been queued at the
+     * same time.
+     * 
+     * @return The maximum number of queued messages.
+     */
+    public int getMaxSize() {
+	lock.lock();
+	try {
+	    return maxSize;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Checks if the queue is empty.
+     * 
+     * @return Returns true or false depending on whether the queue is empty or
+     *         not.
+     */
+    public boolean isEmpty() {
+	return size() == 0;
+    }
+
+    /**
+     * Returns the number of messages, which have been dropped by the overflow
+     * policy.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDroppedCount() {
+	lock.lock();
+	try {
+	    return droppedCount;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Returns the number of messages, which have been replaced by a newer
+     * message with the same conflation key.
+     * 
+     * @return The number of replaced messages.
+     */
+    public long getReplacedCount() {
+	lock.lock();
+	try {
+	    return replacedCount;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Closes the queue. No more messages are accepted, but the queued messages
+     * can still be retrieved.
+     */
+    public void close() {
+	lock.lock();
+	try {
+	    closed = true;
+	    notEmpty.signalAll();
+	    notFull.signalAll();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    /**
+     * Checks if the queue is closed.
+     * 
+     * @return Returns true or false depending on whether the queue is closed
+     *         or not.
+     */
+    public boolean isClosed() {
+	lock.lock();
+	try {
+	    return closed;
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    private void updateMaxSize() {
+	int size = elementCount + priorityQueue.size();
+	if (size > maxSize) {
+	    maxSize = size;
+	}
+    }
+
+    private E removeFirst() {
+	E element = priorityQueue.poll();
+	if (element != null) {
+	    return element;
+	}
+	return removeOldest();
+    }
+
+    private E removeOldest() {
+	Entry<E> entry = queue.peek();
+	if (entry == null) {
+	    return null;
+	}
+
+	E element;
+	if (entry.group != null) {
+	    element = entry.group.get(entry.next++);
+	} else {
+	    element = entry.element;
+	    entry.next++;
+	}
+	elementCount--;
+
+	if (entry.remaining() == 0) {
+	    queue.poll();
+	    if (entry.key != null) {
+		latest.remove(entry.key);
+	    }
+	    notFull.signal();
+	}
+	return element;
+    }
+
+    /**
+     * A queued message or group of messages. The index of the next message
+     * is greater than zero while a group is being written.
+     */
+    private static class Entry<E> {
+	private final Object key;
+	private final List<? extends E> group;
+	private E element;
+	private int next;
+
+	private Entry(Object key, E element, List<? extends E> group) {
+	    this.key = key;
+	    this.element = element;
+	    this.group = group;
+	}
+
+	private int remaining() {
+	    return (group != null ? group.size() : 1) - next;
+	}
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class creates the executors for an {@link ExecutionMode}.
+ * <p>
+ * The library is compiled for Java 8, so the virtual thread executor is looked
+ * up by reflection. If the runtime doesn't support virtual threads, platform
+ * threads are used instead.
+ * </p>
+ * 
+ * @see ExecutionMode
+ * 
+ * @author Mathias Markl
+ */
+public final class ThreadExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadExecutors.class);
+
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private ThreadExecutors() {
+    }
+
+    /**
+     * Checks if the runtime supports virtual threads.
+     * 
+     * @return Returns true or false depending on whether virtual threads are
+     *         supported or not.
+     */
+    public static boolean isVirtualThreadSupported() {
+	return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor, which runs the tasks of a server. Platform threads
+     * are pooled and reused, virtual threads are created for every task.
+     * 
+     * @param mode
+     *            The execution mode.
+     * @return The executor.
+     */
+    public static ExecutorService newExecutorService(ExecutionMode mode) {
+	if (mode == ExecutionMode.VIRTUAL_THREADS) {
+	    ExecutorService executor = newVirtualThreadExecutor();
+	    if (executor != null) {
+		return executor;
+	    }
+	}
+	return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Creates an executor, which runs every task on a new thread. Unlike a
+     * pool, the executor doesn't keep idle threads alive, so it never has to
+     * be shut down.
+     * 
+     * @param mode
+     *            The execution mode.
+     * @return The executor.
+     */
+    public static Executor newThreadPerTaskExecutor(ExecutionMode mode) {
+	if (mode == ExecutionMode.VIRTUAL_THREADS) {
+	    ExecutorService executor = newVirtualThreadExecutor();
+	    if (executor != null) {
+		return executor;
+	    }
+	}
+	return new Executor() {
+	    @Override
+	    public void execute(Runnable task) {
+		new Thread(task).start();
+	    }
+	};
+    }
+
+    /**
+     * Creates a virtual thread executor or returns null, if virtual threads
+     * aren't supported.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+	if (VIRTUAL_THREAD_EXECUTOR == null) {
+	    logger.warn("Virtual threads aren't supported by the runtime, platform threads are used instead.");
+	    return null;
+	}
+
+	try {
+	    return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+	} catch (Exception e) {
+	    logger.error("Virtual thread executor couldn't be created.", e);
+	    return null;
+	}
+    }
+
+    private static Method findVirtualThreadExecutor() {
+	try {
+	    return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	} catch (NoSuchMethodException e) {
+	    return null;
+	}
+    }
+}
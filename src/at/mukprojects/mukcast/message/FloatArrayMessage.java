@@ -0,0 +1,90 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * FloatArrayMessage represents a message which contains an array of floats, e.g.
+ * a spectrum or the joints of a tracked skeleton. The array is encoded in bulk,
+ * so sending many values in one message is much cheaper than sending a
+ * message per value.
+ * 
+ * @see Message
+ * 
+ * @author Mathias Markl
+ */
+public class FloatArrayMessage implements Message {
+
+    private static final long serialVersionUID = -3615271934624096571L;
+
+    private float[] values;
+
+    /**
+     * Constructs a new FloatArrayMessage. The array isn't copied, so it shouldn't
+     * be modified until the message has been sent.
+     * 
+     * @param values
+     *            The values.
+     */
+    public FloatArrayMessage(float[] values) {
+	if (values == null) {
+	    throw new IllegalArgumentException("The values can't be null.");
+	}
+	this.values = values;
+    }
+
+    /**
+     * Returns the number of values.
+     * 
+     * @return The number of values.
+     */
+    public int getLength() {
+	return values.length;
+    }
+
+    /**
+     * Returns the values.
+     * 
+     * @return The values.
+     */
+    public float[] getValues() {
+	return values;
+    }
+
+    /**
+     * Copies the values into the target array. If the message was decoded
+     * directly into the target array the values aren't copied.
+     * 
+     * @see at.mukprojects.mukcast.codec.ArrayAllocator
+     * 
+     * @param target
+     *            The target array or null.
+     * @return The target array or a new array, if the target is null or too
+     *         small.
+     */
+    public float[] getValues(float[] target) {
+	if (target == null || target.length < values.length) {
+	    target = new float[values.length];
+	}
+
+	if (target != values) {
+	    System.arraycopy(values, 0, target, 0, values.length);
+	}
+	return target;
+    }
+}
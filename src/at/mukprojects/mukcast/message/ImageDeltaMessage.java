@@ -0,0 +1,151 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * ImageDeltaMessage represents the changes of a frame of a delta encoded image
+ * stream compared to the previous frame.
+ * <p>
+ * The pixel array of the frame is divided into blocks of a fixed size. The
+ * message only contains the blocks, which have changed.
+ * </p>
+ * 
+ * @see ImageKeyframeMessage
+ * 
+ * @author Mathias Markl
+ */
+public class ImageDeltaMessage implements Message {
+
+    private static final long serialVersionUID = 4459335912706393447L;
+
+    private int width;
+    private int height;
+    private int sequence;
+    private int baseSequence;
+    private int blockSize;
+    private int[] blocks;
+    private int[] pixels;
+
+    /**
+     * Constructs a new ImageDeltaMessage.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param sequence
+     *            The sequence number of the frame.
+     * @param baseSequence
+     *            The sequence number of the frame the delta is based on.
+     * @param blockSize
+     *            The number of pixels per block.
+     * @param blocks
+     *            The indices of the changed blocks.
+     * @param pixels
+     *            The pixels of the changed blocks.
+     */
+    public ImageDeltaMessage(int width, int height, int sequence, int baseSequence, int blockSize, int[] blocks,
+	    int[] pixels) {
+	this.width = width;
+	this.height = height;
+	this.sequence = sequence;
+	this.baseSequence = baseSequence;
+	this.blockSize = blockSize;
+	this.blocks = blocks;
+	this.pixels = pixels;
+    }
+
+    /**
+     * Returns the image width.
+     * 
+     * @return The image width.
+     */
+    public int getWidth() {
+	return width;
+    }
+
+    /**
+     * Returns the image height.
+     * 
+     * @return The image height.
+     */
+    public int getHeight() {
+	return height;
+    }
+
+    /**
+     * Returns the sequence number of the frame.
+     * 
+     * @return The sequence number.
+     */
+    public int getSequence() {
+	return sequence;
+    }
+
+    /**
+     * Returns the sequence number of the frame the delta is based on.
+     * 
+     * @return The base sequence number.
+     */
+    public int getBaseSequence() {
+	return baseSequence;
+    }
+
+    /**
+     * Returns the number of pixels per block.
+     * 
+     * @return The block size.
+     */
+    public int getBlockSize() {
+	return blockSize;
+    }
+
+    /**
+     * Returns the indices of the changed blocks.
+     * 
+     * @return The block indices.
+     */
+    public int[] getBlocks() {
+	return blocks;
+    }
+
+    /**
+     * Returns the pixels of the changed blocks.
+     * 
+     * @return The block pixels.
+     */
+    public int[] getPixels() {
+	return pixels;
+    }
+
+    /**
+     * Applies the changed blocks to the pixel array of the base frame.
+     * 
+     * @param frame
+     *            The pixel array of the base frame.
+     */
+    public void applyTo(int[] frame) {
+	int offset = 0;
+	for (int block : blocks) {
+	    int start = block * blockSize;
+	    int length = Math.min(blockSize, frame.length - start);
+	    System.arraycopy(pixels, offset, frame, start, length);
+	    offset += length;
+	}
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * ImageKeyframeMessage represents a full frame of a delta encoded image
+ * stream. The following {@link ImageDeltaMessage}s are based on it.
+ * 
+ * @see ImageMessage
+ * @see ImageDeltaMessage
+ * 
+ * @author Mathias Markl
+ */
+public class ImageKeyframeMessage extends ImageMessage {
+
+    private static final long serialVersionUID = -6503337616387316713L;
+
+    private int sequence;
+
+    /**
+     * Constructs a new ImageKeyframeMessage.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param pixels
+     *            The image pixel array.
+     * @param sequence
+     *            The sequence number of the frame.
+     */
+    public ImageKeyframeMessage(int width, int height, int[] pixels, int sequence) {
+	super(width, height, pixels);
+	this.sequence = sequence;
+    }
+
+    /**
+     * Returns the sequence number of the frame.
+     * 
+     * @return The sequence number.
+     */
+    public int getSequence() {
+	return sequence;
+    }
+}
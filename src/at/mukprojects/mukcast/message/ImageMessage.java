@@ -35,7 +35,9 @@ public class ImageMessage implements Message {
     private int[] pixels;
 
     /**
-     * Constructs a new ImageMessage.
+     * Constructs a new ImageMessage. The size of the message is the size of
+     * the pixel array, e.g. twice the size of the image with
+     * {@code pixelDensity(2)}.
      * 
      * @param image
      *            The image.
@@ -45,11 +47,27 @@ public class ImageMessage implements Message {
 	    image.loadPixels();
 	}
 
-	this.width = image.width;
-	this.height = image.height;
+	this.width = image.pixelWidth;
+	this.height = image.pixelHeight;
 	this.pixels = image.pixels;
     }
 
+    /**
+     * Constructs a new ImageMessage.
+     * 
+     * @param width
+     *            The image width.
+     * @param height
+     *            The image height.
+     * @param pixels
+     *            The image pixel array.
+     */
+    public ImageMessage(int width, int height, int[] pixels) {
+	this.width = width;
+	this.height = height;
+	this.pixels = pixels;
+    }
+
     /**
      * Returns the image width.
      * 
@@ -78,23 +96,23 @@ public class ImageMessage implements Message {
     }
 
     /**
-     * Returns the image data as a PImage.
+     * Returns the image data as a PImage. If the message was decoded directly
+     * into the pixel array of the given image the pixels aren't copied.
      * 
      * @return The image.
      */
     public PImage getImage(PImage img) {
 	if (img != null) {
 
-	    img.loadPixels();
-	    
 	    if (width != img.width || height != img.height) {
-		img.resize(width, height);
+		img.init(width, height, img.format);
 	    }
-	    
-	    for(int i = 0; i < img.pixels.length; i++) {
-		img.pixels[i] = this.pixels[i];
+	    img.loadPixels();
+
+	    if (img.pixels != pixels) {
+		System.arraycopy(pixels, 0, img.pixels, 0, Math.min(pixels.length, img.pixels.length));
 	    }
-	    
+
 	    img.updatePixels();
 
 	}
@@ -0,0 +1,174 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * ImageTileMessage represents a rectangular part of an image, which has been
+ * split into tiles. The tiles of an image share the frame id and are encoded
+ * independently, so a client can apply every tile as soon as it arrives.
+ * 
+ * @see ImageMessage
+ * 
+ * @author Mathias Markl
+ */
+public class ImageTileMessage implements Message {
+    private static final long serialVersionUID = -2938466014525361734L;
+
+    private int frameId;
+    private int frameWidth;
+    private int frameHeight;
+    private int tileCount;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private int[] pixels;
+
+    /**
+     * Constructs a new ImageTileMessage.
+     * 
+     * @param frameId
+     *            The id of the image the tile belongs to.
+     * @param frameWidth
+     *            The width of the image.
+     * @param frameHeight
+     *            The height of the image.
+     * @param tileCount
+     *            The number of tiles of the image.
+     * @param x
+     *            The x coordinate of the tile.
+     * @param y
+     *            The y coordinate of the tile.
+     * @param width
+     *            The width of the tile.
+     * @param height
+     *            The height of the tile.
+     * @param pixels
+     *            The pixels of the tile.
+     */
+    public ImageTileMessage(int frameId, int frameWidth, int frameHeight, int tileCount, int x, int y, int width,
+	    int height, int[] pixels) {
+	if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > frameWidth || y + height > frameHeight
+		|| pixels.length != width * height) {
+	    throw new IllegalArgumentException("The tile doesn't fit into the image.");
+	}
+
+	this.frameId = frameId;
+	this.frameWidth = frameWidth;
+	this.frameHeight = frameHeight;
+	this.tileCount = tileCount;
+	this.x = x;
+	this.y = y;
+	this.width = width;
+	this.height = height;
+	this.pixels = pixels;
+    }
+
+    /**
+     * Returns the id of the image the tile belongs to.
+     * 
+     * @return The frame id.
+     */
+    public int getFrameId() {
+	return frameId;
+    }
+
+    /**
+     * Returns the width of the image.
+     * 
+     * @return The width of the image.
+     */
+    public int getFrameWidth() {
+	return frameWidth;
+    }
+
+    /**
+     * Returns the height of the image.
+     * 
+     * @return The height of the image.
+     */
+    public int getFrameHeight() {
+	return frameHeight;
+    }
+
+    /**
+     * Returns the number of tiles of the image.
+     * 
+     * @return The number of tiles.
+     */
+    public int getTileCount() {
+	return tileCount;
+    }
+
+    /**
+     * Returns the x coordinate of the tile.
+     * 
+     * @return The x coordinate.
+     */
+    public int getX() {
+	return x;
+    }
+
+    /**
+     * Returns the y coordinate of the tile.
+     * 
+     * @return The y coordinate.
+     */
+    public int getY() {
+	return y;
+    }
+
+    /**
+     * Returns the width of the tile.
+     * 
+     * @return The width of the tile.
+     */
+    public int getWidth() {
+	return width;
+    }
+
+    /**
+     * Returns the height of the tile.
+     * 
+     * @return The height of the tile.
+     */
+    public int getHeight() {
+	return height;
+    }
+
+    /**
+     * Returns the pixels of the tile.
+     * 
+     * @return The pixels of the tile.
+     */
+    public int[] getPixels() {
+	return pixels;
+    }
+
+    /**
+     * Copies the pixels of the tile into the pixels of the image.
+     * 
+     * @param framePixels
+     *            The pixels of the image.
+     */
+    public void applyTo(int[] framePixels) {
+	for (int row = 0; row < height; row++) {
+	    System.arraycopy(pixels, row * width, framePixels, (y + row) * frameWidth + x, width);
+	}
+    }
+}
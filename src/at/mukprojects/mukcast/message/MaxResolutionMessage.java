@@ -0,0 +1,66 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * MaxResolutionMessage is sent by a client to declare the maximum resolution
+ * of the images it wants to receive. The server downscales larger images
+ * before they are sent to the client.
+ * 
+ * @author Mathias Markl
+ */
+public class MaxResolutionMessage implements Message {
+    private static final long serialVersionUID = 3056914772086204816L;
+
+    private int maxWidth;
+    private int maxHeight;
+
+    /**
+     * Constructs a new MaxResolutionMessage.
+     * 
+     * @param maxWidth
+     *            The maximum width or 0 for no limit.
+     * @param maxHeight
+     *            The maximum height or 0 for no limit.
+     */
+    public MaxResolutionMessage(int maxWidth, int maxHeight) {
+	if (maxWidth < 0 || maxHeight < 0) {
+	    throw new IllegalArgumentException("The maximum resolution can't be negative.");
+	}
+	this.maxWidth = maxWidth;
+	this.maxHeight = maxHeight;
+    }
+
+    /**
+     * Returns the maximum width.
+     * 
+     * @return The maximum width or 0 for no limit.
+     */
+    public int getMaxWidth() {
+	return maxWidth;
+    }
+
+    /**
+     * Returns the maximum height.
+     * 
+     * @return The maximum height or 0 for no limit.
+     */
+    public int getMaxHeight() {
+	return maxHeight;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * MulticastLeaveMessage is sent by a client before it leaves the multicast
+ * group of the server. The server sends the image stream to the client
+ * connection afterwards.
+ * 
+ * @see MulticastJoinMessage
+ * 
+ * @author Mathias Markl
+ */
+public class MulticastLeaveMessage implements Message {
+    private static final long serialVersionUID = 4431021893765712854L;
+}
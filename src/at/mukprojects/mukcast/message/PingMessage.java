@@ -0,0 +1,53 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * PingMessage is sent periodically by both sides of a connection, if the
+ * heartbeat is enabled. The other side answers with a {@link PongMessage},
+ * which echoes the timestamp, so the sender can measure the round trip time.
+ * 
+ * @see PongMessage
+ * 
+ * @author Mathias Markl
+ */
+public class PingMessage implements Message {
+    private static final long serialVersionUID = 3358816420437096745L;
+
+    private long timestamp;
+
+    /**
+     * Constructs a new PingMessage.
+     * 
+     * @param timestamp
+     *            The timestamp of the sender, which is only meaningful to the
+     *            sender.
+     */
+    public PingMessage(long timestamp) {
+	this.timestamp = timestamp;
+    }
+
+    /**
+     * Returns the timestamp of the sender.
+     * 
+     * @return The timestamp.
+     */
+    public long getTimestamp() {
+	return timestamp;
+    }
+}
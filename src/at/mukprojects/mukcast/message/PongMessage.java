@@ -0,0 +1,67 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * PongMessage is the answer to a {@link PingMessage}. It echoes the timestamp
+ * of the ping and contains the wall clock time of the answering side, so the
+ * sender of the ping can estimate the round trip time and the offset between
+ * the clocks of both sides.
+ * 
+ * @see PingMessage
+ * 
+ * @author Mathias Markl
+ */
+public class PongMessage implements Message {
+    private static final long serialVersionUID = -5519736049129630852L;
+
+    private long timestamp;
+    private long time;
+
+    /**
+     * Constructs a new PongMessage.
+     * 
+     * @param timestamp
+     *            The timestamp of the ping.
+     * @param time
+     *            The time of the answering side in milliseconds since the
+     *            epoch.
+     */
+    public PongMessage(long timestamp, long time) {
+	this.timestamp = timestamp;
+	this.time = time;
+    }
+
+    /**
+     * Returns the timestamp of the ping.
+     * 
+     * @return The timestamp.
+     */
+    public long getTimestamp() {
+	return timestamp;
+    }
+
+    /**
+     * Returns the time of the answering side.
+     * 
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTime() {
+	return time;
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * ResumeSessionMessage is sent by a client as the first message of a new
+ * connection, if it has lost its previous connection. The server restores the
+ * client key and the settings of the session, if the session hasn't expired.
+ * 
+ * @see SessionMessage
+ * 
+ * @author Mathias Markl
+ */
+public class ResumeSessionMessage implements Message {
+    private static final long serialVersionUID = 6107245593118347052L;
+
+    private String token;
+
+    /**
+     * Constructs a new ResumeSessionMessage.
+     * 
+     * @param token
+     *            The session token.
+     */
+    public ResumeSessionMessage(String token) {
+	if (token == null) {
+	    throw new IllegalArgumentException("The token must not be null.");
+	}
+	this.token = token;
+    }
+
+    /**
+     * Returns the session token.
+     * 
+     * @return The session token.
+     */
+    public String getToken() {
+	return token;
+    }
+}
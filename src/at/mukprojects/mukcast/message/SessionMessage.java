@@ -0,0 +1,68 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * SessionMessage is sent by the server to a new or resumed client. It contains
+ * the session token the client can resume its session with after the
+ * connection has been lost, and the key the client is known by.
+ * 
+ * @see ResumeSessionMessage
+ * 
+ * @author Mathias Markl
+ */
+public class SessionMessage implements Message {
+    private static final long serialVersionUID = -2671907457163826404L;
+
+    private String token;
+    private String clientKey;
+
+    /**
+     * Constructs a new SessionMessage.
+     * 
+     * @param token
+     *            The session token.
+     * @param clientKey
+     *            The client key.
+     */
+    public SessionMessage(String token, String clientKey) {
+	if (token == null || clientKey == null) {
+	    throw new IllegalArgumentException("The token and the client key must not be null.");
+	}
+	this.token = token;
+	this.clientKey = clientKey;
+    }
+
+    /**
+     * Returns the session token.
+     * 
+     * @return The session token.
+     */
+    public String getToken() {
+	return token;
+    }
+
+    /**
+     * Returns the key the server knows the client by.
+     * 
+     * @return The client key.
+     */
+    public String getClientKey() {
+	return clientKey;
+    }
+}
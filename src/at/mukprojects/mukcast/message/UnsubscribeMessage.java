@@ -0,0 +1,54 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.message;
+
+/**
+ * UnsubscribeMessage is sent by a client to unsubscribe from a channel of the
+ * server.
+ * 
+ * @see SubscribeMessage
+ * 
+ * @author Mathias Markl
+ */
+public class UnsubscribeMessage implements Message {
+    private static final long serialVersionUID = -2350865109747714190L;
+
+    private String channel;
+
+    /**
+     * Constructs a new UnsubscribeMessage.
+     * 
+     * @param channel
+     *            The name of the channel.
+     */
+    public UnsubscribeMessage(String channel) {
+	if (channel == null) {
+	    throw new IllegalArgumentException("The channel must not be null.");
+	}
+	this.channel = channel;
+    }
+
+    /**
+     * Returns the name of the channel.
+     * 
+     * @return The name of the channel.
+     */
+    public String getChannel() {
+	return channel;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import at.mukprojects.mukcast.concurrent.SendQueue;
+
+/**
+ * This class collects the metrics of a single connection.
+ * <p>
+ * The metrics are recorded by the network threads of the connection and can
+ * be read at any time with {@link #snapshot()}. If the metrics have a parent,
+ * every recorded value is added to the parent as well, so the parent holds the
+ * totals of all its connections.
+ * </p>
+ * 
+ * @see ConnectionMetricsSnapshot
+ * 
+ * @author Mathias Markl
+ */
+public class ConnectionMetrics {
+
+    private volatile String clientKey;
+    private int clientId;
+    private ConnectionMetrics parent;
+    private SendQueue<?> sendQueue;
+
+    private long connectedAt;
+    private volatile long lastReceivedAt;
+    private volatile long disconnectedAt;
+    private AtomicReference<DisconnectReason> disconnectReason;
+
+    private LongAdder messagesIn;
+    private LongAdder bytesIn;
+    private LongAdder messagesOut;
+    private LongAdder bytesOut;
+
+    private Histogram decodeTime;
+    private Histogram encodeTime;
+    private Histogram writeStallTime;
+    private Histogram roundTripTime;
+    private volatile long smoothedRoundTripTime;
+    private volatile long clockOffset;
+
+    /**
+     * Constructs a new ConnectionMetrics.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param clientId
+     *            The client id or -1 if the id is unknown.
+     * @param sendQueue
+     *            The send queue of the connection or null if the connection
+     *            doesn't queue its messages.
+     * @param parent
+     *            The metrics which receive all recorded values as well or
+     *            null.
+     */
+    public ConnectionMetrics(String clientKey, int clientId, SendQueue<?> sendQueue, ConnectionMetrics parent) {
+	this.clientKey = clientKey;
+	this.clientId = clientId;
+	this.sendQueue = sendQueue;
+	this.parent = parent;
+	this.connectedAt = System.currentTimeMillis();
+	this.lastReceivedAt = System.nanoTime();
+	this.disconnectReason = new AtomicReference<DisconnectReason>();
+	this.messagesIn = new LongAdder();
+	this.bytesIn = new LongAdder();
+	this.messagesOut = new LongAdder();
+	this.bytesOut = new LongAdder();
+	this.decodeTime = new Histogram();
+	this.encodeTime = new Histogram();
+	this.writeStallTime = new Histogram();
+	this.roundTripTime = new Histogram();
+    }
+
+    /**
+     * Changes the client key, if the connection resumes a session.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public void setClientKey(String clientKey) {
+	this.clientKey = clientKey;
+    }
+
+    /**
+     * Records a received message.
+     * 
+     * @param bytes
+     *            The frame size in bytes.
+     * @param decodeNanos
+     *            The time the decoding took in nanoseconds.
+     */
+    public void messageReceived(int bytes, long decodeNanos) {
+	lastReceivedAt = System.nanoTime();
+	messagesIn.increment();
+	bytesIn.add(bytes);
+	decodeTime.record(decodeNanos);
+
+	if (parent != null) {
+	    parent.messageReceived(bytes, decodeNanos);
+	}
+    }
+
+    /**
+     * Records the encoding of a message.
+     * 
+     * @param encodeNanos
+     *            The time the encoding took in nanoseconds.
+     */
+    public void messageEncoded(long encodeNanos) {
+	encodeTime.record(encodeNanos);
+
+	if (parent != null) {
+	    parent.messageEncoded(encodeNanos);
+	}
+    }
+
+    /**
+     * Records a message, which has been written to the network.
+     * 
+     * @param bytes
+     *            The frame size in bytes.
+     * @param writeNanos
+     *            The time the writer was stalled by the network while writing
+     *            the frame in nanoseconds.
+     */
+    public void messageSent(int bytes, long writeNanos) {
+	messagesOut.increment();
+	bytesOut.add(bytes);
+	writeStallTime.record(writeNanos);
+
+	if (parent != null) {
+	    parent.messageSent(bytes, writeNanos);
+	}
+    }
+
+    /**
+     * Records the answer to a ping of the heartbeat. The round trip time and
+     * the clock offset are smoothed like the round trip time of TCP, every
+     * sample counts one eighth. The clock offset assumes, that the answer has
+     * been sent halfway through the round trip.
+     * 
+     * @param pingTimestamp
+     *            The timestamp of the ping in nanoseconds of
+     *            {@link System#nanoTime()}.
+     * @param time
+     *            The time the other side has answered at in milliseconds since
+     *            the epoch.
+     */
+    public synchronized void pongReceived(long pingTimestamp, long time) {
+	long roundTripNanos = System.nanoTime() - pingTimestamp;
+	long clockOffsetMillis = time - (System.currentTimeMillis() - roundTripNanos / 2000000);
+
+	roundTripTime.record(roundTripNanos);
+	if (roundTripTime.getCount() == 1) {
+	    smoothedRoundTripTime = roundTripNanos;
+	    clockOffset = clockOffsetMillis;
+	} else {
+	    smoothedRoundTripTime += (roundTripNanos - smoothedRoundTripTime) / 8;
+	    clockOffset += (clockOffsetMillis - clockOffset) / 8;
+	}
+    }
+
+    /**
+     * Returns the smoothed round trip time of the heartbeat.
+     * 
+     * @return The round trip time in nanoseconds or 0 if no round trip has
+     *         been measured.
+     */
+    public long getRoundTripTime() {
+	return smoothedRoundTripTime;
+    }
+
+    /**
+     * Returns the smoothed offset of the clock of the other side. A positive
+     * offset means the clock of the other side is ahead, so a time of the
+     * other side is converted to the local clock by subtracting the offset.
+     * 
+     * @return The clock offset in milliseconds or 0 if no round trip has been
+     *         measured.
+     */
+    public long getClockOffset() {
+	return clockOffset;
+    }
+
+    /**
+     * Returns the time the last message has been received.
+     * 
+     * @return The time in nanoseconds of {@link System#nanoTime()}.
+     */
+    public long getLastReceivedAt() {
+	return lastReceivedAt;
+    }
+
+    /**
+     * Records the disconnect of the connection. Only the first reason is kept.
+     * 
+     * @param reason
+     *            The reason.
+     * @return Returns true if the reason has been recorded or false if the
+     *         connection has already been disconnected.
+     */
+    public boolean disconnected(DisconnectReason reason) {
+	if (disconnectReason.compareAndSet(null, reason)) {
+	    disconnectedAt = System.currentTimeMillis();
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Returns the reason why the connection has been closed.
+     * 
+     * @return The reason or null if the connection is still open.
+     */
+    public DisconnectReason getDisconnectReason() {
+	return disconnectReason.get();
+    }
+
+    /**
+     * Returns the number of messages, which have been dropped by the send
+     * queue of the connection.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessageCount() {
+	return sendQueue != null ? sendQueue.getDroppedCount() : 0;
+    }
+
+    /**
+     * Returns a snapshot of the metrics.
+     * 
+     * @return The snapshot.
+     */
+    public ConnectionMetricsSnapshot snapshot() {
+	DisconnectReason reason = disconnectReason.get();
+	long end = disconnectedAt;
+	long uptime = (reason != null && end != 0 ? end : System.currentTimeMillis()) - connectedAt;
+
+	int queuedMessages = 0;
+	int maxQueuedMessages = 0;
+	long droppedMessages = 0;
+	if (sendQueue != null) {
+	    queuedMessages = sendQueue.size();
+	    maxQueuedMessages = sendQueue.getMaxSize();
+	    droppedMessages = sendQueue.getDroppedCount();
+	}
+
+	return new ConnectionMetricsSnapshot(clientKey, clientId, connectedAt, uptime, reason, messagesIn.sum(),
+		bytesIn.sum(), messagesOut.sum(), bytesOut.sum(), queuedMessages, maxQueuedMessages, droppedMessages,
+		decodeTime.snapshot(), encodeTime.snapshot(), writeStallTime.snapshot(), roundTripTime.snapshot(),
+		clockOffset);
+    }
+}
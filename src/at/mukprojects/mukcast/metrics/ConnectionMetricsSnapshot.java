@@ -0,0 +1,295 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * ConnectionMetricsSnapshot represents the metrics of a connection at a point
+ * in time. All durations are in nanoseconds, except the uptime, which is in
+ * milliseconds.
+ * 
+ * @see ConnectionMetrics
+ * 
+ * @author Mathias Markl
+ */
+public final class ConnectionMetricsSnapshot {
+
+    private final String clientKey;
+    private final int clientId;
+    private final long connectedAt;
+    private final long uptime;
+    private final DisconnectReason disconnectReason;
+    private final long messagesIn;
+    private final long bytesIn;
+    private final long messagesOut;
+    private final long bytesOut;
+    private final int queuedMessages;
+    private final int maxQueuedMessages;
+    private final long droppedMessages;
+    private final HistogramSnapshot decodeTime;
+    private final HistogramSnapshot encodeTime;
+    private final HistogramSnapshot writeStallTime;
+    private final HistogramSnapshot roundTripTime;
+    private final long clockOffset;
+
+    /**
+     * Constructs a new ConnectionMetricsSnapshot.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param clientId
+     *            The client id or -1 if the id is unknown.
+     * @param connectedAt
+     *            The time the connection was opened in milliseconds since the
+     *            epoch.
+     * @param uptime
+     *            The time the connection is or was open in milliseconds.
+     * @param disconnectReason
+     *            The disconnect reason or null if the connection is open.
+     * @param messagesIn
+     *            The number of received messages.
+     * @param bytesIn
+     *            The number of received bytes.
+     * @param messagesOut
+     *            The number of sent messages.
+     * @param bytesOut
+     *            The number of sent bytes.
+     * @param queuedMessages
+     *            The number of queued messages.
+     * @param maxQueuedMessages
+     *            The maximum number of queued messages.
+     * @param droppedMessages
+     *            The number of dropped messages.
+     * @param decodeTime
+     *            The decode times.
+     * @param encodeTime
+     *            The encode times.
+     * @param writeStallTime
+     *            The write stall times.
+     * @param roundTripTime
+     *            The round trip times of the heartbeat.
+     * @param clockOffset
+     *            The offset of the clock of the other side in milliseconds.
+     */
+    @ConstructorProperties({ "clientKey", "clientId", "connectedAt", "uptime", "disconnectReason", "messagesIn",
+	    "bytesIn", "messagesOut", "bytesOut", "queuedMessages", "maxQueuedMessages", "droppedMessages",
+	    "decodeTime", "encodeTime", "writeStallTime", "roundTripTime", "clockOffset" })
+    public ConnectionMetricsSnapshot(String clientKey, int clientId, long connectedAt, long uptime,
+	    DisconnectReason disconnectReason, long messagesIn, long bytesIn, long messagesOut, long bytesOut,
+	    int queuedMessages, int maxQueuedMessages, long droppedMessages, HistogramSnapshot decodeTime,
+	    HistogramSnapshot encodeTime, HistogramSnapshot writeStallTime, HistogramSnapshot roundTripTime,
+	    long clockOffset) {
+	this.clientKey = clientKey;
+	this.clientId = clientId;
+	this.connectedAt = connectedAt;
+	this.uptime = uptime;
+	this.disconnectReason = disconnectReason;
+	this.messagesIn = messagesIn;
+	this.bytesIn = bytesIn;
+	this.messagesOut = messagesOut;
+	this.bytesOut = bytesOut;
+	this.queuedMessages = queuedMessages;
+	this.maxQueuedMessages = maxQueuedMessages;
+	this.droppedMessages = droppedMessages;
+	this.decodeTime = decodeTime;
+	this.encodeTime = encodeTime;
+	this.writeStallTime = writeStallTime;
+	this.roundTripTime = roundTripTime;
+	this.clockOffset = clockOffset;
+    }
+
+    /**
+     * Returns the client key.
+     * 
+     * @return The client key.
+     */
+    public String getClientKey() {
+	return clientKey;
+    }
+
+    /**
+     * Returns the client id.
+     * 
+     * @return The client id or -1 if the id is unknown.
+     */
+    public int getClientId() {
+	return clientId;
+    }
+
+    /**
+     * Returns the time the connection was opened.
+     * 
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getConnectedAt() {
+	return connectedAt;
+    }
+
+    /**
+     * Returns the time the connection is or was open.
+     * 
+     * @return The uptime in milliseconds.
+     */
+    public long getUptime() {
+	return uptime;
+    }
+
+    /**
+     * Returns the reason why the connection has been closed.
+     * 
+     * @return The disconnect reason or null if the connection is open.
+     */
+    public DisconnectReason getDisconnectReason() {
+	return disconnectReason;
+    }
+
+    /**
+     * Checks if the connection is open.
+     * 
+     * @return Returns true or false depending on whether the connection is
+     *         open or not.
+     */
+    public boolean isConnected() {
+	return disconnectReason == null;
+    }
+
+    /**
+     * Returns the number of received messages.
+     * 
+     * @return The number of received messages.
+     */
+    public long getMessagesIn() {
+	return messagesIn;
+    }
+
+    /**
+     * Returns the number of received bytes.
+     * 
+     * @return The number of received bytes.
+     */
+    public long getBytesIn() {
+	return bytesIn;
+    }
+
+    /**
+     * Returns the number of messages, which have been written to the network.
+     * 
+     * @return The number of sent messages.
+     */
+    public long getMessagesOut() {
+	return messagesOut;
+    }
+
+    /**
+     * Returns the number of bytes, which have been written to the network.
+     * 
+     * @return The number of sent bytes.
+     */
+    public long getBytesOut() {
+	return bytesOut;
+    }
+
+    /**
+     * Returns the number of queued messages, which haven't been written yet.
+     * 
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessages() {
+	return queuedMessages;
+    }
+
+    /**
+     * Returns the maximum number of messages, which have been queued at the
+     * same time.
+     * 
+     * @return The maximum number of queued messages.
+     */
+    public int getMaxQueuedMessages() {
+	return maxQueuedMessages;
+    }
+
+    /**
+     * Returns the number of messages, which have been dropped because the
+     * client couldn't keep up.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessages() {
+	return droppedMessages;
+    }
+
+    /**
+     * Returns the time the decoding of the received messages took.
+     * 
+     * @return The decode times in nanoseconds.
+     */
+    public HistogramSnapshot getDecodeTime() {
+	return decodeTime;
+    }
+
+    /**
+     * Returns the time the encoding of the messages took, which have been
+     * sent to this connection only.
+     * 
+     * @return The encode times in nanoseconds.
+     */
+    public HistogramSnapshot getEncodeTime() {
+	return encodeTime;
+    }
+
+    /**
+     * Returns the time the writer was stalled by the network per message. A
+     * client, which can't keep up, has high write stall times.
+     * 
+     * @return The write stall times in nanoseconds.
+     */
+    public HistogramSnapshot getWriteStallTime() {
+	return writeStallTime;
+    }
+
+    /**
+     * Returns the round trip times of the heartbeat.
+     * 
+     * @return The round trip times in nanoseconds.
+     */
+    public HistogramSnapshot getRoundTripTime() {
+	return roundTripTime;
+    }
+
+    /**
+     * Returns the smoothed offset of the clock of the other side, which is
+     * estimated by the heartbeat. A positive offset means the clock of the
+     * other side is ahead.
+     * 
+     * @return The clock offset in milliseconds.
+     */
+    public long getClockOffset() {
+	return clockOffset;
+    }
+
+    @Override
+    public String toString() {
+	return clientKey + " [uptime=" + uptime + "ms, in=" + messagesIn + "/" + bytesIn + "B, out=" + messagesOut
+		+ "/" + bytesOut + "B, queued=" + queuedMessages + "/" + maxQueuedMessages + ", dropped="
+		+ droppedMessages + (disconnectReason != null ? ", disconnected=" + disconnectReason : "")
+		+ ", writeStall={" + writeStallTime + "}"
+		+ (roundTripTime.getCount() > 0 ? ", rtt={" + roundTripTime + "}, clockOffset=" + clockOffset + "ms" : "")
+		+ "]";
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * The DisconnectReason describes why a connection has been closed. Only the
+ * first reason of a connection is kept, e.g. a connection closed because of a
+ * slow client keeps this reason, even if the reading side fails afterwards.
+ * 
+ * @see ConnectionMetrics
+ * 
+ * @author Mathias Markl
+ */
+public enum DisconnectReason {
+
+    /**
+     * The client has requested the disconnect.
+     */
+    CLIENT_REQUEST,
+
+    /**
+     * The server has disconnected the client.
+     */
+    SERVER_REQUEST,
+
+    /**
+     * The server has been stopped.
+     */
+    SERVER_STOPPED,
+
+    /**
+     * The client couldn't keep up with the messages of the server.
+     */
+    SLOW_CLIENT,
+
+    /**
+     * The connection has been closed by the other side without a disconnect
+     * message.
+     */
+    CONNECTION_LOST,
+
+    /**
+     * The other side hasn't sent anything within the heartbeat timeout, e.g.
+     * because the network has failed without closing the connection.
+     */
+    TIMEOUT,
+
+    /**
+     * The connection has failed with an error, e.g. a reset connection or a
+     * malformed frame.
+     */
+    CONNECTION_ERROR;
+
+    /**
+     * Returns the reason for a connection, which failed with the exception.
+     * 
+     * @param e
+     *            The exception.
+     * @return The reason.
+     */
+    public static DisconnectReason valueOf(IOException e) {
+	if (e instanceof EOFException || e instanceof SocketException || e instanceof ClosedChannelException) {
+	    return CONNECTION_LOST;
+	}
+	return CONNECTION_ERROR;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records the distribution of long values, e.g. durations in
+ * nanoseconds.
+ * <p>
+ * The values are counted in log-linear buckets: every power of two is split
+ * into eight buckets, so a percentile is reported with an error of at most
+ * 12.5% while recording a value is a constant number of atomic operations
+ * without any allocation. The histogram can be recorded by any number of
+ * threads.
+ * </p>
+ * 
+ * @see HistogramSnapshot
+ * 
+ * @author Mathias Markl
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private AtomicLongArray buckets;
+    private AtomicLong count;
+    private AtomicLong sum;
+    private AtomicLong max;
+
+    /**
+     * Constructs a new Histogram.
+     */
+    public Histogram() {
+	this.buckets = new AtomicLongArray(BUCKET_COUNT);
+	this.count = new AtomicLong();
+	this.sum = new AtomicLong();
+	this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     * 
+     * @param value
+     *            The value.
+     */
+    public void record(long value) {
+	if (value < 0) {
+	    value = 0;
+	}
+
+	buckets.incrementAndGet(getBucket(value));
+	count.incrementAndGet();
+	sum.addAndGet(value);
+
+	long current = max.get();
+	while (value > current && !max.compareAndSet(current, value)) {
+	    current = max.get();
+	}
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * 
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+	return count.get();
+    }
+
+    /**
+     * Returns a snapshot of the histogram. The snapshot isn't atomic, values
+     * recorded while the snapshot is taken may be counted partially.
+     * 
+     * @return The snapshot.
+     */
+    public HistogramSnapshot snapshot() {
+	long[] counts = new long[BUCKET_COUNT];
+	long total = 0;
+	for (int i = 0; i < counts.length; i++) {
+	    counts[i] = buckets.get(i);
+	    total += counts[i];
+	}
+
+	long maxValue = max.get();
+	return new HistogramSnapshot(total, sum.get(), maxValue, getPercentile(counts, total, maxValue, 0.5),
+		getPercentile(counts, total, maxValue, 0.9), getPercentile(counts, total, maxValue, 0.99),
+		getPercentile(counts, total, maxValue, 0.999));
+    }
+
+    private static long getPercentile(long[] counts, long total, long maxValue, double percentile) {
+	if (total == 0) {
+	    return 0;
+	}
+
+	long rank = (long) Math.ceil(total * percentile);
+	long seen = 0;
+	for (int i = 0; i < counts.length; i++) {
+	    seen += counts[i];
+	    if (seen >= rank) {
+		return Math.min(getUpperBound(i), maxValue);
+	    }
+	}
+	return maxValue;
+    }
+
+    /**
+     * Returns the bucket of a value. Values below the number of sub buckets
+     * have their own bucket, all other values are bucketed by their highest
+     * bit and the three bits below it.
+     */
+    private static int getBucket(long value) {
+	if (value < SUB_BUCKET_COUNT) {
+	    return (int) value;
+	}
+
+	int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+	return (shift + 1) * SUB_BUCKET_COUNT + ((int) (value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Returns the largest value of a bucket.
+     */
+    private static long getUpperBound(int bucket) {
+	if (bucket < SUB_BUCKET_COUNT) {
+	    return bucket;
+	}
+
+	int shift = bucket / SUB_BUCKET_COUNT - 1;
+	long mantissa = SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT;
+	return ((mantissa + 1) << shift) - 1;
+    }
+}
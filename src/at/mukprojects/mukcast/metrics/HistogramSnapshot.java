@@ -0,0 +1,147 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * HistogramSnapshot represents the state of a {@link Histogram} at a point in
+ * time. The percentiles are upper bounds of the bucket the percentile falls
+ * into, but never greater than the maximum.
+ * 
+ * @see Histogram
+ * 
+ * @author Mathias Markl
+ */
+public final class HistogramSnapshot {
+
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+
+    /**
+     * Constructs a new HistogramSnapshot.
+     * 
+     * @param count
+     *            The number of recorded values.
+     * @param sum
+     *            The sum of the recorded values.
+     * @param max
+     *            The maximum of the recorded values.
+     * @param p50
+     *            The 50th percentile.
+     * @param p90
+     *            The 90th percentile.
+     * @param p99
+     *            The 99th percentile.
+     * @param p999
+     *            The 99.9th percentile.
+     */
+    @ConstructorProperties({ "count", "sum", "max", "p50", "p90", "p99", "p999" })
+    public HistogramSnapshot(long count, long sum, long max, long p50, long p90, long p99, long p999) {
+	this.count = count;
+	this.sum = sum;
+	this.max = max;
+	this.p50 = p50;
+	this.p90 = p90;
+	this.p99 = p99;
+	this.p999 = p999;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * 
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+	return count;
+    }
+
+    /**
+     * Returns the sum of the recorded values.
+     * 
+     * @return The sum of the recorded values.
+     */
+    public long getSum() {
+	return sum;
+    }
+
+    /**
+     * Returns the maximum of the recorded values.
+     * 
+     * @return The maximum or zero if no value has been recorded.
+     */
+    public long getMax() {
+	return max;
+    }
+
+    /**
+     * Returns the mean of the recorded values.
+     * 
+     * @return The mean or zero if no value has been recorded.
+     */
+    public double getMean() {
+	return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * Returns the 50th percentile (median).
+     * 
+     * @return The 50th percentile.
+     */
+    public long getP50() {
+	return p50;
+    }
+
+    /**
+     * Returns the 90th percentile.
+     * 
+     * @return The 90th percentile.
+     */
+    public long getP90() {
+	return p90;
+    }
+
+    /**
+     * Returns the 99th percentile.
+     * 
+     * @return The 99th percentile.
+     */
+    public long getP99() {
+	return p99;
+    }
+
+    /**
+     * Returns the 99.9th percentile.
+     * 
+     * @return The 99.9th percentile.
+     */
+    public long getP999() {
+	return p999;
+    }
+
+    @Override
+    public String toString() {
+	return "count=" + count + ", mean=" + (long) getMean() + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99
+		+ ", p999=" + p999 + ", max=" + max;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+/**
+ * The management interface of a client, which is registered as an MXBean if
+ * JMX is enabled for the client. Every attribute is read from a new
+ * {@link ConnectionMetricsSnapshot}.
+ * 
+ * @see ConnectionMetricsSnapshot
+ * 
+ * @author Mathias Markl
+ */
+public interface MuKCastClientMXBean {
+
+    /**
+     * Checks if the client is connected to a server.
+     * 
+     * @return Returns true or false depending on whether the client is
+     *         connected or not.
+     */
+    public boolean isConnected();
+
+    /**
+     * Returns the time the client is or was connected.
+     * 
+     * @return The uptime in milliseconds.
+     */
+    public long getUptime();
+
+    /**
+     * Returns the reason why the connection has been closed.
+     * 
+     * @return The disconnect reason or null if the client is connected.
+     */
+    public String getDisconnectReason();
+
+    /**
+     * Returns the number of received messages.
+     * 
+     * @return The number of received messages.
+     */
+    public long getMessagesIn();
+
+    /**
+     * Returns the number of received bytes.
+     * 
+     * @return The number of received bytes.
+     */
+    public long getBytesIn();
+
+    /**
+     * Returns the number of sent messages.
+     * 
+     * @return The number of sent messages.
+     */
+    public long getMessagesOut();
+
+    /**
+     * Returns the number of sent bytes.
+     * 
+     * @return The number of sent bytes.
+     */
+    public long getBytesOut();
+
+    /**
+     * Returns the decode times.
+     * 
+     * @return The decode times in nanoseconds.
+     */
+    public HistogramSnapshot getDecodeTime();
+
+    /**
+     * Returns the encode times.
+     * 
+     * @return The encode times in nanoseconds.
+     */
+    public HistogramSnapshot getEncodeTime();
+
+    /**
+     * Returns the write stall times.
+     * 
+     * @return The write stall times in nanoseconds.
+     */
+    public HistogramSnapshot getWriteStallTime();
+
+    /**
+     * Returns the round trip times of the heartbeat.
+     * 
+     * @return The round trip times in nanoseconds.
+     */
+    public HistogramSnapshot getRoundTripTime();
+
+    /**
+     * Returns the offset of the clock of the server.
+     * 
+     * @return The clock offset in milliseconds.
+     */
+    public long getClockOffset();
+
+    /**
+     * Returns the number of multicast frames, which were lost.
+     * 
+     * @return The number of lost frames.
+     */
+    public long getMulticastLostCount();
+}
@@ -0,0 +1,95 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class registers the MXBeans of the library at the platform MBean
+ * server. The beans are registered in the domain {@value #DOMAIN}.
+ * 
+ * @see MuKCastServerMXBean
+ * @see MuKCastClientMXBean
+ * 
+ * @author Mathias Markl
+ */
+public final class MuKCastMBeans {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastMBeans.class);
+
+    /**
+     * The domain of the MXBeans
+     */
+    public static final String DOMAIN = "at.mukprojects.mukcast";
+
+    private MuKCastMBeans() {
+    }
+
+    /**
+     * Registers an MXBean. An already registered bean with the same name is
+     * replaced.
+     * 
+     * @param type
+     *            The type of the bean, e.g. {@code Server}.
+     * @param name
+     *            The name of the bean.
+     * @param bean
+     *            The bean.
+     * @return The object name of the bean or null if the bean couldn't be
+     *         registered.
+     */
+    public static ObjectName register(String type, String name, Object bean) {
+	try {
+	    ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+	    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+	    if (mbeanServer.isRegistered(objectName)) {
+		mbeanServer.unregisterMBean(objectName);
+	    }
+	    mbeanServer.registerMBean(bean, objectName);
+
+	    logger.info("MXBean has been registered: " + objectName);
+	    return objectName;
+	} catch (JMException e) {
+	    logger.error(e.getMessage(), e);
+	    return null;
+	}
+    }
+
+    /**
+     * Unregisters an MXBean.
+     * 
+     * @param objectName
+     *            The object name of the bean or null.
+     */
+    public static void unregister(ObjectName objectName) {
+	if (objectName != null) {
+	    try {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	    } catch (JMException e) {
+		logger.debug(e.getMessage(), e);
+	    }
+	}
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The management interface of a server, which is registered as an MXBean if
+ * JMX is enabled for the server. Every attribute is read from a new
+ * {@link ServerMetricsSnapshot}.
+ * 
+ * @see ServerMetricsSnapshot
+ * 
+ * @author Mathias Markl
+ */
+public interface MuKCastServerMXBean {
+
+    /**
+     * Returns the number of connected clients.
+     * 
+     * @return The number of connected clients.
+     */
+    public int getClientCount();
+
+    /**
+     * Returns the time since the server has been created.
+     * 
+     * @return The uptime in milliseconds.
+     */
+    public long getUptime();
+
+    /**
+     * Returns the number of clients, which have connected to the server.
+     * 
+     * @return The number of connects.
+     */
+    public long getConnects();
+
+    /**
+     * Returns the number of received messages.
+     * 
+     * @return The number of received messages.
+     */
+    public long getMessagesIn();
+
+    /**
+     * Returns the number of received bytes.
+     * 
+     * @return The number of received bytes.
+     */
+    public long getBytesIn();
+
+    /**
+     * Returns the number of sent messages.
+     * 
+     * @return The number of sent messages.
+     */
+    public long getMessagesOut();
+
+    /**
+     * Returns the number of sent bytes.
+     * 
+     * @return The number of sent bytes.
+     */
+    public long getBytesOut();
+
+    /**
+     * Returns the number of queued messages of all clients.
+     * 
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessages();
+
+    /**
+     * Returns the number of dropped messages.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessages();
+
+    /**
+     * Returns the decode times.
+     * 
+     * @return The decode times in nanoseconds.
+     */
+    public HistogramSnapshot getDecodeTime();
+
+    /**
+     * Returns the encode times.
+     * 
+     * @return The encode times in nanoseconds.
+     */
+    public HistogramSnapshot getEncodeTime();
+
+    /**
+     * Returns the write stall times.
+     * 
+     * @return The write stall times in nanoseconds.
+     */
+    public HistogramSnapshot getWriteStallTime();
+
+    /**
+     * Returns the number of disconnects per reason.
+     * 
+     * @return The number of disconnects per reason.
+     */
+    public Map<String, Long> getDisconnects();
+
+    /**
+     * Returns the metrics of the connected clients, starting with the client
+     * with the most queued messages.
+     * 
+     * @return The metrics of the connected clients.
+     */
+    public List<ConnectionMetricsSnapshot> getClients();
+}
@@ -0,0 +1,136 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import at.mukprojects.mukcast.concurrent.SendQueue;
+
+/**
+ * This class collects the metrics of a server.
+ * <p>
+ * The metrics of every connection are created by the server metrics, so all
+ * recorded values are added to the totals of the server. The totals include
+ * the connections which have already been closed.
+ * </p>
+ * 
+ * @see ServerMetricsSnapshot
+ * 
+ * @author Mathias Markl
+ */
+public class ServerMetrics {
+
+    private long createdAt;
+    private ConnectionMetrics totals;
+
+    private LongAdder connects;
+    private AtomicLongArray disconnects;
+    private LongAdder closedDroppedMessages;
+
+    /**
+     * Constructs a new ServerMetrics.
+     */
+    public ServerMetrics() {
+	this.createdAt = System.currentTimeMillis();
+	this.totals = new ConnectionMetrics(null, -1, null, null);
+	this.connects = new LongAdder();
+	this.disconnects = new AtomicLongArray(DisconnectReason.values().length);
+	this.closedDroppedMessages = new LongAdder();
+    }
+
+    /**
+     * Creates the metrics of a new connection.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param clientId
+     *            The client id.
+     * @param sendQueue
+     *            The send queue of the connection.
+     * @return The connection metrics.
+     */
+    public ConnectionMetrics connect(String clientKey, int clientId, SendQueue<?> sendQueue) {
+	connects.increment();
+	return new ConnectionMetrics(clientKey, clientId, sendQueue, totals);
+    }
+
+    /**
+     * Records the disconnect of a connection. If the connection has already
+     * recorded a reason, the given reason is ignored.
+     * 
+     * @param metrics
+     *            The connection metrics.
+     * @param reason
+     *            The reason.
+     */
+    public void disconnect(ConnectionMetrics metrics, DisconnectReason reason) {
+	metrics.disconnected(reason);
+	disconnects.incrementAndGet(metrics.getDisconnectReason().ordinal());
+	closedDroppedMessages.add(metrics.getDroppedMessageCount());
+    }
+
+    /**
+     * Returns the totals of the server. Connections, which aren't counted as
+     * clients, e.g. the multicast sender, can use the totals as their parent.
+     * 
+     * @return The totals.
+     */
+    public ConnectionMetrics getTotals() {
+	return totals;
+    }
+
+    /**
+     * Records the encoding of a message, which is sent to more than one client.
+     * 
+     * @param encodeNanos
+     *            The time the encoding took in nanoseconds.
+     */
+    public void messageEncoded(long encodeNanos) {
+	totals.messageEncoded(encodeNanos);
+    }
+
+    /**
+     * Returns a snapshot of the metrics.
+     * 
+     * @param clients
+     *            The snapshots of the open connections.
+     * @return The snapshot.
+     */
+    public ServerMetricsSnapshot snapshot(List<ConnectionMetricsSnapshot> clients) {
+	int queuedMessages = 0;
+	long droppedMessages = closedDroppedMessages.sum();
+	for (ConnectionMetricsSnapshot client : clients) {
+	    queuedMessages += client.getQueuedMessages();
+	    droppedMessages += client.getDroppedMessages();
+	}
+
+	Map<DisconnectReason, Long> disconnectCounts = new EnumMap<DisconnectReason, Long>(DisconnectReason.class);
+	for (DisconnectReason reason : DisconnectReason.values()) {
+	    disconnectCounts.put(reason, disconnects.get(reason.ordinal()));
+	}
+
+	ConnectionMetricsSnapshot total = totals.snapshot();
+	return new ServerMetricsSnapshot(System.currentTimeMillis() - createdAt, connects.sum(), total.getMessagesIn(),
+		total.getBytesIn(), total.getMessagesOut(), total.getBytesOut(), queuedMessages, droppedMessages,
+		total.getDecodeTime(), total.getEncodeTime(), total.getWriteStallTime(), disconnectCounts, clients);
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ServerMetricsSnapshot represents the metrics of a server at a point in time.
+ * The totals include all connections since the server has been created, the
+ * client list contains the open connections only. All durations are in
+ * nanoseconds, except the uptime, which is in milliseconds.
+ * 
+ * @see ServerMetrics
+ * 
+ * @author Mathias Markl
+ */
+public final class ServerMetricsSnapshot {
+
+    private final long uptime;
+    private final long connects;
+    private final long messagesIn;
+    private final long bytesIn;
+    private final long messagesOut;
+    private final long bytesOut;
+    private final int queuedMessages;
+    private final long droppedMessages;
+    private final HistogramSnapshot decodeTime;
+    private final HistogramSnapshot encodeTime;
+    private final HistogramSnapshot writeStallTime;
+    private final Map<DisconnectReason, Long> disconnects;
+    private final List<ConnectionMetricsSnapshot> clients;
+
+    /**
+     * Constructs a new ServerMetricsSnapshot.
+     * 
+     * @param uptime
+     *            The time since the server has been created in milliseconds.
+     * @param connects
+     *            The number of connected clients.
+     * @param messagesIn
+     *            The number of received messages.
+     * @param bytesIn
+     *            The number of received bytes.
+     * @param messagesOut
+     *            The number of sent messages.
+     * @param bytesOut
+     *            The number of sent bytes.
+     * @param queuedMessages
+     *            The number of queued messages of all open connections.
+     * @param droppedMessages
+     *            The number of dropped messages.
+     * @param decodeTime
+     *            The decode times.
+     * @param encodeTime
+     *            The encode times.
+     * @param writeStallTime
+     *            The write stall times.
+     * @param disconnects
+     *            The number of disconnects per reason.
+     * @param clients
+     *            The snapshots of the open connections.
+     */
+    public ServerMetricsSnapshot(long uptime, long connects, long messagesIn, long bytesIn, long messagesOut,
+	    long bytesOut, int queuedMessages, long droppedMessages, HistogramSnapshot decodeTime,
+	    HistogramSnapshot encodeTime, HistogramSnapshot writeStallTime, Map<DisconnectReason, Long> disconnects,
+	    List<ConnectionMetricsSnapshot> clients) {
+	this.uptime = uptime;
+	this.connects = connects;
+	this.messagesIn = messagesIn;
+	this.bytesIn = bytesIn;
+	this.messagesOut = messagesOut;
+	this.bytesOut = bytesOut;
+	this.queuedMessages = queuedMessages;
+	this.droppedMessages = droppedMessages;
+	this.decodeTime = decodeTime;
+	this.encodeTime = encodeTime;
+	this.writeStallTime = writeStallTime;
+	this.disconnects = Collections.unmodifiableMap(disconnects);
+	this.clients = Collections.unmodifiableList(new ArrayList<ConnectionMetricsSnapshot>(clients));
+    }
+
+    /**
+     * Returns the time since the server has been created.
+     * 
+     * @return The uptime in milliseconds.
+     */
+    public long getUptime() {
+	return uptime;
+    }
+
+    /**
+     * Returns the number of clients, which have connected to the server.
+     * 
+     * @return The number of connects.
+     */
+    public long getConnects() {
+	return connects;
+    }
+
+    /**
+     * Returns the number of received messages.
+     * 
+     * @return The number of received messages.
+     */
+    public long getMessagesIn() {
+	return messagesIn;
+    }
+
+    /**
+     * Returns the number of received bytes.
+     * 
+     * @return The number of received bytes.
+     */
+    public long getBytesIn() {
+	return bytesIn;
+    }
+
+    /**
+     * Returns the number of messages, which have been written to the network.
+     * 
+     * @return The number of sent messages.
+     */
+    public long getMessagesOut() {
+	return messagesOut;
+    }
+
+    /**
+     * Returns the number of bytes, which have been written to the network.
+     * 
+     * @return The number of sent bytes.
+     */
+    public long getBytesOut() {
+	return bytesOut;
+    }
+
+    /**
+     * Returns the number of queued messages of all open connections.
+     * 
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessages() {
+	return queuedMessages;
+    }
+
+    /**
+     * Returns the number of messages, which have been dropped because a client
+     * couldn't keep up.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessages() {
+	return droppedMessages;
+    }
+
+    /**
+     * Returns the time the decoding of the received messages took.
+     * 
+     * @return The decode times in nanoseconds.
+     */
+    public HistogramSnapshot getDecodeTime() {
+	return decodeTime;
+    }
+
+    /**
+     * Returns the time the encoding of the sent messages took. A broadcasted
+     * message is counted once.
+     * 
+     * @return The encode times in nanoseconds.
+     */
+    public HistogramSnapshot getEncodeTime() {
+	return encodeTime;
+    }
+
+    /**
+     * Returns the time the writers were stalled by the network per message.
+     * 
+     * @return The write stall times in nanoseconds.
+     */
+    public HistogramSnapshot getWriteStallTime() {
+	return writeStallTime;
+    }
+
+    /**
+     * Returns the number of disconnects per reason.
+     * 
+     * @return The number of disconnects per reason.
+     */
+    public Map<DisconnectReason, Long> getDisconnects() {
+	return disconnects;
+    }
+
+    /**
+     * Returns the snapshots of the open connections.
+     * 
+     * @return The snapshots of the open connections.
+     */
+    public List<ConnectionMetricsSnapshot> getClients() {
+	return clients;
+    }
+
+    /**
+     * Returns the open connections ordered by the number of queued messages,
+     * starting with the connection with the most queued messages. These are
+     * the clients, which can't keep up with the broadcasts of the server.
+     * 
+     * @return The snapshots of the open connections.
+     */
+    public List<ConnectionMetricsSnapshot> getClientsByQueuedMessages() {
+	List<ConnectionMetricsSnapshot> sorted = new ArrayList<ConnectionMetricsSnapshot>(clients);
+	Collections.sort(sorted, new Comparator<ConnectionMetricsSnapshot>() {
+	    @Override
+	    public int compare(ConnectionMetricsSnapshot a, ConnectionMetricsSnapshot b) {
+		int result = Integer.compare(b.getQueuedMessages(), a.getQueuedMessages());
+		if (result == 0) {
+		    result = Long.compare(b.getWriteStallTime().getP99(), a.getWriteStallTime().getP99());
+		}
+		return result;
+	    }
+	});
+	return sorted;
+    }
+
+    @Override
+    public String toString() {
+	return "[uptime=" + uptime + "ms, clients=" + clients.size() + ", connects=" + connects + ", in=" + messagesIn
+		+ "/" + bytesIn + "B, out=" + messagesOut + "/" + bytesOut + "B, queued=" + queuedMessages
+		+ ", dropped=" + droppedMessages + ", disconnects=" + disconnects + "]";
+    }
+}
@@ -0,0 +1,421 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.MessageCodec;
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.message.DisconnectMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+
+/**
+ * This class handles the incoming and outgoing messages of a non-blocking
+ * client server connection.
+ * <p>
+ * The handler doesn't own a thread. It is driven by the
+ * {@link MuKCastSelectorLoop} it is registered at and keeps a read buffer and a
+ * bounded {@link SendQueue} of outgoing frames for its connection.
+ * </p>
+ * <p>
+ * The queued frames are written with gathering writes, so all frames queued
+ * since the channel has become writable are written with a single system call
+ * up to the flush threshold of the server.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastChannelHandler implements MuKCastConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastChannelHandler.class);
+
+    /**
+     * Size of the read buffer, which is only exceeded while a larger frame is
+     * received
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of frames per gathering write
+     */
+    private static final int MAX_GATHERED_FRAMES = 64;
+
+    private MuKCastServer server;
+    private MuKCastSelectorLoop loop;
+    private SocketChannel channel;
+    private volatile String clientKey;
+    private int clientId;
+
+    private SelectionKey selectionKey;
+    private ByteBuffer readBuffer;
+    private ByteBuffer[] writeBuffers;
+    private long[] writeStarts;
+    private int writeOffset;
+    private int writeCount;
+    private int flushThreshold;
+    private SendQueue<ByteBuffer> sendQueue;
+
+    private ConnectionMetrics metrics;
+
+    private AtomicBoolean running;
+    private AtomicBoolean closed;
+    private AtomicBoolean writeScheduled;
+
+    /**
+     * Constructs a new MuKCastChannelHandler.
+     * 
+     * @param server
+     *            The MuKCastServer.
+     * @param loop
+     *            The selector loop, which serves the connection.
+     * @param channel
+     *            The client channel.
+     * @param clientKey
+     *            The client key.
+     * @param clientId
+     *            The client id.
+     */
+    public MuKCastChannelHandler(MuKCastServer server, MuKCastSelectorLoop loop, SocketChannel channel,
+	    String clientKey, int clientId) {
+	this.server = server;
+	this.loop = loop;
+	this.channel = channel;
+	this.clientKey = clientKey;
+	this.clientId = clientId;
+	this.readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	this.writeBuffers = new ByteBuffer[MAX_GATHERED_FRAMES];
+	this.writeStarts = new long[MAX_GATHERED_FRAMES];
+	this.flushThreshold = server.getFlushThreshold();
+	this.sendQueue = new SendQueue<ByteBuffer>(server.getSendQueueCapacity(), server.getOverflowPolicy());
+	this.metrics = server.createMetrics(clientKey, clientId, sendQueue);
+	this.running = new AtomicBoolean(true);
+	this.closed = new AtomicBoolean(false);
+	this.writeScheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Registers the channel at the selector: internal use only.
+     * 
+     * @param selector
+     *            The selector of the loop.
+     * @throws IOException
+     *             If the channel can't be registered an {@code IOException} is
+     *             thrown.
+     */
+    void register(Selector selector) throws IOException {
+	channel.configureBlocking(false);
+
+	int interestOps = SelectionKey.OP_READ;
+	if (!sendQueue.isEmpty() || !running.get()) {
+	    interestOps |= SelectionKey.OP_WRITE;
+	}
+	selectionKey = channel.register(selector, interestOps, this);
+
+	logger.info("Handler has started to listen for messages.");
+    }
+
+    /**
+     * Reads the available data from the channel and handles all completely
+     * received messages: internal use only.
+     * 
+     * @throws IOException
+     *             If the data can't be read an {@code IOException} is thrown.
+     */
+    void read() throws IOException {
+	if (channel.read(readBuffer) < 0) {
+	    metrics.disconnected(DisconnectReason.CONNECTION_LOST);
+	    close();
+	    return;
+	}
+
+	readBuffer.flip();
+	while (readBuffer.remaining() >= 4) {
+	    int length = readBuffer.getInt(readBuffer.position());
+	    MessageCodec.checkFrameLength(length);
+
+	    if (readBuffer.remaining() - 4 < length) {
+		if (readBuffer.capacity() < length + 4) {
+		    ByteBuffer buffer = ByteBuffer.allocate(length + 4);
+		    buffer.put(readBuffer);
+		    readBuffer = buffer;
+		    return;
+		}
+		break;
+	    }
+
+	    int frameEnd = readBuffer.position() + 4 + length;
+	    ByteBuffer frame = readBuffer.duplicate();
+	    frame.position(readBuffer.position() + 4);
+	    frame.limit(frameEnd);
+	    readBuffer.position(frameEnd);
+
+	    long start = System.nanoTime();
+	    Message message = MessageCodec.decode(frame, null, server.getArrayAllocator());
+	    metrics.messageReceived(4 + length, System.nanoTime() - start);
+
+	    if (message instanceof DisconnectMessage) {
+		logger.info("Client gets disconnected.");
+		metrics.disconnected(DisconnectReason.CLIENT_REQUEST);
+		stop();
+	    } else {
+		server.handleMessage(clientKey, message);
+	    }
+	}
+	readBuffer.compact();
+
+	if (readBuffer.capacity() > READ_BUFFER_SIZE && readBuffer.position() <= READ_BUFFER_SIZE) {
+	    readBuffer.flip();
+	    readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE).put(readBuffer);
+	}
+    }
+
+    /**
+     * Writes the queued frames to the channel until the channel doesn't accept
+     * more data: internal use only.
+     * 
+     * @throws IOException
+     *             If the data can't be written an {@code IOException} is
+     *             thrown.
+     */
+    void write() throws IOException {
+	while (writeOffset < writeCount || nextFrames() > 0) {
+	    channel.write(writeBuffers, writeOffset, writeCount - writeOffset);
+
+	    long now = System.nanoTime();
+	    while (writeOffset < writeCount && !writeBuffers[writeOffset].hasRemaining()) {
+		metrics.messageSent(writeBuffers[writeOffset].limit(), now - writeStarts[writeOffset]);
+		writeBuffers[writeOffset++] = null;
+	    }
+	    if (writeOffset < writeCount) {
+		return;
+	    }
+	}
+
+	if (running.get()) {
+	    selectionKey.interestOps(SelectionKey.OP_READ);
+	} else {
+	    close();
+	}
+    }
+
+    /**
+     * Retrieves the next queued frames for a gathering write, at least one
+     * frame and further frames up to the flush threshold. The write stall time
+     * of a frame is measured from here until the frame has been written
+     * completely, which may take several rounds of the selector loop.
+     * 
+     * @return The number of frames or zero if the queue is empty.
+     */
+    private int nextFrames() {
+	writeOffset = 0;
+	writeCount = 0;
+
+	long now = System.nanoTime();
+	int size = 0;
+	ByteBuffer frame;
+	while (writeCount < writeBuffers.length && (writeCount == 0 || size < flushThreshold)
+		&& (frame = sendQueue.poll()) != null) {
+	    writeBuffers[writeCount] = frame;
+	    writeStarts[writeCount] = now;
+	    writeCount++;
+	    size += frame.remaining();
+	}
+	return writeCount;
+    }
+
+    /**
+     * Marks a write as scheduled at the selector loop: internal use only.
+     * 
+     * @return False if a write is already scheduled and the loop doesn't need
+     *         to be woken up again.
+     */
+    boolean scheduleWrite() {
+	return writeScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Enables the write interest of the channel: internal use only. The
+     * frames queued afterwards schedule a new write.
+     */
+    void enableWrite() {
+	writeScheduled.set(false);
+	if (selectionKey != null && selectionKey.isValid()) {
+	    selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+    }
+
+    /**
+     * Closes the channel, which has failed with the exception: internal use
+     * only.
+     * 
+     * @param e
+     *            The exception.
+     */
+    void close(IOException e) {
+	metrics.disconnected(DisconnectReason.valueOf(e));
+	close();
+    }
+
+    @Override
+    public void abort(DisconnectReason reason) {
+	metrics.disconnected(reason);
+	close();
+    }
+
+    /**
+     * Closes the channel: internal use only.
+     */
+    void close() {
+	if (closed.compareAndSet(false, true)) {
+	    running.set(false);
+	    sendQueue.close();
+	    server.disconnectClientWithoutNotification(clientKey);
+
+	    try {
+		if (selectionKey != null) {
+		    selectionKey.cancel();
+		}
+		channel.close();
+	    } catch (IOException e) {
+		logger.error(e.getMessage(), e);
+	    }
+
+	    logger.info("Handler has stopped to listen.");
+	}
+    }
+
+    @Override
+    public String getClientKey() {
+	return clientKey;
+    }
+
+    @Override
+    public void setClientKey(String clientKey) {
+	this.clientKey = clientKey;
+	metrics.setClientKey(clientKey);
+    }
+
+    @Override
+    public int getClientId() {
+	return clientId;
+    }
+
+    @Override
+    public void sendMessage(Message message) throws IOException {
+	sendMessage(new EncodedMessage(message));
+    }
+
+    @Override
+    public void sendMessage(EncodedMessage message) throws IOException {
+	sendConflated(null, message);
+    }
+
+    @Override
+    public void sendConflated(Object key, EncodedMessage message) throws IOException {
+	if (isConnected()) {
+	    boolean queued = key == null && message.isControl() ? sendQueue.offerPriority(message.asByteBuffer())
+		    : sendQueue.offer(key, message.asByteBuffer(), !MuKCastSelectorLoop.isLoopThread());
+	    if (queued) {
+		loop.requestWrite(this);
+	    } else if (sendQueue.isClosed()) {
+		throw new IOException("Client is not connected!");
+	    } else {
+		logger.warn("Client (" + clientKey + ") can't keep up and gets disconnected.");
+		metrics.disconnected(DisconnectReason.SLOW_CLIENT);
+		close();
+	    }
+	} else {
+	    throw new IOException("Client is not connected!");
+	}
+    }
+
+    @Override
+    public void sendMessages(EncodedMessage[] messages) throws IOException {
+	if (isConnected()) {
+	    List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(messages.length);
+	    for (EncodedMessage message : messages) {
+		buffers.add(message.asByteBuffer());
+	    }
+
+	    if (sendQueue.offerAll(buffers, !MuKCastSelectorLoop.isLoopThread())) {
+		loop.requestWrite(this);
+	    } else if (sendQueue.isClosed()) {
+		throw new IOException("Client is not connected!");
+	    } else {
+		logger.warn("Client (" + clientKey + ") can't keep up and gets disconnected.");
+		metrics.disconnected(DisconnectReason.SLOW_CLIENT);
+		close();
+	    }
+	} else {
+	    throw new IOException("Client is not connected!");
+	}
+    }
+
+    /**
+     * The frames are written as soon as the channel is writable, so there is
+     * nothing to flush.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public int getQueuedMessageCount() {
+	return sendQueue.size();
+    }
+
+    @Override
+    public long getDroppedMessageCount() {
+	return sendQueue.getDroppedCount();
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+	return metrics;
+    }
+
+    @Override
+    public boolean isConnected() {
+	return running.get();
+    }
+
+    /**
+     * Stops the handler. The queued messages are written before the channel
+     * gets closed.
+     */
+    @Override
+    public void stop() {
+	if (running.compareAndSet(true, false)) {
+	    sendQueue.close();
+	    loop.requestWrite(this);
+	}
+    }
+}
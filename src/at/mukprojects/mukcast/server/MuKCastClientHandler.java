@@ -18,42 +18,54 @@
 package at.mukprojects.mukcast.server;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.MessageReader;
+import at.mukprojects.mukcast.codec.MessageWriter;
+import at.mukprojects.mukcast.concurrent.SendQueue;
 import at.mukprojects.mukcast.concurrent.Stoppable;
 import at.mukprojects.mukcast.message.DisconnectMessage;
 import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+import at.mukprojects.mukcast.transport.Link;
 
 /**
  * This class handles the incoming and outgoing messages of the client server
  * connection.
  * <p>
+ * Outgoing messages are added to a bounded {@link SendQueue} and delivered by
+ * the {@link MessageWriter} of the link, so sending a message never waits for
+ * the client.
+ * </p>
+ * <p>
  * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
  * is designed as a thread.
  * </p>
  * 
  * @author Mathias Markl
  */
-public class MuKCastClientHandler implements Runnable, Stoppable {
+public class MuKCastClientHandler implements Runnable, MuKCastConnection {
 
     private static final Logger logger = LoggerFactory.getLogger(MuKCastClientHandler.class);
 
     private MuKCastServer server;
-    private Socket socket;
-    private String clientKey;
+    private Link link;
+    private volatile String clientKey;
+    private int clientId;
+
+    private MessageReader frameReader;
+
+    private SendQueue<EncodedMessage> sendQueue;
+    private volatile MessageWriter frameWriter;
 
-    private InputStream inputStream;
-    private OutputStream outputStream;
-    private ObjectInputStream objectInputStream;
-    private ObjectOutputStream objectOutputStream;
+    private ConnectionMetrics metrics;
 
     private AtomicBoolean running;
 
@@ -62,15 +74,20 @@ public class MuKCastClientHandler implements Runnable, Stoppable {
      * 
      * @param server
      *            The MuKCastServer.
-     * @param socket
-     *            The client socket.
+     * @param link
+     *            The link of the client.
      * @param clientKey
      *            The client key.
+     * @param clientId
+     *            The client id.
      */
-    public MuKCastClientHandler(MuKCastServer server, Socket socket, String clientKey) {
+    public MuKCastClientHandler(MuKCastServer server, Link link, String clientKey, int clientId) {
 	this.server = server;
-	this.socket = socket;
+	this.link = link;
 	this.clientKey = clientKey;
+	this.clientId = clientId;
+	this.sendQueue = new SendQueue<EncodedMessage>(server.getSendQueueCapacity(), server.getOverflowPolicy());
+	this.metrics = server.createMetrics(clientKey, clientId, sendQueue);
 	this.running = new AtomicBoolean(true);
     }
 
@@ -79,46 +96,46 @@ public class MuKCastClientHandler implements Runnable, Stoppable {
 	logger.info("Handler has started to listen for messages.");
 
 	try {
-	    inputStream = socket.getInputStream();
-	    outputStream = socket.getOutputStream();
-	    objectInputStream = new ObjectInputStream(inputStream);
-	    objectOutputStream = new ObjectOutputStream(outputStream);
+	    frameReader = link.createReader();
+	    frameReader.setMetrics(metrics);
+
+	    frameWriter = link.createWriter(sendQueue, metrics, server.getFlushThreshold(), server.getFlushDelay(),
+		    TimeUnit.NANOSECONDS);
+	    server.execute(frameWriter);
 
 	    while (running.get()) {
-		Object message = objectInputStream.readUnshared();
-
-		if (message instanceof Message) {
-		    if (message instanceof DisconnectMessage) {
-			logger.info("Client gets disconnected.");
-			stop();
-		    } else {
-			server.handleMessage(clientKey, (Message) message);
-		    }
+		frameReader.setArrayAllocator(server.getArrayAllocator());
+		Message message = frameReader.readMessage();
+
+		if (message instanceof DisconnectMessage) {
+		    logger.info("Client gets disconnected.");
+		    metrics.disconnected(DisconnectReason.CLIENT_REQUEST);
+		    stop();
+		} else {
+		    server.handleMessage(clientKey, message);
 		}
 	    }
 
-	} catch (IOException | ClassNotFoundException e) {
-	    logger.error(e.getMessage(), e);
+	} catch (IOException e) {
+	    if (metrics.disconnected(DisconnectReason.valueOf(e)) && running.get()) {
+		logger.error(e.getMessage(), e);
+	    } else {
+		/*
+		 * The connection has been closed on purpose, e.g. the client has
+		 * closed it after the server has disconnected it.
+		 */
+		logger.debug("Connection closed after the disconnect: " + e);
+	    }
 	} finally {
 	    try {
 		running.set(false);
+		sendQueue.close();
 		server.disconnectClientWithoutNotification(clientKey);
 
-		if (objectInputStream != null) {
-		    objectInputStream.close();
-		}
-		if (objectOutputStream != null) {
-		    objectOutputStream.close();
-		}
-		if (inputStream != null) {
-		    inputStream.close();
-		}
-		if (outputStream != null) {
-		    outputStream.close();
-		}
-		if (socket != null) {
-		    socket.close();
+		if (frameReader != null) {
+		    frameReader.close();
 		}
+		link.close();
 	    } catch (IOException e) {
 		logger.error(e.getMessage(), e);
 	    }
@@ -127,8 +144,25 @@ public class MuKCastClientHandler implements Runnable, Stoppable {
 	logger.info("Handler has stopped to listen.");
     }
 
+    @Override
+    public String getClientKey() {
+	return clientKey;
+    }
+
+    @Override
+    public void setClientKey(String clientKey) {
+	this.clientKey = clientKey;
+	metrics.setClientKey(clientKey);
+    }
+
+    @Override
+    public int getClientId() {
+	return clientId;
+    }
+
     /**
-     * Sends a message to the client.
+     * Sends a message to the client. The message is queued and the method
+     * returns immediately.
      * 
      * @param message
      *            The message.
@@ -137,14 +171,70 @@ public class MuKCastClientHandler implements Runnable, Stoppable {
      *             thrown.
      */
     public void sendMessage(Message message) throws IOException {
-	if (isConnected() && objectOutputStream != null) {
-	    objectOutputStream.writeUnshared(message);
-	    objectOutputStream.reset();
+	sendMessage(new EncodedMessage(message));
+    }
+
+    @Override
+    public void sendMessage(EncodedMessage message) throws IOException {
+	sendConflated(null, message);
+    }
+
+    @Override
+    public void sendConflated(Object key, EncodedMessage message) throws IOException {
+	if (isConnected()) {
+	    boolean queued = key == null && message.isControl() ? sendQueue.offerPriority(message)
+		    : sendQueue.offer(key, message);
+	    if (!queued && sendQueue.isClosed()) {
+		throw new IOException("Client is not connected!");
+	    } else if (!queued) {
+		logger.warn("Client (" + clientKey + ") can't keep up and gets disconnected.");
+		metrics.disconnected(DisconnectReason.SLOW_CLIENT);
+		close();
+	    }
 	} else {
 	    throw new IOException("Client is not connected!");
 	}
     }
 
+    @Override
+    public void sendMessages(EncodedMessage[] messages) throws IOException {
+	if (isConnected()) {
+	    boolean queued = sendQueue.offerAll(Arrays.asList(messages));
+	    if (!queued && sendQueue.isClosed()) {
+		throw new IOException("Client is not connected!");
+	    } else if (!queued) {
+		logger.warn("Client (" + clientKey + ") can't keep up and gets disconnected.");
+		metrics.disconnected(DisconnectReason.SLOW_CLIENT);
+		close();
+	    }
+	} else {
+	    throw new IOException("Client is not connected!");
+	}
+    }
+
+    @Override
+    public void flush() {
+	MessageWriter writer = frameWriter;
+	if (writer != null) {
+	    writer.flush();
+	}
+    }
+
+    @Override
+    public int getQueuedMessageCount() {
+	return sendQueue.size();
+    }
+
+    @Override
+    public long getDroppedMessageCount() {
+	return sendQueue.getDroppedCount();
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+	return metrics;
+    }
+
     /**
      * Checks if the client is connected to the server.
      * 
@@ -155,8 +245,28 @@ public class MuKCastClientHandler implements Runnable, Stoppable {
 	return running.get();
     }
 
+    /**
+     * Stops the handler. The queued messages are still written to the client.
+     */
     @Override
     public void stop() {
 	running.set(false);
+	sendQueue.close();
+    }
+
+    @Override
+    public void abort(DisconnectReason reason) {
+	metrics.disconnected(reason);
+	close();
+    }
+
+    private void close() {
+	stop();
+
+	try {
+	    link.close();
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	}
     }
 }
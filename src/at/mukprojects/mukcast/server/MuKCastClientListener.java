@@ -18,17 +18,18 @@
 package at.mukprojects.mukcast.server;
 
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.transport.Acceptor;
+import at.mukprojects.mukcast.transport.Link;
 
 /**
- * This class listens for new connections.
+ * This class listens for new connections of a transport. Stopping the
+ * listener closes its acceptor.
  * <p>
  * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
  * is designed as a thread.
@@ -41,7 +42,7 @@ public class MuKCastClientListener implements Runnable, Stoppable {
     private static final Logger logger = LoggerFactory.getLogger(MuKCastClientListener.class);
 
     private MuKCastServer server;
-    private ServerSocket serverSocket;
+    private Acceptor acceptor;
 
     private AtomicBoolean running;
 
@@ -50,12 +51,12 @@ public class MuKCastClientListener implements Runnable, Stoppable {
      * 
      * @param server
      *            The MuKCastServer.
-     * @param serverSocket
-     *            The server socket.
+     * @param acceptor
+     *            The acceptor of the transport.
      */
-    public MuKCastClientListener(MuKCastServer server, ServerSocket serverSocket) {
+    public MuKCastClientListener(MuKCastServer server, Acceptor acceptor) {
 	this.server = server;
-	this.serverSocket = serverSocket;
+	this.acceptor = acceptor;
 	this.running = new AtomicBoolean(true);
     }
 
@@ -65,17 +66,17 @@ public class MuKCastClientListener implements Runnable, Stoppable {
 
 	try {
 	    while (running.get()) {
-		Socket clientSocket = serverSocket.accept();
-		server.handleClientConnection(clientSocket);
+		Link link = acceptor.accept();
+		server.handleClientConnection(link);
 	    }
 	} catch (IOException e) {
-	    logger.error(e.getMessage(), e);
+	    if (running.get()) {
+		logger.error(e.getMessage(), e);
+	    }
 	} finally {
 	    try {
 		running.set(false);
-		if (serverSocket != null) {
-		    serverSocket.close();
-		}
+		acceptor.close();
 	    } catch (IOException e) {
 		logger.error(e.getMessage(), e);
 	    }
@@ -88,6 +89,12 @@ public class MuKCastClientListener implements Runnable, Stoppable {
     @Override
     public void stop() {
 	running.set(false);
+
+	try {
+	    acceptor.close();
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	}
     }
 
 }
@@ -0,0 +1,230 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is the registry of the connected clients.
+ * <p>
+ * Lookups by client key or client id never lock. Every change of the registry
+ * publishes a new snapshot of all connections, so a broadcast iterates over an
+ * immutable array while clients connect and disconnect. Only the changes are
+ * serialized by the registry itself, the registry never calls foreign code
+ * while it holds its lock.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastClientRegistry {
+
+    private static final MuKCastConnection[] EMPTY = new MuKCastConnection[0];
+
+    private ConcurrentHashMap<String, MuKCastConnection> clientsByKey;
+    private ConcurrentHashMap<Integer, MuKCastConnection> clientsById;
+    private Set<String> reservedKeys;
+    private AtomicInteger nextClientId;
+
+    private volatile MuKCastConnection[] snapshot;
+
+    /**
+     * Constructs a new MuKCastClientRegistry.
+     */
+    public MuKCastClientRegistry() {
+	this.clientsByKey = new ConcurrentHashMap<String, MuKCastConnection>();
+	this.clientsById = new ConcurrentHashMap<Integer, MuKCastConnection>();
+	this.reservedKeys = new HashSet<String>();
+	this.nextClientId = new AtomicInteger(1);
+	this.snapshot = EMPTY;
+    }
+
+    /**
+     * Returns a new client id.
+     * 
+     * @return The client id.
+     */
+    public int nextClientId() {
+	return nextClientId.getAndIncrement();
+    }
+
+    /**
+     * Reserves a new client key for a client of the given host. The key has
+     * the format {@code #<index>_<host>}, where the index is the lowest index
+     * which is neither in use nor reserved.
+     * 
+     * @param host
+     *            The host address of the client.
+     * @return The client key.
+     */
+    public synchronized String reserveClientKey(String host) {
+	int index = 1;
+	String clientKey = "#" + index + "_" + host;
+	while (clientsByKey.containsKey(clientKey) || reservedKeys.contains(clientKey)) {
+	    index++;
+	    clientKey = "#" + index + "_" + host;
+	}
+	reservedKeys.add(clientKey);
+	return clientKey;
+    }
+
+    /**
+     * Adds a connection with a reserved client key.
+     * 
+     * @param connection
+     *            The connection.
+     */
+    public synchronized void add(MuKCastConnection connection) {
+	reservedKeys.remove(connection.getClientKey());
+	clientsByKey.put(connection.getClientKey(), connection);
+	clientsById.put(connection.getClientId(), connection);
+	updateSnapshot();
+    }
+
+    /**
+     * Removes a connection.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @return The removed connection or null if the client wasn't registered.
+     */
+    public synchronized MuKCastConnection remove(String clientKey) {
+	return remove(clientKey, false);
+    }
+
+    /**
+     * Removes a connection. The client key can stay reserved, e.g. for a
+     * session which may be resumed.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param reserve
+     *            True to keep the client key reserved.
+     * @return The removed connection or null if the client wasn't registered.
+     */
+    public synchronized MuKCastConnection remove(String clientKey, boolean reserve) {
+	reservedKeys.remove(clientKey);
+	MuKCastConnection connection = clientsByKey.remove(clientKey);
+	if (connection != null) {
+	    clientsById.remove(connection.getClientId(), connection);
+	    updateSnapshot();
+	    if (reserve) {
+		reservedKeys.add(clientKey);
+	    }
+	}
+	return connection;
+    }
+
+    /**
+     * Releases a reserved client key, which hasn't been added.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public synchronized void release(String clientKey) {
+	reservedKeys.remove(clientKey);
+    }
+
+    /**
+     * Changes the key of a connection to a reserved client key.
+     * 
+     * @param clientKey
+     *            The current client key.
+     * @param reservedKey
+     *            The reserved client key.
+     * @return The connection or null if the client wasn't registered or the
+     *         key isn't reserved.
+     */
+    public synchronized MuKCastConnection rename(String clientKey, String reservedKey) {
+	MuKCastConnection connection = clientsByKey.get(clientKey);
+	if (connection == null || !reservedKeys.remove(reservedKey)) {
+	    return null;
+	}
+
+	clientsByKey.remove(clientKey);
+	connection.setClientKey(reservedKey);
+	clientsByKey.put(reservedKey, connection);
+	updateSnapshot();
+	return connection;
+    }
+
+    /**
+     * Returns the connection of a client.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @return The connection or null.
+     */
+    public MuKCastConnection get(String clientKey) {
+	return clientsByKey.get(clientKey);
+    }
+
+    /**
+     * Returns the connection of a client.
+     * 
+     * @param clientId
+     *            The client id.
+     * @return The connection or null.
+     */
+    public MuKCastConnection get(int clientId) {
+	return clientsById.get(clientId);
+    }
+
+    /**
+     * Returns all connections. The returned array must not be modified.
+     * 
+     * @return The snapshot of all connections.
+     */
+    public MuKCastConnection[] getSnapshot() {
+	return snapshot;
+    }
+
+    /**
+     * Returns the keys of all clients.
+     * 
+     * @return The client keys.
+     */
+    public Collection<String> getClientKeys() {
+	return clientsByKey.keySet();
+    }
+
+    /**
+     * Returns the number of clients.
+     * 
+     * @return The number of clients.
+     */
+    public int size() {
+	return snapshot.length;
+    }
+
+    /**
+     * Checks if the registry is empty.
+     * 
+     * @return True if there are no clients.
+     */
+    public boolean isEmpty() {
+	return snapshot.length == 0;
+    }
+
+    private void updateSnapshot() {
+	snapshot = clientsByKey.values().toArray(EMPTY);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.IOException;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+
+/**
+ * Classes implementing {@code MuKCastConnection} interface represent the
+ * server side of a client connection.
+ * 
+ * The {@link MuKCastServer} uses this interface to send messages to a client,
+ * independent of how the connection is served.
+ * 
+ * @see MuKCastSender
+ * @see MuKCastClientHandler
+ * @see MuKCastChannelHandler
+ * 
+ * @author Mathias Markl
+ */
+public interface MuKCastConnection extends MuKCastSender, Stoppable {
+
+    /**
+     * Changes the client key, if the connection resumes the session of a lost
+     * connection: internal use only.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public void setClientKey(String clientKey);
+
+    /**
+     * Returns the client id.
+     * 
+     * @return The client id.
+     */
+    public int getClientId();
+
+    /**
+     * Sends a message to the client.
+     * 
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendMessage(Message message) throws IOException;
+
+    /**
+     * Writes the buffered messages of the connection without waiting for the
+     * flush threshold or the flush delay.
+     */
+    public void flush();
+
+    /**
+     * Closes the connection at once without writing the queued messages,
+     * e.g. if the client hasn't answered the heartbeat: internal use only.
+     * 
+     * @param reason
+     *            The disconnect reason.
+     */
+    public void abort(DisconnectReason reason);
+}
@@ -0,0 +1,281 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.ImageCodec;
+import at.mukprojects.mukcast.message.ImageDeltaMessage;
+import at.mukprojects.mukcast.message.ImageKeyframeMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.metrics.ServerMetrics;
+
+/**
+ * This class encodes the broadcast images of the server as a delta encoded
+ * image stream.
+ * <p>
+ * The stream keeps the last frame and the sequence number, which has been sent
+ * to every client. A client, which has received the previous frame, gets an
+ * {@link ImageDeltaMessage} with the changed blocks only. All other clients get
+ * an {@link ImageKeyframeMessage}. Both messages are encoded at most once per
+ * frame, the keyframe once per {@link ImageCodec}.
+ * </p>
+ * <p>
+ * A keyframe is sent to all clients after the keyframe interval, if the image
+ * size changes or if more than half of the blocks have changed. A keyframe is
+ * also sent to a client, which has requested it or which has dropped a message
+ * since the last frame.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastImageStream {
+
+    /**
+     * Default number of pixels per block
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    /**
+     * Default number of frames between two keyframes
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    private int blockSize;
+    private int keyframeInterval;
+
+    private int width;
+    private int height;
+    private int[] reference;
+
+    private int sequence;
+    private int framesSinceKeyframe;
+    private boolean keyframeRequested;
+
+    private IdentityHashMap<ImageCodec, EncodedMessage> keyframes;
+    private EncodedMessage delta;
+
+    private ConcurrentHashMap<String, ClientState> clientStates;
+
+    private ServerMetrics metrics;
+
+    /**
+     * Constructs a new MuKCastImageStream.
+     */
+    public MuKCastImageStream() {
+	this(null);
+    }
+
+    /**
+     * Constructs a new MuKCastImageStream, which records the encode times of
+     * the frames.
+     * 
+     * @param metrics
+     *            The server metrics or null.
+     */
+    public MuKCastImageStream(ServerMetrics metrics) {
+	this.metrics = metrics;
+	this.blockSize = DEFAULT_BLOCK_SIZE;
+	this.keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+	this.keyframes = new IdentityHashMap<ImageCodec, EncodedMessage>();
+	this.clientStates = new ConcurrentHashMap<String, ClientState>();
+    }
+
+    /**
+     * Sets the number of frames between two keyframes.
+     * 
+     * @param keyframeInterval
+     *            The keyframe interval.
+     */
+    public synchronized void setKeyframeInterval(int keyframeInterval) {
+	this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Sets the next frame of the stream.
+     * 
+     * @param image
+     *            The image.
+     * @throws IOException
+     *             If the frame couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public synchronized void nextFrame(ImageMessage image) throws IOException {
+	int[] pixels = image.getPixels();
+
+	this.keyframes.clear();
+	this.delta = null;
+
+	boolean sizeChanged = reference == null || width != image.getWidth() || height != image.getHeight()
+		|| reference.length != pixels.length;
+
+	if (!sizeChanged && !keyframeRequested && framesSinceKeyframe < keyframeInterval) {
+	    long start = System.nanoTime();
+	    ImageDeltaMessage deltaMessage = createDelta(pixels);
+	    if (deltaMessage != null) {
+		delta = new EncodedMessage(deltaMessage);
+		recordEncode(start);
+	    }
+	}
+
+	if (delta != null) {
+	    framesSinceKeyframe++;
+	} else {
+	    framesSinceKeyframe = 0;
+	    keyframeRequested = false;
+	}
+
+	if (sizeChanged) {
+	    width = image.getWidth();
+	    height = image.getHeight();
+	    reference = pixels.clone();
+	} else {
+	    System.arraycopy(pixels, 0, reference, 0, pixels.length);
+	}
+	sequence++;
+    }
+
+    /**
+     * Returns the encoded current frame for the client. Clients, which are in
+     * sync with the stream, get the delta and all other clients the keyframe.
+     * 
+     * @param connection
+     *            The client connection or the multicast sender.
+     * @param imageCodec
+     *            The image codec of the client.
+     * @return The encoded frame.
+     * @throws IOException
+     *             If the frame couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public synchronized EncodedMessage getFrame(MuKCastSender connection, ImageCodec imageCodec)
+	    throws IOException {
+	ClientState state = clientStates.get(connection.getClientKey());
+	if (state == null) {
+	    state = new ClientState();
+	    clientStates.put(connection.getClientKey(), state);
+	}
+
+	long droppedCount = connection.getDroppedMessageCount();
+	boolean inSync = delta != null && state.sequence == sequence - 1 && !state.keyframeRequested
+		&& state.droppedCount == droppedCount;
+
+	state.sequence = sequence;
+	state.droppedCount = droppedCount;
+	state.keyframeRequested = false;
+
+	if (inSync) {
+	    return delta;
+	} else {
+	    EncodedMessage keyframe = keyframes.get(imageCodec);
+	    if (keyframe == null) {
+		long start = System.nanoTime();
+		keyframe = new EncodedMessage(new ImageKeyframeMessage(width, height, reference, sequence),
+			imageCodec);
+		recordEncode(start);
+		keyframes.put(imageCodec, keyframe);
+	    }
+	    return keyframe;
+	}
+    }
+
+    /**
+     * Requests a keyframe for all clients with the next frame.
+     */
+    public synchronized void requestKeyframe() {
+	keyframeRequested = true;
+    }
+
+    /**
+     * Requests a keyframe for the client with the next frame.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public synchronized void requestKeyframe(String clientKey) {
+	ClientState state = clientStates.get(clientKey);
+	if (state != null) {
+	    state.keyframeRequested = true;
+	}
+    }
+
+    /**
+     * Removes the state of a disconnected client.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public void removeClient(String clientKey) {
+	clientStates.remove(clientKey);
+    }
+
+    private void recordEncode(long start) {
+	if (metrics != null) {
+	    metrics.messageEncoded(System.nanoTime() - start);
+	}
+    }
+
+    private ImageDeltaMessage createDelta(int[] pixels) {
+	int blockCount = (pixels.length + blockSize - 1) / blockSize;
+	int[] blocks = new int[blockCount];
+	int changedBlocks = 0;
+	int changedPixels = 0;
+
+	for (int block = 0; block < blockCount; block++) {
+	    int start = block * blockSize;
+	    int end = Math.min(start + blockSize, pixels.length);
+	    for (int i = start; i < end; i++) {
+		if (pixels[i] != reference[i]) {
+		    blocks[changedBlocks++] = block;
+		    changedPixels += end - start;
+		    break;
+		}
+	    }
+
+	    if (changedBlocks * 2 > blockCount) {
+		return null;
+	    }
+	}
+
+	int[] changed = new int[changedPixels];
+	int offset = 0;
+	for (int i = 0; i < changedBlocks; i++) {
+	    int start = blocks[i] * blockSize;
+	    int length = Math.min(blockSize, pixels.length - start);
+	    System.arraycopy(pixels, start, changed, offset, length);
+	    offset += length;
+	}
+
+	int[] changedIndices = new int[changedBlocks];
+	System.arraycopy(blocks, 0, changedIndices, 0, changedBlocks);
+
+	return new ImageDeltaMessage(width, height, sequence + 1, sequence, blockSize, changedIndices, changed);
+    }
+
+    /**
+     * The stream state of a client.
+     */
+    private static class ClientState {
+	private int sequence = -1;
+	private long droppedCount;
+	private boolean keyframeRequested;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.codec.DatagramCodec;
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.concurrent.OverflowPolicy;
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * This class sends messages to a multicast group.
+ * <p>
+ * Every message is sent once as a sequence of datagrams, no matter how many
+ * clients have joined the group. The server sends to the sender like to a
+ * single client, so the image stream is encoded once for the whole group. Multicast is unreliable: clients detect lost frames by their sequence
+ * numbers and request a keyframe over their connection to the server.
+ * </p>
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread.
+ * </p>
+ * 
+ * @see DatagramCodec
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastMulticastSender implements Runnable, Stoppable, MuKCastSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastMulticastSender.class);
+
+    /**
+     * The client key of the multicast group
+     */
+    public static final String MULTICAST_KEY = "#multicast";
+
+    /**
+     * The client id of the multicast group
+     */
+    public static final int MULTICAST_ID = 0;
+
+    /**
+     * Default time to live of the datagrams, which keeps them in the local
+     * network
+     */
+    public static final int DEFAULT_TIME_TO_LIVE = 1;
+
+    private MulticastSocket socket;
+    private InetAddress group;
+    private int port;
+    private int datagramSize;
+
+    private int session;
+    private int sequence;
+
+    private SendQueue<EncodedMessage> sendQueue;
+
+    private ConnectionMetrics metrics;
+
+    private AtomicBoolean running;
+
+    /**
+     * Constructs a new MuKCastMulticastSender.
+     * 
+     * @param group
+     *            The multicast group address.
+     * @param port
+     *            The multicast port.
+     * @param datagramSize
+     *            The maximum datagram size.
+     * @param capacity
+     *            The capacity of the send queue.
+     * @param policy
+     *            The overflow policy of the send queue.
+     * @param totals
+     *            The metrics, which the sent messages are added to, or null.
+     * @throws IOException
+     *             If the socket couldn't be opened an {@code IOException} is
+     *             thrown.
+     */
+    public MuKCastMulticastSender(InetAddress group, int port, int datagramSize, int capacity,
+	    OverflowPolicy policy, ConnectionMetrics totals) throws IOException {
+	if (!group.isMulticastAddress()) {
+	    throw new IOException(group.getHostAddress() + " isn't a multicast address.");
+	}
+	if (datagramSize <= DatagramCodec.HEADER_SIZE) {
+	    throw new IllegalArgumentException("The datagram size has to be greater than the header size.");
+	}
+
+	this.group = group;
+	this.port = port;
+	this.datagramSize = datagramSize;
+	this.session = new Random().nextInt();
+	this.sendQueue = new SendQueue<EncodedMessage>(capacity,
+		policy == OverflowPolicy.DISCONNECT ? OverflowPolicy.DROP_OLDEST : policy);
+	this.metrics = new ConnectionMetrics(MULTICAST_KEY, MULTICAST_ID, sendQueue, totals);
+	this.running = new AtomicBoolean(true);
+
+	this.socket = new MulticastSocket();
+	this.socket.setTimeToLive(DEFAULT_TIME_TO_LIVE);
+    }
+
+    @Override
+    public void run() {
+	logger.info("Multicast sender has started: " + group.getHostAddress() + ":" + port);
+
+	byte[] datagram = new byte[datagramSize];
+	DatagramPacket packet = new DatagramPacket(datagram, datagram.length, group, port);
+
+	try {
+	    EncodedMessage message;
+	    while ((message = sendQueue.take()) != null) {
+		ByteBuffer frame = message.asByteBuffer();
+		int fragmentCount = DatagramCodec.getFragmentCount(frame.remaining(), datagramSize);
+		if (fragmentCount > DatagramCodec.MAX_FRAGMENTS) {
+		    logger.warn("Message is too large for the multicast transport: " + frame.remaining() + " bytes");
+		    continue;
+		}
+
+		sequence++;
+		long start = System.nanoTime();
+		for (int index = 0; index < fragmentCount; index++) {
+		    int length = DatagramCodec.putFragment(datagram, frame, session, sequence, index, fragmentCount);
+		    packet.setLength(length);
+		    socket.send(packet);
+		}
+		metrics.messageSent(message.size(), System.nanoTime() - start);
+	    }
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    running.set(false);
+	    sendQueue.close();
+	    socket.close();
+	}
+
+	logger.info("Multicast sender has stopped.");
+    }
+
+    @Override
+    public String getClientKey() {
+	return MULTICAST_KEY;
+    }
+
+    /**
+     * Sends a message to the multicast group.
+     * 
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    public void sendMessage(Message message) throws IOException {
+	sendMessage(new EncodedMessage(message));
+    }
+
+    /**
+     * Sends an already encoded message to the multicast group.
+     * 
+     * @param message
+     *            The encoded message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    @Override
+    public void sendMessage(EncodedMessage message) throws IOException {
+	sendConflated(null, message);
+    }
+
+    /**
+     * Sends an already encoded message to the multicast group. If a message
+     * with the same conflation key hasn't been sent yet, it is replaced by the
+     * message.
+     * 
+     * @param key
+     *            The conflation key or null if the message must not be
+     *            replaced.
+     * @param message
+     *            The encoded message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    @Override
+    public void sendConflated(Object key, EncodedMessage message) throws IOException {
+	if (!sendQueue.offer(key, message) && !sendQueue.isClosed()) {
+	    logger.warn("Multicast sender can't keep up.");
+	}
+    }
+
+    /**
+     * Sends encoded messages, which belong together, e.g. the tiles of an
+     * image, to the multicast group.
+     * 
+     * @param messages
+     *            The encoded messages.
+     * @throws IOException
+     *             If the messages couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    @Override
+    public void sendMessages(EncodedMessage[] messages) throws IOException {
+	if (!sendQueue.offerAll(Arrays.asList(messages)) && !sendQueue.isClosed()) {
+	    logger.warn("Multicast sender can't keep up.");
+	}
+    }
+
+    @Override
+    public int getQueuedMessageCount() {
+	return sendQueue.size();
+    }
+
+    @Override
+    public long getDroppedMessageCount() {
+	return sendQueue.getDroppedCount();
+    }
+
+    @Override
+    public ConnectionMetrics getMetrics() {
+	return metrics;
+    }
+
+    @Override
+    public boolean isConnected() {
+	return running.get() && !sendQueue.isClosed();
+    }
+
+    @Override
+    public void stop() {
+	sendQueue.close();
+    }
+}
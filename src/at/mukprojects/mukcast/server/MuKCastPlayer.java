@@ -0,0 +1,545 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.MessageCodec;
+import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * This class replays a recording of a {@link MuKCastRecorder} into a server.
+ * <p>
+ * The recording is read through memory mapped windows of the file, so a
+ * recording of any size is replayed without loading it on the heap. The
+ * messages are sent the same way they have been sent while recording, e.g.
+ * recorded images are broadcasted as images and published messages are
+ * published to their channel. The time between the messages is kept, divided
+ * by the speed of the player.
+ * </p>
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread. {@link #start()} replays the recording with the
+ * executor of the server, {@link #play()} replays it in the calling thread.
+ * </p>
+ * 
+ * @see MuKCastRecorder
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastPlayer implements Runnable, Stoppable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastPlayer.class);
+
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+    private MuKCastServer server;
+    private File file;
+    private FileChannel fileChannel;
+    private MappedByteBuffer map;
+    private long mapPosition;
+
+    private long startedAt;
+    private long recordCount;
+    private long duration;
+    private long recordsEnd;
+    private long[] index;
+    private int indexSize;
+
+    private long position;
+    private long seekTime;
+    private double speed;
+    private volatile boolean loop;
+    private boolean playing;
+    private boolean running;
+    private boolean rebase;
+
+    /**
+     * Constructs a new MuKCastPlayer.
+     * 
+     * @param server
+     *            The server, which sends the recorded messages.
+     * @param file
+     *            The recording.
+     * @throws IOException
+     *             If the file couldn't be opened or isn't a recording an
+     *             {@code IOException} is thrown.
+     */
+    public MuKCastPlayer(MuKCastServer server, File file) throws IOException {
+	if (server == null || file == null) {
+	    throw new IllegalArgumentException("The server and the file must not be null.");
+	}
+
+	this.server = server;
+	this.file = file;
+	this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+	this.speed = 1;
+
+	try {
+	    readIndex();
+	} catch (IOException e) {
+	    fileChannel.close();
+	    throw e;
+	}
+	this.position = MuKCastRecorder.HEADER_SIZE;
+    }
+
+    /**
+     * Reads the header and the index of the recording. The index of a
+     * recording, which hasn't been closed, is rebuilt.
+     */
+    private void readIndex() throws IOException {
+	long size = fileChannel.size();
+	if (size < MuKCastRecorder.HEADER_SIZE) {
+	    throw new IOException("The file isn't a MuKCast recording: " + file);
+	}
+
+	ByteBuffer header = getBuffer(0, MuKCastRecorder.HEADER_SIZE);
+	if (header.getInt() != MuKCastRecorder.MAGIC) {
+	    throw new IOException("The file isn't a MuKCast recording: " + file);
+	}
+	int version = header.getInt();
+	if (version != MuKCastRecorder.VERSION) {
+	    throw new IOException("Unsupported recording version: " + version);
+	}
+	startedAt = header.getLong();
+
+	if (size >= MuKCastRecorder.HEADER_SIZE + 4 + MuKCastRecorder.TRAILER_SIZE) {
+	    ByteBuffer trailer = getBuffer(size - MuKCastRecorder.TRAILER_SIZE, MuKCastRecorder.TRAILER_SIZE);
+	    long trailerRecordCount = trailer.getLong();
+	    long trailerDuration = trailer.getLong();
+	    long indexPosition = trailer.getLong();
+	    int trailerIndexSize = trailer.getInt();
+	    if (trailer.getInt() == MuKCastRecorder.INDEX_MAGIC && trailerIndexSize >= 0
+		    && indexPosition + 16L * trailerIndexSize + MuKCastRecorder.TRAILER_SIZE == size) {
+		recordCount = trailerRecordCount;
+		duration = trailerDuration;
+		recordsEnd = indexPosition - 4;
+		index = new long[trailerIndexSize * 2];
+		getBuffer(indexPosition, 16 * trailerIndexSize).asLongBuffer().get(index);
+		indexSize = trailerIndexSize;
+		return;
+	    }
+	}
+
+	logger.warn("The recording hasn't been closed, the index gets rebuilt: " + file);
+	rebuildIndex(size);
+    }
+
+    /**
+     * Rebuilds the index by scanning the records. The scan ends at the first
+     * incomplete record.
+     */
+    private void rebuildIndex(long size) throws IOException {
+	index = new long[64];
+	indexSize = 0;
+	recordCount = 0;
+	duration = 0;
+
+	long nextIndexTime = 0;
+	long recordPosition = MuKCastRecorder.HEADER_SIZE;
+	while (recordPosition + 13 <= size) {
+	    ByteBuffer head = getBuffer(recordPosition, 12);
+	    int length = head.getInt();
+	    if (length < 9 || recordPosition + 4 + length > size) {
+		break;
+	    }
+
+	    long time = head.getLong();
+	    if (time >= nextIndexTime) {
+		if (indexSize * 2 == index.length) {
+		    index = Arrays.copyOf(index, index.length * 2);
+		}
+		index[indexSize * 2] = time;
+		index[indexSize * 2 + 1] = recordPosition;
+		indexSize++;
+		nextIndexTime = time + MuKCastRecorder.INDEX_INTERVAL;
+	    }
+
+	    recordCount++;
+	    duration = time;
+	    recordPosition += 4 + length;
+	}
+	recordsEnd = recordPosition;
+    }
+
+    /**
+     * Returns a buffer of a range of the file. The range is mapped in windows
+     * of 64 MiB, a larger range is mapped on its own.
+     */
+    private ByteBuffer getBuffer(long bufferPosition, int length) throws IOException {
+	if (map == null || bufferPosition < mapPosition || bufferPosition + length > mapPosition + map.capacity()) {
+	    long mapSize = Math.min(Math.max(MAP_SIZE, length), fileChannel.size() - bufferPosition);
+	    if (mapSize < length) {
+		throw new IOException("The recording is truncated: " + file);
+	    }
+	    map = fileChannel.map(FileChannel.MapMode.READ_ONLY, bufferPosition, mapSize);
+	    mapPosition = bufferPosition;
+	}
+
+	ByteBuffer buffer = map.duplicate();
+	int offset = (int) (bufferPosition - mapPosition);
+	buffer.limit(offset + length).position(offset);
+	return buffer.slice();
+    }
+
+    /**
+     * Returns the file of the recording.
+     * 
+     * @return The file.
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Returns the wall clock time the recording has been started at.
+     * 
+     * @return The start time in milliseconds since the epoch.
+     */
+    public long getStartedAt() {
+	return startedAt;
+    }
+
+    /**
+     * Returns the number of recorded messages.
+     * 
+     * @return The number of records.
+     */
+    public long getRecordCount() {
+	return recordCount;
+    }
+
+    /**
+     * Returns the time of the last record since the start of the recording.
+     * 
+     * @return The duration in nanoseconds.
+     */
+    public long getDuration() {
+	return duration;
+    }
+
+    /**
+     * Sets the speed of the player. A speed of 1 replays the recording with
+     * the original timing, a speed of 2 twice as fast. A speed of 0 replays
+     * the messages as fast as possible. The default is 1.
+     * 
+     * @param speed
+     *            The speed.
+     */
+    public synchronized void setSpeed(double speed) {
+	if (speed < 0 || Double.isNaN(speed)) {
+	    throw new IllegalArgumentException("The speed must not be negative.");
+	}
+	this.speed = speed;
+	rebase = true;
+	notifyAll();
+    }
+
+    /**
+     * Returns the speed of the player.
+     * 
+     * @return The speed.
+     */
+    public synchronized double getSpeed() {
+	return speed;
+    }
+
+    /**
+     * Sets whether the recording is replayed from the beginning again, once
+     * it has ended.
+     * 
+     * @param loop
+     *            True if the recording is looped.
+     */
+    public void setLoop(boolean loop) {
+	this.loop = loop;
+    }
+
+    /**
+     * Checks if the recording is looped.
+     * 
+     * @return True if the recording is looped.
+     */
+    public boolean isLoop() {
+	return loop;
+    }
+
+    /**
+     * Moves the player to a time of the recording. The messages before the
+     * time are skipped. The position is looked up in the index, so only the
+     * records of less than a second are read to find it.
+     * 
+     * @param time
+     *            The time since the start of the recording.
+     * @param unit
+     *            The unit of the time.
+     */
+    public synchronized void seek(long time, TimeUnit unit) {
+	long target = unit.toNanos(time);
+	int low = 0;
+	int high = indexSize - 1;
+	long recordPosition = MuKCastRecorder.HEADER_SIZE;
+	while (low <= high) {
+	    int middle = (low + high) >>> 1;
+	    if (index[middle * 2] <= target) {
+		recordPosition = index[middle * 2 + 1];
+		low = middle + 1;
+	    } else {
+		high = middle - 1;
+	    }
+	}
+
+	position = recordPosition;
+	seekTime = target;
+	rebase = true;
+	notifyAll();
+    }
+
+    /**
+     * Checks if the player is replaying the recording.
+     * 
+     * @return True if the player is replaying.
+     */
+    public synchronized boolean isPlaying() {
+	return playing;
+    }
+
+    /**
+     * Starts to replay the recording with the executor of the server.
+     */
+    public void start() {
+	server.execute(this);
+    }
+
+    @Override
+    public void run() {
+	try {
+	    play();
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Replays the recording in the calling thread. The method returns when
+     * the recording has ended or the player has been stopped. A player, which
+     * has been stopped, continues at the position it has been stopped at.
+     * 
+     * @throws IOException
+     *             If the recording couldn't be read an {@code IOException} is
+     *             thrown.
+     */
+    public void play() throws IOException {
+	synchronized (this) {
+	    if (playing) {
+		throw new IllegalStateException("The player is already playing.");
+	    }
+	    playing = true;
+	    running = true;
+	}
+
+	logger.info("Replaying the recording: " + file);
+	try {
+	    while (replay() && loop) {
+		logger.debug("The recording is looped.");
+	    }
+	} finally {
+	    synchronized (this) {
+		playing = false;
+		running = false;
+	    }
+	}
+    }
+
+    /**
+     * Replays the records from the current position to the end of the
+     * recording.
+     * 
+     * @return False if the player has been stopped.
+     */
+    private boolean replay() throws IOException {
+	long baseTime = -1;
+	long baseNanos = 0;
+
+	while (true) {
+	    long recordPosition;
+	    long skipTime;
+	    double currentSpeed;
+	    synchronized (this) {
+		if (!running) {
+		    return false;
+		}
+		if (rebase) {
+		    baseTime = -1;
+		    rebase = false;
+		}
+		recordPosition = position;
+		skipTime = seekTime;
+		currentSpeed = speed;
+	    }
+
+	    if (recordPosition >= recordsEnd) {
+		synchronized (this) {
+		    if (position == recordPosition) {
+			position = MuKCastRecorder.HEADER_SIZE;
+			seekTime = 0;
+		    }
+		}
+		return true;
+	    }
+
+	    int length = getBuffer(recordPosition, 4).getInt();
+	    if (length < 9 || recordPosition + 4 + length > recordsEnd) {
+		throw new IOException("Invalid record at position " + recordPosition + ": " + file);
+	    }
+	    ByteBuffer record = getBuffer(recordPosition + 4, length);
+	    long time = record.getLong();
+
+	    if (time >= skipTime) {
+		if (baseTime < 0) {
+		    baseTime = time;
+		    baseNanos = System.nanoTime();
+		}
+		if (currentSpeed > 0 && !await(baseNanos + (long) ((time - baseTime) / currentSpeed))) {
+		    continue;
+		}
+		replayRecord(record);
+	    }
+
+	    synchronized (this) {
+		if (position == recordPosition) {
+		    position = recordPosition + 4 + length;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Waits until the record is due.
+     * 
+     * @return False if the player has been stopped, moved or its speed has
+     *         been changed in the meantime.
+     */
+    private synchronized boolean await(long due) {
+	long remaining = due - System.nanoTime();
+	while (running && !rebase && remaining > 0) {
+	    try {
+		TimeUnit.NANOSECONDS.timedWait(this, remaining);
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		running = false;
+	    }
+	    remaining = due - System.nanoTime();
+	}
+	return running && !rebase;
+    }
+
+    /**
+     * Sends a record with the server. The buffer has to be positioned at the
+     * kind of the record.
+     */
+    private void replayRecord(ByteBuffer record) throws IOException {
+	byte kind = record.get();
+	String channel = null;
+	String key = null;
+	if (kind == MuKCastRecorder.RECORD_PUBLISH || kind == MuKCastRecorder.RECORD_PUBLISH_CONFLATED) {
+	    channel = getString(record);
+	}
+	if (kind == MuKCastRecorder.RECORD_BROADCAST_CONFLATED || kind == MuKCastRecorder.RECORD_PUBLISH_CONFLATED) {
+	    key = getString(record);
+	}
+
+	ByteBuffer frame = record.slice();
+	if (frame.remaining() < MessageCodec.HEADER_SIZE || frame.getInt() != frame.remaining()) {
+	    throw new IOException("Invalid frame in the recording: " + file);
+	}
+
+	try {
+	    switch (kind) {
+	    case MuKCastRecorder.RECORD_BROADCAST:
+		server.broadcastMessage(decode(frame));
+		break;
+	    case MuKCastRecorder.RECORD_BROADCAST_FRAME:
+		byte[] bytes = new byte[frame.limit()];
+		frame.position(0);
+		frame.get(bytes);
+		server.broadcastMessage(new EncodedMessage(bytes));
+		break;
+	    case MuKCastRecorder.RECORD_BROADCAST_CONFLATED:
+		server.broadcastConflated(key, decode(frame));
+		break;
+	    case MuKCastRecorder.RECORD_PUBLISH:
+		server.publishMessage(channel, decode(frame));
+		break;
+	    case MuKCastRecorder.RECORD_PUBLISH_CONFLATED:
+		server.publishConflated(channel, key, decode(frame));
+		break;
+	    default:
+		throw new IOException("Unknown record kind: " + kind);
+	    }
+	} catch (IOException e) {
+	    logger.error("The recorded message couldn't be send: " + e.getMessage(), e);
+	}
+    }
+
+    private Message decode(ByteBuffer frame) throws IOException {
+	return MessageCodec.decode(frame, null, server.getArrayAllocator());
+    }
+
+    private static String getString(ByteBuffer record) throws IOException {
+	int length = record.getInt();
+	if (length < 0 || length > record.remaining()) {
+	    throw new IOException("Invalid string length: " + length);
+	}
+	byte[] bytes = new byte[length];
+	record.get(bytes);
+	return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void stop() {
+	running = false;
+	notifyAll();
+    }
+
+    /**
+     * Stops the player and closes the recording.
+     * 
+     * @throws IOException
+     *             If the file couldn't be closed an {@code IOException} is
+     *             thrown.
+     */
+    public void close() throws IOException {
+	stop();
+	fileChannel.close();
+    }
+}
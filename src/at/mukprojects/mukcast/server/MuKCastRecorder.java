@@ -0,0 +1,318 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.ImageCodec;
+import at.mukprojects.mukcast.codec.ImageCodecs;
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * This class records the messages, which are broadcasted or published by a
+ * server, into a file.
+ * <p>
+ * The file is written append-only. It starts with a header, which contains the
+ * wall clock time the recording has been started at, followed by one
+ * length-framed record per message. Every record contains the time since the
+ * start of the recording in nanoseconds, the kind of the send, the channel
+ * and the conflation key if present and the frame of the message. When the
+ * recorder is closed, an index, which maps the time to the position of a
+ * record once per second, and a trailer are appended. A recording, which
+ * hasn't been closed, can still be replayed, the index is rebuilt by the
+ * player.
+ * </p>
+ * <p>
+ * Images are recorded as complete images compressed with the image codec of
+ * the recorder, all other messages are recorded as the frame the server has
+ * sent. Conflation keys are recorded by their string representation. A
+ * recorder, which fails to write, logs the error and stops to record without
+ * affecting the server.
+ * </p>
+ * 
+ * @see MuKCastServer#setRecorder(MuKCastRecorder)
+ * @see MuKCastPlayer
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastRecorder.class);
+
+    static final int MAGIC = 0x4D754B52;
+    static final int INDEX_MAGIC = 0x4D754B49;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int TRAILER_SIZE = 32;
+    static final long INDEX_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    static final byte RECORD_BROADCAST = 0;
+    static final byte RECORD_BROADCAST_FRAME = 1;
+    static final byte RECORD_BROADCAST_CONFLATED = 2;
+    static final byte RECORD_PUBLISH = 3;
+    static final byte RECORD_PUBLISH_CONFLATED = 4;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private File file;
+    private ImageCodec imageCodec;
+    private DataOutputStream outputStream;
+
+    private long startedAt;
+    private long startNanos;
+    private long position;
+    private long recordCount;
+    private long lastTime;
+    private long nextIndexTime;
+
+    private long[] index;
+    private int indexSize;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new MuKCastRecorder, which compresses images with the
+     * lossless {@link ImageCodecs#LZ} codec. An existing file is overwritten.
+     * 
+     * @param file
+     *            The file.
+     * @throws IOException
+     *             If the file couldn't be created an {@code IOException} is
+     *             thrown.
+     */
+    public MuKCastRecorder(File file) throws IOException {
+	this(file, ImageCodecs.LZ);
+    }
+
+    /**
+     * Constructs a new MuKCastRecorder. An existing file is overwritten.
+     * 
+     * @param file
+     *            The file.
+     * @param imageCodec
+     *            The image codec or null to record the pixels uncompressed.
+     * @throws IOException
+     *             If the file couldn't be created an {@code IOException} is
+     *             thrown.
+     */
+    public MuKCastRecorder(File file, ImageCodec imageCodec) throws IOException {
+	if (file == null) {
+	    throw new IllegalArgumentException("The file must not be null.");
+	}
+
+	this.file = file;
+	this.imageCodec = imageCodec;
+	this.outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+	this.startedAt = System.currentTimeMillis();
+	this.startNanos = System.nanoTime();
+	this.index = new long[64];
+
+	outputStream.writeInt(MAGIC);
+	outputStream.writeInt(VERSION);
+	outputStream.writeLong(startedAt);
+	this.position = HEADER_SIZE;
+
+	logger.info("Recording to the file: " + file);
+    }
+
+    /**
+     * Records a message, which is encoded by the recorder: internal use only.
+     * 
+     * @param kind
+     *            The kind of the send.
+     * @param channel
+     *            The channel or null.
+     * @param key
+     *            The conflation key or null.
+     * @param message
+     *            The message.
+     */
+    void record(byte kind, String channel, Object key, Message message) {
+	if (closed) {
+	    return;
+	}
+
+	EncodedMessage frame;
+	try {
+	    frame = new EncodedMessage(message, imageCodec);
+	} catch (IOException e) {
+	    logger.error("The message couldn't be recorded: " + e.getMessage(), e);
+	    return;
+	}
+	record(kind, channel, key, frame);
+    }
+
+    /**
+     * Records a frame: internal use only.
+     * 
+     * @param kind
+     *            The kind of the send.
+     * @param channel
+     *            The channel or null.
+     * @param key
+     *            The conflation key or null.
+     * @param frame
+     *            The frame.
+     */
+    synchronized void record(byte kind, String channel, Object key, EncodedMessage frame) {
+	if (closed) {
+	    return;
+	}
+
+	byte[] channelBytes = channel != null ? channel.getBytes(StandardCharsets.UTF_8) : null;
+	byte[] keyBytes = key != null ? key.toString().getBytes(StandardCharsets.UTF_8) : null;
+	int length = 9 + frame.size();
+	if (channelBytes != null) {
+	    length += 4 + channelBytes.length;
+	}
+	if (keyBytes != null) {
+	    length += 4 + keyBytes.length;
+	}
+
+	long time = Math.max(System.nanoTime() - startNanos, lastTime);
+	if (time >= nextIndexTime) {
+	    addIndex(time, position);
+	    nextIndexTime = time + INDEX_INTERVAL;
+	}
+
+	try {
+	    outputStream.writeInt(length);
+	    outputStream.writeLong(time);
+	    outputStream.writeByte(kind);
+	    if (channelBytes != null) {
+		outputStream.writeInt(channelBytes.length);
+		outputStream.write(channelBytes);
+	    }
+	    if (keyBytes != null) {
+		outputStream.writeInt(keyBytes.length);
+		outputStream.write(keyBytes);
+	    }
+	    frame.writeTo(outputStream);
+	} catch (IOException e) {
+	    logger.error("The recording has failed: " + e.getMessage(), e);
+	    closed = true;
+	    try {
+		outputStream.close();
+	    } catch (IOException closeException) {
+		logger.error(closeException.getMessage(), closeException);
+	    }
+	    return;
+	}
+
+	position += 4 + length;
+	recordCount++;
+	lastTime = time;
+    }
+
+    private void addIndex(long time, long recordPosition) {
+	if (indexSize * 2 == index.length) {
+	    index = Arrays.copyOf(index, index.length * 2);
+	}
+	index[indexSize * 2] = time;
+	index[indexSize * 2 + 1] = recordPosition;
+	indexSize++;
+    }
+
+    /**
+     * Returns the file of the recording.
+     * 
+     * @return The file.
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Returns the wall clock time the recording has been started at.
+     * 
+     * @return The start time in milliseconds since the epoch.
+     */
+    public long getStartedAt() {
+	return startedAt;
+    }
+
+    /**
+     * Returns the number of recorded messages.
+     * 
+     * @return The number of records.
+     */
+    public synchronized long getRecordCount() {
+	return recordCount;
+    }
+
+    /**
+     * Returns the number of bytes, which have been recorded.
+     * 
+     * @return The size of the recording in bytes.
+     */
+    public synchronized long getSize() {
+	return position;
+    }
+
+    /**
+     * Checks if the recorder has been closed or has failed.
+     * 
+     * @return True if the recorder doesn't record anymore.
+     */
+    public boolean isClosed() {
+	return closed;
+    }
+
+    /**
+     * Closes the recorder. The index and the trailer are appended to the file.
+     * Messages, which are sent afterwards, aren't recorded anymore.
+     * 
+     * @throws IOException
+     *             If the file couldn't be written an {@code IOException} is
+     *             thrown.
+     */
+    public synchronized void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+
+	try {
+	    outputStream.writeInt(0);
+	    long indexPosition = position + 4;
+	    for (int i = 0; i < indexSize * 2; i++) {
+		outputStream.writeLong(index[i]);
+	    }
+	    outputStream.writeLong(recordCount);
+	    outputStream.writeLong(lastTime);
+	    outputStream.writeLong(indexPosition);
+	    outputStream.writeInt(indexSize);
+	    outputStream.writeInt(INDEX_MAGIC);
+	} finally {
+	    outputStream.close();
+	}
+
+	logger.info("The recording has been closed: " + recordCount + " messages, " + file);
+    }
+}
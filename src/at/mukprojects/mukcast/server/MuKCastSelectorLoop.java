@@ -0,0 +1,195 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.concurrent.Stoppable;
+
+/**
+ * This class is an event loop, which serves the non-blocking client
+ * connections of the server with a single {@link Selector}.
+ * <p>
+ * Registrations and write requests from other threads are queued and applied
+ * by the loop itself, so the selection keys are only modified by the loop
+ * thread.
+ * </p>
+ * <p>
+ * It has implemented the interfaces {@link Runnable} and {@link Stoppable} and
+ * is designed as a thread.
+ * </p>
+ * 
+ * @see MuKCastChannelHandler
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastSelectorLoop implements Runnable, Stoppable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastSelectorLoop.class);
+
+    private static final ThreadLocal<MuKCastSelectorLoop> currentLoop = new ThreadLocal<MuKCastSelectorLoop>();
+
+    private Selector selector;
+
+    private Queue<MuKCastChannelHandler> pendingRegistrations;
+    private Queue<MuKCastChannelHandler> pendingWrites;
+
+    private AtomicBoolean running;
+
+    /**
+     * Constructs a new MuKCastSelectorLoop.
+     * 
+     * @throws IOException
+     *             If the selector can't be opened an {@code IOException} is
+     *             thrown.
+     */
+    public MuKCastSelectorLoop() throws IOException {
+	this.selector = Selector.open();
+	this.pendingRegistrations = new ConcurrentLinkedQueue<MuKCastChannelHandler>();
+	this.pendingWrites = new ConcurrentLinkedQueue<MuKCastChannelHandler>();
+	this.running = new AtomicBoolean(true);
+    }
+
+    @Override
+    public void run() {
+	logger.info("Selector loop has started.");
+	currentLoop.set(this);
+
+	try {
+	    while (running.get()) {
+		selector.select();
+
+		processRegistrations();
+		processWrites();
+
+		Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+		while (selectedKeys.hasNext()) {
+		    SelectionKey key = selectedKeys.next();
+		    selectedKeys.remove();
+
+		    MuKCastChannelHandler handler = (MuKCastChannelHandler) key.attachment();
+		    try {
+			if (key.isValid() && key.isReadable()) {
+			    handler.read();
+			}
+			if (key.isValid() && key.isWritable()) {
+			    handler.write();
+			}
+		    } catch (IOException e) {
+			logger.error(e.getMessage(), e);
+			handler.close(e);
+		    }
+		}
+	    }
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	} finally {
+	    running.set(false);
+	    currentLoop.remove();
+
+	    for (SelectionKey key : selector.keys()) {
+		((MuKCastChannelHandler) key.attachment()).close();
+	    }
+
+	    MuKCastChannelHandler handler;
+	    while ((handler = pendingRegistrations.poll()) != null) {
+		handler.close();
+	    }
+
+	    try {
+		selector.close();
+	    } catch (IOException e) {
+		logger.error(e.getMessage(), e);
+	    }
+	}
+
+	logger.info("Selector loop has stopped.");
+    }
+
+    /**
+     * Registers a new connection at the loop.
+     * 
+     * @param handler
+     *            The channel handler.
+     */
+    public void register(MuKCastChannelHandler handler) {
+	pendingRegistrations.add(handler);
+	selector.wakeup();
+    }
+
+    /**
+     * Checks if the current thread is a selector loop. A selector loop must
+     * never wait for a send queue, because the queues are drained by the
+     * loops themselves.
+     * 
+     * @return Returns true or false depending on whether the current thread
+     *         is a selector loop or not.
+     */
+    public static boolean isLoopThread() {
+	return currentLoop.get() != null;
+    }
+
+    /**
+     * Requests the loop to write the pending data of the connection. A
+     * connection is added and the loop is woken up only once until the loop
+     * has enabled the write, no matter how many frames are queued meanwhile.
+     * 
+     * @param handler
+     *            The channel handler.
+     */
+    public void requestWrite(MuKCastChannelHandler handler) {
+	if (handler.scheduleWrite()) {
+	    pendingWrites.add(handler);
+	    selector.wakeup();
+	}
+    }
+
+    private void processRegistrations() {
+	MuKCastChannelHandler handler;
+	while ((handler = pendingRegistrations.poll()) != null) {
+	    try {
+		handler.register(selector);
+	    } catch (IOException e) {
+		logger.error(e.getMessage(), e);
+		handler.close();
+	    }
+	}
+    }
+
+    private void processWrites() {
+	MuKCastChannelHandler handler;
+	while ((handler = pendingWrites.poll()) != null) {
+	    handler.enableWrite();
+	}
+    }
+
+    @Override
+    public void stop() {
+	running.set(false);
+	selector.wakeup();
+    }
+}
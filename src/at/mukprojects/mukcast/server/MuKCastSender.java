@@ -0,0 +1,121 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.io.IOException;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * Classes implementing {@code MuKCastSender} interface queue encoded messages
+ * for one or more clients.
+ * 
+ * The {@link MuKCastServer} uses this interface to send broadcasted messages,
+ * e.g. the image stream, either to a single client connection or once to the
+ * multicast group.
+ * 
+ * @see MuKCastConnection
+ * @see MuKCastMulticastSender
+ * 
+ * @author Mathias Markl
+ */
+public interface MuKCastSender {
+
+    /**
+     * Returns the client key, which identifies the receiver, e.g. for the
+     * image stream.
+     * 
+     * @return The client key.
+     */
+    public String getClientKey();
+
+    /**
+     * Sends an already encoded message. Control messages are added to the
+     * priority lane of the send queue, so they overtake the queued frames.
+     * 
+     * @see EncodedMessage#isControl()
+     * 
+     * @param message
+     *            The encoded message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendMessage(EncodedMessage message) throws IOException;
+
+    /**
+     * Sends encoded messages, which belong together, e.g. the tiles of an
+     * image. The messages are queued as a group, so the overflow policy drops
+     * either all or none of them.
+     * 
+     * @see at.mukprojects.mukcast.concurrent.SendQueue#offerAll(java.util.List)
+     * 
+     * @param messages
+     *            The encoded messages.
+     * @throws IOException
+     *             If the messages couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendMessages(EncodedMessage[] messages) throws IOException;
+
+    /**
+     * Sends an already encoded message. If a message with the same conflation
+     * key hasn't been written yet, it is replaced by the message.
+     * 
+     * @param key
+     *            The conflation key or null if the message must not be
+     *            replaced.
+     * @param message
+     *            The encoded message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendConflated(Object key, EncodedMessage message) throws IOException;
+
+    /**
+     * Returns the number of queued messages, which haven't been written yet.
+     * 
+     * @return The number of queued messages.
+     */
+    public int getQueuedMessageCount();
+
+    /**
+     * Returns the number of messages, which have been dropped because the
+     * sender couldn't keep up.
+     * 
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessageCount();
+
+    /**
+     * Returns the metrics of the sender.
+     * 
+     * @return The metrics.
+     */
+    public ConnectionMetrics getMetrics();
+
+    /**
+     * Checks if the sender is still sending.
+     * 
+     * @return Returns true or false depending on whether the sender is
+     *         connected or not.
+     */
+    public boolean isConnected();
+}
@@ -18,17 +18,30 @@
 package at.mukprojects.mukcast.server;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.management.ObjectName;
 
 import org.apache.log4j.ConsoleAppender;
 import org.apache.log4j.Level;
@@ -37,9 +50,52 @@ import org.apache.log4j.PatternLayout;
 import org.slf4j.LoggerFactory;
 
 import at.mukprojects.mukcast.client.MuKCastClient;
+import at.mukprojects.mukcast.codec.ArrayAllocator;
+import at.mukprojects.mukcast.codec.ArrayTarget;
+import at.mukprojects.mukcast.codec.DatagramCodec;
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.FrameWriter;
+import at.mukprojects.mukcast.codec.ImageCodec;
+import at.mukprojects.mukcast.codec.ImageCodecs;
+import at.mukprojects.mukcast.codec.ImageScaler;
+import at.mukprojects.mukcast.codec.ImageTiler;
+import at.mukprojects.mukcast.concurrent.ExecutionMode;
+import at.mukprojects.mukcast.concurrent.Heartbeat;
+import at.mukprojects.mukcast.concurrent.Inbox;
+import at.mukprojects.mukcast.concurrent.OverflowPolicy;
+import at.mukprojects.mukcast.concurrent.SendQueue;
 import at.mukprojects.mukcast.concurrent.Stoppable;
+import at.mukprojects.mukcast.concurrent.ThreadExecutors;
 import at.mukprojects.mukcast.message.DisconnectMessage;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.KeyframeRequestMessage;
+import at.mukprojects.mukcast.message.MaxResolutionMessage;
 import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.MulticastJoinMessage;
+import at.mukprojects.mukcast.message.MulticastLeaveMessage;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.message.PingMessage;
+import at.mukprojects.mukcast.message.PongMessage;
+import at.mukprojects.mukcast.message.ResumeSessionMessage;
+import at.mukprojects.mukcast.message.SessionMessage;
+import at.mukprojects.mukcast.message.SubscribeMessage;
+import at.mukprojects.mukcast.message.TextMessage;
+import at.mukprojects.mukcast.message.UnsubscribeMessage;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+import at.mukprojects.mukcast.metrics.ConnectionMetricsSnapshot;
+import at.mukprojects.mukcast.metrics.DisconnectReason;
+import at.mukprojects.mukcast.metrics.HistogramSnapshot;
+import at.mukprojects.mukcast.metrics.MuKCastMBeans;
+import at.mukprojects.mukcast.metrics.MuKCastServerMXBean;
+import at.mukprojects.mukcast.metrics.ServerMetrics;
+import at.mukprojects.mukcast.metrics.ServerMetricsSnapshot;
+import at.mukprojects.mukcast.transport.Acceptor;
+import at.mukprojects.mukcast.transport.Link;
+import at.mukprojects.mukcast.transport.LoopbackTransport;
+import at.mukprojects.mukcast.transport.SocketAcceptor;
+import at.mukprojects.mukcast.transport.SocketLink;
+import at.mukprojects.mukcast.transport.SocketTransport;
+import at.mukprojects.mukcast.transport.Transport;
 import processing.core.PApplet;
 
 /**
@@ -65,28 +121,80 @@ public class MuKCastServer {
      */
     public static final int DEFAULT_PORT = 4242;
 
+    /**
+     * Default capacity of the client send queues
+     */
+    public static final int DEFAULT_SEND_QUEUE_CAPACITY = 64;
+
     private PApplet parent;
-    private Method handleMessage;
-    private Method handleClientConnection;
-    private Method handleClientDisconnect;
+    private List<MuKCastServerListener> listeners;
 
     private String serverInfo;
-    private ServerSocket serverSocket;
     private String host;
     private int port;
+    private List<Transport> transports;
+
+    private ExecutionMode executionMode;
+    private volatile ExecutorService executor;
+    private boolean sharedExecutor;
+    private final Object executorLock = new Object();
+    private Set<Stoppable> threads;
+
+    private int sendQueueCapacity;
+    private OverflowPolicy overflowPolicy;
+
+    private int flushThreshold;
+    private long flushDelay;
+    private boolean tcpNoDelay;
+
+    private int tileWidth;
+    private int tileHeight;
+    private AtomicInteger nextFrameId;
+
+    private int selectorLoopCount;
+    private MuKCastSelectorLoop[] selectorLoops;
+    private AtomicInteger nextSelectorLoop;
+
+    private MuKCastClientRegistry clients;
+    private MuKCastSubscriptionRegistry subscriptions;
+    private MuKCastSessionRegistry sessions;
+    private volatile long sessionTimeout;
+
+    private long heartbeatInterval;
+    private volatile long heartbeatTimeout;
+    private Heartbeat heartbeat;
+
+    private ImageCodec imageCodec;
+    private ConcurrentHashMap<String, ImageCodec> clientImageCodecs;
+
+    private volatile ArrayAllocator arrayAllocator;
+
+    private boolean deltaEncoding;
+    private int keyframeInterval;
+    private MuKCastImageStream imageStream;
+    private ConcurrentHashMap<Integer, MuKCastImageStream> imageStreams;
+    private ConcurrentHashMap<String, MaxResolutionMessage> clientResolutions;
+
+    private volatile MuKCastMulticastSender multicastSender;
+    private volatile MuKCastRecorder recorder;
+    private Set<String> multicastClients;
+
+    private Inbox<ServerEvent> inbox;
+    private volatile boolean sketchDelivery;
+    private boolean preRegistered;
 
-    private ExecutorService executor;
-    private List<Stoppable> threads;
+    private ServerMetrics metrics;
+    private ObjectName mbeanName;
 
-    private ConcurrentHashMap<String, MuKCastClientHandler> clients;
+    private final Object imageLock = new Object();
 
-    private boolean started;
+    private volatile boolean started;
 
     /**
      * Constructs a new MuKCastServer.
      * 
      * @param parent
-     *            The PApplet.
+     *            The PApplet or null if the server isn't used by a sketch.
      * @throws IOException
      *             If the server can't be created an {@code IOException} is
      *             thrown.
@@ -99,7 +207,7 @@ public class MuKCastServer {
      * Constructs a new MuKCastServer.
      * 
      * @param parent
-     *            The PApplet.
+     *            The PApplet or null if the server isn't used by a sketch.
      * @param port
      *            The server port.
      * @throws IOException
@@ -114,7 +222,7 @@ public class MuKCastServer {
      * Constructs a new MuKCastServer.
      * 
      * @param parent
-     *            The PApplet.
+     *            The PApplet or null if the server isn't used by a sketch.
      * @param port
      *            The server port.
      * @param host
@@ -124,6 +232,10 @@ public class MuKCastServer {
 	this.parent = parent;
 	this.host = host;
 	this.port = port;
+	this.sendQueueCapacity = DEFAULT_SEND_QUEUE_CAPACITY;
+	this.overflowPolicy = OverflowPolicy.DROP_OLDEST;
+	this.flushThreshold = FrameWriter.DEFAULT_FLUSH_THRESHOLD;
+	this.tcpNoDelay = true;
 	this.started = false;
 
 	/*
@@ -137,290 +249,2109 @@ public class MuKCastServer {
 	    Logger.getRootLogger().addAppender(appender);
 	}
 
-	/*
-	 * Register dispose method
-	 */
-	parent.registerMethod("dispose", this);
+	listeners = new CopyOnWriteArrayList<MuKCastServerListener>();
 
-	/*
-	 * PApplet methods
-	 */
-	try {
-	    handleMessage = parent.getClass().getMethod("handleMessage", new Class[] { String.class, Message.class });
-	} catch (Exception e) {
-	    logger.warn("No method called \"handleMessage(String clientKey, Message message)\" could"
-		    + " be found in the PApplet class.");
-	}
+	if (parent != null) {
+	    /*
+	     * Register dispose method
+	     */
+	    parent.registerMethod("dispose", this);
 
-	try {
-	    handleClientConnection = parent.getClass().getMethod("handleClientConnection",
-		    new Class[] { String.class });
-	} catch (Exception e) {
-	    logger.warn("No method called \"handleClientConnection(String clientKey)\" could be found in"
-		    + " the PApplet class.");
+	    /*
+	     * PApplet methods
+	     */
+	    if (parent instanceof MuKCastServerListener) {
+		listeners.add((MuKCastServerListener) parent);
+	    } else {
+		listeners.add(new MuKCastSketchListener(parent));
+	    }
 	}
 
-	try {
-	    handleClientDisconnect = parent.getClass().getMethod("handleClientDisconnect",
-		    new Class[] { String.class });
-	} catch (Exception e) {
-	    logger.warn("No method called \"handleClientDisconnect(String clientKey)\" could be found in"
-		    + " the PApplet class.");
-	}
+	executionMode = ExecutionMode.PLATFORM_THREADS;
+	threads = ConcurrentHashMap.newKeySet();
+	transports = new CopyOnWriteArrayList<Transport>();
+	transports.add(new SocketTransport());
 
-	executor = Executors.newCachedThreadPool();
-	threads = new ArrayList<Stoppable>();
+	clients = new MuKCastClientRegistry();
+	subscriptions = new MuKCastSubscriptionRegistry();
+	sessions = new MuKCastSessionRegistry();
+	nextSelectorLoop = new AtomicInteger();
+	imageCodec = ImageCodecs.RAW;
+	clientImageCodecs = new ConcurrentHashMap<String, ImageCodec>();
+	metrics = new ServerMetrics();
+	keyframeInterval = MuKCastImageStream.DEFAULT_KEYFRAME_INTERVAL;
+	imageStream = new MuKCastImageStream(metrics);
+	imageStreams = new ConcurrentHashMap<Integer, MuKCastImageStream>();
+	imageStreams.put(1, imageStream);
+	clientResolutions = new ConcurrentHashMap<String, MaxResolutionMessage>();
+	nextFrameId = new AtomicInteger();
+	multicastClients = ConcurrentHashMap.newKeySet();
+	inbox = new Inbox<ServerEvent>();
+    }
 
-	clients = new ConcurrentHashMap<String, MuKCastClientHandler>();
+    /**
+     * Adds a listener for the events of the server.
+     * 
+     * @param listener
+     *            The listener.
+     */
+    public void addListener(MuKCastServerListener listener) {
+	listeners.add(listener);
     }
 
     /**
-     * Starts the server.
+     * Removes a listener.
      * 
-     * @throws IOException
-     *             If the server can't be created an {@code IOException} is
-     *             thrown.
+     * @param listener
+     *            The listener.
      */
-    public void startServer() throws IOException {
-	if (started) {
-	    logger.warn("Server is already started.");
-	} else {
-	    serverInfo = InetAddress.getLocalHost().getHostAddress() + ":" + port;
+    public void removeListener(MuKCastServerListener listener) {
+	listeners.remove(listener);
+    }
 
-	    if (host == null) {
-		serverSocket = new ServerSocket(port);
-	    } else {
-		serverSocket = new ServerSocket(port, 10, InetAddress.getByName(host));
+    /**
+     * Enables or disables the delivery on the sketch thread. If enabled, the
+     * network threads only add the events to an inbox and the listeners are
+     * called in one batch before the sketch draws the next frame. Without a
+     * sketch the events are delivered by calling {@link #deliverEvents()}.
+     * 
+     * @param sketchDelivery
+     *            True to deliver the events on the sketch thread.
+     */
+    public synchronized void setSketchDelivery(boolean sketchDelivery) {
+	if (sketchDelivery && parent != null && !preRegistered) {
+	    parent.registerMethod("pre", this);
+	    preRegistered = true;
+	}
+	this.sketchDelivery = sketchDelivery;
+    }
+
+    /**
+     * Sets the maximum number of messages delivered per frame, if the delivery
+     * on the sketch thread is enabled. The remaining messages are delivered
+     * with the next frames.
+     * 
+     * @param maxMessagesPerFrame
+     *            The maximum number of messages or 0 for no limit.
+     */
+    public void setMaxMessagesPerFrame(int maxMessagesPerFrame) {
+	inbox.setMaxPerDrain(maxMessagesPerFrame);
+    }
+
+    /**
+     * Enables or disables coalescing, if the delivery on the sketch thread is
+     * enabled. If enabled, only the latest undelivered message of each type is
+     * delivered per client, e.g. the latest sensor value or image.
+     * 
+     * @param coalescing
+     *            True to enable coalescing.
+     */
+    public void setCoalescing(boolean coalescing) {
+	inbox.setCoalescing(coalescing);
+    }
+
+    /**
+     * Delivers the queued events to the listeners. The method is called
+     * automatically before each frame if the delivery on the sketch thread is
+     * enabled.
+     * 
+     * @return The number of delivered messages and client events.
+     */
+    public int deliverEvents() {
+	return inbox.drain(new Consumer<ServerEvent>() {
+	    @Override
+	    public void accept(ServerEvent event) {
+		fireEvent(event);
 	    }
+	}, null);
+    }
+
+    /**
+     * Delivers the queued events: internal use only.
+     */
+    public void pre() {
+	deliverEvents();
+    }
 
-	    logger.info("Server starts on port " + serverSocket.getLocalPort() + "...");
+    /**
+     * Sets the allocator for the arrays of received array messages, e.g. an
+     * {@link ArrayTarget} to decode the values directly into the arrays of the
+     * sketch. The allocator is used by the network threads of all clients, so
+     * an array target should only be used if the messages are handled on the
+     * network threads and only one client sends array messages.
+     * 
+     * @param arrayAllocator
+     *            The array allocator or null to allocate a new array for every
+     *            array message.
+     */
+    public void setArrayAllocator(ArrayAllocator arrayAllocator) {
+	this.arrayAllocator = arrayAllocator;
+    }
 
-	    MuKCastClientListener clientListener = new MuKCastClientListener(this, serverSocket);
-	    threads.add(clientListener);
-	    executor.execute(clientListener);
-	    started = true;
+    /**
+     * Returns the allocator for the arrays of received array messages.
+     * 
+     * @return The array allocator or null.
+     */
+    public ArrayAllocator getArrayAllocator() {
+	return arrayAllocator;
+    }
 
-	    logger.info("Server has started.");
+    /**
+     * Sets the codec, which compresses the pixels of the sent
+     * {@link ImageMessage}s. The default is {@link ImageCodecs#RAW}.
+     * 
+     * @param imageCodec
+     *            The image codec.
+     */
+    public void setImageCodec(ImageCodec imageCodec) {
+	this.imageCodec = imageCodec != null ? imageCodec : ImageCodecs.RAW;
+    }
+
+    /**
+     * Sets the codec, which compresses the pixels of the {@link ImageMessage}s
+     * sent to the client. The codec overrides the codec of the server for this
+     * client.
+     * 
+     * @param client
+     *            The client.
+     * @param imageCodec
+     *            The image codec or null to use the codec of the server.
+     */
+    public void setImageCodec(String client, ImageCodec imageCodec) {
+	if (imageCodec != null) {
+	    clientImageCodecs.put(client, imageCodec);
+	} else {
+	    clientImageCodecs.remove(client);
 	}
+    }
 
+    /**
+     * Returns the codec, which compresses the pixels of the
+     * {@link ImageMessage}s sent to the client.
+     * 
+     * @param client
+     *            The client.
+     * @return The image codec.
+     */
+    public ImageCodec getImageCodec(String client) {
+	ImageCodec clientImageCodec = clientImageCodecs.get(client);
+	return clientImageCodec != null ? clientImageCodec : imageCodec;
     }
 
     /**
-     * Returns the server information as an String.
+     * Enables or disables the delta encoding of broadcast images. If the delta
+     * encoding is enabled, a client only receives the changed parts of an
+     * {@link ImageMessage} compared to the previous broadcast image. Full
+     * keyframes are sent periodically or if a client requests one. The client
+     * reconstructs the full image, so the received messages don't change.
      * 
-     * @return The server information.
+     * @param deltaEncoding
+     *            True to enable the delta encoding.
      */
-    public String getServerInfo() {
-	return serverInfo;
+    public synchronized void setDeltaEncoding(boolean deltaEncoding) {
+	this.deltaEncoding = deltaEncoding;
+	requestKeyframe();
     }
 
     /**
-     * Handles a new client connection.
+     * Sets the number of broadcast images between two keyframes, if the delta
+     * encoding is enabled. The default is
+     * {@value MuKCastImageStream#DEFAULT_KEYFRAME_INTERVAL}.
      * 
-     * @param socket
-     *            The client socket.
+     * @param keyframeInterval
+     *            The keyframe interval.
      */
-    public synchronized void handleClientConnection(Socket socket) {
-	logger.info("A new client has connected to the server.");
-	logger.info("Client: " + socket.getInetAddress().getHostAddress());
-
-	String clientKey = "#1_" + socket.getInetAddress().getHostAddress();
-	if (clients.containsKey(clientKey)) {
-	    int index = 2;
-	    boolean contains = true;
-	    while (contains) {
-		clientKey = "#" + index + "_" + socket.getInetAddress().getHostAddress();
-		if (clients.containsKey(clientKey)) {
-		    index++;
-		} else {
-		    contains = false;
-		}
-	    }
+    public void setKeyframeInterval(int keyframeInterval) {
+	this.keyframeInterval = keyframeInterval;
+	for (MuKCastImageStream stream : imageStreams.values()) {
+	    stream.setKeyframeInterval(keyframeInterval);
 	}
+    }
 
-	MuKCastClientHandler clientHandler = new MuKCastClientHandler(this, socket, clientKey);
-
-	threads.add(clientHandler);
-	executor.execute(clientHandler);
+    /**
+     * Sends a keyframe to all clients with the next broadcast image, if the
+     * delta encoding is enabled.
+     */
+    public void requestKeyframe() {
+	for (MuKCastImageStream stream : imageStreams.values()) {
+	    stream.requestKeyframe();
+	}
+    }
 
-	if (handleClientConnection != null) {
-	    try {
-		handleClientConnection.invoke(parent, clientKey);
-	    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-		logger.error(e.getMessage(), e);
-	    }
+    /**
+     * Sets the maximum resolution of the images sent to the client. Larger
+     * images are downscaled by the smallest power of two, which fits them into
+     * the resolution. Clients usually declare their resolution with
+     * {@link MuKCastClient#setMaxResolution(int, int)}. A broadcast image is
+     * scaled once per resolution tier in use and the tiers are delta encoded
+     * independently. Images sent to the multicast group always have the source
+     * resolution.
+     * 
+     * @param client
+     *            The client.
+     * @param maxWidth
+     *            The maximum width or 0 for no limit.
+     * @param maxHeight
+     *            The maximum height or 0 for no limit.
+     */
+    public void setMaxResolution(String client, int maxWidth, int maxHeight) {
+	if (maxWidth > 0 || maxHeight > 0) {
+	    logger.info("Client (" + client + ") has set the maximum resolution: " + maxWidth + "x" + maxHeight);
+	    clientResolutions.put(client, new MaxResolutionMessage(maxWidth, maxHeight));
+	} else {
+	    clientResolutions.remove(client);
 	}
 
-	clients.put(clientKey, clientHandler);
+	/*
+	 * The client starts with a keyframe of its new tier.
+	 */
+	for (MuKCastImageStream stream : imageStreams.values()) {
+	    stream.removeClient(client);
+	}
     }
 
     /**
-     * Handles an incoming message.
+     * Returns the scale of the images sent to the client.
      * 
-     * @param message
-     *            The incoming message.
+     * @param client
+     *            The client.
+     * @param image
+     *            The image.
+     * @return The scale, 1 if the image is sent with the source resolution.
      */
-    public synchronized void handleMessage(String clientKey, Message message) {
-	if (handleMessage != null) {
-	    try {
-		handleMessage.invoke(parent, clientKey, message);
-	    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-		logger.error(e.getMessage(), e);
-	    }
+    private int getScale(String client, ImageMessage image) {
+	MaxResolutionMessage resolution = clientResolutions.get(client);
+	if (resolution == null) {
+	    return 1;
 	}
+	return ImageScaler.getScale(image.getWidth(), image.getHeight(), resolution.getMaxWidth(),
+		resolution.getMaxHeight());
     }
 
     /**
-     * Sends an message to the client.
+     * Returns the message, which is sent to the client. Images are downscaled
+     * to the maximum resolution of the client.
      * 
      * @param client
      *            The client.
      * @param message
      *            The message.
-     * @throws IOException
-     *             If the message couldn't be send an {@code IOExction} is
-     *             thrown.
+     * @return The message or the scaled image.
      */
-    public synchronized void sendMessage(String client, Message message) throws IOException {
-	MuKCastClientHandler clientHandler = clients.get(client);
-	if (clientHandler != null) {
-	    clientHandler.sendMessage(message);
-	} else {
-	    logger.error("Client: (" + client + ") doesn't exist.");
+    private Message scaleImage(String client, Message message) {
+	if (message.getClass() == ImageMessage.class) {
+	    return ImageScaler.downscale((ImageMessage) message, getScale(client, (ImageMessage) message));
 	}
+	return message;
     }
 
     /**
-     * Sends an message to all clients.
+     * Returns the tier of a broadcast image with the given scale. The tier is
+     * scaled and, if requested, added to the image stream of its scale the
+     * first time it is used by the broadcast.
      * 
-     * @param message
-     *            The message.
+     * @param tiers
+     *            The tiers of the broadcast.
+     * @param image
+     *            The broadcast image.
+     * @param scale
+     *            The scale.
+     * @param delta
+     *            True if the tier is delta encoded.
+     * @return The tier.
      * @throws IOException
-     *             If the message couldn't be send an {@code IOExction} is
+     *             If the frame couldn't be encoded an {@code IOException} is
      *             thrown.
      */
-    public synchronized void broadcastMessage(Message message) throws IOException {
-	Enumeration<MuKCastClientHandler> clientList = clients.elements();
-	while (clientList.hasMoreElements()) {
-	    MuKCastClientHandler client = clientList.nextElement();
-	    if (client != null && client.isConnected()) {
-		client.sendMessage(message);
+    private ImageTier getTier(Map<Integer, ImageTier> tiers, ImageMessage image, int scale, boolean delta)
+	    throws IOException {
+	ImageTier tier = tiers.get(scale);
+	if (tier == null) {
+	    ImageMessage scaledImage = ImageScaler.downscale(image, scale);
+	    MuKCastImageStream stream = null;
+	    if (delta) {
+		stream = imageStreams.get(scale);
+		if (stream == null) {
+		    stream = new MuKCastImageStream(metrics);
+		    stream.setKeyframeInterval(keyframeInterval);
+		    imageStreams.put(scale, stream);
+		}
+		stream.nextFrame(scaledImage);
 	    }
+	    tier = new ImageTier(scaledImage, stream);
+	    tiers.put(scale, tier);
 	}
+	return tier;
     }
 
     /**
-     * Returns a list of all connected clients.
+     * Sets the capacity and the overflow policy of the send queues. Every
+     * client has its own send queue. If a client can't keep up with the
+     * messages and its queue is full, the policy decides what happens. The
+     * default is a capacity of {@value #DEFAULT_SEND_QUEUE_CAPACITY} messages
+     * and {@link OverflowPolicy#DROP_OLDEST}. The settings are used for all
+     * clients, which connect afterwards.
+     * <p>
+     * With selector loops, see {@link #setSelectorLoops(int)}, the listeners
+     * are called by the loops, which also write the send queues. A message,
+     * which is sent from a listener, therefore never waits with
+     * {@link OverflowPolicy#BLOCK}, the client gets disconnected instead if its
+     * queue is full. Messages sent from other threads wait as usual.
+     * </p>
      * 
-     * @return A list of all connected clients.
+     * @param capacity
+     *            The capacity of the send queues.
+     * @param policy
+     *            The overflow policy.
      */
-    public synchronized Enumeration<String> getClientList() {
-	return clients.keys();
+    public void setSendQueue(int capacity, OverflowPolicy policy) {
+	if (capacity < 1) {
+	    throw new IllegalArgumentException("The capacity has to be greater than zero.");
+	}
+
+	this.sendQueueCapacity = capacity;
+	this.overflowPolicy = policy;
     }
 
     /**
-     * Disconnects the client from the server.
+     * Returns the capacity of the send queues.
      * 
-     * @param client
-     *            The client.
-     * @throws IOException
-     *             If the client couldn't be disconnected from the server an
-     *             {@code IOExction} is thrown.
+     * @return The capacity of the send queues.
      */
-    public synchronized void disconnectClient(String client) throws IOException {
-	logger.info("Disconnect client: " + client);
+    public int getSendQueueCapacity() {
+	return sendQueueCapacity;
+    }
 
-	clients.remove(client);
+    /**
+     * Returns the overflow policy of the send queues.
+     * 
+     * @return The overflow policy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+	return overflowPolicy;
+    }
 
-	MuKCastClientHandler clientHandler = clients.get(client);
-	if (clientHandler != null) {
-	    clientHandler.sendMessage(new DisconnectMessage());
-	    clientHandler.stop();
+    /**
+     * Sets how the messages of a client are coalesced into writes. The queued
+     * messages are buffered and written together, if the buffer reaches the
+     * flush threshold, if no more messages arrive within the flush delay or if
+     * {@link #flush()} is called. With a flush delay of zero the messages are
+     * written as soon as the send queue is empty, so messages are only
+     * coalesced if they are queued faster than the network takes them. A flush
+     * threshold of zero writes every message on its own. The default is a
+     * threshold of {@value FrameWriter#DEFAULT_FLUSH_THRESHOLD} bytes without a
+     * delay. The settings are used for all clients, which connect afterwards.
+     * Connections served by selector loops coalesce the queued messages up to
+     * the threshold, but never wait for the flush delay.
+     * 
+     * @param flushThreshold
+     *            The number of bytes, which are buffered before they are
+     *            written.
+     * @param flushDelay
+     *            The maximum time a message is buffered.
+     * @param unit
+     *            The time unit of the flush delay.
+     */
+    public void setWriteCoalescing(int flushThreshold, long flushDelay, TimeUnit unit) {
+	if (flushThreshold < 0 || flushDelay < 0) {
+	    throw new IllegalArgumentException("The flush threshold and the flush delay can't be negative.");
 	}
 
-	if (handleClientDisconnect != null) {
-	    try {
-		handleClientDisconnect.invoke(parent, client);
-	    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-		logger.error(e.getMessage(), e);
-	    }
-	}
+	this.flushThreshold = flushThreshold;
+	this.flushDelay = unit.toNanos(flushDelay);
     }
 
     /**
-     * Disconnects the client from the server. The client won't receive an
-     * message.
+     * Returns the number of bytes, which are buffered before they are written.
      * 
-     * @param client
-     *            The client.
+     * @return The flush threshold.
      */
-    public synchronized void disconnectClientWithoutNotification(String client) {
-	logger.info("Disconnect client: " + client);
+    public int getFlushThreshold() {
+	return flushThreshold;
+    }
 
-	clients.remove(client);
+    /**
+     * Returns the maximum time a message is buffered.
+     * 
+     * @return The flush delay in nanoseconds.
+     */
+    public long getFlushDelay() {
+	return flushDelay;
+    }
 
-	MuKCastClientHandler clientHandler = clients.get(client);
-	if (clientHandler != null) {
-	    clientHandler.stop();
+    /**
+     * Enables or disables {@code TCP_NODELAY} for all clients, which connect
+     * afterwards. It is enabled by default, because the messages are already
+     * coalesced by the server and Nagle's algorithm only delays them.
+     * 
+     * @param tcpNoDelay
+     *            True to disable Nagle's algorithm.
+     */
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+	this.tcpNoDelay = tcpNoDelay;
+    }
+
+    /**
+     * Checks if {@code TCP_NODELAY} is enabled.
+     * 
+     * @return Returns true or false depending on whether
+     *         {@code TCP_NODELAY} is enabled or not.
+     */
+    public boolean isTcpNoDelay() {
+	return tcpNoDelay;
+    }
+
+    /**
+     * Enables the tiling of large images. An {@link ImageMessage}, which is
+     * larger than a tile, is split into tiles, which are encoded in parallel
+     * and sent as frames of their own. The client applies every tile as soon
+     * as it arrives and delivers the complete image after the last tile, so
+     * the received messages don't change. Between the tiles, control messages
+     * can overtake the image. The tiles of an image are queued as one group,
+     * which counts as a single message against the capacity of the send queue
+     * and is dropped as a whole by the overflow policy, so a client never gets
+     * an incomplete image regardless of the number of tiles. Delta encoded and
+     * conflated images aren't tiled. Tiling is disabled by default.
+     * 
+     * @param tileWidth
+     *            The width of a tile or 0 to disable the tiling.
+     * @param tileHeight
+     *            The height of a tile or 0 to disable the tiling.
+     */
+    public void setImageTiling(int tileWidth, int tileHeight) {
+	if (tileWidth < 0 || tileHeight < 0) {
+	    throw new IllegalArgumentException("The tile size can't be negative.");
 	}
 
-	if (handleClientDisconnect != null) {
-	    try {
-		handleClientDisconnect.invoke(parent, client);
-	    } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-		logger.error(e.getMessage(), e);
-	    }
+	if (tileWidth > 0 && tileHeight > 0) {
+	    this.tileWidth = tileWidth;
+	    this.tileHeight = tileHeight;
+	} else {
+	    this.tileWidth = 0;
+	    this.tileHeight = 0;
 	}
     }
 
     /**
-     * Disconnects all clients from the server.
+     * Sets the recorder, which records every message the server broadcasts or
+     * publishes. Messages sent to a single client aren't recorded. A recording
+     * can be replayed into a server with a {@link MuKCastPlayer}. The recorder
+     * isn't closed by the server.
      * 
-     * @throws IOException
-     *             If the clients couldn't be disconnected from the server an
-     *             {@code IOExction} is thrown.
+     * @param recorder
+     *            The recorder or null to stop the recording.
      */
-    public synchronized void disconnectAllClient() throws IOException {
-	logger.info("Disconnect all clients.");
+    public void setRecorder(MuKCastRecorder recorder) {
+	this.recorder = recorder;
+    }
+
+    /**
+     * Returns the recorder of the server.
+     * 
+     * @return The recorder or null if the server doesn't record.
+     */
+    public MuKCastRecorder getRecorder() {
+	return recorder;
+    }
 
-	Enumeration<String> clientList = clients.keys();
-	while (clientList.hasMoreElements()) {
-	    disconnectClient(clientList.nextElement());
+    /**
+     * Enables the resumption of client sessions. Every client receives a
+     * session token when it connects. If the connection of a client is lost,
+     * its client key stays reserved and its subscriptions, maximum resolution
+     * and image codec are kept until the timeout expires. A client, which
+     * reconnects with the token in time, gets its key and its settings back
+     * and continues with a keyframe. The listeners are notified about the
+     * disconnect of the temporary key of the new connection and the connect
+     * of the resumed key. Sessions are disabled by default.
+     * 
+     * @see MuKCastClient#setAutoReconnect(boolean)
+     * 
+     * @param timeout
+     *            The time a lost session can be resumed or 0 to disable the
+     *            sessions.
+     * @param unit
+     *            The unit of the timeout.
+     */
+    public void setSessionTimeout(long timeout, TimeUnit unit) {
+	if (timeout < 0) {
+	    throw new IllegalArgumentException("The timeout can't be negative.");
 	}
+	this.sessionTimeout = unit.toMillis(timeout);
     }
 
     /**
-     * Stops the server: internal use only.
+     * Returns the time a lost session can be resumed.
+     * 
+     * @return The session timeout in milliseconds or 0 if sessions are
+     *         disabled.
      */
-    public void dispose() {
-	logger.info("Server is disposed.");
-	
-	try {
-	    stopServer();
-	} catch (IOException e) {
-	    logger.error(e.getMessage(), e);
+    public long getSessionTimeout() {
+	return sessionTimeout;
+    }
+
+    /**
+     * Enables the heartbeat. The server pings every client in the given
+     * interval and the client answers with a pong, which measures the round
+     * trip time and the offset between the clocks of the server and the
+     * client. A client, which hasn't sent anything within the timeout, is
+     * disconnected, even if the network failure hasn't closed its connection,
+     * so it doesn't keep consuming broadcasts. An interval of 250ms with a
+     * timeout of one second evicts a dead client within about a second. The
+     * heartbeat is disabled by default.
+     * 
+     * @see #getMetrics(String)
+     * 
+     * @param interval
+     *            The interval between two pings or 0 to disable the heartbeat.
+     * @param timeout
+     *            The time after which a silent client is disconnected.
+     * @param unit
+     *            The unit of the interval and the timeout.
+     */
+    public synchronized void setHeartbeat(long interval, long timeout, TimeUnit unit) {
+	if (interval < 0 || (interval > 0 && timeout <= interval)) {
+	    throw new IllegalArgumentException("The timeout has to be greater than the interval.");
+	}
+
+	this.heartbeatInterval = unit.toNanos(interval);
+	this.heartbeatTimeout = unit.toNanos(timeout);
+	if (started) {
+	    startHeartbeat();
 	}
     }
 
     /**
-     * Stops the server.
+     * Returns the smoothed round trip time to a client, which is measured by
+     * the heartbeat.
      * 
-     * @throws IOException
-     *             If the client couldn't be disconnected from the server an
-     *             {@code IOExction} is thrown.
+     * @param client
+     *            The client.
+     * @return The round trip time in nanoseconds or 0 if the client doesn't
+     *         exist or no round trip has been measured.
      */
-    public void stopServer() throws IOException {
-	logger.info("Server is stopping...");
+    public long getRoundTripTime(String client) {
+	MuKCastConnection clientHandler = clients.get(client);
+	return clientHandler != null ? clientHandler.getMetrics().getRoundTripTime() : 0;
+    }
 
-	disconnectAllClient();
+    /**
+     * Returns the offset of the clock of a client to the clock of the server,
+     * which is estimated by the heartbeat. A time of the client is converted
+     * to the clock of the server by subtracting the offset.
+     * 
+     * @param client
+     *            The client.
+     * @return The clock offset in milliseconds or 0 if the client doesn't
+     *         exist or no round trip has been measured.
+     */
+    public long getClockOffset(String client) {
+	MuKCastConnection clientHandler = clients.get(client);
+	return clientHandler != null ? clientHandler.getMetrics().getClockOffset() : 0;
+    }
 
-	for (Stoppable thread : threads) {
-	    thread.stop();
+    /**
+     * Starts the heartbeat with the current interval and stops the previous
+     * one.
+     */
+    private synchronized void startHeartbeat() {
+	stopHeartbeat();
+	if (heartbeatInterval > 0) {
+	    heartbeat = new Heartbeat(new Runnable() {
+		@Override
+		public void run() {
+		    checkHeartbeats();
+		}
+	    }, heartbeatInterval, TimeUnit.NANOSECONDS);
+	    threads.add(heartbeat);
+	    getExecutor().execute(heartbeat);
 	}
-	threads.clear();
-	executor.shutdown();
-	started = false;
+    }
 
-	logger.info("Server has stopped.");
+    /**
+     * Stops the heartbeat.
+     */
+    private synchronized void stopHeartbeat() {
+	if (heartbeat != null) {
+	    heartbeat.stop();
+	    threads.remove(heartbeat);
+	    heartbeat = null;
+	}
+    }
+
+    /**
+     * Disconnects the clients, which haven't sent anything within the timeout,
+     * and pings all other clients.
+     */
+    private void checkHeartbeats() {
+	long now = System.nanoTime();
+	EncodedMessage ping = null;
+	for (MuKCastConnection client : clients.getSnapshot()) {
+	    long silence = now - client.getMetrics().getLastReceivedAt();
+	    if (silence > heartbeatTimeout) {
+		logger.warn("Client (" + client.getClientKey() + ") hasn't answered for "
+			+ TimeUnit.NANOSECONDS.toMillis(silence) + "ms and gets disconnected.");
+		client.abort(DisconnectReason.TIMEOUT);
+	    } else {
+		try {
+		    if (ping == null) {
+			ping = new EncodedMessage(new PingMessage(now));
+		    }
+		    client.sendMessage(ping);
+		} catch (IOException e) {
+		    logger.debug("Client (" + client.getClientKey() + ") couldn't be pinged: " + e.getMessage());
+		}
+	    }
+	}
+    }
+
+    /**
+     * Writes the buffered messages of all clients without waiting for the
+     * flush threshold or the flush delay.
+     */
+    public void flush() {
+	for (MuKCastConnection client : clients.getSnapshot()) {
+	    client.flush();
+	}
+    }
+
+    /**
+     * Sets the transport the server listens on instead of TCP sockets, e.g. a
+     * {@link LoopbackTransport} to serve clients within the same JVM without
+     * a network port. The method has to be called before the server is
+     * started.
+     * 
+     * @param transport
+     *            The transport.
+     */
+    public synchronized void setTransport(Transport transport) {
+	if (transport == null) {
+	    throw new IllegalArgumentException("The transport must not be null.");
+	}
+
+	if (started) {
+	    logger.warn("Transport can't be changed while the server is started.");
+	} else {
+	    transports.clear();
+	    transports.add(transport);
+	}
+    }
+
+    /**
+     * Adds a transport the server listens on in addition to the others, e.g. a
+     * {@link LoopbackTransport} to serve local clients without going through
+     * the kernel, while remote clients connect over TCP. The server listens on
+     * the same port for every transport. The method has to be called before
+     * the server is started.
+     * 
+     * @param transport
+     *            The transport.
+     */
+    public synchronized void addTransport(Transport transport) {
+	if (transport == null) {
+	    throw new IllegalArgumentException("The transport must not be null.");
+	}
+
+	if (started) {
+	    logger.warn("Transport can't be added while the server is started.");
+	} else if (!transports.contains(transport)) {
+	    transports.add(transport);
+	}
+    }
+
+    /**
+     * Sets the number of selector loops. If the number is greater than zero the
+     * server serves all clients with non-blocking channels on the given number
+     * of threads. Otherwise every client is served by its own thread, which is
+     * the default. Selector loops only serve TCP clients, the clients of other
+     * transports are served by their own thread. The listeners are called by
+     * the loops, so a slow listener delays every client of its loop, unless
+     * the delivery on the sketch thread is enabled. The method has to be
+     * called before the server is started.
+     * 
+     * @param selectorLoopCount
+     *            The number of selector loops.
+     */
+    public void setSelectorLoops(int selectorLoopCount) {
+	if (started) {
+	    logger.warn("Selector loops can't be changed while the server is started.");
+	} else {
+	    this.selectorLoopCount = selectorLoopCount;
+	}
+    }
+
+    /**
+     * Sets the threads the server runs on. With
+     * {@link ExecutionMode#VIRTUAL_THREADS} every client connection is served
+     * by its own virtual thread, so the server scales to thousands of clients
+     * without selector loops. Platform threads are the default. The method has
+     * to be called before the server is started.
+     * 
+     * @see ThreadExecutors#isVirtualThreadSupported()
+     * 
+     * @param executionMode
+     *            The execution mode.
+     */
+    public synchronized void setExecutionMode(ExecutionMode executionMode) {
+	if (executionMode == null) {
+	    throw new IllegalArgumentException("The execution mode must not be null.");
+	}
+
+	if (started) {
+	    logger.warn("Execution mode can't be changed while the server is started.");
+	} else {
+	    synchronized (executorLock) {
+		shutdownExecutor();
+		this.executionMode = executionMode;
+	    }
+	}
+    }
+
+    /**
+     * Returns the execution mode of the server.
+     * 
+     * @return The execution mode.
+     */
+    public ExecutionMode getExecutionMode() {
+	return executionMode;
+    }
+
+    /**
+     * Sets an executor the server runs its threads on, e.g. a pool shared with
+     * the sketch. The executor has to run every task at once, because the
+     * tasks block until the server is stopped, and it isn't shut down by the
+     * server. The method has to be called before the server is started.
+     * 
+     * @param executor
+     *            The executor or null to use the executor of the execution
+     *            mode.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+	if (started) {
+	    logger.warn("Executor can't be changed while the server is started.");
+	} else {
+	    synchronized (executorLock) {
+		shutdownExecutor();
+		this.executor = executor;
+		this.sharedExecutor = executor != null;
+	    }
+	}
+    }
+
+    /**
+     * Enables the multicast transport. Broadcasted images are sent once to the
+     * multicast group for all clients which have joined the group.
+     * 
+     * @see MuKCastClient#joinMulticast(String, int)
+     * 
+     * @param group
+     *            The multicast group address.
+     * @param port
+     *            The multicast port.
+     * @throws IOException
+     *             If the multicast socket couldn't be opened an
+     *             {@code IOException} is thrown.
+     */
+    public void enableMulticast(String group, int port) throws IOException {
+	enableMulticast(group, port, DatagramCodec.DEFAULT_DATAGRAM_SIZE);
+    }
+
+    /**
+     * Enables the multicast transport. Broadcasted images are sent once to the
+     * multicast group for all clients which have joined the group.
+     * 
+     * @see MuKCastClient#joinMulticast(String, int)
+     * 
+     * @param group
+     *            The multicast group address.
+     * @param port
+     *            The multicast port.
+     * @param datagramSize
+     *            The maximum datagram size.
+     * @throws IOException
+     *             If the multicast socket couldn't be opened an
+     *             {@code IOException} is thrown.
+     */
+    public synchronized void enableMulticast(String group, int port, int datagramSize) throws IOException {
+	disableMulticast();
+
+	multicastSender = new MuKCastMulticastSender(InetAddress.getByName(group), port, datagramSize,
+		sendQueueCapacity, overflowPolicy, metrics.getTotals());
+	threads.add(multicastSender);
+	getExecutor().execute(multicastSender);
+    }
+
+    /**
+     * Disables the multicast transport. The clients of the multicast group
+     * receive the images over their connection afterwards.
+     */
+    public synchronized void disableMulticast() {
+	if (multicastSender != null) {
+	    multicastSender.stop();
+	    threads.remove(multicastSender);
+	    multicastSender = null;
+	}
+	multicastClients.clear();
+	imageStream.removeClient(MuKCastMulticastSender.MULTICAST_KEY);
+    }
+
+    /**
+     * Starts the server.
+     * 
+     * @throws IOException
+     *             If the server can't be created an {@code IOException} is
+     *             thrown.
+     */
+    public void startServer() throws IOException {
+	if (started) {
+	    logger.warn("Server is already started.");
+	} else {
+	    serverInfo = InetAddress.getLocalHost().getHostAddress() + ":" + port;
+
+	    try {
+		for (Transport transport : transports) {
+		    Acceptor acceptor;
+		    if (selectorLoopCount > 0 && transport instanceof SocketTransport) {
+			acceptor = listenSelectorLoops();
+		    } else {
+			acceptor = transport.listen(host, port);
+		    }
+
+		    logger.info("Server starts on port " + acceptor.getLocalPort() + " (" + transport + ")...");
+
+		    MuKCastClientListener clientListener = new MuKCastClientListener(this, acceptor);
+		    threads.add(clientListener);
+		    getExecutor().execute(clientListener);
+		}
+	    } catch (IOException e) {
+		for (Stoppable thread : threads) {
+		    thread.stop();
+		}
+		threads.clear();
+		selectorLoops = null;
+		throw e;
+	    }
+	    started = true;
+	    startHeartbeat();
+
+	    logger.info("Server has started.");
+	}
+
+    }
+
+    /**
+     * Opens the server socket channel and starts the selector loops, which
+     * serve the accepted TCP clients.
+     * 
+     * @return The acceptor of the server socket.
+     * @throws IOException
+     *             If the server socket couldn't be bound an
+     *             {@code IOException} is thrown.
+     */
+    private Acceptor listenSelectorLoops() throws IOException {
+	ServerSocketChannel serverChannel = ServerSocketChannel.open();
+	ServerSocket serverSocket = serverChannel.socket();
+	try {
+	    if (host == null) {
+		serverSocket.bind(new InetSocketAddress(port));
+	    } else {
+		serverSocket.bind(new InetSocketAddress(InetAddress.getByName(host), port), 10);
+	    }
+	} catch (IOException e) {
+	    serverChannel.close();
+	    throw e;
+	}
+
+	selectorLoops = new MuKCastSelectorLoop[selectorLoopCount];
+	for (int i = 0; i < selectorLoops.length; i++) {
+	    selectorLoops[i] = new MuKCastSelectorLoop();
+	    threads.add(selectorLoops[i]);
+	    getExecutor().execute(selectorLoops[i]);
+	}
+	return new SocketAcceptor(serverSocket);
+    }
+
+    /**
+     * Creates the metrics of a new client connection: internal use only.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param clientId
+     *            The client id.
+     * @param sendQueue
+     *            The send queue of the connection.
+     * @return The connection metrics.
+     */
+    ConnectionMetrics createMetrics(String clientKey, int clientId, SendQueue<?> sendQueue) {
+	return metrics.connect(clientKey, clientId, sendQueue);
+    }
+
+    /**
+     * Returns a snapshot of the server metrics. The snapshot contains the
+     * totals since the server has been created and the metrics of every open
+     * connection, including the multicast sender if multicast is enabled.
+     * 
+     * @return The snapshot.
+     */
+    public ServerMetricsSnapshot getMetrics() {
+	List<ConnectionMetricsSnapshot> snapshots = new ArrayList<ConnectionMetricsSnapshot>();
+	for (MuKCastConnection client : clients.getSnapshot()) {
+	    snapshots.add(client.getMetrics().snapshot());
+	}
+	MuKCastMulticastSender sender = multicastSender;
+	if (sender != null) {
+	    snapshots.add(sender.getMetrics().snapshot());
+	}
+	return metrics.snapshot(snapshots);
+    }
+
+    /**
+     * Returns a snapshot of the metrics of a client.
+     * 
+     * @param client
+     *            The client.
+     * @return The snapshot or null if the client doesn't exist.
+     */
+    public ConnectionMetricsSnapshot getMetrics(String client) {
+	MuKCastConnection clientHandler = clients.get(client);
+	return clientHandler != null ? clientHandler.getMetrics().snapshot() : null;
+    }
+
+    /**
+     * Enables or disables the JMX MBean of the server. The MBean is registered
+     * with the platform MBean server as
+     * {@code at.mukprojects.mukcast:type=Server,name="<port>"} and gets
+     * unregistered when the server stops.
+     * 
+     * @see MuKCastServerMXBean
+     * 
+     * @param jmxEnabled
+     *            True to register the MBean.
+     */
+    public synchronized void setJmxEnabled(boolean jmxEnabled) {
+	if (jmxEnabled && mbeanName == null) {
+	    mbeanName = MuKCastMBeans.register("Server", String.valueOf(port), new ServerBean());
+	} else if (!jmxEnabled && mbeanName != null) {
+	    MuKCastMBeans.unregister(mbeanName);
+	    mbeanName = null;
+	}
+    }
+
+    /**
+     * Encodes a message and records the encode time.
+     * 
+     * @param message
+     *            The message.
+     * @param imageCodec
+     *            The image codec or null.
+     * @param connectionMetrics
+     *            The metrics of the receiving client or null if the message
+     *            is broadcasted.
+     * @return The encoded message.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    private EncodedMessage encode(Message message, ImageCodec imageCodec, ConnectionMetrics connectionMetrics)
+	    throws IOException {
+	long start = System.nanoTime();
+	EncodedMessage encodedMessage = new EncodedMessage(message, imageCodec);
+	if (connectionMetrics != null) {
+	    connectionMetrics.messageEncoded(System.nanoTime() - start);
+	} else {
+	    metrics.messageEncoded(System.nanoTime() - start);
+	}
+	return encodedMessage;
+    }
+
+    /**
+     * Encodes a message into one or more frames and records the encode time.
+     * Images, which are larger than a tile, are split into tiles, if tiling is
+     * enabled.
+     * 
+     * @param message
+     *            The message.
+     * @param imageCodec
+     *            The image codec or null.
+     * @param connectionMetrics
+     *            The metrics of the receiving client or null if the message
+     *            is broadcasted.
+     * @return The encoded frames.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    private EncodedMessage[] encodeFrames(Message message, ImageCodec imageCodec,
+	    ConnectionMetrics connectionMetrics) throws IOException {
+	int width = tileWidth;
+	int height = tileHeight;
+	if (width == 0 || message.getClass() != ImageMessage.class) {
+	    return new EncodedMessage[] { encode(message, imageCodec, connectionMetrics) };
+	}
+
+	ImageMessage image = (ImageMessage) message;
+	if (image.getWidth() <= width && image.getHeight() <= height) {
+	    return new EncodedMessage[] { encode(message, imageCodec, connectionMetrics) };
+	}
+
+	long start = System.nanoTime();
+	EncodedMessage[] tiles = ImageTiler.encode(image, nextFrameId.getAndIncrement(), width, height, imageCodec);
+	if (connectionMetrics != null) {
+	    connectionMetrics.messageEncoded(System.nanoTime() - start);
+	} else {
+	    metrics.messageEncoded(System.nanoTime() - start);
+	}
+	return tiles;
+    }
+
+    /**
+     * Executes a task with the executor of the server: internal use only.
+     * 
+     * @param task
+     *            The task.
+     */
+    void execute(Runnable task) {
+	getExecutor().execute(task);
+    }
+
+    /**
+     * Returns the executor of the server. The executor of the execution mode
+     * is created on first use. The executor has its own lock, so starting the
+     * threads of the clients doesn't wait for the monitor of the server.
+     * 
+     * @return The executor.
+     */
+    private ExecutorService getExecutor() {
+	ExecutorService current = executor;
+	if (current == null) {
+	    synchronized (executorLock) {
+		current = executor;
+		if (current == null) {
+		    current = ThreadExecutors.newExecutorService(executionMode);
+		    executor = current;
+		}
+	    }
+	}
+	return current;
+    }
+
+    /**
+     * Shuts the executor down, if it has been created by the server.
+     */
+    private void shutdownExecutor() {
+	synchronized (executorLock) {
+	    if (executor != null && !sharedExecutor) {
+		executor.shutdown();
+		executor = null;
+	    }
+	}
+    }
+
+    /**
+     * Returns the server information as an String.
+     * 
+     * @return The server information.
+     */
+    public String getServerInfo() {
+	return serverInfo;
+    }
+
+    /**
+     * Handles a new client connection.
+     * 
+     * @param socket
+     *            The client socket.
+     */
+    public void handleClientConnection(Socket socket) {
+	handleClientConnection(new SocketLink(socket));
+    }
+
+    /**
+     * Handles a new client connection of a transport.
+     * 
+     * @param link
+     *            The link of the client.
+     */
+    public void handleClientConnection(Link link) {
+	logger.info("A new client has connected to the server.");
+	logger.info("Client: " + link.getRemoteHost());
+
+	try {
+	    link.setNoDelay(tcpNoDelay);
+	} catch (IOException e) {
+	    logger.warn("TCP_NODELAY couldn't be set: " + e.getMessage());
+	}
+
+	releaseExpiredSessions();
+	String clientKey = clients.reserveClientKey(link.getRemoteHost());
+	int clientId = clients.nextClientId();
+
+	MuKCastSelectorLoop[] loops = selectorLoops;
+	SocketChannel socketChannel = link instanceof SocketLink ? ((SocketLink) link).getSocket().getChannel() : null;
+	MuKCastConnection clientHandler;
+	if (loops != null && socketChannel != null) {
+	    MuKCastSelectorLoop loop = loops[(nextSelectorLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	    MuKCastChannelHandler channelHandler = new MuKCastChannelHandler(this, loop, socketChannel, clientKey,
+		    clientId);
+	    clientHandler = channelHandler;
+	    clients.add(clientHandler);
+	    loop.register(channelHandler);
+	} else {
+	    MuKCastClientHandler socketHandler = new MuKCastClientHandler(this, link, clientKey, clientId);
+	    clientHandler = socketHandler;
+	    clients.add(clientHandler);
+	    threads.add(socketHandler);
+	    getExecutor().execute(socketHandler);
+	}
+
+	if (sessionTimeout > 0) {
+	    sendSession(clientHandler, sessions.open(clientKey), clientKey);
+	}
+	dispatchEvent(new ServerEvent(ServerEvent.CONNECT, clientKey, null));
+    }
+
+    /**
+     * Resumes the parked session of a client. The connection gets the client
+     * key and the settings of the session.
+     * 
+     * @param clientKey
+     *            The temporary client key of the connection.
+     * @param token
+     *            The session token.
+     */
+    private void resumeSession(String clientKey, String token) {
+	MuKCastSessionRegistry.Session session = sessions.resume(token, System.currentTimeMillis());
+	if (session == null) {
+	    logger.warn("Client (" + clientKey + ") couldn't resume its session, the session has expired.");
+	    return;
+	}
+
+	sessions.close(clientKey);
+	for (MuKCastImageStream stream : imageStreams.values()) {
+	    stream.removeClient(clientKey);
+	}
+	clientImageCodecs.remove(clientKey);
+	clientResolutions.remove(clientKey);
+	multicastClients.remove(clientKey);
+	subscriptions.removeClient(clientKey);
+
+	String resumedKey = session.getClientKey();
+	MuKCastConnection clientHandler = clients.rename(clientKey, resumedKey);
+	if (clientHandler == null) {
+	    clients.release(resumedKey);
+	    return;
+	}
+
+	logger.info("Client (" + clientKey + ") has resumed the session of the client: " + resumedKey);
+
+	sessions.reopen(session);
+	setImageCodec(resumedKey, session.getImageCodec());
+	if (session.getResolution() != null) {
+	    clientResolutions.put(resumedKey, session.getResolution());
+	}
+	for (String channel : session.getChannels()) {
+	    subscribe(resumedKey, channel);
+	}
+	sendSession(clientHandler, session.getToken(), resumedKey);
+
+	dispatchEvent(new ServerEvent(ServerEvent.DISCONNECT, clientKey, null));
+	dispatchEvent(new ServerEvent(ServerEvent.CONNECT, resumedKey, null));
+    }
+
+    /**
+     * Sends the session token to a client.
+     * 
+     * @param clientHandler
+     *            The client connection.
+     * @param token
+     *            The session token.
+     * @param clientKey
+     *            The client key.
+     */
+    private void sendSession(MuKCastConnection clientHandler, String token, String clientKey) {
+	try {
+	    clientHandler.sendMessage(new EncodedMessage(new SessionMessage(token, clientKey)));
+	} catch (IOException e) {
+	    logger.error("Session couldn't be sent to the client: " + clientKey, e);
+	}
+    }
+
+    /**
+     * Releases the client keys of the expired sessions.
+     */
+    private void releaseExpiredSessions() {
+	for (String clientKey : sessions.expire(System.currentTimeMillis())) {
+	    clients.release(clientKey);
+	}
+    }
+
+    /**
+     * Handles an incoming message. The method is called by the network threads
+     * of the server.
+     * 
+     * @param message
+     *            The incoming message.
+     */
+    public void handleMessage(String clientKey, Message message) {
+	if (message instanceof KeyframeRequestMessage) {
+	    if (multicastClients.contains(clientKey)) {
+		imageStream.requestKeyframe(MuKCastMulticastSender.MULTICAST_KEY);
+	    } else {
+		for (MuKCastImageStream stream : imageStreams.values()) {
+		    stream.requestKeyframe(clientKey);
+		}
+	    }
+	} else if (message instanceof MulticastJoinMessage) {
+	    if (multicastSender != null) {
+		logger.info("Client (" + clientKey + ") has joined the multicast group.");
+		multicastClients.add(clientKey);
+		imageStream.requestKeyframe(MuKCastMulticastSender.MULTICAST_KEY);
+	    } else {
+		logger.warn("Client (" + clientKey + ") can't join the multicast group, multicast isn't enabled.");
+	    }
+	} else if (message instanceof MulticastLeaveMessage) {
+	    logger.info("Client (" + clientKey + ") has left the multicast group.");
+	    multicastClients.remove(clientKey);
+	} else if (message instanceof SubscribeMessage) {
+	    subscribe(clientKey, ((SubscribeMessage) message).getChannel());
+	} else if (message instanceof UnsubscribeMessage) {
+	    unsubscribe(clientKey, ((UnsubscribeMessage) message).getChannel());
+	} else if (message instanceof MaxResolutionMessage) {
+	    MaxResolutionMessage resolution = (MaxResolutionMessage) message;
+	    setMaxResolution(clientKey, resolution.getMaxWidth(), resolution.getMaxHeight());
+	} else if (message instanceof ResumeSessionMessage) {
+	    resumeSession(clientKey, ((ResumeSessionMessage) message).getToken());
+	} else if (message instanceof PingMessage) {
+	    MuKCastConnection clientHandler = clients.get(clientKey);
+	    if (clientHandler != null) {
+		try {
+		    clientHandler.sendMessage(new EncodedMessage(
+			    new PongMessage(((PingMessage) message).getTimestamp(), System.currentTimeMillis())));
+		} catch (IOException e) {
+		    logger.debug("Client (" + clientKey + ") couldn't be answered: " + e.getMessage());
+		}
+	    }
+	} else if (message instanceof PongMessage) {
+	    MuKCastConnection clientHandler = clients.get(clientKey);
+	    if (clientHandler != null) {
+		PongMessage pong = (PongMessage) message;
+		clientHandler.getMetrics().pongReceived(pong.getTimestamp(), pong.getTime());
+	    }
+	} else {
+	    dispatchEvent(new ServerEvent(ServerEvent.MESSAGE, clientKey, message));
+	}
+    }
+
+    /**
+     * Passes an event to the listeners or adds it to the inbox, if the
+     * delivery on the sketch thread is enabled. Without the inbox the
+     * listeners are called directly by the network thread of the client. If
+     * every client has its own thread, a slow listener only delays its own
+     * client. With selector loops a slow listener blocks every client of the
+     * same loop, because the loop neither reads nor writes while a listener
+     * runs. A listener on a loop therefore never waits for a full send queue
+     * with {@link OverflowPolicy#BLOCK}, the client is disconnected instead,
+     * see {@link #setSendQueue(int, OverflowPolicy)}.
+     * 
+     * @param event
+     *            The event.
+     */
+    private void dispatchEvent(ServerEvent event) {
+	if (sketchDelivery) {
+	    Object key = null;
+	    if (event.type == ServerEvent.MESSAGE) {
+		key = new AbstractMap.SimpleImmutableEntry<String, Class<?>>(event.clientKey,
+			event.message.getClass());
+	    }
+	    inbox.offer(key, event);
+	} else {
+	    fireEvent(event);
+	}
+    }
+
+    /**
+     * Calls the listeners for an event.
+     * 
+     * @param event
+     *            The event.
+     */
+    private void fireEvent(ServerEvent event) {
+	String clientKey = event.clientKey;
+	Message message = event.message;
+
+	for (MuKCastServerListener listener : listeners) {
+	    try {
+		if (event.type == ServerEvent.CONNECT) {
+		    listener.onClientConnect(clientKey);
+		} else if (event.type == ServerEvent.DISCONNECT) {
+		    listener.onClientDisconnect(clientKey);
+		} else if (message instanceof TextMessage) {
+		    listener.onText(clientKey, (TextMessage) message);
+		} else if (message instanceof NumberMessage) {
+		    listener.onNumber(clientKey, (NumberMessage) message);
+		} else if (message instanceof ImageMessage) {
+		    listener.onImage(clientKey, (ImageMessage) message);
+		} else {
+		    listener.onMessage(clientKey, message);
+		}
+	    } catch (RuntimeException e) {
+		logger.error(e.getMessage(), e);
+	    }
+	}
+    }
+
+    /**
+     * Sends an message to the client. The message is added to the send queue
+     * of the client and the method returns immediately.
+     * 
+     * @param client
+     *            The client.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendMessage(String client, Message message) throws IOException {
+	MuKCastConnection clientHandler = clients.get(client);
+	if (clientHandler != null) {
+	    sendFrames(clientHandler, message);
+	} else {
+	    logger.error("Client: (" + client + ") doesn't exist.");
+	}
+    }
+
+    /**
+     * Sends an message to the client. The message is added to the send queue
+     * of the client and the method returns immediately.
+     * 
+     * @param clientId
+     *            The client id.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendMessage(int clientId, Message message) throws IOException {
+	MuKCastConnection clientHandler = clients.get(clientId);
+	if (clientHandler != null) {
+	    sendFrames(clientHandler, message);
+	} else {
+	    logger.error("Client: (" + clientId + ") doesn't exist.");
+	}
+    }
+
+    /**
+     * Encodes a message for the client and sends the frames.
+     * 
+     * @param clientHandler
+     *            The client connection.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    private void sendFrames(MuKCastConnection clientHandler, Message message) throws IOException {
+	String client = clientHandler.getClientKey();
+	EncodedMessage[] frames = encodeFrames(scaleImage(client, message), getImageCodec(client),
+		clientHandler.getMetrics());
+	if (frames.length == 1) {
+	    clientHandler.sendMessage(frames[0]);
+	} else {
+	    clientHandler.sendMessages(frames);
+	}
+    }
+
+    /**
+     * Sends the latest value of a state to the client, e.g. the position of a
+     * slider. If a message with the same key hasn't been written to the client
+     * yet, it is replaced by the message instead of queuing both, so a slow
+     * client skips the outdated values. The key is compared by {@code equals}.
+     * 
+     * @param client
+     *            The client.
+     * @param key
+     *            The key of the state.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendConflated(String client, Object key, Message message) throws IOException {
+	if (key == null) {
+	    throw new IllegalArgumentException("The key must not be null.");
+	}
+
+	MuKCastConnection clientHandler = clients.get(client);
+	if (clientHandler != null) {
+	    clientHandler.sendConflated(key,
+		    encode(scaleImage(client, message), getImageCodec(client), clientHandler.getMetrics()));
+	} else {
+	    logger.error("Client: (" + client + ") doesn't exist.");
+	}
+    }
+
+    /**
+     * Sends the latest value of a state to the client. If a message with the
+     * same key hasn't been written to the client yet, it is replaced by the
+     * message.
+     * 
+     * @see #sendConflated(String, Object, Message)
+     * 
+     * @param clientId
+     *            The client id.
+     * @param key
+     *            The key of the state.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void sendConflated(int clientId, Object key, Message message) throws IOException {
+	if (key == null) {
+	    throw new IllegalArgumentException("The key must not be null.");
+	}
+
+	MuKCastConnection clientHandler = clients.get(clientId);
+	if (clientHandler != null) {
+	    String client = clientHandler.getClientKey();
+	    clientHandler.sendConflated(key,
+		    encode(scaleImage(client, message), getImageCodec(client), clientHandler.getMetrics()));
+	} else {
+	    logger.error("Client: (" + clientId + ") doesn't exist.");
+	}
+    }
+
+    /**
+     * Sends an message to all clients. The message is encoded once and the
+     * same frame is added to the send queue of every client, so a slow client
+     * doesn't delay the others. An {@link ImageMessage} is encoded once per
+     * image codec in use. If multicast is enabled images are sent once to the
+     * multicast group for all clients which have joined the group.
+     * 
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void broadcastMessage(Message message) throws IOException {
+	MuKCastRecorder currentRecorder = recorder;
+	if (clients.isEmpty() && currentRecorder == null) {
+	    return;
+	}
+
+	if (message.getClass() == ImageMessage.class) {
+	    /*
+	     * Images are broadcasted one after another to keep the image stream in
+	     * order.
+	     */
+	    synchronized (imageLock) {
+		ImageMessage image = (ImageMessage) message;
+		if (currentRecorder != null) {
+		    currentRecorder.record(MuKCastRecorder.RECORD_BROADCAST, null, null, image);
+		}
+
+		Map<Integer, ImageTier> tiers = new HashMap<Integer, ImageTier>();
+		MuKCastMulticastSender sender = multicastSender;
+		boolean multicast = sender != null && !multicastClients.isEmpty();
+		if (multicast) {
+		    sendImage(sender, getTier(tiers, image, 1, deltaEncoding));
+		}
+
+		for (MuKCastConnection client : clients.getSnapshot()) {
+		    if (client.isConnected() && !(multicast && multicastClients.contains(client.getClientKey()))) {
+			sendImage(client, getTier(tiers, image, getScale(client.getClientKey(), image), deltaEncoding));
+		    }
+		}
+	    }
+	} else {
+	    broadcastMessage(encode(message, null, null));
+	}
+    }
+
+    /**
+     * Sends a broadcasted image to the client. The encoded frames are shared by
+     * all clients with the same tier and image codec.
+     * 
+     * @param client
+     *            The client connection or the multicast sender.
+     * @param tier
+     *            The tier of the client.
+     * @throws IOException
+     *             If the image couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    private void sendImage(MuKCastSender client, ImageTier tier) throws IOException {
+	ImageCodec clientImageCodec = getImageCodec(client.getClientKey());
+	if (tier.stream != null) {
+	    client.sendMessage(tier.stream.getFrame(client, clientImageCodec));
+	} else {
+	    EncodedMessage[] frames = tier.getFrames(clientImageCodec);
+	    if (frames.length == 1) {
+		client.sendMessage(frames[0]);
+	    } else {
+		client.sendMessages(frames);
+	    }
+	}
+    }
+
+    /**
+     * Sends an already encoded message to all clients.
+     * 
+     * @param message
+     *            The encoded message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void broadcastMessage(EncodedMessage message) throws IOException {
+	MuKCastRecorder currentRecorder = recorder;
+	if (currentRecorder != null) {
+	    currentRecorder.record(MuKCastRecorder.RECORD_BROADCAST_FRAME, null, null, message);
+	}
+
+	for (MuKCastConnection client : clients.getSnapshot()) {
+	    if (client.isConnected()) {
+		client.sendMessage(message);
+	    }
+	}
+    }
+
+    /**
+     * Sends the latest value of a state to all clients. For every client a
+     * message with the same key, which hasn't been written yet, is replaced by
+     * the message, so a slow client skips the outdated values without
+     * delaying the others. The message is encoded once, an
+     * {@link ImageMessage} once per image codec in use. Conflated images are
+     * always sent as complete images over the connection of the client, they
+     * are neither delta encoded nor sent to the multicast group, because a
+     * replaced frame would break the image stream.
+     * 
+     * @param key
+     *            The key of the state.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void broadcastConflated(Object key, Message message) throws IOException {
+	if (key == null) {
+	    throw new IllegalArgumentException("The key must not be null.");
+	}
+	sendMessage(clients.getSnapshot(), null, key, message);
+    }
+
+    /**
+     * Sends an message to all clients, which have subscribed to the channel.
+     * The message is encoded once and only if the channel has subscribers or
+     * the server records, an {@link ImageMessage} once per image codec in use.
+     * Published images are always sent as complete images over the connection
+     * of the client, they are neither delta encoded nor sent to the multicast
+     * group, because the image stream of the server is shared by all clients.
+     * 
+     * @see MuKCastClient#subscribe(String)
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void publishMessage(String channel, Message message) throws IOException {
+	sendMessage(subscriptions.getSubscribers(channel), channel, null, message);
+    }
+
+    /**
+     * Sends the latest value of a state to all clients, which have subscribed
+     * to the channel. For every subscriber a message with the same key, which
+     * hasn't been written yet, is replaced by the message.
+     * 
+     * @see #publishMessage(String, Message)
+     * @see #broadcastConflated(Object, Message)
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @param key
+     *            The key of the state.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be send an {@code IOExction} is
+     *             thrown.
+     */
+    public void publishConflated(String channel, Object key, Message message) throws IOException {
+	if (key == null) {
+	    throw new IllegalArgumentException("The key must not be null.");
+	}
+	sendMessage(subscriptions.getSubscribers(channel), channel, key, message);
+    }
+
+    /**
+     * Sends a message to the given connections and records it. The message is
+     * encoded once, an {@link ImageMessage} once per image codec in use.
+     * 
+     * @param connections
+     *            The connections.
+     * @param channel
+     *            The channel or null if the message is broadcasted.
+     * @param key
+     *            The conflation key or null if the message must not be
+     *            replaced.
+     * @param message
+     *            The message.
+     * @throws IOException
+     *             If the message couldn't be encoded an {@code IOException} is
+     *             thrown.
+     */
+    private void sendMessage(MuKCastConnection[] connections, String channel, Object key, Message message)
+	    throws IOException {
+	MuKCastRecorder currentRecorder = recorder;
+	if (connections.length == 0 && currentRecorder == null) {
+	    return;
+	}
+
+	byte kind;
+	if (channel == null) {
+	    kind = MuKCastRecorder.RECORD_BROADCAST_CONFLATED;
+	} else if (key == null) {
+	    kind = MuKCastRecorder.RECORD_PUBLISH;
+	} else {
+	    kind = MuKCastRecorder.RECORD_PUBLISH_CONFLATED;
+	}
+
+	if (message instanceof ImageMessage) {
+	    ImageMessage image = (ImageMessage) message;
+	    if (currentRecorder != null) {
+		currentRecorder.record(kind, channel, key, image);
+	    }
+	    Map<Integer, ImageTier> tiers = new HashMap<Integer, ImageTier>();
+	    for (MuKCastConnection client : connections) {
+		if (client.isConnected()) {
+		    int scale = message.getClass() == ImageMessage.class ? getScale(client.getClientKey(), image) : 1;
+		    ImageTier tier = getTier(tiers, image, scale, false);
+		    if (key != null) {
+			client.sendConflated(key, tier.getFrame(getImageCodec(client.getClientKey())));
+		    } else {
+			sendImage(client, tier);
+		    }
+		}
+	    }
+	} else {
+	    EncodedMessage frame = encode(message, null, null);
+	    if (currentRecorder != null) {
+		currentRecorder.record(kind, channel, key, frame);
+	    }
+	    for (MuKCastConnection client : connections) {
+		if (client.isConnected()) {
+		    client.sendConflated(key, frame);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Subscribes a client to a channel. Clients usually subscribe themselves
+     * with {@link MuKCastClient#subscribe(String)}.
+     * 
+     * @param client
+     *            The client.
+     * @param channel
+     *            The name of the channel.
+     */
+    public void subscribe(String client, String channel) {
+	MuKCastConnection clientHandler = clients.get(client);
+	if (clientHandler != null) {
+	    if (subscriptions.subscribe(channel, clientHandler)) {
+		logger.info("Client (" + client + ") has subscribed to the channel: " + channel);
+	    }
+
+	    /*
+	     * The client may have been removed while it was subscribing.
+	     */
+	    if (clients.get(client) != clientHandler) {
+		subscriptions.removeClient(client);
+	    }
+	} else {
+	    logger.error("Client: (" + client + ") doesn't exist.");
+	}
+    }
+
+    /**
+     * Unsubscribes a client from a channel.
+     * 
+     * @param client
+     *            The client.
+     * @param channel
+     *            The name of the channel.
+     */
+    public void unsubscribe(String client, String channel) {
+	if (subscriptions.unsubscribe(channel, client)) {
+	    logger.info("Client (" + client + ") has unsubscribed from the channel: " + channel);
+	}
+    }
+
+    /**
+     * Returns the channels a client has subscribed to.
+     * 
+     * @param client
+     *            The client.
+     * @return The names of the channels.
+     */
+    public Set<String> getSubscriptions(String client) {
+	return subscriptions.getChannels(client);
+    }
+
+    /**
+     * Returns the number of clients, which have subscribed to the channel.
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @return The number of subscribers.
+     */
+    public int getSubscriberCount(String channel) {
+	return subscriptions.getSubscribers(channel).length;
+    }
+
+    /**
+     * Returns the names of all channels with at least one subscriber.
+     * 
+     * @return The names of the channels.
+     */
+    public Set<String> getChannelList() {
+	return subscriptions.getChannelNames();
+    }
+
+    /**
+     * Returns a list of all connected clients.
+     * 
+     * @return A list of all connected clients.
+     */
+    public Enumeration<String> getClientList() {
+	return Collections.enumeration(clients.getClientKeys());
+    }
+
+    /**
+     * Returns the number of connected clients.
+     * 
+     * @return The number of connected clients.
+     */
+    public int getClientCount() {
+	return clients.size();
+    }
+
+    /**
+     * Returns the id of a client.
+     * 
+     * @param client
+     *            The client key.
+     * @return The client id or -1 if the client doesn't exist.
+     */
+    public int getClientId(String client) {
+	MuKCastConnection clientHandler = clients.get(client);
+	return clientHandler != null ? clientHandler.getClientId() : -1;
+    }
+
+    /**
+     * Disconnects the client from the server.
+     * 
+     * @param client
+     *            The client.
+     * @throws IOException
+     *             If the client couldn't be disconnected from the server an
+     *             {@code IOExction} is thrown.
+     */
+    public void disconnectClient(String client) throws IOException {
+	MuKCastConnection clientHandler = removeClient(client, DisconnectReason.SERVER_REQUEST);
+	if (clientHandler != null) {
+	    try {
+		if (clientHandler.isConnected()) {
+		    clientHandler.sendMessage(new DisconnectMessage());
+		}
+	    } finally {
+		clientHandler.stop();
+		dispatchEvent(new ServerEvent(ServerEvent.DISCONNECT, client, null));
+	    }
+	}
+    }
+
+    /**
+     * Disconnects the client from the server. The client won't receive an
+     * message.
+     * 
+     * @param client
+     *            The client.
+     */
+    public void disconnectClientWithoutNotification(String client) {
+	MuKCastConnection clientHandler = removeClient(client, DisconnectReason.SERVER_REQUEST);
+	if (clientHandler != null) {
+	    clientHandler.stop();
+	    dispatchEvent(new ServerEvent(ServerEvent.DISCONNECT, client, null));
+	}
+    }
+
+    /**
+     * Removes the client from the registry and all client settings. Only the
+     * first call for a client returns its connection, so a client is
+     * disconnected only once. If the connection has been lost, the session of
+     * the client is parked.
+     * 
+     * @param client
+     *            The client.
+     * @param reason
+     *            The disconnect reason, if the connection hasn't recorded one.
+     * @return The connection of the client or null if the client has already
+     *         been removed.
+     */
+    private MuKCastConnection removeClient(String client, DisconnectReason reason) {
+	MuKCastConnection clientHandler = clients.get(client);
+	if (clientHandler == null) {
+	    return null;
+	}
+
+	DisconnectReason recorded = clientHandler.getMetrics().getDisconnectReason();
+	boolean resumable = sessionTimeout > 0 && isResumable(recorded != null ? recorded : reason);
+	clientHandler = clients.remove(client, resumable);
+	if (clientHandler != null) {
+	    logger.info("Disconnect client: " + client);
+
+	    metrics.disconnect(clientHandler.getMetrics(), reason);
+	    if (resumable && sessions.park(client, subscriptions.getChannels(client), clientResolutions.get(client),
+		    clientImageCodecs.get(client), System.currentTimeMillis() + sessionTimeout)) {
+		logger.info("Session of client (" + client + ") is kept for " + sessionTimeout + "ms.");
+	    } else {
+		sessions.close(client);
+		if (resumable) {
+		    clients.release(client);
+		}
+	    }
+
+	    threads.remove(clientHandler);
+	    for (MuKCastImageStream stream : imageStreams.values()) {
+		stream.removeClient(client);
+	    }
+	    clientImageCodecs.remove(client);
+	    clientResolutions.remove(client);
+	    multicastClients.remove(client);
+	    subscriptions.removeClient(client);
+	}
+	return clientHandler;
+    }
+
+    /**
+     * Checks if a session can be resumed after a disconnect.
+     * 
+     * @param reason
+     *            The disconnect reason.
+     * @return True if the connection has been lost, timed out or closed because
+     *         of a slow client.
+     */
+    private static boolean isResumable(DisconnectReason reason) {
+	return reason == DisconnectReason.CONNECTION_LOST || reason == DisconnectReason.CONNECTION_ERROR
+		|| reason == DisconnectReason.TIMEOUT || reason == DisconnectReason.SLOW_CLIENT;
+    }
+
+    /**
+     * Disconnects all clients from the server.
+     * 
+     * @throws IOException
+     *             If the clients couldn't be disconnected from the server an
+     *             {@code IOExction} is thrown.
+     */
+    public void disconnectAllClient() throws IOException {
+	logger.info("Disconnect all clients.");
+
+	for (MuKCastConnection client : clients.getSnapshot()) {
+	    disconnectClient(client.getClientKey());
+	}
+    }
+
+    /**
+     * Stops the server: internal use only.
+     */
+    public void dispose() {
+	logger.info("Server is disposed.");
+	
+	try {
+	    stopServer();
+	} catch (IOException e) {
+	    logger.error(e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Stops the server.
+     * 
+     * @throws IOException
+     *             If the client couldn't be disconnected from the server an
+     *             {@code IOExction} is thrown.
+     */
+    public void stopServer() throws IOException {
+	logger.info("Server is stopping...");
+
+	for (MuKCastConnection client : clients.getSnapshot()) {
+	    client.getMetrics().disconnected(DisconnectReason.SERVER_STOPPED);
+	}
+	disconnectAllClient();
+
+	for (Stoppable thread : threads) {
+	    thread.stop();
+	}
+	threads.clear();
+	stopHeartbeat();
+	selectorLoops = null;
+	multicastSender = null;
+	multicastClients.clear();
+	subscriptions.clear();
+	for (String client : sessions.clear()) {
+	    clients.release(client);
+	}
+	shutdownExecutor();
+	started = false;
+	setJmxEnabled(false);
+
+	logger.info("Server has stopped.");
+    }
+
+    /**
+     * The MBean of the server, which takes a new snapshot for every attribute.
+     */
+    private class ServerBean implements MuKCastServerMXBean {
+
+	@Override
+	public int getClientCount() {
+	    return clients.size();
+	}
+
+	@Override
+	public long getUptime() {
+	    return getMetrics().getUptime();
+	}
+
+	@Override
+	public long getConnects() {
+	    return getMetrics().getConnects();
+	}
+
+	@Override
+	public long getMessagesIn() {
+	    return getMetrics().getMessagesIn();
+	}
+
+	@Override
+	public long getBytesIn() {
+	    return getMetrics().getBytesIn();
+	}
+
+	@Override
+	public long getMessagesOut() {
+	    return getMetrics().getMessagesOut();
+	}
+
+	@Override
+	public long getBytesOut() {
+	    return getMetrics().getBytesOut();
+	}
+
+	@Override
+	public int getQueuedMessages() {
+	    return getMetrics().getQueuedMessages();
+	}
+
+	@Override
+	public long getDroppedMessages() {
+	    return getMetrics().getDroppedMessages();
+	}
+
+	@Override
+	public HistogramSnapshot getDecodeTime() {
+	    return getMetrics().getDecodeTime();
+	}
+
+	@Override
+	public HistogramSnapshot getEncodeTime() {
+	    return getMetrics().getEncodeTime();
+	}
+
+	@Override
+	public HistogramSnapshot getWriteStallTime() {
+	    return getMetrics().getWriteStallTime();
+	}
+
+	@Override
+	public Map<String, Long> getDisconnects() {
+	    Map<String, Long> disconnects = new LinkedHashMap<String, Long>();
+	    for (Map.Entry<DisconnectReason, Long> entry : getMetrics().getDisconnects().entrySet()) {
+		disconnects.put(entry.getKey().name(), entry.getValue());
+	    }
+	    return disconnects;
+	}
+
+	@Override
+	public List<ConnectionMetricsSnapshot> getClients() {
+	    return getMetrics().getClientsByQueuedMessages();
+	}
+    }
+
+    /**
+     * A resolution tier of a broadcast image. The encoded frames of the tier
+     * are shared by all clients with the same image codec.
+     */
+    private class ImageTier {
+	private final ImageMessage image;
+	private final MuKCastImageStream stream;
+	private final Map<ImageCodec, EncodedMessage> frames;
+	private final Map<ImageCodec, EncodedMessage[]> tiledFrames;
+
+	private ImageTier(ImageMessage image, MuKCastImageStream stream) {
+	    this.image = image;
+	    this.stream = stream;
+	    this.frames = new IdentityHashMap<ImageCodec, EncodedMessage>();
+	    this.tiledFrames = new IdentityHashMap<ImageCodec, EncodedMessage[]>();
+	}
+
+	private EncodedMessage getFrame(ImageCodec imageCodec) throws IOException {
+	    EncodedMessage frame = frames.get(imageCodec);
+	    if (frame == null) {
+		frame = encode(image, imageCodec, null);
+		frames.put(imageCodec, frame);
+	    }
+	    return frame;
+	}
+
+	private EncodedMessage[] getFrames(ImageCodec imageCodec) throws IOException {
+	    EncodedMessage[] tiles = tiledFrames.get(imageCodec);
+	    if (tiles == null) {
+		tiles = encodeFrames(image, imageCodec, null);
+		tiledFrames.put(imageCodec, tiles);
+	    }
+	    return tiles;
+	}
+    }
+
+    /**
+     * An event of the server, which is passed to the listeners.
+     */
+    private static class ServerEvent {
+	private static final int CONNECT = 0;
+	private static final int DISCONNECT = 1;
+	private static final int MESSAGE = 2;
+
+	private final int type;
+	private final String clientKey;
+	private final Message message;
+
+	private ServerEvent(int type, String clientKey, Message message) {
+	    this.type = type;
+	    this.clientKey = clientKey;
+	    this.message = message;
+	}
     }
 }
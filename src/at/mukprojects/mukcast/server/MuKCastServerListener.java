@@ -0,0 +1,108 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.message.NumberMessage;
+import at.mukprojects.mukcast.message.TextMessage;
+
+/**
+ * Classes implementing {@code MuKCastServerListener} interface receive the
+ * events of a {@link MuKCastServer}.
+ * <p>
+ * Every received message is passed to the method matching its type. The typed
+ * methods pass the message to {@link #onMessage(String, Message)} by default,
+ * so a listener can either handle all messages in one method or override only
+ * the types it is interested in. The methods are called concurrently by the
+ * network threads of the server, unless the delivery on the sketch thread is
+ * enabled.
+ * </p>
+ * 
+ * @see MuKCastServer#addListener(MuKCastServerListener)
+ * 
+ * @author Mathias Markl
+ */
+public interface MuKCastServerListener {
+
+    /**
+     * Called when a client has connected to the server.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public default void onClientConnect(String clientKey) {
+    }
+
+    /**
+     * Called when a client has disconnected from the server.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public default void onClientDisconnect(String clientKey) {
+    }
+
+    /**
+     * Called for every received message, which isn't handled by a typed
+     * method.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param message
+     *            The message.
+     */
+    public default void onMessage(String clientKey, Message message) {
+    }
+
+    /**
+     * Called for a received {@link TextMessage}.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param message
+     *            The message.
+     */
+    public default void onText(String clientKey, TextMessage message) {
+	onMessage(clientKey, message);
+    }
+
+    /**
+     * Called for a received {@link NumberMessage}.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param message
+     *            The message.
+     */
+    public default void onNumber(String clientKey, NumberMessage message) {
+	onMessage(clientKey, message);
+    }
+
+    /**
+     * Called for a received {@link ImageMessage}.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param message
+     *            The message.
+     */
+    public default void onImage(String clientKey, ImageMessage message) {
+	onMessage(clientKey, message);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import at.mukprojects.mukcast.codec.ImageCodec;
+import at.mukprojects.mukcast.message.MaxResolutionMessage;
+
+/**
+ * This class is the registry of the client sessions of a server.
+ * <p>
+ * Every client gets a session with a random token when it connects. If the
+ * connection is lost, the session is parked together with the settings of the
+ * client until it expires. A client, which reconnects with the token of a
+ * parked session, gets its client key and its settings back.
+ * </p>
+ * 
+ * @see MuKCastServer#setSessionTimeout(long, java.util.concurrent.TimeUnit)
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastSessionRegistry {
+
+    private SecureRandom random;
+    private HashMap<String, Session> sessionsByToken;
+    private HashMap<String, Session> sessionsByClient;
+
+    /**
+     * Constructs a new MuKCastSessionRegistry.
+     */
+    public MuKCastSessionRegistry() {
+	this.random = new SecureRandom();
+	this.sessionsByToken = new HashMap<String, Session>();
+	this.sessionsByClient = new HashMap<String, Session>();
+    }
+
+    /**
+     * Opens a new session for a client. An open session of the client is
+     * replaced.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @return The session token.
+     */
+    public synchronized String open(String clientKey) {
+	close(clientKey);
+
+	byte[] bytes = new byte[16];
+	random.nextBytes(bytes);
+	StringBuilder token = new StringBuilder(32);
+	for (byte b : bytes) {
+	    token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+	}
+
+	Session session = new Session(token.toString(), clientKey);
+	sessionsByToken.put(session.token, session);
+	sessionsByClient.put(clientKey, session);
+	return session.token;
+    }
+
+    /**
+     * Reopens a resumed session.
+     * 
+     * @param session
+     *            The session.
+     */
+    public synchronized void reopen(Session session) {
+	close(session.clientKey);
+	session.parked = false;
+	sessionsByToken.put(session.token, session);
+	sessionsByClient.put(session.clientKey, session);
+    }
+
+    /**
+     * Parks the session of a client, whose connection has been lost.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @param channels
+     *            The channels the client has subscribed to.
+     * @param resolution
+     *            The maximum resolution of the client or null.
+     * @param imageCodec
+     *            The image codec of the client or null.
+     * @param expiresAt
+     *            The time the session expires at in milliseconds.
+     * @return False if the client has no open session.
+     */
+    public synchronized boolean park(String clientKey, Set<String> channels, MaxResolutionMessage resolution,
+	    ImageCodec imageCodec, long expiresAt) {
+	Session session = sessionsByClient.get(clientKey);
+	if (session == null || session.parked) {
+	    return false;
+	}
+
+	session.parked = true;
+	session.channels = channels;
+	session.resolution = resolution;
+	session.imageCodec = imageCodec;
+	session.expiresAt = expiresAt;
+	return true;
+    }
+
+    /**
+     * Removes a parked session to resume it.
+     * 
+     * @param token
+     *            The session token.
+     * @param now
+     *            The current time in milliseconds.
+     * @return The session or null if there is no parked session with the token
+     *         or the session has expired.
+     */
+    public synchronized Session resume(String token, long now) {
+	Session session = sessionsByToken.get(token);
+	if (session == null || !session.parked || session.expiresAt < now) {
+	    return null;
+	}
+
+	sessionsByToken.remove(token);
+	sessionsByClient.remove(session.clientKey);
+	return session;
+    }
+
+    /**
+     * Closes the session of a client.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public synchronized void close(String clientKey) {
+	Session session = sessionsByClient.remove(clientKey);
+	if (session != null) {
+	    sessionsByToken.remove(session.token);
+	}
+    }
+
+    /**
+     * Removes the expired sessions.
+     * 
+     * @param now
+     *            The current time in milliseconds.
+     * @return The keys of the clients, whose sessions have expired.
+     */
+    public synchronized List<String> expire(long now) {
+	List<String> expired = new ArrayList<String>();
+	Iterator<Session> iterator = sessionsByClient.values().iterator();
+	while (iterator.hasNext()) {
+	    Session session = iterator.next();
+	    if (session.parked && session.expiresAt < now) {
+		iterator.remove();
+		sessionsByToken.remove(session.token);
+		expired.add(session.clientKey);
+	    }
+	}
+	return expired;
+    }
+
+    /**
+     * Removes all sessions.
+     * 
+     * @return The keys of the clients, whose sessions have been parked.
+     */
+    public synchronized List<String> clear() {
+	List<String> parked = new ArrayList<String>();
+	for (Session session : sessionsByClient.values()) {
+	    if (session.parked) {
+		parked.add(session.clientKey);
+	    }
+	}
+	sessionsByToken.clear();
+	sessionsByClient.clear();
+	return parked;
+    }
+
+    /**
+     * The session of a client.
+     */
+    public static class Session {
+	private final String token;
+	private final String clientKey;
+	private boolean parked;
+	private long expiresAt;
+	private Set<String> channels;
+	private MaxResolutionMessage resolution;
+	private ImageCodec imageCodec;
+
+	private Session(String token, String clientKey) {
+	    this.token = token;
+	    this.clientKey = clientKey;
+	    this.channels = Collections.emptySet();
+	}
+
+	/**
+	 * Returns the session token.
+	 * 
+	 * @return The session token.
+	 */
+	public String getToken() {
+	    return token;
+	}
+
+	/**
+	 * Returns the key of the client.
+	 * 
+	 * @return The client key.
+	 */
+	public String getClientKey() {
+	    return clientKey;
+	}
+
+	/**
+	 * Returns the channels the client had subscribed to.
+	 * 
+	 * @return The names of the channels.
+	 */
+	public Set<String> getChannels() {
+	    return channels;
+	}
+
+	/**
+	 * Returns the maximum resolution of the client.
+	 * 
+	 * @return The maximum resolution or null.
+	 */
+	public MaxResolutionMessage getResolution() {
+	    return resolution;
+	}
+
+	/**
+	 * Returns the image codec of the client.
+	 * 
+	 * @return The image codec or null.
+	 */
+	public ImageCodec getImageCodec() {
+	    return imageCodec;
+	}
+    }
+}
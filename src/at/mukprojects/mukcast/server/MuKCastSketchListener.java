@@ -0,0 +1,131 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import at.mukprojects.mukcast.message.Message;
+
+/**
+ * This class passes the events of the server to the callback methods of a
+ * sketch.
+ * <p>
+ * The methods {@code handleMessage(String clientKey, Message message)},
+ * {@code handleClientConnection(String clientKey)} and
+ * {@code handleClientDisconnect(String clientKey)} are looked up once and bound
+ * to the sketch as {@link MethodHandle}s, so a call neither boxes its arguments
+ * nor wraps the exceptions of the sketch.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+class MuKCastSketchListener implements MuKCastServerListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MuKCastSketchListener.class);
+
+    private final MethodHandle handleMessage;
+    private final MethodHandle handleClientConnection;
+    private final MethodHandle handleClientDisconnect;
+
+    /**
+     * Constructs a new MuKCastSketchListener.
+     * 
+     * @param sketch
+     *            The sketch.
+     */
+    MuKCastSketchListener(Object sketch) {
+	handleMessage = findCallback(sketch, "handleMessage", String.class, Message.class);
+	if (handleMessage == null) {
+	    logger.warn("No method called \"handleMessage(String clientKey, Message message)\" could"
+		    + " be found in the PApplet class.");
+	}
+
+	handleClientConnection = findCallback(sketch, "handleClientConnection", String.class);
+	if (handleClientConnection == null) {
+	    logger.warn("No method called \"handleClientConnection(String clientKey)\" could be found in"
+		    + " the PApplet class.");
+	}
+
+	handleClientDisconnect = findCallback(sketch, "handleClientDisconnect", String.class);
+	if (handleClientDisconnect == null) {
+	    logger.warn("No method called \"handleClientDisconnect(String clientKey)\" could be found in"
+		    + " the PApplet class.");
+	}
+    }
+
+    @Override
+    public void onClientConnect(String clientKey) {
+	if (handleClientConnection != null) {
+	    try {
+		handleClientConnection.invokeExact(clientKey);
+	    } catch (Throwable e) {
+		logger.error(e.getMessage(), e);
+	    }
+	}
+    }
+
+    @Override
+    public void onClientDisconnect(String clientKey) {
+	if (handleClientDisconnect != null) {
+	    try {
+		handleClientDisconnect.invokeExact(clientKey);
+	    } catch (Throwable e) {
+		logger.error(e.getMessage(), e);
+	    }
+	}
+    }
+
+    @Override
+    public void onMessage(String clientKey, Message message) {
+	if (handleMessage != null) {
+	    try {
+		handleMessage.invokeExact(clientKey, message);
+	    } catch (Throwable e) {
+		logger.error(e.getMessage(), e);
+	    }
+	}
+    }
+
+    /**
+     * Looks up a public callback method of the sketch and binds it to the
+     * sketch.
+     * 
+     * @param sketch
+     *            The sketch.
+     * @param name
+     *            The method name.
+     * @param parameterTypes
+     *            The parameter types.
+     * @return The bound method handle or null if the method doesn't exist.
+     */
+    private static MethodHandle findCallback(Object sketch, String name, Class<?>... parameterTypes) {
+	try {
+	    Method method = sketch.getClass().getMethod(name, parameterTypes);
+	    return MethodHandles.lookup().unreflect(method).bindTo(sketch)
+		    .asType(MethodType.methodType(void.class, parameterTypes));
+	} catch (NoSuchMethodException | IllegalAccessException e) {
+	    return null;
+	}
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is the subscription table of the channels of a server.
+ * <p>
+ * The table is indexed by channel, so publishing to a channel looks up its
+ * subscribers without locking and without iterating over the other clients.
+ * Like the {@link MuKCastClientRegistry} every change publishes a new array of
+ * the subscribers of the channel, so a publish iterates over an immutable
+ * array while clients subscribe and unsubscribe. A second index of the
+ * channels of every client removes a disconnected client without scanning all
+ * channels.
+ * </p>
+ * 
+ * @see MuKCastServer
+ * 
+ * @author Mathias Markl
+ */
+public class MuKCastSubscriptionRegistry {
+
+    private static final MuKCastConnection[] EMPTY = new MuKCastConnection[0];
+
+    private ConcurrentHashMap<String, MuKCastConnection[]> subscribers;
+    private HashMap<String, Set<String>> channelsByClient;
+
+    /**
+     * Constructs a new MuKCastSubscriptionRegistry.
+     */
+    public MuKCastSubscriptionRegistry() {
+	this.subscribers = new ConcurrentHashMap<String, MuKCastConnection[]>();
+	this.channelsByClient = new HashMap<String, Set<String>>();
+    }
+
+    /**
+     * Subscribes a connection to a channel.
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @param connection
+     *            The connection.
+     * @return False if the connection has already been subscribed.
+     */
+    public synchronized boolean subscribe(String channel, MuKCastConnection connection) {
+	Set<String> channels = channelsByClient.get(connection.getClientKey());
+	if (channels == null) {
+	    channels = new HashSet<String>();
+	    channelsByClient.put(connection.getClientKey(), channels);
+	}
+	if (!channels.add(channel)) {
+	    return false;
+	}
+
+	MuKCastConnection[] current = subscribers.get(channel);
+	if (current == null) {
+	    current = EMPTY;
+	}
+	MuKCastConnection[] updated = Arrays.copyOf(current, current.length + 1);
+	updated[current.length] = connection;
+	subscribers.put(channel, updated);
+	return true;
+    }
+
+    /**
+     * Unsubscribes a client from a channel.
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @param clientKey
+     *            The client key.
+     * @return False if the client hasn't been subscribed.
+     */
+    public synchronized boolean unsubscribe(String channel, String clientKey) {
+	Set<String> channels = channelsByClient.get(clientKey);
+	if (channels == null || !channels.remove(channel)) {
+	    return false;
+	}
+	if (channels.isEmpty()) {
+	    channelsByClient.remove(clientKey);
+	}
+
+	removeSubscriber(channel, clientKey);
+	return true;
+    }
+
+    /**
+     * Unsubscribes a client from all channels.
+     * 
+     * @param clientKey
+     *            The client key.
+     */
+    public synchronized void removeClient(String clientKey) {
+	Set<String> channels = channelsByClient.remove(clientKey);
+	if (channels != null) {
+	    for (String channel : channels) {
+		removeSubscriber(channel, clientKey);
+	    }
+	}
+    }
+
+    /**
+     * Returns the subscribers of a channel. The returned array must not be
+     * modified.
+     * 
+     * @param channel
+     *            The name of the channel.
+     * @return The snapshot of the subscribers.
+     */
+    public MuKCastConnection[] getSubscribers(String channel) {
+	MuKCastConnection[] connections = subscribers.get(channel);
+	return connections != null ? connections : EMPTY;
+    }
+
+    /**
+     * Returns the channels a client has subscribed to.
+     * 
+     * @param clientKey
+     *            The client key.
+     * @return A copy of the names of the channels.
+     */
+    public synchronized Set<String> getChannels(String clientKey) {
+	Set<String> channels = channelsByClient.get(clientKey);
+	if (channels == null) {
+	    return Collections.emptySet();
+	}
+	return new HashSet<String>(channels);
+    }
+
+    /**
+     * Returns the names of all channels with at least one subscriber.
+     * 
+     * @return The names of the channels.
+     */
+    public Set<String> getChannelNames() {
+	return Collections.unmodifiableSet(subscribers.keySet());
+    }
+
+    /**
+     * Removes all subscriptions.
+     */
+    public synchronized void clear() {
+	subscribers.clear();
+	channelsByClient.clear();
+    }
+
+    private void removeSubscriber(String channel, String clientKey) {
+	MuKCastConnection[] current = subscribers.get(channel);
+	if (current == null) {
+	    return;
+	}
+
+	MuKCastConnection[] updated = new MuKCastConnection[current.length - 1];
+	int index = 0;
+	for (MuKCastConnection connection : current) {
+	    if (!connection.getClientKey().equals(clientKey)) {
+		if (index == updated.length) {
+		    return;
+		}
+		updated[index++] = connection;
+	    }
+	}
+
+	if (updated.length == 0) {
+	    subscribers.remove(channel);
+	} else {
+	    subscribers.put(channel, updated);
+	}
+    }
+}
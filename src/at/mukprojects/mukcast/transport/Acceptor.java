@@ -0,0 +1,57 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Classes implementing {@code Acceptor} interface accept the connections of a
+ * {@link Transport} on the server side.
+ * 
+ * @author Mathias Markl
+ */
+public interface Acceptor extends Closeable {
+
+    /**
+     * Waits for the next connection.
+     * 
+     * @return The link of the connection.
+     * @throws IOException
+     *             If the acceptor has been closed or has failed an
+     *             {@code IOException} is thrown.
+     */
+    public Link accept() throws IOException;
+
+    /**
+     * Returns the port the acceptor listens on.
+     * 
+     * @return The port.
+     */
+    public int getLocalPort();
+
+    /**
+     * Closes the acceptor. A waiting {@link #accept()} fails at once.
+     * 
+     * @throws IOException
+     *             If the acceptor couldn't be closed an {@code IOException} is
+     *             thrown.
+     */
+    @Override
+    public void close() throws IOException;
+}
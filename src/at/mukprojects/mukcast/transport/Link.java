@@ -0,0 +1,111 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.MessageReader;
+import at.mukprojects.mukcast.codec.MessageWriter;
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * Classes implementing {@code Link} interface represent one end of a
+ * connection of a {@link Transport}.
+ * 
+ * A handler creates one reader and one writer per link. Closing the link
+ * terminates both directions on both sides, a waiting reader fails with an
+ * {@code IOException}.
+ * 
+ * @author Mathias Markl
+ */
+public interface Link extends Closeable {
+
+    /**
+     * Returns the host address of the other side, e.g. to build the client
+     * key.
+     * 
+     * @return The host address.
+     */
+    public String getRemoteHost();
+
+    /**
+     * Returns the local port of the link.
+     * 
+     * @return The local port.
+     */
+    public int getLocalPort();
+
+    /**
+     * Enables or disables TCP_NODELAY. Links, which don't delay small frames,
+     * ignore the option.
+     * 
+     * @param noDelay
+     *            True to send small frames at once.
+     * @throws IOException
+     *             If the option couldn't be set an {@code IOException} is
+     *             thrown.
+     */
+    public void setNoDelay(boolean noDelay) throws IOException;
+
+    /**
+     * Creates the reader of the incoming messages.
+     * 
+     * @return The message reader.
+     * @throws IOException
+     *             If the reader couldn't be created an {@code IOException} is
+     *             thrown.
+     */
+    public MessageReader createReader() throws IOException;
+
+    /**
+     * Creates the writer, which delivers the frames of the send queue.
+     * 
+     * @param sendQueue
+     *            The queue of outgoing frames.
+     * @param metrics
+     *            The metrics, which record the size and the write time of
+     *            every frame, or null.
+     * @param flushThreshold
+     *            The number of bytes, which are buffered before they are
+     *            written, or zero to write every frame on its own.
+     * @param flushDelay
+     *            The maximum time a frame is buffered.
+     * @param unit
+     *            The time unit of the flush delay.
+     * @return The message writer.
+     * @throws IOException
+     *             If the writer couldn't be created an {@code IOException} is
+     *             thrown.
+     */
+    public MessageWriter createWriter(SendQueue<EncodedMessage> sendQueue, ConnectionMetrics metrics,
+	    int flushThreshold, long flushDelay, TimeUnit unit) throws IOException;
+
+    /**
+     * Closes the link.
+     * 
+     * @throws IOException
+     *             If the link couldn't be closed an {@code IOException} is
+     *             thrown.
+     */
+    @Override
+    public void close() throws IOException;
+}
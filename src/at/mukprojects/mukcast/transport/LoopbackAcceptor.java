@@ -0,0 +1,109 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+
+/**
+ * LoopbackAcceptor accepts the connections of a {@link LoopbackTransport}.
+ * Every connection is a pair of links, the client keeps one and the server
+ * accepts the other.
+ * 
+ * @author Mathias Markl
+ */
+class LoopbackAcceptor implements Acceptor {
+
+    private int port;
+    private ArrayDeque<LoopbackLink> pending;
+    private int nextLinkId;
+    private boolean closed;
+
+    /**
+     * Constructs a new LoopbackAcceptor.
+     * 
+     * @param port
+     *            The port.
+     */
+    LoopbackAcceptor(int port) {
+	this.port = port;
+	this.pending = new ArrayDeque<LoopbackLink>();
+    }
+
+    /**
+     * Connects a new client.
+     * 
+     * @return The link of the client.
+     * @throws IOException
+     *             If the acceptor has been closed an {@code IOException} is
+     *             thrown.
+     */
+    synchronized Link connect() throws IOException {
+	if (closed) {
+	    throw new ConnectException("Connection refused: loopback port " + port);
+	}
+
+	LoopbackPipe toServer = new LoopbackPipe();
+	LoopbackPipe toClient = new LoopbackPipe();
+	nextLinkId++;
+	pending.add(new LoopbackLink(toServer, toClient, nextLinkId));
+	notifyAll();
+	return new LoopbackLink(toClient, toServer, nextLinkId);
+    }
+
+    @Override
+    public synchronized Link accept() throws IOException {
+	while (pending.isEmpty() && !closed) {
+	    try {
+		wait();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException("Accept has been interrupted.");
+	    }
+	}
+
+	if (closed) {
+	    throw new SocketException("Socket is closed");
+	}
+	return pending.poll();
+    }
+
+    @Override
+    public int getLocalPort() {
+	return port;
+    }
+
+    @Override
+    public void close() {
+	synchronized (this) {
+	    if (closed) {
+		return;
+	    }
+	    closed = true;
+	    for (LoopbackLink link : pending) {
+		link.close();
+	    }
+	    pending.clear();
+	    notifyAll();
+	}
+	LoopbackTransport.remove(this);
+    }
+}
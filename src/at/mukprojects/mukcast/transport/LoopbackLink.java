@@ -0,0 +1,155 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import at.mukprojects.mukcast.codec.ArrayAllocator;
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.MessageReader;
+import at.mukprojects.mukcast.codec.MessageWriter;
+import at.mukprojects.mukcast.codec.PixelAllocator;
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.message.Message;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * LoopbackLink is one end of a loopback connection. The writer attaches the
+ * send queue to the outgoing pipe, the reader takes the frames of the other
+ * side from the incoming pipe and decodes them in place.
+ * 
+ * @see LoopbackTransport
+ * 
+ * @author Mathias Markl
+ */
+class LoopbackLink implements Link {
+
+    private LoopbackPipe inbound;
+    private LoopbackPipe outbound;
+    private int linkId;
+
+    /**
+     * Constructs a new LoopbackLink.
+     * 
+     * @param inbound
+     *            The pipe of the incoming frames.
+     * @param outbound
+     *            The pipe of the outgoing frames.
+     * @param linkId
+     *            The id of the connection, which is used as the local port.
+     */
+    LoopbackLink(LoopbackPipe inbound, LoopbackPipe outbound, int linkId) {
+	this.inbound = inbound;
+	this.outbound = outbound;
+	this.linkId = linkId;
+    }
+
+    @Override
+    public String getRemoteHost() {
+	return LoopbackTransport.LOOPBACK_HOST;
+    }
+
+    @Override
+    public int getLocalPort() {
+	return linkId;
+    }
+
+    @Override
+    public void setNoDelay(boolean noDelay) {
+    }
+
+    @Override
+    public MessageReader createReader() {
+	return new MessageReader() {
+
+	    private volatile PixelAllocator pixelAllocator;
+	    private volatile ArrayAllocator arrayAllocator;
+	    private ConnectionMetrics metrics;
+
+	    @Override
+	    public void setMetrics(ConnectionMetrics metrics) {
+		this.metrics = metrics;
+	    }
+
+	    @Override
+	    public void setPixelAllocator(PixelAllocator pixelAllocator) {
+		this.pixelAllocator = pixelAllocator;
+	    }
+
+	    @Override
+	    public void setArrayAllocator(ArrayAllocator arrayAllocator) {
+		this.arrayAllocator = arrayAllocator;
+	    }
+
+	    @Override
+	    public Message readMessage() throws IOException {
+		EncodedMessage frame = inbound.take();
+
+		long start = System.nanoTime();
+		Message message = frame.decode(pixelAllocator, arrayAllocator);
+		if (metrics != null) {
+		    metrics.messageReceived(frame.size(), System.nanoTime() - start);
+		}
+		return message;
+	    }
+
+	    @Override
+	    public void close() {
+		inbound.close();
+	    }
+	};
+    }
+
+    /**
+     * Creates the writer of the link. The frames are taken from the send queue
+     * by the reader of the other side, so the writer has nothing to do when it
+     * is run and flushing isn't needed.
+     */
+    @Override
+    public MessageWriter createWriter(final SendQueue<EncodedMessage> sendQueue, ConnectionMetrics metrics,
+	    int flushThreshold, long flushDelay, TimeUnit unit) throws IOException {
+	outbound.attach(sendQueue, metrics);
+	return new MessageWriter() {
+
+	    @Override
+	    public void run() {
+	    }
+
+	    @Override
+	    public boolean isRunning() {
+		return !sendQueue.isClosed();
+	    }
+
+	    @Override
+	    public void flush() {
+	    }
+
+	    @Override
+	    public void stop() {
+		sendQueue.close();
+	    }
+	};
+    }
+
+    @Override
+    public void close() {
+	inbound.close();
+	outbound.close();
+    }
+}
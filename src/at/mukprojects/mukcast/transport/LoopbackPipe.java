@@ -0,0 +1,129 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * LoopbackPipe is one direction of a loopback connection. The send queue of
+ * the sending side is attached to the pipe and the receiving side takes the
+ * frames from it.
+ * <p>
+ * The pipe ends like a TCP stream: after the send queue has been closed and
+ * drained the receiver gets an {@code EOFException}. If the pipe is closed,
+ * the queued frames are discarded.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+class LoopbackPipe {
+
+    private SendQueue<EncodedMessage> sendQueue;
+    private ConnectionMetrics metrics;
+    private boolean closed;
+
+    /**
+     * Attaches the send queue of the sending side.
+     * 
+     * @param sendQueue
+     *            The send queue.
+     * @param metrics
+     *            The metrics of the sending side or null.
+     * @throws IOException
+     *             If a send queue has already been attached an
+     *             {@code IOException} is thrown.
+     */
+    synchronized void attach(SendQueue<EncodedMessage> sendQueue, ConnectionMetrics metrics) throws IOException {
+	if (this.sendQueue != null) {
+	    throw new IOException("The link has already a writer.");
+	}
+
+	this.sendQueue = sendQueue;
+	this.metrics = metrics;
+	if (closed) {
+	    sendQueue.close();
+	}
+	notifyAll();
+    }
+
+    /**
+     * Takes the next frame. The method waits until a frame is available.
+     * 
+     * @return The frame.
+     * @throws IOException
+     *             If the pipe has ended or has been closed an
+     *             {@code IOException} is thrown.
+     */
+    EncodedMessage take() throws IOException {
+	SendQueue<EncodedMessage> queue;
+	ConnectionMetrics sendMetrics;
+	synchronized (this) {
+	    while (sendQueue == null && !closed) {
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    throw new InterruptedIOException("Read has been interrupted.");
+		}
+	    }
+	    if (closed) {
+		throw new EOFException();
+	    }
+	    queue = sendQueue;
+	    sendMetrics = metrics;
+	}
+
+	EncodedMessage message;
+	try {
+	    message = queue.take();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Read has been interrupted.");
+	}
+
+	if (message == null || isClosed()) {
+	    throw new EOFException();
+	}
+	if (sendMetrics != null) {
+	    sendMetrics.messageSent(message.size(), 0);
+	}
+	return message;
+    }
+
+    private synchronized boolean isClosed() {
+	return closed;
+    }
+
+    /**
+     * Closes the pipe. A waiting receiver fails at once and the sender can't
+     * queue any more frames.
+     */
+    synchronized void close() {
+	closed = true;
+	if (sendQueue != null) {
+	    sendQueue.close();
+	}
+	notifyAll();
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * LoopbackTransport connects clients and servers within the same JVM.
+ * <p>
+ * The encoded frames are handed over without going through the kernel: the
+ * reader of one side takes the frames directly from the send queue of the
+ * other side and decodes them in place, so a frame is never copied. The
+ * send queues keep their capacity, overflow policy and conflation, so a slow
+ * consumer is treated the same way as over TCP.
+ * </p>
+ * <p>
+ * The port identifies the server within the JVM, the host is ignored. A
+ * server can listen on the loopback transport in addition to TCP, so the same
+ * server serves local and remote clients.
+ * </p>
+ * 
+ * @see at.mukprojects.mukcast.server.MuKCastServer#addTransport(Transport)
+ * @see at.mukprojects.mukcast.client.MuKCastClient#setTransport(Transport)
+ * 
+ * @author Mathias Markl
+ */
+public class LoopbackTransport implements Transport {
+
+    /**
+     * The host address of a loopback link.
+     */
+    public static final String LOOPBACK_HOST = "loopback";
+
+    private static final ConcurrentMap<Integer, LoopbackAcceptor> acceptors;
+
+    static {
+	acceptors = new ConcurrentHashMap<Integer, LoopbackAcceptor>();
+    }
+
+    @Override
+    public Acceptor listen(String host, int port) throws IOException {
+	LoopbackAcceptor acceptor = new LoopbackAcceptor(port);
+	if (acceptors.putIfAbsent(port, acceptor) != null) {
+	    throw new BindException("Address already in use: loopback port " + port);
+	}
+	return acceptor;
+    }
+
+    @Override
+    public Link connect(String host, int port) throws IOException {
+	LoopbackAcceptor acceptor = acceptors.get(port);
+	if (acceptor == null) {
+	    throw new ConnectException("Connection refused: loopback port " + port);
+	}
+	return acceptor.connect();
+    }
+
+    /**
+     * Removes a closed acceptor.
+     * 
+     * @param acceptor
+     *            The acceptor.
+     */
+    static void remove(LoopbackAcceptor acceptor) {
+	acceptors.remove(acceptor.getLocalPort(), acceptor);
+    }
+
+    @Override
+    public String toString() {
+	return LOOPBACK_HOST;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * SocketAcceptor accepts the connections of a server socket.
+ * 
+ * @see SocketTransport
+ * 
+ * @author Mathias Markl
+ */
+public class SocketAcceptor implements Acceptor {
+
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructs a new SocketAcceptor.
+     * 
+     * @param serverSocket
+     *            The bound server socket.
+     */
+    public SocketAcceptor(ServerSocket serverSocket) {
+	this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Returns the server socket.
+     * 
+     * @return The server socket.
+     */
+    public ServerSocket getServerSocket() {
+	return serverSocket;
+    }
+
+    @Override
+    public Link accept() throws IOException {
+	return new SocketLink(serverSocket.accept());
+    }
+
+    @Override
+    public int getLocalPort() {
+	return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+	serverSocket.close();
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+import at.mukprojects.mukcast.codec.EncodedMessage;
+import at.mukprojects.mukcast.codec.FrameReader;
+import at.mukprojects.mukcast.codec.FrameWriter;
+import at.mukprojects.mukcast.codec.MessageReader;
+import at.mukprojects.mukcast.codec.MessageWriter;
+import at.mukprojects.mukcast.concurrent.SendQueue;
+import at.mukprojects.mukcast.metrics.ConnectionMetrics;
+
+/**
+ * SocketLink is a connection over a TCP socket. The frames are read by a
+ * {@link FrameReader} and written by a {@link FrameWriter}.
+ * 
+ * @see SocketTransport
+ * 
+ * @author Mathias Markl
+ */
+public class SocketLink implements Link {
+
+    private Socket socket;
+
+    /**
+     * Constructs a new SocketLink.
+     * 
+     * @param socket
+     *            The connected socket.
+     */
+    public SocketLink(Socket socket) {
+	this.socket = socket;
+    }
+
+    /**
+     * Returns the socket.
+     * 
+     * @return The socket.
+     */
+    public Socket getSocket() {
+	return socket;
+    }
+
+    @Override
+    public String getRemoteHost() {
+	return socket.getInetAddress().getHostAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+	return socket.getLocalPort();
+    }
+
+    @Override
+    public void setNoDelay(boolean noDelay) throws IOException {
+	socket.setTcpNoDelay(noDelay);
+    }
+
+    @Override
+    public MessageReader createReader() throws IOException {
+	return new FrameReader(socket.getInputStream());
+    }
+
+    @Override
+    public MessageWriter createWriter(SendQueue<EncodedMessage> sendQueue, ConnectionMetrics metrics,
+	    int flushThreshold, long flushDelay, TimeUnit unit) throws IOException {
+	return new FrameWriter(socket.getOutputStream(), sendQueue, metrics, flushThreshold, flushDelay, unit);
+    }
+
+    @Override
+    public void close() throws IOException {
+	socket.close();
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * SocketTransport carries the frames over TCP sockets. It is the default
+ * transport of the client and the server.
+ * 
+ * @author Mathias Markl
+ */
+public class SocketTransport implements Transport {
+
+    @Override
+    public Acceptor listen(String host, int port) throws IOException {
+	if (host == null) {
+	    return new SocketAcceptor(new ServerSocket(port));
+	}
+	return new SocketAcceptor(new ServerSocket(port, 10, InetAddress.getByName(host)));
+    }
+
+    @Override
+    public Link connect(String host, int port) throws IOException {
+	return new SocketLink(new Socket(host, port));
+    }
+
+    @Override
+    public String toString() {
+	return "tcp";
+    }
+}
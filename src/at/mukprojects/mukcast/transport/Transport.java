@@ -0,0 +1,64 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.transport;
+
+import java.io.IOException;
+
+/**
+ * Classes implementing {@code Transport} interface carry the frames between a
+ * client and a server.
+ * 
+ * The server listens with an {@link Acceptor} of the transport and the client
+ * connects with a {@link Link}, so the handlers of both sides don't depend on
+ * how the frames are carried.
+ * 
+ * @see SocketTransport
+ * @see LoopbackTransport
+ * 
+ * @author Mathias Markl
+ */
+public interface Transport {
+
+    /**
+     * Starts to listen for connections.
+     * 
+     * @param host
+     *            The host address to bind or null to bind all addresses.
+     * @param port
+     *            The port.
+     * @return The acceptor of the connections.
+     * @throws IOException
+     *             If the transport couldn't listen an {@code IOException} is
+     *             thrown.
+     */
+    public Acceptor listen(String host, int port) throws IOException;
+
+    /**
+     * Connects to a server, which listens with the same transport.
+     * 
+     * @param host
+     *            The host of the server.
+     * @param port
+     *            The port of the server.
+     * @return The link to the server.
+     * @throws IOException
+     *             If the connection couldn't be established an
+     *             {@code IOException} is thrown.
+     */
+    public Link connect(String host, int port) throws IOException;
+}
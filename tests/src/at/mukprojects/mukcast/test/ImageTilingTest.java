@@ -0,0 +1,188 @@
+/**
+ * This code is copyright (c) Mathias Markl 2016
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 2 of the License, or (at your option) any later
+ * version.
+ * 
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * 
+ * You should have received a copy of the GNU General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package at.mukprojects.mukcast.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import at.mukprojects.mukcast.client.MuKCastClient;
+import at.mukprojects.mukcast.client.MuKCastMessageListener;
+import at.mukprojects.mukcast.concurrent.OverflowPolicy;
+import at.mukprojects.mukcast.message.ImageMessage;
+import at.mukprojects.mukcast.server.MuKCastServer;
+import at.mukprojects.mukcast.transport.LoopbackTransport;
+
+/**
+ * ImageTilingTest broadcasts tiled images faster than the send queue can hold
+ * their tiles and checks for every overflow policy, that the client
+ * reassembles complete images. The tiles of an image are queued as one group,
+ * so the policy either drops an image as a whole or not at all.
+ * <p>
+ * The process exits with 0 if the test passes and with 1 otherwise.
+ * </p>
+ * 
+ * @author Mathias Markl
+ */
+public final class ImageTilingTest {
+
+    private static final int PORT = 7100;
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int TILE_SIZE = 64;
+    private static final int IMAGES = 30;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long QUIET_PERIOD = 500;
+
+    private ImageTilingTest() {
+    }
+
+    /**
+     * Runs the test.
+     * 
+     * @param args
+     *            The command line arguments aren't used.
+     */
+    public static void main(String[] args) {
+	boolean passed = true;
+	int port = PORT;
+	for (OverflowPolicy policy : OverflowPolicy.values()) {
+	    try {
+		String failure = test(policy, port++);
+		if (failure == null) {
+		    System.out.println(policy + ": passed");
+		} else {
+		    System.out.println(policy + ": failed, " + failure);
+		    passed = false;
+		}
+	    } catch (Exception e) {
+		System.out.println(policy + ": failed, " + e);
+		passed = false;
+	    }
+	}
+	System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Broadcasts the images with the given overflow policy.
+     * 
+     * @return The reason why the test failed or null if it passed.
+     */
+    private static String test(OverflowPolicy policy, int port) throws Exception {
+	MuKCastServer server = new MuKCastServer(null, port);
+	server.setTransport(new LoopbackTransport());
+	server.setSendQueue(QUEUE_CAPACITY, policy);
+	server.setDeltaEncoding(false);
+	server.setImageTiling(TILE_SIZE, TILE_SIZE);
+	server.startServer();
+
+	final List<ImageMessage> received = new ArrayList<ImageMessage>();
+	MuKCastClient client = new MuKCastClient(null, "localhost", port);
+	client.setTransport(new LoopbackTransport());
+	client.addListener(new MuKCastMessageListener() {
+	    @Override
+	    public void onImage(MuKCastClient client, ImageMessage message) {
+		synchronized (received) {
+		    received.add(message);
+		    received.notifyAll();
+		}
+	    }
+	});
+
+	try {
+	    client.connect();
+	    long deadline = System.currentTimeMillis() + TIMEOUT;
+	    while (server.getClientCount() == 0 && System.currentTimeMillis() < deadline) {
+		Thread.sleep(10);
+	    }
+
+	    for (int i = 0; i < IMAGES; i++) {
+		server.broadcastMessage(new ImageMessage(WIDTH, HEIGHT, createPixels(i)));
+	    }
+
+	    /*
+	     * With BLOCK every image has to arrive. DROP_OLDEST and KEEP_LATEST
+	     * never drop the last image, DROP_NEWEST never drops the first one.
+	     */
+	    int expected = policy == OverflowPolicy.BLOCK ? IMAGES : 1;
+	    boolean keepsLast = policy == OverflowPolicy.BLOCK || policy == OverflowPolicy.DROP_OLDEST
+		    || policy == OverflowPolicy.KEEP_LATEST;
+	    synchronized (received) {
+		int count = -1;
+		while ((keepsLast || count != received.size()) && !isLast(received)
+			&& System.currentTimeMillis() < deadline) {
+		    count = received.size();
+		    received.wait(keepsLast ? deadline - System.currentTimeMillis() : QUIET_PERIOD);
+		}
+
+		for (ImageMessage image : received) {
+		    String failure = verify(image);
+		    if (failure != null) {
+			return failure;
+		    }
+		}
+		if (policy != OverflowPolicy.DISCONNECT
+			&& (received.size() < expected || (keepsLast && !isLast(received)))) {
+		    return received.size() + " of " + IMAGES + " images received";
+		}
+	    }
+	    return null;
+	} finally {
+	    client.disconnect();
+	    server.stopServer();
+	}
+    }
+
+    private static int[] createPixels(int image) {
+	int[] pixels = new int[WIDTH * HEIGHT];
+	for (int i = 0; i < pixels.length; i++) {
+	    pixels[i] = 0xff000000 | image << 18 | i;
+	}
+	return pixels;
+    }
+
+    private static boolean isLast(List<ImageMessage> received) {
+	return !received.isEmpty() && getImage(received.get(received.size() - 1)) == IMAGES - 1;
+    }
+
+    private static int getImage(ImageMessage message) {
+	return (message.getPixels()[0] >> 18) & 0x3f;
+    }
+
+    /**
+     * Checks that every tile of the image belongs to the same broadcast.
+     * 
+     * @return The reason why the image is incomplete or null if it is
+     *         complete.
+     */
+    private static String verify(ImageMessage message) {
+	if (message.getWidth() != WIDTH || message.getHeight() != HEIGHT) {
+	    return "image has the size " + message.getWidth() + "x" + message.getHeight();
+	}
+
+	int[] expected = createPixels(getImage(message));
+	int[] pixels = message.getPixels();
+	for (int i = 0; i < expected.length; i++) {
+	    if (pixels[i] != expected[i]) {
+		return "pixel " + i + " of image " + getImage(message) + " is " + Integer.toHexString(pixels[i]);
+	    }
+	}
+	return null;
+    }
+}